@@ -24,6 +24,7 @@
 package net.rushhourgame;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +32,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
@@ -41,7 +43,9 @@ import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import net.rushhourgame.MovementLog.Kind;
 import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.TickStatistics.Phase;
 import net.rushhourgame.controller.CompanyController;
 import net.rushhourgame.controller.HumanController;
 import net.rushhourgame.controller.LineController;
@@ -50,10 +54,36 @@ import net.rushhourgame.controller.RouteSearcher;
 import net.rushhourgame.controller.StationController;
 import net.rushhourgame.controller.StepForHumanController;
 import net.rushhourgame.controller.TrainController;
+import net.rushhourgame.entity.Human;
 import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.Train;
 import net.rushhourgame.exception.RushHourException;
+import net.rushhourgame.websocket.MovableBroadcaster;
 
 /**
+ * ゲームを進める.
+ * <p>
+ * ゲーム中は各コントローラのキャッシュが正であり、人や電車の状態は毎回データベースに書き込まない.
+ * rushhour.game.writebehind.interval (ms) ごとに、ゲームスレッドの処理の最後でキャッシュを書き出す.
+ * 生成、削除だけはその回のトランザクションで反映する.
+ * <p>
+ * 停止時は synchronizeDatabase ですべて書き出す. 異常終了した場合は最後に書き出した時点の状態に戻り、
+ * 次の startGame の synchronizeDatabase でその状態から再開する.
+ * <p>
+ * rushhour.game.scheduler.fixedrate が true のときは固定レートで動かし、処理が間隔より長くかかった分を
+ * 続けて実行して取り戻す. ただし rushhour.game.scheduler.maxcatchup 回分より遅れた回は進めずに捨てる.
+ * false のときは前回の終了から一定間隔をあけて動かすため、長くかかった分だけゲーム内の時間が遅れる.
+ * いずれの場合も処理ごとの時間を TickStatistics に記録する.
+ * <p>
+ * 毎回の最後に電車と人の位置の変化を MovementLog に記録する. クライアントは前回受け取った回からの変化だけを取得する.
+ * 同時に電車と人の位置と状態の写し (WorldSnapshot) を作って差し替える. 画面や API はロックをとらずにこれを読む.
+ * 記録し終えたら MovableBroadcaster に渡し、WebSocket で購読しているクライアントに表示範囲ごとに送らせる.
+ * <p>
+ * 経路網が変更されたときは経路探索を別スレッドに依頼し、探索中は前回の経路表のまま進める.
+ * 探索し終えた経路表は、その後の最初の回で取り込む.
+ * <p>
+ * 開始するたびに乱数の種を rushhour.game.random.seed に戻す. 同じデータベースの状態から始めれば同じ展開になるため、
+ * 変更の前後で同じ負荷をかけて性能を比べられる.
  *
  * @author yasshi2525 (https://twitter.com/yasshi2525)
  */
@@ -86,11 +116,34 @@ public class GameMaster implements Serializable, Runnable {
     protected DebugInitializer debug;
     @Inject
     protected CompanyController cCon;
+    @Inject
+    protected MovableBroadcaster broadcaster;
     @PersistenceContext
     protected EntityManager em;
 
     protected Lock writeLock;
 
+    /**
+     * 最後にキャッシュを書き出した時刻 (ms)
+     */
+    protected long lastWriteBehind;
+
+    /**
+     * 固定レートで動かし始めた時刻 (System.nanoTime)
+     */
+    protected long startedAt;
+
+    /**
+     * 固定レートで動かし始めてから run が呼ばれた回数
+     */
+    protected long scheduledTicks;
+
+    protected final TickStatistics statistics = new TickStatistics();
+
+    protected final MovementLog movements = new MovementLog();
+
+    protected volatile WorldSnapshot snapshot = WorldSnapshot.EMPTY;
+
     @Resource(lookup = "concurrent/RushHourGameRoute")
     protected ManagedExecutorService executorService;
 
@@ -108,6 +161,7 @@ public class GameMaster implements Serializable, Runnable {
     @Transactional
     public void constructTemplateWorld() throws RushHourException {
         LOG.log(Level.INFO, "{0}#constructTemplateWorld start", new Object[]{GameMaster.class});
+        reseed();
         debug.init();
         executorService.submit(searcher);
         LOG.log(Level.INFO, "{0}#constructTemplateWorld end", new Object[]{GameMaster.class});
@@ -124,7 +178,16 @@ public class GameMaster implements Serializable, Runnable {
                 return false;
             }
             synchronizeDatabase();
-            timerFuture = timerService.scheduleWithFixedDelay(this, 0L, getInterval(), TimeUnit.MILLISECONDS);
+            reseed();
+            lastWriteBehind = System.currentTimeMillis();
+            statistics.reset();
+            if (isFixedRate()) {
+                startedAt = System.nanoTime();
+                scheduledTicks = 0;
+                timerFuture = timerService.scheduleAtFixedRate(this, 0L, getInterval(), TimeUnit.MILLISECONDS);
+            } else {
+                timerFuture = timerService.scheduleWithFixedDelay(this, 0L, getInterval(), TimeUnit.MILLISECONDS);
+            }
             LOG.log(Level.INFO, "{0}#startGame end", new Object[]{GameMaster.class});
             return true;
         } finally {
@@ -151,12 +214,27 @@ public class GameMaster implements Serializable, Runnable {
         return res;
     }
 
+    /**
+     * 乱数の種を rushhour.game.random.seed に戻す. 未設定のときは新しい種にする.
+     * 使った種はログに出るため、それを設定すると同じ世界から同じ展開を再現できる.
+     */
+    protected void reseed() {
+        String seed = prop.get(GAME_RANDOM_SEED);
+        if (seed == null || seed.trim().isEmpty()) {
+            RushHourRandom.getInstance().reseed(System.nanoTime());
+        } else {
+            RushHourRandom.getInstance().reseed(Long.parseLong(seed.trim()));
+        }
+    }
+
     protected void synchronizeDatabase() {
         rCon.synchronizeDatabase();
         stCon.synchronizeDatabase();
         lCon.synchronizeDatabase();
         tCon.synchronizeDatabase();
         hCon.synchronizeDatabase();
+        // 経路表は差し替え前の住宅やプラットフォームを参照しているため付け替える
+        searcher.notifySynchronized();
     }
 
     @Transactional
@@ -183,32 +261,56 @@ public class GameMaster implements Serializable, Runnable {
     public void run() {
         LOG.log(Level.FINE, "{0}#run", new Object[]{GameMaster.class});
 
+        if (isFixedRate() && isTooLate()) {
+            statistics.recordDropped();
+            LOG.log(Level.WARNING, "{0}#run dropped tick because game is behind schedule more than {1} ticks",
+                    new Object[]{GameMaster.class, getMaxCatchUp()});
+            return;
+        }
+
+        // 経路探索の終了は待たない. 探索し終えた経路表は次回以降に取り込む
+        if (searcher.isOutdated() && searcher.startSearching()) {
+            executorService.submit(searcher);
+        }
         if (!searcher.isAvailable()) {
-            try {
-                executorService.submit(searcher).get();
-                return;
-            } catch (InterruptedException | ExecutionException ex) {
-                Logger.getLogger(GameMaster.class.getName()).log(Level.SEVERE, null, ex);
-                return;
-            }
+            return;
         }
 
         try {
+            long tickStart = System.nanoTime();
+            long phaseStart = tickStart;
             stCon.step(getInterval()); // デットロック対策
-            searcher.lock();
+            phaseStart = statistics.lap(Phase.STATION, phaseStart);
+            // 路線の編集は路線 → 経路探索の順にロックをとるため、路線を先にとる
+            lCon.getReadLock().lock();
             try {
-                // 更新された場合、なにもしない
-                if (!searcher.isAvailable()) {
-                    return;
-                }
-                
-                searcher.refresh();
+                searcher.lock();
+                try {
+                    searcher.swap();
+                    phaseStart = statistics.lap(Phase.ROUTE, phaseStart);
 
-                rCon.step(getInterval());
-                tCon.step(getInterval());
-                hCon.step(getInterval(), getHumanSpeed());
+                    rCon.step(getInterval());
+                    phaseStart = statistics.lap(Phase.RESIDENCE, phaseStart);
+                    tCon.step(getInterval());
+                    phaseStart = statistics.lap(Phase.TRAIN, phaseStart);
+                    hCon.step(getInterval(), getHumanSpeed());
+                    phaseStart = statistics.lap(Phase.HUMAN, phaseStart);
+                    publishMovements();
+                    phaseStart = statistics.lap(Phase.PUBLISH, phaseStart);
+                } finally {
+                    searcher.unlock();
+                }
             } finally {
-                searcher.unlock();
+                lCon.getReadLock().unlock();
+            }
+            if (isWriteBehindDue()) {
+                writeBehind();
+            }
+            statistics.lap(Phase.WRITE_BEHIND, phaseStart);
+            long elapsed = System.nanoTime() - tickStart;
+            if (statistics.recordTick(elapsed, getInterval())) {
+                LOG.log(Level.WARNING, "{0}#run tick overran {1} ms (interval {2} ms) : {3}",
+                        new Object[]{GameMaster.class, elapsed / 1_000_000, getInterval(), statistics.describeLastTick()});
             }
         } catch (Throwable e) {
             LOG.log(Level.SEVERE, "{0}#run exception in run()", GameMaster.class);
@@ -217,10 +319,109 @@ public class GameMaster implements Serializable, Runnable {
         }
     }
 
+    /**
+     * 固定レートの予定時刻から maxcatchup 回分より遅れているか. 呼ぶたびに予定を1回分進める
+     *
+     * @return 遅れすぎているか
+     */
+    protected boolean isTooLate() {
+        long scheduled = startedAt + TimeUnit.MILLISECONDS.toNanos(getInterval()) * scheduledTicks;
+        scheduledTicks++;
+        return System.nanoTime() - scheduled > TimeUnit.MILLISECONDS.toNanos(getInterval()) * getMaxCatchUp();
+    }
+
+    protected boolean isWriteBehindDue() {
+        long interval = getWriteBehindInterval();
+        return interval > 0 && System.currentTimeMillis() - lastWriteBehind >= interval;
+    }
+
+    /**
+     * キャッシュをデータベースに書き出す. コントローラごとに読み込みロックをとるため、
+     * コントローラ間で同じ時点の状態になるとは限らない
+     */
+    protected void writeBehind() {
+        long start = System.currentTimeMillis();
+        int num = rCon.writeBehind() + stCon.writeBehind() + tCon.writeBehind() + hCon.writeBehind();
+        int skipped = rCon.getLastSkipped() + stCon.getLastSkipped() + tCon.getLastSkipped() + hCon.getLastSkipped();
+        lastWriteBehind = System.currentTimeMillis();
+        LOG.log(Level.FINE, "{0}#writeBehind wrote {1} entities, skipped {2} unchanged entities in {3} ms",
+                new Object[]{GameMaster.class, num, skipped, lastWriteBehind - start});
+    }
+
+    /**
+     * 電車と人の位置の変化を記録し、その回の写しとともにクライアントに公開する
+     */
+    protected void publishMovements() {
+        double cellSize = getGridCellSize();
+        WorldSnapshot.Layer trains;
+        WorldSnapshot.Layer humans;
+        tCon.getReadLock().lock();
+        try {
+            List<Train> deployed = tCon.findAll().stream()
+                    .filter(Train::isDeployed).collect(Collectors.toList());
+            movements.record(Kind.TRAIN, deployed, t -> t.getDeployed().getHeading(), Train::getSpeed);
+            trains = snapshot.getLayer(Kind.TRAIN).next(deployed, t -> null,
+                    t -> t.getDeployed().getHeading(), Train::getSpeed, cellSize);
+        } finally {
+            tCon.getReadLock().unlock();
+        }
+        hCon.getReadLock().lock();
+        try {
+            List<Human> all = hCon.findAll();
+            double humanSpeed = getHumanSpeed();
+            movements.record(Kind.HUMAN, all, Human::getHeading, h -> h.getHeadingSpeed(humanSpeed));
+            humans = snapshot.getLayer(Kind.HUMAN).next(all,
+                    h -> h.getStandingOn() == null ? null : h.getStandingOn().name(),
+                    Human::getHeading, h -> h.getHeadingSpeed(humanSpeed), cellSize);
+        } finally {
+            hCon.getReadLock().unlock();
+        }
+        long tick = movements.commit(getMovementHistory());
+        snapshot = new WorldSnapshot(tick, trains, humans, hCon.getLastKilled(), hCon.getTotalKilled());
+        broadcaster.publish(movements, snapshot);
+    }
+
+    public TickStatistics getStatistics() {
+        return statistics;
+    }
+
+    public MovementLog getMovements() {
+        return movements;
+    }
+
+    /**
+     * ロックをとらずに読める、最後に終えた回の電車と人の写し
+     *
+     * @return 最後に終えた回の写し. 一度も進めていなければ空
+     */
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    protected boolean isFixedRate() {
+        return Boolean.parseBoolean(prop.get(GAME_SCHEDULER_FIXEDRATE));
+    }
+
+    protected int getMaxCatchUp() {
+        return Integer.parseInt(prop.get(GAME_SCHEDULER_MAXCATCHUP));
+    }
+
+    protected long getWriteBehindInterval() {
+        return Long.parseLong(prop.get(GAME_WRITEBEHIND_INTERVAL));
+    }
+
     protected long getInterval() {
         return Long.parseLong(prop.get(GAME_INTERVAL));
     }
 
+    protected double getGridCellSize() {
+        return Double.parseDouble(prop.get(GAME_GRID_CELLSIZE));
+    }
+
+    protected int getMovementHistory() {
+        return Integer.parseInt(prop.get(GAME_MOVEMENT_HISTORY));
+    }
+
     protected double getHumanSpeed() {
         return Double.parseDouble(prop.get(GAME_DEF_HUMAN_SPEED));
     }
@@ -0,0 +1,449 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import net.rushhourgame.entity.GeoEntity;
+import net.rushhourgame.entity.Pointable;
+
+/**
+ * tick ごとに電車と人の位置の変化を記録し、クライアントが前回受け取った tick からの変化を返す.
+ * 変化の有無は前回記録した座標と向かっている地点との比較で判断するため、Entity 側の処理には手を入れない.
+ * <p>
+ * 記録はゲームスレッドだけが行う. 記録は直近 history 回分だけ残すため、それより前からの変化は求められない.
+ * そのときは null を返すので、呼び出し側は範囲内の全件を返す.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class MovementLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        TRAIN, HUMAN
+    }
+
+    /**
+     * 前回記録した座標. ゲームスレッドだけが読み書きする
+     */
+    protected final Map<Kind, Map<Long, Last>> lasts = new EnumMap<>(Kind.class);
+
+    /**
+     * 記録中の tick の変化. ゲームスレッドだけが読み書きする
+     */
+    protected Movements current = new Movements();
+
+    /**
+     * 古い順に並べた直近の変化
+     */
+    protected final Deque<Movements> history = new ArrayDeque<>();
+
+    protected volatile long tick;
+
+    public MovementLog() {
+        for (Kind kind : Kind.values()) {
+            lasts.put(kind, new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * 向かっている地点を持たない Entity の変化を記録する
+     *
+     * @param kind 種類
+     * @param entities 現在の全 Entity
+     */
+    public void record(Kind kind, Collection<? extends GeoEntity> entities) {
+        record(kind, entities, e -> null, e -> 0);
+    }
+
+    /**
+     * 前回から位置または向かっている地点が変わった Entity、新しく現れた Entity、いなくなった Entity を記録する.
+     * 1回の tick で種類ごとに1回ずつ呼ぶ.
+     * 向かっている地点と速さはクライアントが次の回までの位置を補間するために使う
+     *
+     * @param <T> Entity の型
+     * @param kind 種類
+     * @param entities 現在の全 Entity
+     * @param heading 向かっている地点. 止まっているときは null を返す
+     * @param speed 向かっている地点へ進む速さ (距離/ms)
+     */
+    public <T extends GeoEntity> void record(Kind kind, Collection<T> entities,
+            Function<? super T, ? extends Pointable> heading, ToDoubleFunction<? super T> speed) {
+        Map<Long, Last> last = lasts.get(kind);
+        Positions moved = current.moved.get(kind);
+        Positions removed = current.removed.get(kind);
+        long next = tick + 1;
+
+        for (T e : entities) {
+            double x = e.getX();
+            double y = e.getY();
+            Pointable h = heading.apply(e);
+            double tx = h == null ? x : h.getX();
+            double ty = h == null ? y : h.getY();
+            double sp = h == null ? 0 : speed.applyAsDouble(e);
+            Last l = last.get(e.getId());
+            if (l == null) {
+                last.put(e.getId(), new Last(x, y, tx, ty, sp, next));
+                moved.add(e.getId(), ownerOf(e), Double.NaN, Double.NaN, x, y, tx, ty, sp);
+            } else {
+                if (l.x != x || l.y != y || l.tx != tx || l.ty != ty || l.speed != sp) {
+                    moved.add(e.getId(), ownerOf(e), l.x, l.y, x, y, tx, ty, sp);
+                    l.x = x;
+                    l.y = y;
+                    l.tx = tx;
+                    l.ty = ty;
+                    l.speed = sp;
+                }
+                l.seen = next;
+            }
+        }
+
+        for (Iterator<Map.Entry<Long, Last>> it = last.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, Last> entry = it.next();
+            if (entry.getValue().seen != next) {
+                removed.add(entry.getKey(), 0, entry.getValue().x, entry.getValue().y,
+                        Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * record した変化を公開し、tick を1つ進める
+     *
+     * @param capacity 残す tick の数
+     * @return 公開した tick
+     */
+    public synchronized long commit(int capacity) {
+        current.tick = ++tick;
+        history.addLast(current);
+        while (history.size() > Math.max(capacity, 1)) {
+            history.removeFirst();
+        }
+        current = new Movements();
+        return tick;
+    }
+
+    /**
+     * @return 最後に公開した tick. 一度も公開していなければ 0
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * since より後の tick で、範囲の中に入った、または範囲の中で動いた Entity の最新の座標と、
+     * 範囲の外に出た、またはいなくなった Entity の id を求める.
+     * 範囲の外だけで動いた Entity は含めない.
+     *
+     * @param kind 種類
+     * @param since クライアントが前回受け取った tick
+     * @param center 中心
+     * @param scale 範囲
+     * @return 変化. 記録が残っていないため求められないときは null
+     */
+    public synchronized Delta since(Kind kind, long since, Pointable center, double scale) {
+        if (since <= 0 || since > tick || history.isEmpty() || history.getFirst().tick > since + 1) {
+            return null;
+        }
+        Area area = new Area(center, scale);
+        Map<Long, Change> changes = new LinkedHashMap<>();
+
+        for (Movements m : history) {
+            if (m.tick <= since) {
+                continue;
+            }
+            Positions moved = m.moved.get(kind);
+            for (int i = 0; i < moved.size; i++) {
+                Change c = changes.computeIfAbsent(moved.ids[i], id -> new Change());
+                if (!c.initialized) {
+                    c.wasIn = area.contains(moved.coords[i * 4], moved.coords[i * 4 + 1]);
+                    c.initialized = true;
+                }
+                c.owner = moved.owners[i];
+                c.x = moved.coords[i * 4 + 2];
+                c.y = moved.coords[i * 4 + 3];
+                c.tx = moved.heads[i * 3];
+                c.ty = moved.heads[i * 3 + 1];
+                c.speed = moved.heads[i * 3 + 2];
+                c.removed = false;
+            }
+            Positions removed = m.removed.get(kind);
+            for (int i = 0; i < removed.size; i++) {
+                Change c = changes.computeIfAbsent(removed.ids[i], id -> new Change());
+                if (!c.initialized) {
+                    c.wasIn = area.contains(removed.coords[i * 4], removed.coords[i * 4 + 1]);
+                    c.initialized = true;
+                }
+                c.removed = true;
+            }
+        }
+
+        Delta delta = new Delta(tick);
+        changes.forEach((id, c) -> {
+            if (!c.removed && area.contains(c.x, c.y)) {
+                delta.moved.add(id, c.owner, c.x, c.y, c.tx, c.ty, c.speed);
+            } else if (c.wasIn) {
+                delta.removed.add(id);
+            }
+        });
+        return delta;
+    }
+
+    protected static long ownerOf(GeoEntity e) {
+        return e.getOwner() == null ? 0 : e.getOwner().getId();
+    }
+
+    protected static class Last implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected double x;
+        protected double y;
+        protected double tx;
+        protected double ty;
+        protected double speed;
+        protected long seen;
+
+        public Last(double x, double y, double tx, double ty, double speed, long seen) {
+            this.x = x;
+            this.y = y;
+            this.tx = tx;
+            this.ty = ty;
+            this.speed = speed;
+            this.seen = seen;
+        }
+    }
+
+    /**
+     * ある tick の変化. 座標は移動前 x, y, 移動後 x, y の順に並べる. 存在しない側は NaN.
+     * 向かっている地点と速さは x, y, 速さの順に並べる
+     */
+    protected static class Movements implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected long tick;
+        protected final Map<Kind, Positions> moved = new EnumMap<>(Kind.class);
+        protected final Map<Kind, Positions> removed = new EnumMap<>(Kind.class);
+
+        public Movements() {
+            for (Kind kind : Kind.values()) {
+                moved.put(kind, new Positions());
+                removed.put(kind, new Positions());
+            }
+        }
+    }
+
+    protected static class Positions implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected long[] ids = new long[16];
+        protected long[] owners = new long[16];
+        protected double[] coords = new double[64];
+        protected double[] heads = new double[48];
+        protected int size;
+
+        protected void add(long id, long owner, double fromX, double fromY, double toX, double toY,
+                double headX, double headY, double speed) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                owners = Arrays.copyOf(owners, size * 2);
+                coords = Arrays.copyOf(coords, size * 8);
+                heads = Arrays.copyOf(heads, size * 6);
+            }
+            ids[size] = id;
+            owners[size] = owner;
+            coords[size * 4] = fromX;
+            coords[size * 4 + 1] = fromY;
+            coords[size * 4 + 2] = toX;
+            coords[size * 4 + 3] = toY;
+            heads[size * 3] = headX;
+            heads[size * 3 + 1] = headY;
+            heads[size * 3 + 2] = speed;
+            size++;
+        }
+    }
+
+    protected static class Change {
+
+        protected boolean initialized;
+        protected boolean wasIn;
+        protected boolean removed;
+        protected long owner;
+        protected double x;
+        protected double y;
+        protected double tx;
+        protected double ty;
+        protected double speed;
+    }
+
+    /**
+     * GeoEntity#isAreaIn と同じ範囲. NaN は範囲外とする
+     */
+    protected static class Area {
+
+        protected final double left;
+        protected final double right;
+        protected final double top;
+        protected final double bottom;
+
+        public Area(Pointable center, double scale) {
+            double width = Math.pow(2.0, scale);
+            left = center.getX() - width / 2.0;
+            right = center.getX() + width / 2.0;
+            top = center.getY() - width / 2.0;
+            bottom = center.getY() + width / 2.0;
+        }
+
+        public boolean contains(double x, double y) {
+            return x > left && x < right && y > top && y < bottom;
+        }
+    }
+
+    /**
+     * クライアントに返す変化. 座標は列ごとに並べる
+     */
+    public static class Delta {
+
+        protected final long tick;
+        protected final Columns moved = new Columns();
+        protected final Ids removed = new Ids();
+
+        public Delta(long tick) {
+            this.tick = tick;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public Columns getMoved() {
+            return moved;
+        }
+
+        public Ids getRemoved() {
+            return removed;
+        }
+    }
+
+    /**
+     * 位置と、向かっている地点 (tx, ty) と速さ. 止まっているときは向かっている地点が位置と同じで、速さが 0
+     */
+    public static class Columns {
+
+        protected long[] ids = new long[16];
+        protected long[] owners = new long[16];
+        protected double[] xs = new double[16];
+        protected double[] ys = new double[16];
+        protected double[] txs = new double[16];
+        protected double[] tys = new double[16];
+        protected double[] speeds = new double[16];
+        protected int size;
+
+        public void add(long id, long owner, double x, double y, double tx, double ty, double speed) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                owners = Arrays.copyOf(owners, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+                txs = Arrays.copyOf(txs, size * 2);
+                tys = Arrays.copyOf(tys, size * 2);
+                speeds = Arrays.copyOf(speeds, size * 2);
+            }
+            ids[size] = id;
+            owners[size] = owner;
+            xs[size] = x;
+            ys[size] = y;
+            txs[size] = tx;
+            tys[size] = ty;
+            speeds[size] = speed;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getId(int i) {
+            return ids[i];
+        }
+
+        public long getOwner(int i) {
+            return owners[i];
+        }
+
+        public double getX(int i) {
+            return xs[i];
+        }
+
+        public double getY(int i) {
+            return ys[i];
+        }
+
+        public double getTargetX(int i) {
+            return txs[i];
+        }
+
+        public double getTargetY(int i) {
+            return tys[i];
+        }
+
+        public double getSpeed(int i) {
+            return speeds[i];
+        }
+    }
+
+    public static class Ids {
+
+        protected long[] ids = new long[16];
+        protected int size;
+
+        public void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long get(int i) {
+            return ids[i];
+        }
+    }
+}
@@ -95,6 +95,7 @@ public class RushHourProperties implements Serializable {
     public static final String VIEW_SCALE_RAIL = "rushhour.view.scale.rail";
     public static final String VIEW_SCALE_STATION = "rushhour.view.scale.station";
     public static final String VIEW_SCALE_MAX = "rushhour.view.scale.max";
+    public static final String VIEW_CLUSTER_DIVISION = "rushhour.view.cluster.division";
     
     public static final String GAME_INTERVAL = "rushhour.game.interval";
     public static final String GAME_DEF_OAUTH_PURGE_DAY = "rushhour.game.default.oauth.purgeday";
@@ -115,6 +116,16 @@ public class RushHourProperties implements Serializable {
     public static final String GAME_DEF_HUMAN_SPEED = "rushhour.game.default.human.speed";
     public static final String GAME_DEF_HUMAN_MAXCOST = "rushhour.game.default.human.maxcost";
 
+    public static final String GAME_ROUTE_INCREMENTAL = "rushhour.game.route.incremental";
+    public static final String GAME_ROUTE_PARALLELISM = "rushhour.game.route.parallelism";
+    public static final String GAME_GRID_CELLSIZE = "rushhour.game.grid.cellsize";
+    public static final String GAME_WRITEBEHIND_INTERVAL = "rushhour.game.writebehind.interval";
+    public static final String GAME_SCHEDULER_FIXEDRATE = "rushhour.game.scheduler.fixedrate";
+    public static final String GAME_SCHEDULER_MAXCATCHUP = "rushhour.game.scheduler.maxcatchup";
+    public static final String GAME_HUMAN_PARALLELISM = "rushhour.game.human.parallelism";
+    public static final String GAME_RANDOM_SEED = "rushhour.game.random.seed";
+    public static final String GAME_MOVEMENT_HISTORY = "rushhour.game.movement.history";
+
     //--------------------------------------------------------------------------
     protected static final String CONSTANTS_PATH = "net/rushhourgame/conf/constants.properties";
     protected static final String TEMPLATE_CONFIG_PATH = "net/rushhourgame/conf/template_config.properties";
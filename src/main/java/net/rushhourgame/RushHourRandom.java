@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.util.SplittableRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ゲーム内で使う乱数. 種を固定すると、同じ世界に同じ操作をしたとき同じ結果になる.
+ * <p>
+ * Entity は種と種類と id から作った自分専用の乱数列 ({@link #streamOf(Class, long)}) を使う.
+ * ほかの Entity がどれだけ乱数を使ったかに左右されないため、人を並列に動かしても結果は変わらない.
+ * 生成処理など1つのスレッドで順に行う処理は共有の乱数列 ({@link #nextDouble()}) を使う.
+ * <p>
+ * Entity から使うため、CDI を通さずに {@link #getInstance()} で取得する.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RushHourRandom {
+
+    private static final Logger LOG = Logger.getLogger(RushHourRandom.class.getName());
+
+    protected static final RushHourRandom INSTANCE = new RushHourRandom();
+
+    protected volatile long seed;
+
+    /**
+     * 種を変えるたびに増やす. Entity が持っている乱数列が古いかどうかの判定に使う
+     */
+    protected volatile long generation;
+
+    protected SplittableRandom shared;
+
+    protected RushHourRandom() {
+        reseed(System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+    }
+
+    public static RushHourRandom getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 種を変える. 以後の乱数列はすべてこの種から作り直す.
+     *
+     * @param seed 種
+     */
+    public synchronized void reseed(long seed) {
+        this.seed = seed;
+        shared = new SplittableRandom(seed);
+        generation++;
+        LOG.log(Level.INFO, "{0}#reseed seed = {1}", new Object[]{RushHourRandom.class, Long.toString(seed)});
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param kind Entity の種類
+     * @param id Entity の id
+     * @return 種と kind と id で決まる乱数列
+     */
+    public SplittableRandom streamOf(Class<?> kind, long id) {
+        long h = mix(seed + kind.getSimpleName().hashCode());
+        return new SplittableRandom(mix(h + id));
+    }
+
+    /**
+     * @return 共有の乱数列から取り出した [0, 1) の値
+     */
+    public synchronized double nextDouble() {
+        return shared.nextDouble();
+    }
+
+    /**
+     * MurmurHash3 の最後の攪拌処理. 近い値から遠い値を作る
+     *
+     * @param z 値
+     * @return 攪拌した値
+     */
+    protected static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 値の分布を記録する. HdrHistogram と同じく、2の冪ごとの区間をさらに等分した
+ * バケットに数えるため、値の大きさによらず相対誤差 1/32 以内で百分位を求められる.
+ * 記録はゲームスレッド、参照は画面から行うため、メソッドごとに排他する.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class TickHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 2の冪ごとの区間を 2^(SUB_BUCKET_BITS-1) 等分する
+     */
+    protected static final int SUB_BUCKET_BITS = 6;
+    protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    protected static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    protected final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF];
+    protected long totalCount;
+    protected long sum;
+    protected long max;
+
+    /**
+     * @param value 0以上の値. 負の値は0として数える
+     */
+    public synchronized void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return totalCount == 0 ? 0.0 : sum / (double) totalCount;
+    }
+
+    /**
+     * @param percentile 0 から 100
+     * @return 記録した値のうち percentile % がこの値以下になる値. 記録がなければ 0
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double ratio = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+        long target = Math.max(1, (long) Math.ceil(ratio * totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return Math.min(highestOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    protected static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index バケット
+     * @return バケットに入る最大の値
+     */
+    protected static long highestOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long sub = index - shift * SUB_BUCKET_HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ゲームスレッドの1回の処理にかかった時間を記録する. 処理全体の時間は TickHistogram に
+ * マイクロ秒で記録し、処理ごとの時間は直前の値と累計を持つ.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class TickStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * GameMaster#run の処理の区切り
+     */
+    public enum Phase {
+        STATION, ROUTE, RESIDENCE, TRAIN, HUMAN, PUBLISH, WRITE_BEHIND
+    }
+
+    protected final TickHistogram histogram = new TickHistogram();
+    protected final long[] lastNanos = new long[Phase.values().length];
+    protected final long[] totalNanos = new long[Phase.values().length];
+    protected long lastTickNanos;
+
+    /**
+     * 間隔より長くかかった回数
+     */
+    protected long overruns;
+
+    /**
+     * 固定レートで遅れすぎたため、進めずに捨てた回数
+     */
+    protected long dropped;
+
+    /**
+     * 処理の区切りまでの時間を記録する
+     *
+     * @param phase 終わった処理
+     * @param since 処理を始めた時刻 (System.nanoTime)
+     * @return 現在時刻 (System.nanoTime). 次の処理の開始時刻として使う
+     */
+    public long lap(Phase phase, long since) {
+        long now = System.nanoTime();
+        recordPhase(phase, now - since);
+        return now;
+    }
+
+    public synchronized void recordPhase(Phase phase, long nanos) {
+        lastNanos[phase.ordinal()] = nanos;
+        totalNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * @param nanos 1回の処理全体にかかった時間
+     * @param intervalMillis 処理の間隔
+     * @return 間隔より長くかかったか
+     */
+    public synchronized boolean recordTick(long nanos, long intervalMillis) {
+        lastTickNanos = nanos;
+        histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (nanos > TimeUnit.MILLISECONDS.toNanos(intervalMillis)) {
+            overruns++;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordDropped() {
+        dropped++;
+    }
+
+    public synchronized void reset() {
+        histogram.reset();
+        Arrays.fill(lastNanos, 0);
+        Arrays.fill(totalNanos, 0);
+        lastTickNanos = 0;
+        overruns = 0;
+        dropped = 0;
+    }
+
+    public List<Phase> getPhases() {
+        return Arrays.asList(Phase.values());
+    }
+
+    public long getTicks() {
+        return histogram.getTotalCount();
+    }
+
+    public synchronized long getOverruns() {
+        return overruns;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized double getLastTickMillis() {
+        return toMillis(lastTickNanos);
+    }
+
+    public synchronized double getLastMillis(Phase phase) {
+        return toMillis(lastNanos[phase.ordinal()]);
+    }
+
+    public synchronized double getMeanMillis(Phase phase) {
+        long ticks = histogram.getTotalCount();
+        return ticks == 0 ? 0.0 : toMillis(totalNanos[phase.ordinal()]) / ticks;
+    }
+
+    public double getMeanMillis() {
+        return histogram.getMean() / 1000.0;
+    }
+
+    public double getMaxMillis() {
+        return histogram.getMax() / 1000.0;
+    }
+
+    /**
+     * @param percentile 0 から 100
+     * @return 処理全体にかかった時間の百分位 (ms)
+     */
+    public double getPercentileMillis(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * @return 直前の処理ごとの時間. ログ出力用
+     */
+    public synchronized String describeLastTick() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase).append('=').append(toMillis(lastNanos[phase.ordinal()])).append("ms");
+        }
+        return sb.toString();
+    }
+
+    protected static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
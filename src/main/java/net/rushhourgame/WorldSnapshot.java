@@ -0,0 +1,579 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.entity.GeoEntity;
+import net.rushhourgame.entity.Pointable;
+
+/**
+ * ある tick の終わりの電車と人の位置と状態の写し. GameMaster が毎回作って差し替える.
+ * <p>
+ * 作った後は変更しないため、画面や API からはコントローラのロックをとらずに読める.
+ * 前回から変わっていない Entity の要素と、中身の変わっていない格子のセルは前回のものをそのまま使う.
+ * 止まっている人が多いときは、毎回作り直す量が動いたものの分だけで済む.
+ * 格子のセルごとに状態別の数もまとめておき、縮尺が大きいときは1つずつではなくまとめた数を返す.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class WorldSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final WorldSnapshot EMPTY = new WorldSnapshot(0, Layer.EMPTY, Layer.EMPTY, 0, 0);
+
+    protected final long tick;
+    protected final Map<Kind, Layer> layers = new EnumMap<>(Kind.class);
+    protected final int lastKilled;
+    protected final long totalKilled;
+
+    public WorldSnapshot(long tick, Layer trains, Layer humans, int lastKilled, long totalKilled) {
+        this.tick = tick;
+        this.layers.put(Kind.TRAIN, trains);
+        this.layers.put(Kind.HUMAN, humans);
+        this.lastKilled = lastKilled;
+        this.totalKilled = totalKilled;
+    }
+
+    /**
+     * @return 写しをとった tick. MovementLog の tick と揃えている
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public Layer getLayer(Kind kind) {
+        return layers.get(kind);
+    }
+
+    /**
+     * GeoEntity#isAreaIn と同じ範囲にあるものを返す
+     *
+     * @param kind 種類
+     * @param center 中心
+     * @param scale 範囲
+     * @return 範囲内の要素. id 順とは限らない
+     */
+    public List<Entry> findIn(Kind kind, Pointable center, double scale) {
+        return layers.get(kind).findIn(center, scale);
+    }
+
+    public Entry find(Kind kind, long id) {
+        return layers.get(kind).find(id);
+    }
+
+    public int size(Kind kind) {
+        return layers.get(kind).size();
+    }
+
+    /**
+     * 範囲内の Entity を binSize 四方ごとにまとめる
+     *
+     * @param kind 種類
+     * @param center 中心
+     * @param scale 範囲
+     * @param binSize まとめる幅. 格子の幅の 2 のべき乗倍に切り上げる
+     * @return まとめたもの
+     */
+    public List<Cluster> aggregateIn(Kind kind, Pointable center, double scale, double binSize) {
+        return layers.get(kind).aggregateIn(center, scale, binSize);
+    }
+
+    /**
+     * @return 写しをとった回に削除した人数
+     */
+    public int getLastKilled() {
+        return lastKilled;
+    }
+
+    /**
+     * @return 写しをとった時点までに削除した人数
+     */
+    public long getTotalKilled() {
+        return totalKilled;
+    }
+
+    /**
+     * 1種類分の写し. 要素を id 順に並べ、格子のセルごとにも分けて持つ
+     */
+    public static class Layer implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected static final Layer EMPTY = new Layer(new Entry[0], Collections.emptyMap(), Collections.emptyMap(), 0);
+
+        /**
+         * id 昇順
+         */
+        protected final Entry[] entries;
+        protected final Map<Long, Entry[]> cells;
+        /**
+         * cells と同じセルごとにまとめた数
+         */
+        protected final Map<Long, Cluster> clusters;
+        protected final double cellSize;
+
+        protected Layer(Entry[] entries, Map<Long, Entry[]> cells, Map<Long, Cluster> clusters, double cellSize) {
+            this.entries = entries;
+            this.cells = cells;
+            this.clusters = clusters;
+            this.cellSize = cellSize;
+        }
+
+        /**
+         * 向かっている地点を持たない Entity の次の回の写しを作る
+         *
+         * @param <T> Entity の型
+         * @param entities 現在の全 Entity
+         * @param state Entity の状態を表す文字列. 状態を持たないときは null を返す
+         * @param cellSize 格子の幅
+         * @return 次の回の写し. 何も変わっていないときはこの写し自身
+         */
+        public <T extends GeoEntity> Layer next(Collection<T> entities, Function<T, String> state, double cellSize) {
+            return next(entities, state, e -> null, e -> 0, cellSize);
+        }
+
+        /**
+         * この写しをもとに、次の回の写しを作る. 変わっていない要素とセルは使い回す.
+         * 呼び出し側は entities を変更されないようロックをとっておく.
+         *
+         * @param <T> Entity の型
+         * @param entities 現在の全 Entity
+         * @param state Entity の状態を表す文字列. 状態を持たないときは null を返す
+         * @param heading 向かっている地点. 止まっているときは null を返す
+         * @param speed 向かっている地点へ進む速さ (距離/ms)
+         * @param cellSize 格子の幅
+         * @return 次の回の写し. 何も変わっていないときはこの写し自身
+         */
+        public <T extends GeoEntity> Layer next(Collection<T> entities, Function<T, String> state,
+                Function<? super T, ? extends Pointable> heading, ToDoubleFunction<? super T> speed, double cellSize) {
+            List<T> sorted = new ArrayList<>(entities.size());
+            for (T e : entities) {
+                if (e != null) {
+                    sorted.add(e);
+                }
+            }
+            // 多くの場合すでに id 順に並んでいるため、ほぼ線形時間で済む
+            sorted.sort(Comparator.comparingLong(GeoEntity::getId));
+
+            Entry[] next = new Entry[sorted.size()];
+            boolean changed = next.length != entries.length || cellSize != this.cellSize;
+            int j = 0;
+            for (int i = 0; i < next.length; i++) {
+                T e = sorted.get(i);
+                long id = e.getId();
+                long owner = e.getOwner() == null ? 0 : e.getOwner().getId();
+                double x = e.getX();
+                double y = e.getY();
+                String s = state.apply(e);
+                Pointable h = heading.apply(e);
+                double tx = h == null ? x : h.getX();
+                double ty = h == null ? y : h.getY();
+                double sp = h == null ? 0 : speed.applyAsDouble(e);
+                while (j < entries.length && entries[j].id < id) {
+                    j++;
+                }
+                if (j < entries.length && entries[j].is(id, owner, x, y, tx, ty, sp, s)) {
+                    next[i] = entries[j];
+                } else {
+                    next[i] = new Entry(id, owner, x, y, tx, ty, sp, s);
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return this;
+            }
+            Map<Long, Entry[]> nextCells = shareCells(next, cellSize);
+            return new Layer(next, nextCells, shareClusters(nextCells), cellSize);
+        }
+
+        protected Map<Long, Entry[]> shareCells(Entry[] next, double cellSize) {
+            Map<Long, List<Entry>> grouped = new HashMap<>();
+            for (Entry e : next) {
+                grouped.computeIfAbsent(key(cellOf(e.x, cellSize), cellOf(e.y, cellSize)), k -> new ArrayList<>()).add(e);
+            }
+            Map<Long, Entry[]> result = new HashMap<>(grouped.size() * 4 / 3 + 1);
+            grouped.forEach((key, list) -> {
+                Entry[] prev = cellSize == this.cellSize ? cells.get(key) : null;
+                result.put(key, isSame(prev, list) ? prev : list.toArray(new Entry[list.size()]));
+            });
+            return Collections.unmodifiableMap(result);
+        }
+
+        /**
+         * 中身の変わっていないセルは前回まとめたものを使い回す
+         */
+        protected Map<Long, Cluster> shareClusters(Map<Long, Entry[]> nextCells) {
+            Map<Long, Cluster> result = new HashMap<>(nextCells.size() * 4 / 3 + 1);
+            nextCells.forEach((key, list) -> {
+                result.put(key, cells.get(key) == list ? clusters.get(key) : Cluster.of(list));
+            });
+            return Collections.unmodifiableMap(result);
+        }
+
+        protected static boolean isSame(Entry[] prev, List<Entry> list) {
+            if (prev == null || prev.length != list.size()) {
+                return false;
+            }
+            for (int i = 0; i < prev.length; i++) {
+                if (prev[i] != list.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public List<Entry> findIn(Pointable center, double scale) {
+            List<Entry> result = new ArrayList<>();
+            if (entries.length == 0) {
+                return result;
+            }
+            double half = Math.pow(2.0, scale) / 2.0;
+            double minX = center.getX() - half;
+            double maxX = center.getX() + half;
+            double minY = center.getY() - half;
+            double maxY = center.getY() + half;
+
+            int minCx = cellOf(minX, cellSize);
+            int maxCx = cellOf(maxX, cellSize);
+            int minCy = cellOf(minY, cellSize);
+            int maxCy = cellOf(maxY, cellSize);
+
+            long area = ((long) maxCx - minCx + 1) * ((long) maxCy - minCy + 1);
+            if (area > cells.size()) {
+                // 範囲のほうが広いときは要素のあるセルだけ見る
+                cells.forEach((cell, list) -> {
+                    int cx = (int) (cell >> 32);
+                    int cy = (int) (long) cell;
+                    if (cx >= minCx && cx <= maxCx && cy >= minCy && cy <= maxCy) {
+                        collect(list, minX, maxX, minY, maxY, result);
+                    }
+                });
+            } else {
+                for (long cx = minCx; cx <= maxCx; cx++) {
+                    for (long cy = minCy; cy <= maxCy; cy++) {
+                        Entry[] list = cells.get(key((int) cx, (int) cy));
+                        if (list != null) {
+                            collect(list, minX, maxX, minY, maxY, result);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 範囲にかかるセルのまとめを binSize 四方ごとに足し合わせる.
+         * セルの途中で区切らないよう、まとめる幅は格子の幅の 2 のべき乗倍に切り上げる
+         *
+         * @param center 中心
+         * @param scale 範囲
+         * @param binSize まとめる幅
+         * @return まとめたもの. 位置の順に並べる
+         */
+        public List<Cluster> aggregateIn(Pointable center, double scale, double binSize) {
+            List<Cluster> result = new ArrayList<>();
+            if (entries.length == 0) {
+                return result;
+            }
+            int r = 1;
+            while (r * cellSize < binSize && r < (1 << 30)) {
+                r <<= 1;
+            }
+            int ratio = r;
+            double half = Math.pow(2.0, scale) / 2.0;
+            int minCx = cellOf(center.getX() - half, cellSize);
+            int maxCx = cellOf(center.getX() + half, cellSize);
+            int minCy = cellOf(center.getY() - half, cellSize);
+            int maxCy = cellOf(center.getY() + half, cellSize);
+
+            Map<Long, List<Cluster>> bins = new TreeMap<>();
+            clusters.forEach((cell, c) -> {
+                int cx = (int) (cell >> 32);
+                int cy = (int) (long) cell;
+                if (cx >= minCx && cx <= maxCx && cy >= minCy && cy <= maxCy) {
+                    bins.computeIfAbsent(key(Math.floorDiv(cx, ratio), Math.floorDiv(cy, ratio)),
+                            k -> new ArrayList<>()).add(c);
+                }
+            });
+            bins.values().forEach(list -> result.add(Cluster.merge(list)));
+            return result;
+        }
+
+        protected static void collect(Entry[] list, double minX, double maxX, double minY, double maxY, List<Entry> result) {
+            for (Entry e : list) {
+                if (e.x > minX && e.x < maxX && e.y > minY && e.y < maxY) {
+                    result.add(e);
+                }
+            }
+        }
+
+        /**
+         * @param id id
+         * @return id の要素. なければ null
+         */
+        public Entry find(long id) {
+            int lo = 0;
+            int hi = entries.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entries[mid].id < id) {
+                    lo = mid + 1;
+                } else if (entries[mid].id > id) {
+                    hi = mid - 1;
+                } else {
+                    return entries[mid];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return id 順の全要素
+         */
+        public List<Entry> getEntries() {
+            return Collections.unmodifiableList(Arrays.asList(entries));
+        }
+
+        public int size() {
+            return entries.length;
+        }
+
+        protected static int cellOf(double v, double cellSize) {
+            double c = Math.floor(v / cellSize);
+            if (c >= Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            if (c <= Integer.MIN_VALUE) {
+                return Integer.MIN_VALUE;
+            }
+            return (int) c;
+        }
+
+        protected static long key(int cx, int cy) {
+            return ((long) cx << 32) | (cy & 0xffffffffL);
+        }
+    }
+
+    /**
+     * ある範囲にいる Entity の数. 位置は中にいる Entity の平均
+     */
+    public static class Cluster implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final double x;
+        protected final double y;
+        protected final int count;
+        protected final Map<String, Integer> states;
+
+        protected Cluster(double x, double y, int count, Map<String, Integer> states) {
+            this.x = x;
+            this.y = y;
+            this.count = count;
+            this.states = Collections.unmodifiableMap(states);
+        }
+
+        protected static Cluster of(Entry[] list) {
+            double sumX = 0;
+            double sumY = 0;
+            Map<String, Integer> states = new TreeMap<>();
+            for (Entry e : list) {
+                sumX += e.x;
+                sumY += e.y;
+                if (e.state != null) {
+                    states.merge(e.state, 1, Integer::sum);
+                }
+            }
+            return new Cluster(sumX / list.length, sumY / list.length, list.length, states);
+        }
+
+        protected static Cluster merge(List<Cluster> list) {
+            if (list.size() == 1) {
+                return list.get(0);
+            }
+            double sumX = 0;
+            double sumY = 0;
+            int count = 0;
+            Map<String, Integer> states = new TreeMap<>();
+            for (Cluster c : list) {
+                sumX += c.x * c.count;
+                sumY += c.y * c.count;
+                count += c.count;
+                c.states.forEach((state, n) -> states.merge(state, n, Integer::sum));
+            }
+            return new Cluster(sumX / count, sumY / count, count, states);
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @param state 状態
+         * @return その状態の数
+         */
+        public int getCount(String state) {
+            return states.getOrDefault(state, 0);
+        }
+
+        /**
+         * @return 状態ごとの数. 状態を持たない Entity は含まない
+         */
+        public Map<String, Integer> getStates() {
+            return states;
+        }
+
+        @Override
+        public String toString() {
+            return "c(" + count + ")";
+        }
+    }
+
+    /**
+     * 1つの Entity の位置と、向かっている地点と速さと状態.
+     * 止まっているときは向かっている地点が位置と同じで、速さが 0
+     */
+    public static class Entry implements Pointable, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final long id;
+        protected final long owner;
+        protected final double x;
+        protected final double y;
+        protected final double tx;
+        protected final double ty;
+        protected final double speed;
+        protected final String state;
+
+        public Entry(long id, long owner, double x, double y, String state) {
+            this(id, owner, x, y, x, y, 0, state);
+        }
+
+        public Entry(long id, long owner, double x, double y, double tx, double ty, double speed, String state) {
+            this.id = id;
+            this.owner = owner;
+            this.x = x;
+            this.y = y;
+            this.tx = tx;
+            this.ty = ty;
+            this.speed = speed;
+            this.state = state;
+        }
+
+        protected boolean is(long id, long owner, double x, double y, double tx, double ty, double speed, String state) {
+            return this.id == id && this.owner == owner && this.x == x && this.y == y
+                    && this.tx == tx && this.ty == ty && this.speed == speed
+                    && Objects.equals(this.state, state);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return 所有者の id. 所有者がいないときは 0
+         */
+        public long getOwner() {
+            return owner;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+
+        public double getTargetX() {
+            return tx;
+        }
+
+        public double getTargetY() {
+            return ty;
+        }
+
+        /**
+         * @return 向かっている地点へ進む速さ (距離/ms)
+         */
+        public double getSpeed() {
+            return speed;
+        }
+
+        /**
+         * @return 状態. 人は Human.StandingOn の名前. 状態を持たないときは null
+         */
+        public String getState() {
+            return state;
+        }
+
+        @Override
+        public double distTo(Pointable p) {
+            return Math.sqrt((p.getX() - x) * (p.getX() - x)
+                    + (p.getY() - y) * (p.getY() - y));
+        }
+
+        @Override
+        public boolean isAreaIn(Pointable center, double scale) {
+            double width = Math.pow(2.0, scale);
+            double height = Math.pow(2.0, scale);
+
+            return x > center.getX() - width / 2.0
+                    && x < center.getX() + width / 2.0
+                    && y > center.getY() - height / 2.0
+                    && y < center.getY() + height / 2.0;
+        }
+
+        @Override
+        public String toString() {
+            return "e(" + id + ")";
+        }
+    }
+}
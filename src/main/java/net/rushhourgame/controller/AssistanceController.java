@@ -73,8 +73,9 @@ public class AssistanceController extends AbstractController {
 
     @PostConstruct
     public void init() {
-        writeLock = new ReentrantReadWriteLock().writeLock();
-        readLock = new ReentrantReadWriteLock().readLock();
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        writeLock = lock.writeLock();
+        readLock = lock.readLock();
     }
 
     public Result startWithStation(@NotNull Player player, @NotNull Pointable p, @NotNull Locale locale) throws RushHourException {
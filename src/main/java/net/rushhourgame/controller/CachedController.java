@@ -24,7 +24,9 @@
 package net.rushhourgame.controller;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -35,6 +37,7 @@ import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.Dependent;
 import javax.validation.constraints.NotNull;
+import static net.rushhourgame.RushHourProperties.*;
 import net.rushhourgame.entity.AbstractEntity;
 import net.rushhourgame.entity.GeoEntity;
 import net.rushhourgame.entity.Human;
@@ -43,6 +46,11 @@ import net.rushhourgame.entity.Pointable;
 
 /**
  * ゲーム中、Entityをメモリ上で管理するコントローラ. GameMasterのrunメソッドを繰り返すたびにメモリ使用量が増えるため作成
+ * <p>
+ * 読み込みと書き込みは1つの ReentrantReadWriteLock で排他する. 画面からの読み込み同士は並行に動き、
+ * ゲームスレッドの書き込み中だけ待たされる. 複数のコントローラのロックをとるときは
+ * 駅 → 路線 → 経路探索 (RouteSearcher) → 住宅 → 電車 → 人 の順にとる.
+ * id による検索 (find) は索引を引くだけなのでロックをとらない.
  *
  * @author yasshi2525 (https://twitter.com/yasshi2525)
  * @param <T> 格納するEntity
@@ -53,13 +61,36 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
     private static final Logger LOG = Logger.getLogger(CachedController.class.getName());
 
     protected List<T> entities;
+
+    /**
+     * id から entities の要素を引くための索引
+     */
+    protected EntityIndex<T> index = new EntityIndex<>(e -> e);
+
+    /**
+     * 座標から entities の要素を引くための格子. synchronizeDatabase するまでは null
+     */
+    protected GridIndex<T> grid;
+
+    /**
+     * 直前の synchronizeDatabase または writeBehind で書き出した数
+     */
+    protected volatile int lastMerged;
+
+    /**
+     * 直前の synchronizeDatabase または writeBehind で変更がなかったため書き出さなかった数
+     */
+    protected volatile int lastSkipped;
+
+    protected ReentrantReadWriteLock lock;
     protected Lock writeLock;
     protected Lock readLock;
 
     @PostConstruct
     public void init() {
-        writeLock = new ReentrantReadWriteLock().writeLock();
-        readLock = new ReentrantReadWriteLock().readLock();
+        lock = new ReentrantReadWriteLock();
+        writeLock = lock.writeLock();
+        readLock = lock.readLock();
     }
 
     public List<T> findAll() {
@@ -86,7 +117,7 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
                 LOG.log(Level.WARNING, "{0}#findIn controller never synchronize database", new Object[]{CachedController.class});
                 return new ArrayList<>();
             }
-            return entities.stream().filter(e -> e.isAreaIn(center, scale)).collect(Collectors.toList());
+            return findCandidatesIn(center, scale);
         } finally {
             readLock.unlock();
         }
@@ -99,20 +130,43 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
                 LOG.log(Level.WARNING, "{0}#findIn controller never synchronize database", new Object[]{CachedController.class});
                 return new ArrayList<>();
             }
-            return entities.stream()
-                    .filter(e -> e.isOwnedBy(p))
-                    .filter(e -> e.isAreaIn(center, scale)).collect(Collectors.toList());
+            return findCandidatesIn(center, scale).stream()
+                    .filter(e -> e.isOwnedBy(p)).collect(Collectors.toList());
         } finally {
             readLock.unlock();
         }
     }
-    
+
+    /**
+     * 格子がキャッシュと揃っていれば格子から、そうでなければ全件走査で範囲内の Entity を求める.
+     *
+     * @param center 中心
+     * @param scale 範囲
+     * @return 範囲内の Entity
+     */
+    protected List<T> findCandidatesIn(Pointable center, double scale) {
+        if (grid != null && grid.size() == entities.size()) {
+            return grid.findIn(center, scale);
+        }
+        return entities.stream().filter(e -> e.isAreaIn(center, scale)).collect(Collectors.toList());
+    }
+
+    /**
+     * ロックをとらずに索引から引く. 他のコントローラのロックを保持したまま呼んでもよい.
+     *
+     * @param old 探したい Entity
+     * @return キャッシュしている同じ id の Entity
+     */
     public T find(T old) {
         if (entities == null) {
-                LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{CachedController.class});
-                return old;
-            }
-        return entities.stream().filter(e -> e.equalsId(old)).findFirst().get();
+            LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{CachedController.class});
+            return old;
+        }
+        T e = index.find(entities, old);
+        if (e == null) {
+            throw new NoSuchElementException("no cached entity for " + old);
+        }
+        return e;
     }
 
     protected boolean exists(Pointable p) {
@@ -141,6 +195,28 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
         }
     }
 
+    /**
+     * ロックをとらずに、その時点のキャッシュの写しを返す. 他のコントローラのロックを保持したまま
+     * 一覧を得たいときに使う. 書き込み中のものは含まれないことがある.
+     *
+     * @return キャッシュの写し
+     */
+    @SuppressWarnings("unchecked")
+    protected List<T> snapshot() {
+        List<T> current = entities;
+        if (current == null) {
+            LOG.log(Level.WARNING, "{0}#snapshot controller never synchronize database", new Object[]{CachedController.class});
+            return new ArrayList<>();
+        }
+        List<T> copy = new ArrayList<>(current.size());
+        for (Object e : current.toArray()) {
+            if (e != null) {
+                copy.add((T) e);
+            }
+        }
+        return copy;
+    }
+
     public abstract void synchronizeDatabase();
 
     protected void synchronizeDatabase(String query, Class<T> entityClass) {
@@ -151,14 +227,88 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
                 entities.forEach(e -> refreshEntity(e));
                 LOG.log(Level.INFO, "{0}#synchronizeDatabase fetched {1} entities successfully.", new Object[]{CachedController.class, entities.size()});
             } else {
-                entities = entities.stream().map((e) -> mergeEntity(e)).collect(Collectors.toList());
-                LOG.log(Level.INFO, "{0}#synchronizeDatabase merged {1} entities successfully.", new Object[]{CachedController.class, entities.size()});
+                // 変更のないものはキャッシュ中のインスタンスをそのまま使う
+                List<T> synchronizedEntities = new ArrayList<>(entities.size());
+                int merged = 0;
+                for (T e : entities) {
+                    if (isDirty(e)) {
+                        // em.merge が同じインスタンスを返す場合があるため、先に印を消す
+                        clean(e);
+                        synchronizedEntities.add(mergeEntity(e));
+                        merged++;
+                    } else {
+                        synchronizedEntities.add(e);
+                    }
+                }
+                entities = synchronizedEntities;
+                lastMerged = merged;
+                lastSkipped = entities.size() - merged;
+                LOG.log(Level.INFO, "{0}#synchronizeDatabase merged {1} entities, skipped {2} unchanged entities successfully.",
+                        new Object[]{CachedController.class, lastMerged, lastSkipped});
             }
+            rebuildGrid();
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * キャッシュの状態をデータベースに書き出す. synchronizeDatabase と違い、キャッシュの要素は差し替えない.
+     * ゲーム中はキャッシュが正であり、データベースは最後に書き出した時点の状態を持つ.
+     * 前回書き出してから変更のないものは書き出さない.
+     *
+     * @return 書き出した数
+     */
+    public int writeBehind() {
+        readLock.lock();
+        try {
+            if (entities == null) {
+                return 0;
+            }
+            int merged = 0;
+            for (T e : entities) {
+                if (isDirty(e)) {
+                    writeEntity(e);
+                    clean(e);
+                    merged++;
+                }
+            }
+            lastMerged = merged;
+            lastSkipped = entities.size() - merged;
+            return merged;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * データベースと同期する必要があるか. 関連先の変更も書き出す必要があれば上書きする
+     *
+     * @param entity キャッシュ中のエンティティ
+     * @return 前回同期してから変更されたか
+     */
+    protected boolean isDirty(T entity) {
+        return entity.isDirty();
+    }
+
+    /**
+     * データベースと同期したことを記録する. isDirty を上書きしたときは合わせて上書きする
+     *
+     * @param entity エンティティ
+     */
+    protected void clean(T entity) {
+        entity.clean();
+    }
+
+    /**
+     * writeBehind でエンティティ1つを書き出す. 関連先も書き出す必要があれば上書きする
+     *
+     * @param entity キャッシュ中のエンティティ
+     */
+    protected void writeEntity(T entity) {
+        em.merge(entity);
+    }
+
     protected void refreshEntity(T entity) {
         em.refresh(entity);
     }
@@ -171,8 +321,11 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
         writeLock.lock();
         try {
             em.persist(newEntity);
+            clean(newEntity);
             if (entities != null) {
                 entities.add(newEntity);
+                index.put(newEntity);
+                relocate(newEntity);
             } else {
                 LOG.log(Level.WARNING, "{0}#persistEntity skip because never synchronize database", new Object[]{CachedController.class});
             }
@@ -181,16 +334,98 @@ public abstract class CachedController<T extends GeoEntity> extends AbstractCont
         }
     }
 
+    /**
+     * 複数のエンティティをまとめて永続化する. flush は呼び出し側で1回だけ行う.
+     *
+     * @param newEntities 新規エンティティ
+     */
+    protected void persistEntities(Collection<T> newEntities) {
+        writeLock.lock();
+        try {
+            newEntities.forEach(this::persistEntity);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     protected void removeEntity(String query, T oldEntity) {
         writeLock.lock();
         try {
             em.createNamedQuery(query, oldEntity.getClass()).setParameter("obj", oldEntity).executeUpdate();
-            entities.remove(oldEntity);
+            removeFromCache(oldEntity);
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * キャッシュと索引から取り除く. データベースは変更しない.
+     *
+     * @param oldEntity 取り除くEntity
+     */
+    protected void removeFromCache(T oldEntity) {
+        entities.remove(oldEntity);
+        index.remove(oldEntity);
+        if (grid != null) {
+            grid.remove(oldEntity);
+        }
+    }
+
+    /**
+     * @return 座標による格子を作るか. 広がりを持つ Entity では false にする
+     */
+    protected boolean isGridIndexed() {
+        return true;
+    }
+
+    /**
+     * @param e Entity
+     * @return 地図上に位置を持つか. false のものは格子に入れない
+     */
+    protected boolean isLocated(T e) {
+        return true;
+    }
+
+    protected double getGridCellSize() {
+        return Double.parseDouble(prop.get(GAME_GRID_CELLSIZE));
+    }
+
+    protected void rebuildGrid() {
+        if (!isGridIndexed()) {
+            return;
+        }
+        grid = new GridIndex<>(getGridCellSize(), this::isLocated);
+        grid.rebuild(entities);
+    }
+
+    /**
+     * 座標が変わった Entity を格子に反映する. 書き込みロック中に呼ぶ.
+     *
+     * @param e 座標が変わった Entity
+     */
+    protected void relocate(T e) {
+        if (grid != null) {
+            grid.relocate(e);
+        }
+    }
+
+    /**
+     * すべての Entity の座標を格子に反映する. 書き込みロック中に呼ぶ.
+     */
+    protected void relocateAll() {
+        if (grid != null && entities != null) {
+            grid.relocateAll(entities);
+        }
+    }
+
+    public int getLastMerged() {
+        return lastMerged;
+    }
+
+    public int getLastSkipped() {
+        return lastSkipped;
+    }
+
     public Lock getReadLock() {
         return readLock;
     }
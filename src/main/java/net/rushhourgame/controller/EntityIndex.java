@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import net.rushhourgame.entity.Identifiable;
+
+/**
+ * キャッシュ中のEntityを id で引くための索引. キーには Entity 自身か、Entity が保持する別の Entity を使う.
+ * <p>
+ * 永続化前は id が決まっていないため、索引に見つからなかったものは元のリストを走査して索引に加える.
+ * 元のリストが差し替えられた (synchronizeDatabase された) ときは索引を作り直す.
+ * 書き込み中のリストを走査することがあるため、走査はその時点の写しに対して行う.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ * @param <T> 格納するEntity
+ */
+public class EntityIndex<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final Function<T, ? extends Identifiable> key;
+    protected final Map<Long, T> map = new ConcurrentHashMap<>();
+    protected transient volatile List<T> source;
+
+    public EntityIndex(Function<T, ? extends Identifiable> key) {
+        this.key = key;
+    }
+
+    /**
+     * @param entities キャッシュしているリスト
+     * @param old 探したい Entity のキー
+     * @return old と同じ id をキーにもつ Entity. 存在しなければ null
+     */
+    public T find(List<T> entities, Identifiable old) {
+        if (old == null || entities == null) {
+            return null;
+        }
+        if (source != entities) {
+            rebuild(entities);
+        }
+
+        T hit = map.get(old.getId());
+        if (hit != null && old.equalsId(key.apply(hit))) {
+            return hit;
+        }
+
+        // 永続化直後で索引に登録されていないか、キーが変わった
+        for (Object o : entities.toArray()) {
+            @SuppressWarnings("unchecked")
+            T e = (T) o;
+            if (e != null && old.equalsId(key.apply(e))) {
+                put(e);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public void put(T entity) {
+        Identifiable k = key.apply(entity);
+        if (k != null && k.getId() != 0) {
+            map.put(k.getId(), entity);
+        }
+    }
+
+    public void remove(T entity) {
+        Identifiable k = key.apply(entity);
+        if (k != null) {
+            map.remove(k.getId());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected synchronized void rebuild(List<T> entities) {
+        if (source == entities) {
+            return;
+        }
+        map.clear();
+        for (Object e : entities.toArray()) {
+            if (e != null) {
+                put((T) e);
+            }
+        }
+        source = entities;
+    }
+
+    public int size() {
+        return map.size();
+    }
+}
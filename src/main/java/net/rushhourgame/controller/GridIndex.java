@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import net.rushhourgame.entity.GeoEntity;
+import net.rushhourgame.entity.Pointable;
+
+/**
+ * キャッシュ中のEntityを座標で引くための一様格子. 表示範囲に重なるセルだけを走査する.
+ * <p>
+ * スレッドセーフではない. 更新は所有するコントローラの書き込みロック中に、検索は読み込みロック中に行う.
+ * 位置を持たない Entity (配置されていない電車など) は件数にだけ数え、セルには入れない.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ * @param <T> 格納するEntity
+ */
+public class GridIndex<T extends GeoEntity> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final double cellSize;
+    protected final Predicate<T> locatable;
+    protected final Map<Long, List<T>> cells = new HashMap<>();
+    /**
+     * Entity が現在入っているセル. 位置を持たないときは null
+     */
+    protected final Map<T, Long> located = new IdentityHashMap<>();
+
+    public GridIndex(double cellSize, Predicate<T> locatable) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive : " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.locatable = locatable;
+    }
+
+    public void rebuild(List<T> entities) {
+        cells.clear();
+        located.clear();
+        relocateAll(entities);
+    }
+
+    /**
+     * 座標が変わった Entity を入っているべきセルへ移す. 未登録ならば登録する.
+     *
+     * @param e 移動した Entity
+     */
+    public void relocate(T e) {
+        Long next = locatable.test(e) ? key(cellOf(e.getX()), cellOf(e.getY())) : null;
+        boolean registered = located.containsKey(e);
+        Long prev = located.put(e, next);
+        if (registered && (prev == null ? next == null : prev.equals(next))) {
+            return;
+        }
+        if (prev != null) {
+            detach(prev, e);
+        }
+        if (next != null) {
+            cells.computeIfAbsent(next, k -> new ArrayList<>()).add(e);
+        }
+    }
+
+    public void relocateAll(List<T> entities) {
+        entities.stream().filter(e -> e != null).forEach(e -> relocate(e));
+    }
+
+    public void remove(T e) {
+        if (!located.containsKey(e)) {
+            return;
+        }
+        Long prev = located.remove(e);
+        if (prev != null) {
+            detach(prev, e);
+        }
+    }
+
+    protected void detach(Long cell, T e) {
+        List<T> list = cells.get(cell);
+        if (list == null) {
+            return;
+        }
+        // 同値ではなく同一のものを取り除く
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == e) {
+                int last = list.size() - 1;
+                list.set(i, list.get(last));
+                list.remove(last);
+                break;
+            }
+        }
+        if (list.isEmpty()) {
+            cells.remove(cell);
+        }
+    }
+
+    /**
+     * GeoEntity#isAreaIn と同じ範囲にある Entity を返す.
+     *
+     * @param center 中心
+     * @param scale 範囲の幅と高さ (2 の scale 乗)
+     * @return 範囲内の Entity
+     */
+    public List<T> findIn(Pointable center, double scale) {
+        double half = Math.pow(2.0, scale) / 2.0;
+        double minX = center.getX() - half;
+        double maxX = center.getX() + half;
+        double minY = center.getY() - half;
+        double maxY = center.getY() + half;
+
+        int minCx = cellOf(minX);
+        int maxCx = cellOf(maxX);
+        int minCy = cellOf(minY);
+        int maxCy = cellOf(maxY);
+
+        List<T> result = new ArrayList<>();
+        long area = ((long) maxCx - minCx + 1) * ((long) maxCy - minCy + 1);
+        if (area > cells.size()) {
+            // 範囲のほうが広いときは Entity のあるセルだけ見る
+            cells.forEach((cell, list) -> {
+                int cx = (int) (cell >> 32);
+                int cy = (int) (long) cell;
+                if (cx >= minCx && cx <= maxCx && cy >= minCy && cy <= maxCy) {
+                    collect(list, minX, maxX, minY, maxY, result);
+                }
+            });
+        } else {
+            for (long cx = minCx; cx <= maxCx; cx++) {
+                for (long cy = minCy; cy <= maxCy; cy++) {
+                    List<T> list = cells.get(key((int) cx, (int) cy));
+                    if (list != null) {
+                        collect(list, minX, maxX, minY, maxY, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    protected void collect(List<T> list, double minX, double maxX, double minY, double maxY, List<T> result) {
+        for (T e : list) {
+            double x = e.getX();
+            double y = e.getY();
+            if (x > minX && x < maxX && y > minY && y < maxY) {
+                result.add(e);
+            }
+        }
+    }
+
+    protected int cellOf(double v) {
+        double c = Math.floor(v / cellSize);
+        if (c >= Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        if (c <= Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) c;
+    }
+
+    protected static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * @return 登録している Entity の数 (位置を持たないものも含む)
+     */
+    public int size() {
+        return located.size();
+    }
+
+    /**
+     * @return Entity が入っているセルの数
+     */
+    public int cellCount() {
+        return cells.size();
+    }
+}
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -39,6 +40,7 @@ import javax.validation.constraints.NotNull;
 import static net.rushhourgame.RushHourProperties.*;
 import net.rushhourgame.entity.Company;
 import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Platform;
 import net.rushhourgame.entity.Pointable;
 import net.rushhourgame.entity.Residence;
 import net.rushhourgame.entity.Station;
@@ -56,6 +58,11 @@ public class HumanController extends CachedController<Human> {
     private static final long serialVersionUID = 1L;
     private static final Logger LOG = Logger.getLogger(HumanController.class.getName());
 
+    /**
+     * 1回の DELETE 文で削除する最大人数
+     */
+    protected static final int DELETE_CHUNK = 500;
+
     @Inject
     RouteSearcher searcher;
 
@@ -68,12 +75,31 @@ public class HumanController extends CachedController<Human> {
     @Inject
     TrainController tCon;
 
+    protected HumanStepper stepper;
+
+    protected volatile int lastKilled;
+    protected final AtomicLong totalKilled = new AtomicLong();
+
     @Override
     public void synchronizeDatabase() {
         LOG.log(Level.INFO, "{0}#synchronizeDatabase start", new Object[]{HumanController.class});
         writeLock.lock();
         try {
             synchronizeDatabase("Human.findAll", Human.class);
+            // 電車の乗客、プラットフォームにいる人の一覧を作り直す.
+            // 差し替え前のインスタンスが残らないよう、先に空にする
+            stCon.findPlatformAll().forEach(p -> p.clearWaiting());
+            tCon.findDeployedAll().forEach(t -> t.clearPassengers());
+            entities.forEach(h -> {
+                Platform p = stCon.find(h.getOnPlatform());
+                if (p != null) {
+                    h.setOnPlatform(p);
+                }
+                TrainDeployed t = tCon.find(h.getOnTrain());
+                if (t != null) {
+                    h.setOnTrain(t);
+                }
+            });
         } finally {
             writeLock.unlock();
         }
@@ -83,13 +109,7 @@ public class HumanController extends CachedController<Human> {
     public Human create(@NotNull Pointable point, @NotNull Residence src, @NotNull Company dst) {
         writeLock.lock();
         try {
-            Human human = new Human();
-            human.setX(point.getX());
-            human.setY(point.getY());
-            human.setSrc(src);
-            human.setDest(dst);
-            human.setLifespan(Long.parseLong(prop.get(GAME_DEF_HUMAN_LIFESPAN)));
-            human.setStandingOn(Human.StandingOn.GROUND);
+            Human human = spawn(point, src, dst);
             persistEntity(human);
 
             em.flush();
@@ -100,27 +120,99 @@ public class HumanController extends CachedController<Human> {
         }
     }
 
+    /**
+     * 永続化前の人を作る. createAll でまとめて登録する.
+     *
+     * @param point 出現地点
+     * @param src 住宅
+     * @param dst 会社
+     * @return 永続化されていない人
+     */
+    public Human spawn(@NotNull Pointable point, @NotNull Residence src, @NotNull Company dst) {
+        Human human = new Human();
+        human.setX(point.getX());
+        human.setY(point.getY());
+        human.setSrc(src);
+        human.setDest(dst);
+        human.setLifespan(Long.parseLong(prop.get(GAME_DEF_HUMAN_LIFESPAN)));
+        human.setStandingOn(Human.StandingOn.GROUND);
+        return human;
+    }
+
+    /**
+     * spawn で作った人をまとめて永続化し、1回だけ flush する.
+     * INSERT は eclipselink.jdbc.batch-writing の設定に従ってまとめて送られる.
+     *
+     * @param humans spawn で作った人
+     */
+    public void createAll(@NotNull List<Human> humans) {
+        if (humans.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            persistEntities(humans);
+
+            em.flush();
+            LOG.log(Level.FINE, "{0}#createAll created {1} humans", new Object[]{HumanController.class, humans.size()});
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 人を動かす. rushhour.game.human.parallelism が2以上のときは {@link HumanStepper} で並列に動かす.
+     * 参照の付け替えは乗客やプラットフォームの一覧を変更するため、先に1人ずつ行う.
+     *
+     * @param interval 進める時間
+     * @param speed 歩く速さ
+     */
     public void step(long interval, double speed) {
         writeLock.lock();
         try {
-            findAll().forEach(h -> {
-                merge(h);
+            List<Human> humans = findAll();
+            humans.forEach(h -> merge(h));
+            getStepper().step(humans, interval, speed, h -> {
                 if (h.getCurrent() == null) {
                     h.searchCurrent(searcher);
                 }
-                h.step(interval, speed);
             });
             killHuman();
+            relocateAll();
         } finally {
             writeLock.unlock();
         }
     }
 
+    protected HumanStepper getStepper() {
+        int parallelism = Integer.parseInt(prop.get(GAME_HUMAN_PARALLELISM));
+        if (stepper == null || stepper.getParallelism() != parallelism) {
+            if (stepper != null) {
+                stepper.shutdown();
+            }
+            stepper = new HumanStepper(parallelism);
+        }
+        return stepper;
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (stepper != null) {
+            stepper.shutdown();
+        }
+    }
+
     protected void killHuman() {
+        List<Long> ids = new ArrayList<>();
         entities.removeIf(h -> {
             boolean res = h.shouldDie();
             if (res) {
-                em.createNamedQuery("Human.deleteBy", Human.class).setParameter("obj", h).executeUpdate();
+                h.leave();
+                ids.add(h.getId());
+                index.remove(h);
+                if (grid != null) {
+                    grid.remove(h);
+                }
                 if (h.getLifespan() <= 0) {
                     LOG.log(Level.FINE, "{0}#killFinishedHuman() deleted lifespan 0 {1} : {2})",
                             new Object[]{HumanController.class, h.toString(), h.getCurrent()});
@@ -128,6 +220,31 @@ public class HumanController extends CachedController<Human> {
             }
             return res;
         });
+        // 1人ずつ DELETE を発行せず、まとめて削除する
+        for (int i = 0; i < ids.size(); i += DELETE_CHUNK) {
+            em.createNamedQuery("Human.deleteByIds", Human.class)
+                    .setParameter("ids", ids.subList(i, Math.min(i + DELETE_CHUNK, ids.size())))
+                    .executeUpdate();
+        }
+        lastKilled = ids.size();
+        totalKilled.addAndGet(ids.size());
+        if (!ids.isEmpty()) {
+            LOG.log(Level.FINE, "{0}#killHuman deleted {1} humans", new Object[]{HumanController.class, ids.size()});
+        }
+    }
+
+    /**
+     * @return 直前の step で削除した人数
+     */
+    public int getLastKilled() {
+        return lastKilled;
+    }
+
+    /**
+     * @return 起動してから削除した人数
+     */
+    public long getTotalKilled() {
+        return totalKilled.get();
     }
 
     protected void merge(Human h) {
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import net.rushhourgame.entity.Human;
+
+/**
+ * 人をまとめて動かす. 並列度が2以上で人数が多いときは2段階に分けて動かす.
+ * <p>
+ * 1段目では人を CHUNK 人ずつに分け、ForkJoinPool で並列に動かす. 歩いている間はほかの人と共有する状態に
+ * 触れないため、改札口の通過やプラットフォームへの出入りの手前 ({@link Human#stepUntilExclusive(long, double)}) まで進める.
+ * 2段目では止まった人だけを元の並び順に1人ずつ進める. 改札口とプラットフォームの先着順が逐次実行と同じになるため、
+ * 並列度によらず同じ結果になる.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class HumanStepper {
+
+    /**
+     * 1つのタスクで動かす人数. これ以下の人数ならば並列にしない
+     */
+    protected static final int CHUNK = 256;
+
+    protected final int parallelism;
+
+    protected ForkJoinPool pool;
+
+    public HumanStepper(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param humans 動かす人. この並び順が改札口とプラットフォームの先着順になる
+     * @param interval 進める時間
+     * @param speed 歩く速さ
+     * @param prepare 動かす前に1人ずつ行う処理. 並列に呼ばれるため、その人以外の状態を変更しないこと
+     */
+    public void step(List<Human> humans, long interval, double speed, Consumer<Human> prepare) {
+        if (parallelism <= 1 || humans.size() <= CHUNK) {
+            humans.forEach(h -> {
+                prepare.accept(h);
+                h.step(interval, speed);
+            });
+            return;
+        }
+
+        long[] remains = new long[humans.size()];
+        int chunks = (humans.size() + CHUNK - 1) / CHUNK;
+        try {
+            pool().submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+                int end = Math.min((c + 1) * CHUNK, humans.size());
+                for (int i = c * CHUNK; i < end; i++) {
+                    Human h = humans.get(i);
+                    prepare.accept(h);
+                    remains[i] = h.stepUntilExclusive(interval, speed);
+                }
+            })).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new IllegalStateException("fail to step humans in parallel.", ex);
+        }
+
+        for (int i = 0; i < remains.length; i++) {
+            if (remains[i] > 0) {
+                humans.get(i).step(remains[i], speed);
+            }
+        }
+    }
+
+    protected synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
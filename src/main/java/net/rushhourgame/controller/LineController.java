@@ -80,6 +80,16 @@ public class LineController extends CachedController<Line> {
         LOG.log(Level.INFO, "{0}#synchronizeDatabase end", new Object[]{LineController.class});
     }
 
+    /**
+     * 路線は区間ごとに広がりをもつため、座標による格子は作らない
+     *
+     * @return false
+     */
+    @Override
+    protected boolean isGridIndexed() {
+        return false;
+    }
+
     @Override
     protected Line mergeEntity(Line entity) {
         entity.setSteps(entity.getSteps().stream().map(step -> em.merge(step)).collect(Collectors.toList()));
@@ -89,9 +99,10 @@ public class LineController extends CachedController<Line> {
     protected Line replaceEntity(Line entity) {
         entity.setSteps(entity.getSteps().stream().map(step -> em.merge(step)).collect(Collectors.toList()));
         // LineStepのparentも更新されるためLine自体も更新
-        entities.remove(entity);
+        removeFromCache(entity);
         Line newEntity = em.merge(entity);
         entities.add(newEntity);
+        index.put(newEntity);
         return newEntity;
     }
 
@@ -549,9 +560,7 @@ public class LineController extends CachedController<Line> {
             if (old == null) {
                 return null;
             }
-            return findAll().stream()
-                    .filter(l -> l.equalsId(old.getParent()))
-                    .findFirst().get().getSteps().stream()
+            return find(old.getParent()).getSteps().stream()
                     .filter(step -> step.equalsId(old))
                     .findFirst().get();
         } finally {
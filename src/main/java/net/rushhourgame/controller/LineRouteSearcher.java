@@ -26,9 +26,9 @@ package net.rushhourgame.controller;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,6 +38,7 @@ import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 import net.rushhourgame.RushHourProperties;
+import net.rushhourgame.controller.route.IndexedMinHeap;
 import net.rushhourgame.controller.route.LineRouteEdge;
 import net.rushhourgame.controller.route.LineRouteNode;
 import net.rushhourgame.entity.Line;
@@ -145,21 +146,27 @@ public class LineRouteSearcher extends AbstractController {
 
         goal.setCost(0);
 
-        PriorityQueue<LineRouteNode> queue = new PriorityQueue<>();
-        queue.add(goal);
+        // 節点はリスト上の位置で管理し、同じ節点を重複してキューに入れない
+        Map<LineRouteNode, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            index.put(nodes.get(i), i);
+        }
+
+        IndexedMinHeap queue = new IndexedMinHeap(nodes.size());
+        queue.offer(index.get(goal), 0);
 
         while (!queue.isEmpty()) {
-            LineRouteNode x = queue.poll();
+            LineRouteNode x = nodes.get(queue.poll());
 
-            x.getInEdges().forEach(link -> {
+            for (LineRouteEdge link : x.getInEdges()) {
                 LineRouteNode y = link.getFrom();
                 double newValue = x.getCost() + link.getCost();
                 if (newValue < y.getCost()) {
                     y.setCost(newValue);
                     y.setVia(x);
-                    queue.offer(y);
+                    queue.offer(index.get(y), newValue);
                 }
-            });
+            }
         }
     }
 
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import net.rushhourgame.entity.Player;
+import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.RailEdge;
+import net.rushhourgame.entity.RailNode;
+
+/**
+ * ある時点の線路ノードと線路エッジの写し. 作成後は変更しないため、ロックなしで複数のスレッドから読める.
+ * 線路が変わったときは作り直す.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RailCache {
+
+    protected final List<RailNode> nodes;
+    protected final List<RailEdge> edges;
+    protected final GridIndex<RailNode> grid;
+    /**
+     * 線路ノードの id から、そのノードを始点または終点とする線路エッジを引く
+     */
+    protected final Map<Long, List<RailEdge>> edgesByNode = new HashMap<>();
+
+    public RailCache(List<RailNode> nodes, List<RailEdge> edges, double cellSize) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.edges = Collections.unmodifiableList(new ArrayList<>(edges));
+        grid = new GridIndex<>(cellSize, n -> true);
+        grid.rebuild(this.nodes);
+
+        for (RailEdge e : this.edges) {
+            edgesByNode.computeIfAbsent(e.getFrom().getId(), k -> new ArrayList<>()).add(e);
+            if (e.getTo().getId() != e.getFrom().getId()) {
+                edgesByNode.computeIfAbsent(e.getTo().getId(), k -> new ArrayList<>()).add(e);
+            }
+        }
+    }
+
+    public List<RailNode> findNodeIn(Pointable center, double scale) {
+        return grid.findIn(center, scale);
+    }
+
+    public List<RailNode> findNodeIn(Player owner, Pointable center, double scale) {
+        return grid.findIn(center, scale).stream()
+                .filter(n -> n.isOwnedBy(owner)).collect(Collectors.toList());
+    }
+
+    /**
+     * 線路エッジにも駅にもつながっていない線路ノードを返す.
+     *
+     * @param owner 所有者
+     * @param center 中心
+     * @param scale 範囲
+     * @param hasPlatform 駅があるか
+     * @return 孤立した線路ノード
+     */
+    public List<RailNode> findLonelyIn(Player owner, Pointable center, double scale, Predicate<RailNode> hasPlatform) {
+        return grid.findIn(center, scale).stream()
+                .filter(n -> n.isOwnedBy(owner))
+                .filter(n -> !edgesByNode.containsKey(n.getId()))
+                .filter(hasPlatform.negate())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 始点か終点のどちらかが範囲内にある線路エッジを返す.
+     *
+     * @param center 中心
+     * @param scale 範囲
+     * @return 線路エッジ
+     */
+    public List<RailEdge> findEdgeIn(Pointable center, double scale) {
+        List<RailEdge> result = new ArrayList<>();
+        Set<RailEdge> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (RailNode n : grid.findIn(center, scale)) {
+            for (RailEdge e : edgesByNode.getOrDefault(n.getId(), Collections.emptyList())) {
+                if (visited.add(e)) {
+                    result.add(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<RailEdge> findEdgeIn(Player owner, Pointable center, double scale) {
+        return findEdgeIn(center, scale).stream()
+                .filter(e -> e.isOwnedBy(owner)).collect(Collectors.toList());
+    }
+
+    public boolean hasRailNode(Player owner) {
+        return nodes.stream().anyMatch(n -> n.isOwnedBy(owner));
+    }
+
+    public List<RailNode> getNodes() {
+        return nodes;
+    }
+
+    public List<RailEdge> getEdges() {
+        return edges;
+    }
+}
@@ -27,12 +27,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.enterprise.context.Dependent;
+import javax.annotation.Resource;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.persistence.NoResultException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.validation.constraints.NotNull;
+import static net.rushhourgame.RushHourProperties.*;
 import static net.rushhourgame.RushHourResourceBundle.*;
 import net.rushhourgame.entity.Player;
 import net.rushhourgame.entity.Pointable;
@@ -41,18 +47,31 @@ import net.rushhourgame.entity.RailNode;
 import net.rushhourgame.exception.RushHourException;
 
 /**
+ * 線路ノードと線路エッジを管理するコントローラ.
+ * <p>
+ * 描画のたびにデータベースへ範囲検索をしないよう、線路全体の写し (RailCache) をメモリ上に持つ.
+ * 写しは最初に参照されたときに読み込み、線路を変更したとき (とそのトランザクションの終了時) に破棄する.
  *
  * @author yasshi2525 (https://twitter.com/yasshi2525)
  */
-@Dependent
+@ApplicationScoped
 public class RailController extends PointEntityController {
     
     @Inject
     protected StationController stCon;
 
+    @Resource
+    protected TransactionSynchronizationRegistry txRegistry;
+
     private static final long serialVersionUID = 1L;
     private static final Logger LOG = Logger.getLogger(RailController.class.getName());
 
+    protected transient volatile RailCache cache;
+    /**
+     * 破棄した回数. 読み込み中に破棄されたときは、読み込んだ写しを保持しない
+     */
+    protected final AtomicLong version = new AtomicLong();
+
     public RailNode create(@NotNull Player owner, @NotNull Pointable p) throws RushHourException {
         if (exists("RailNode.exists", owner, p)) {
             throw new RushHourException(errMsgBuilder.createRailNodeDuplication(p));
@@ -63,6 +82,7 @@ public class RailController extends PointEntityController {
         n.setY(p.getY());
         em.persist(n);
         em.flush();
+        invalidate();
         LOG.log(Level.INFO, "{0}#create created {1}", new Object[] {RailController.class, n});
         return n;
     }
@@ -74,6 +94,7 @@ public class RailController extends PointEntityController {
         if (exists("RailNode.exists", owner, p)) {
             throw new RushHourException(errMsgBuilder.createRailNodeDuplication(p));
         }
+        from = attach(from);
         RailNode to = new RailNode();
         to.setOwner(owner);
         to.setX(p.getX());
@@ -94,7 +115,7 @@ public class RailController extends PointEntityController {
         if (from.equals(to)) {
             throw new RushHourException(errMsgBuilder.createDataInconsitency(null));
         }
-        createEdge(owner, from, to);
+        createEdge(owner, attach(from), attach(to));
     }
 
     public void remove(@NotNull Player owner, @NotNull List<RailEdge> edges) throws RushHourException {
@@ -117,6 +138,7 @@ public class RailController extends PointEntityController {
         }
 
         em.flush();
+        invalidate();
         removeIfIsolatedRailNode(n1);
         removeIfIsolatedRailNode(n2);
     }
@@ -138,44 +160,96 @@ public class RailController extends PointEntityController {
     }
 
     public List<RailNode> findNodeIn(@NotNull Pointable center, double scale) {
-        return findIn(em.createNamedQuery("RailNode.findIn", RailNode.class), center, scale);
+        return getCache().findNodeIn(center, scale);
     }
 
     public List<RailNode> findNodeIn(Player owner, @NotNull Pointable center, double scale) {
-        return findIn(em.createNamedQuery("RailNode.findMyIn", RailNode.class), owner, center, scale);
+        return getCache().findNodeIn(owner, center, scale);
     }
 
     public List<RailNode> findLonelyIn(Player owner, @NotNull Pointable center, double scale) {
-        return findIn(em.createNamedQuery("RailNode.findMyLonelyIn", RailNode.class), owner, center, scale);
+        return getCache().findLonelyIn(owner, center, scale, n -> stCon.findOn(n) != null);
     }
 
     public List<RailEdge> findEdgeIn(@NotNull Pointable center, double scale) {
-        double width = Math.pow(2.0, scale);
-        double height = Math.pow(2.0, scale);
-
-        return em.createNamedQuery("RailEdge.findIn", RailEdge.class)
-                .setParameter("x1", center.getX() - width / 2.0)
-                .setParameter("x2", center.getX() + width / 2.0)
-                .setParameter("y1", center.getY() - height / 2.0)
-                .setParameter("y2", center.getY() + height / 2.0)
-                .getResultList();
+        return getCache().findEdgeIn(center, scale);
     }
 
     public List<RailEdge> findEdgeIn(Player owner, @NotNull Pointable center, double scale) {
-        double width = Math.pow(2.0, scale);
-        double height = Math.pow(2.0, scale);
-
-        return em.createNamedQuery("RailEdge.findMyIn", RailEdge.class)
-                .setParameter("owner", owner)
-                .setParameter("x1", center.getX() - width / 2.0)
-                .setParameter("x2", center.getX() + width / 2.0)
-                .setParameter("y1", center.getY() - height / 2.0)
-                .setParameter("y2", center.getY() + height / 2.0)
-                .getResultList();
+        return getCache().findEdgeIn(owner, center, scale);
     }
 
     public boolean hasRailNode(Player owner) {
-        return exists("RailNode.has", owner);
+        return getCache().hasRailNode(owner);
+    }
+
+    /**
+     * 線路の写しを返す. 破棄されていればデータベースから読み込み直す.
+     *
+     * @return 線路の写し
+     */
+    protected RailCache getCache() {
+        RailCache c = cache;
+        if (c != null) {
+            return c;
+        }
+        long loading = version.get();
+        c = new RailCache(
+                em.createNamedQuery("RailNode.findAll", RailNode.class).getResultList(),
+                em.createNamedQuery("RailEdge.findAll", RailEdge.class).getResultList(),
+                Double.parseDouble(prop.get(GAME_GRID_CELLSIZE)));
+        synchronized (version) {
+            if (version.get() == loading) {
+                cache = c;
+            }
+        }
+        LOG.log(Level.FINE, "{0}#getCache loaded {1} nodes, {2} edges",
+                new Object[]{RailController.class, c.getNodes().size(), c.getEdges().size()});
+        return c;
+    }
+
+    /**
+     * 線路の写しを破棄する. トランザクション中ならば、コミット前の状態を読み込んでしまわないよう終了時にも破棄する.
+     */
+    protected void invalidate() {
+        discard();
+        if (txRegistry != null && txRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            txRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    discard();
+                }
+            });
+        }
+    }
+
+    protected void discard() {
+        synchronized (version) {
+            version.incrementAndGet();
+            cache = null;
+        }
+    }
+
+    /**
+     * 写しから得た線路ノードは永続化コンテキストの外にあるため、管理下のものに置き換える.
+     *
+     * @param node 線路ノード
+     * @return 管理下の線路ノード
+     * @throws RushHourException 削除済みのとき
+     */
+    protected RailNode attach(RailNode node) throws RushHourException {
+        if (em.contains(node)) {
+            return node;
+        }
+        RailNode managed = em.find(RailNode.class, node.getId());
+        if (managed == null) {
+            throw new RushHourException(errMsgBuilder.createDataInconsitency(null));
+        }
+        return managed;
     }
 
     protected void createEdge(Player owner, RailNode from, RailNode to) {
@@ -193,6 +267,7 @@ public class RailController extends PointEntityController {
         e2.setTo(from);
         em.persist(e2);
         em.flush();
+        invalidate();
         LOG.log(Level.INFO, "{0}#createEdge created {1}", new Object[] {RailController.class, e2});
     }
 
@@ -246,6 +321,7 @@ public class RailController extends PointEntityController {
         em.refresh(node);
         if (node.getInEdges().isEmpty() && node.getOutEdges().isEmpty() && stCon.findOn(node) == null) {
             em.remove(node);
+            invalidate();
             LOG.log(Level.INFO, "{0}#remove removed {1}", new Object[] {RailController.class, node});
         }
     }
@@ -23,7 +23,7 @@
  */
 package net.rushhourgame.controller;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,6 +33,8 @@ import javax.inject.Inject;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.RushHourRandom;
+import net.rushhourgame.controller.route.CostMatrix;
 import net.rushhourgame.entity.Company;
 import net.rushhourgame.entity.Human;
 import net.rushhourgame.entity.Pointable;
@@ -82,31 +84,35 @@ public class ResidenceController extends CachedController<Residence> {
     }
 
     public Residence create(@NotNull Pointable p, @Min(1) int capacity, @Min(1) long interval, @Min(0) double prodist) throws RushHourException {
+        Residence inst;
         writeLock.lock();
         try {
             if (exists(p)) {
                 throw new RushHourException(errMsgBuilder.createResidenceDuplication(p));
             }
-            Residence inst = new Residence();
+            inst = new Residence();
             inst.setCapacity(capacity);
             inst.setInterval(interval);
-            inst.setCount((long) (interval * Math.random()));
+            inst.setCount((long) (interval * RushHourRandom.getInstance().nextDouble()));
             inst.setX(p.getX());
             inst.setY(p.getY());
             inst.setProdist(prodist);
             persistEntity(inst);
             em.flush();
             LOG.log(Level.INFO, "{0}#create created {1}", new Object[]{ResidenceController.class, inst});
-            sCon.addResidence(inst);
-            return inst;
         } finally {
             writeLock.unlock();
         }
+        // ゲームスレッドは経路探索 → 住宅の順にロックをとるため、住宅のロックを外してから登録する
+        sCon.addResidence(inst);
+        return inst;
     }
 
     public void step(long interval) {
         writeLock.lock();
         try {
+            CostMatrix costs = searcher.getCostMatrix();
+            List<Human> spawned = new ArrayList<>();
             findAll().forEach(r -> {
                 r.step(interval);
                 while (r.expires()) {
@@ -115,21 +121,24 @@ public class ResidenceController extends CachedController<Residence> {
                         LOG.log(Level.WARNING, "{0}#step() skip create human because there is no company.", ResidenceController.class);
                         return;
                     }
-                    Collections.shuffle(companies);
-                    double cost = searcher.getCost(r, companies.get(0));
+                    // 種を固定したとき同じ行き先になるよう、住宅ごとの乱数列で選ぶ
+                    Company dest = r.chooseDest(companies);
+                    double cost = costs.get(r, dest);
 
                     if (cost <= Double.parseDouble(prop.get(GAME_DEF_HUMAN_MAXCOST))) {
                         for (int i = 0; i < r.getCapacity(); i++) {
-                            hCon.create(r.makeNearPoint(r.getProdist()), r, companies.get(0));
+                            spawned.add(hCon.spawn(r.makeNearPoint(r.getProdist()), r, dest));
                         }
                     } else {
                         LOG.log(Level.FINE, "{0}#step() skip create human because of too cost {1} ({2} -> {3})",
-                                new Object[]{ResidenceController.class, cost, r, companies.get(0)});
+                                new Object[]{ResidenceController.class, cost, r, dest});
                     }
 
                     r.consume();
                 }
             });
+            // 1人ずつ flush せず、この回に生まれた人をまとめて登録する
+            hCon.createAll(spawned);
         } finally {
             writeLock.unlock();
         }
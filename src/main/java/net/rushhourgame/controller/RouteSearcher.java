@@ -24,14 +24,18 @@
 package net.rushhourgame.controller;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
+import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -39,15 +43,22 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 import javax.validation.constraints.NotNull;
 import net.rushhourgame.GameMaster;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.controller.route.CostMatrix;
+import net.rushhourgame.controller.route.IndexedMinHeap;
 import net.rushhourgame.controller.route.PermanentRouteEdge;
 import net.rushhourgame.controller.route.PermanentRouteNode;
 import net.rushhourgame.controller.route.RouteEdge;
+import net.rushhourgame.controller.route.RouteGraph;
 import net.rushhourgame.controller.route.RouteNode;
+import net.rushhourgame.controller.route.RouteStartIndex;
+import net.rushhourgame.controller.route.RouteTable;
 import net.rushhourgame.controller.route.TemporaryHumanPoint;
 import net.rushhourgame.controller.route.TemporaryHumanRouteEdge;
 import net.rushhourgame.controller.route.TemporaryHumanRouteNode;
@@ -69,8 +80,22 @@ import net.rushhourgame.entity.hroute.StepForHumanThroughTrain;
 import net.rushhourgame.entity.hroute.StepForHumanTransfer;
 
 /**
- * 経路計算機. 経路探索処理中は経路にしたがった移動動作をしないこと (HashMapを使っているため). これを使う ExecutorService
- * のスレッドプールサイズは1にすること (同時に実行されることを想定していないため)
+ * 経路計算機. call() 自体は同時に実行されることを想定していないため、これを使う ExecutorService のスレッドプールサイズは1にすること.
+ * <p>
+ * 探索結果は {@link RouteTable} として作り直し、ゲームは探索中も前回の経路表で進める. call() はロック中に探索対象の写しをとり、
+ * ロックを外して探索し、できた経路表を次の差し替え候補にする. ゲームスレッドは {@link #swap()} で候補を取り込み、
+ * 移動中の人の経路を付け替える. そのため、ロックをとるのは経路網を編集するときとゲームを進めるときだけである.
+ * 経路表が参照する住宅、改札口、プラットフォームは、公開する前に一度だけキャッシュ中のインスタンスに差し替える.
+ * 公開した後はキャッシュそのものを差し替えるとき ({@link #notifySynchronized()}) を除いて変更しないため、
+ * ゲームスレッドと次の探索の差分計算が同じ経路表をロックなしで読める. 差し替えても id は変わらないため、差分計算の結果には影響しない.
+ * <p>
+ * 経路網 ({@link RouteGraph}) は探索のたびに一度だけ構築し、すべての会社の探索で共有する.
+ * 会社ごとの探索は互いに独立しているため、{@link net.rushhourgame.RushHourProperties#GAME_ROUTE_PARALLELISM}
+ * を2以上にすると内部の ForkJoinPool で並列に実行する. 探索結果の登録と人への経路設定は呼び出し元のスレッドでまとめて行う.
+ * <p>
+ * 経路の追加のみが行われた場合 ({@link #notifyAddition()}) は、前回の探索結果を初期値として
+ * 改善された節点だけを再緩和する (差分計算). 経路の削除を伴う場合 ({@link #notifyUpdate()}) は全探索する.
+ * 差分計算は {@link net.rushhourgame.RushHourProperties#GAME_ROUTE_INCREMENTAL} で無効にできる.
  *
  * @author yasshi2525 (https://twitter.com/yasshi2525)
  */
@@ -95,18 +120,53 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
     @Inject
     protected HumanController hCon;
 
-    protected Map<Long, List<RouteNode>> routes;
+    /**
+     * ゲームが使っている経路表
+     */
+    protected volatile RouteTable table = RouteTable.EMPTY;
+
+    /**
+     * 探索し終えたが、まだゲームに取り込んでいない経路表
+     */
+    protected final AtomicReference<RouteTable> pending = new AtomicReference<>();
+
+    /**
+     * 経路表の通し番号
+     */
+    protected final AtomicLong versions = new AtomicLong();
+
+    /**
+     * 経路網の変更の通し番号. 経路表の basedOn より大きければ探索し直す必要がある
+     */
+    protected final AtomicLong modifications = new AtomicLong();
+
+    protected final AtomicBoolean searching = new AtomicBoolean();
 
     protected Lock lock;
 
-    protected boolean isAvailble;
+    /**
+     * 会社ごとの探索を並列に実行するスレッドプール. 並列度の設定が変わったときだけ作り直す
+     */
+    protected ForkJoinPool pool;
+
+    /**
+     * 経路の削除を伴う変更があったかどうか. false の場合、前回の探索結果を再利用できる
+     */
+    protected boolean requiresFullSearch = true;
 
     @PostConstruct
     public void init() {
-        routes = new HashMap<>();
         lock = new ReentrantReadWriteLock().writeLock();
     }
 
+    @PreDestroy
+    public synchronized void preDestroy() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
     public void lock() {
         lock.lock();
     }
@@ -116,16 +176,12 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
     }
 
     /**
-     * 経路情報をすべて破棄する.
+     * 探索結果が参照する Entity をキャッシュ中のインスタンスに差し替える.
+     * 探索はキャッシュとは別に取得した移動ステップで行うため、公開する前にロック中に一度だけ呼ぶ
      *
-     * @param humans 人
+     * @param routes 公開する前の探索結果
      */
-    protected void flush(List<Human> humans) {
-        humans.forEach(h -> h.flushCurrent());
-        routes.clear();
-    }
-
-    public void refresh() {
+    protected void resolve(Map<Long, List<RouteNode>> routes) {
         routes.keySet().forEach(key -> {
             routes.get(key).forEach(node -> {
                 node.setOriginal(refresh(node.getOriginal()));
@@ -201,74 +257,324 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
         inst.setTo(stCon.find((TicketGate) inst.getTo()));
     }
 
+    /**
+     * @return 経路表が一度でも作られたか
+     */
     public boolean isAvailable() {
-        return isAvailble;
+        return latest() != RouteTable.EMPTY;
+    }
+
+    /**
+     * @return 最新の経路表を作った後に経路網が変更されたか
+     */
+    public boolean isOutdated() {
+        return !isAvailable() || latest().getBasedOn() < modifications.get();
     }
 
+    public boolean isSearching() {
+        return searching.get();
+    }
+
+    /**
+     * 探索中でなければ探索中にする. 探索を依頼する前に呼び、同じ変更に対して何度も依頼しないようにする
+     *
+     * @return 探索中にしたか. 既に探索中ならば false
+     */
+    public boolean startSearching() {
+        return searching.compareAndSet(false, true);
+    }
+
+    /**
+     * @return ゲームが使っている経路表の通し番号. 一度も取り込んでいなければ 0
+     */
+    public long getVersion() {
+        return table.getVersion();
+    }
+
+    /**
+     * @return 取り込み待ちの経路表があればそれ、なければゲームが使っている経路表
+     */
+    protected RouteTable latest() {
+        RouteTable next = pending.get();
+        return next != null ? next : table;
+    }
+
+    /**
+     * 経路の削除を伴う変更があったことを通知する. 次回は全探索する.
+     */
     public void notifyUpdate() {
-        isAvailble = false;
+        requiresFullSearch = true;
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * データベースと同期してキャッシュの Entity が差し替わったことを通知する. ゲームを開始、停止するときに呼ぶ.
+     * 使っている経路表と取り込み待ちの経路表が参照する Entity を差し替え後のインスタンスにし、次回は全探索する.
+     */
+    public void notifySynchronized() {
+        lock.lock();
+        try {
+            resolve(table.getRoutes());
+            RouteTable next = pending.get();
+            if (next != null) {
+                resolve(next.getRoutes());
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyUpdate();
+    }
+
+    /**
+     * 経路の追加のみが行われたことを通知する. 次回は前回の探索結果をもとに差分だけ再計算する.
+     */
+    public void notifyAddition() {
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * 探索し終えた経路表があれば取り込み、移動中の人の経路を付け替える. ゲームスレッドでロック中に呼ぶ.
+     *
+     * @return 取り込んだか
+     */
+    public boolean swap() {
+        RouteTable next = pending.getAndSet(null);
+        if (next == null) {
+            return false;
+        }
+        table = next;
+        retarget(next);
+        LOG.log(Level.INFO, "{0}#swap route table version {1} is available", new Object[]{RouteSearcher.class, next.getVersion()});
+        return true;
+    }
+
+    /**
+     * 探索を始めた時点から居場所が変わっていない人には、その時点の現在地からの経路をセットする.
+     * それ以外の人は経路を外し、次に動くときに新しい経路表から探し直させる.
+     * 車内の場合、行先がなくなるため、h.currentがnullになるようにする
+     *
+     * @param next 取り込んだ経路表
+     */
+    protected void retarget(RouteTable next) {
+        hCon.getReadLock().lock();
+        try {
+            hCon.findAll().forEach(h -> h.flushCurrent());
+        } finally {
+            hCon.getReadLock().unlock();
+        }
+        next.getHumanNodes().stream()
+                .filter(node -> !node.isEnd())
+                .filter(node -> node.getOriginal().isUpToDate())
+                .forEach(node -> node.registerCurrentTaskToHuman());
+    }
+
+    protected boolean isIncremental() {
+        return Boolean.parseBoolean(prop.get(GAME_ROUTE_INCREMENTAL));
     }
 
     public boolean isReachable(@NotNull Identifiable start, @NotNull Company c) {
-        return routes.containsKey(c.getId()) && routes.get(c.getId()).stream()
-                .anyMatch(node -> node.getOriginal().equalsId(start));
+        RouteStartIndex index = findStartIndex(c);
+        return index != null && index.find(start) != null;
     }
 
     public RouteNode getStart(@NotNull Identifiable start, @NotNull Company c) {
-        return routes.get(c.getId()).stream()
-                .filter(node -> node.getOriginal().equalsId(start))
-                .findFirst().get();
+        RouteStartIndex index = findStartIndex(c);
+        RouteNode node = index != null ? index.find(start) : null;
+        if (node == null) {
+            throw new NoSuchElementException("no route from " + start + " to " + c);
+        }
+        return node;
     }
 
     public double getCost(@NotNull Identifiable start, @NotNull Company c) {
         return getStart(start, c).getCost();
     }
 
+    /**
+     * 住宅 × 会社 の移動コスト表を返す. 次に経路表を取り込むまで同じものを返す.
+     *
+     * @return コスト表
+     */
+    public CostMatrix getCostMatrix() {
+        return table.getCostMatrix();
+    }
+
+    protected RouteStartIndex findStartIndex(Company c) {
+        return table.findStartIndex(c.getId());
+    }
+
     @Override
     @Transactional
     public Boolean call() {
         LOG.log(Level.INFO, "{0}#call start by {1}", new Object[]{RouteSearcher.class, this});
-        lock.lock();
+        searching.set(true);
         try {
-            BaseObjPack bPack = this.new BaseObjPack();
-
-            // 今まで保持していた情報をすべて破棄
-            flush(bPack.humans);
+            BaseObjPack bPack;
+            Map<Long, List<RouteNode>> previous;
+            long basedOn;
+
+            // 探索対象の写しをとる間だけ、経路網の編集とゲームの進行を止める
+            lock.lock();
+            try {
+                basedOn = modifications.get();
+                bPack = this.new BaseObjPack();
+
+                // 追加のみの変更ならば前回の結果を差分計算の初期値にする
+                previous = isIncremental() && !requiresFullSearch
+                        ? latest().getRoutes() : Collections.emptyMap();
+                requiresFullSearch = false;
+            } finally {
+                lock.unlock();
+            }
 
             // すべての会社への行き方を求める
             // すべての住宅からすべての会社へ行く道を検索する必要はない。
             // なぜなら探索すると、全開始点からgoalまでの行き方が分かるから
-            cCon.findAll().forEach(company -> {
-                PermanentObjPack pPack = this.new PermanentObjPack(bPack);
-                TemporaryObjPack tPack = this.new TemporaryObjPack(pPack, bPack.humanMap.get(company.getId()));
+            List<CompanyRoute> results = searchAll(bPack, previous);
 
-                // 移動中の人座標を経路に追加
-                List<RouteNode> nodes = constructRouteNodes(pPack, tPack);
-                List<RouteEdge> edges = constructRouteEdges(pPack, tPack);
+            Map<Long, List<RouteNode>> routes = new HashMap<>();
+            List<TemporaryHumanRouteNode> humanNodes = new ArrayList<>();
+            results.forEach(result -> {
+                routes.put(result.companyId, result.nodes);
+                humanNodes.addAll(result.tPack.humanNodes);
+            });
 
-                search(nodes, pPack.companyNodes.get(company.getId()));
+            // 移動中の人への経路のセットは、ゲームスレッドが取り込むときに行う
+            RouteTable next;
+            lock.lock();
+            try {
+                resolve(routes);
+                next = new RouteTable(versions.incrementAndGet(), basedOn, routes, humanNodes);
+                pending.set(next);
+            } finally {
+                lock.unlock();
+            }
+            LOG.log(Level.INFO, "{0}#call end version {1}", new Object[]{RouteSearcher.class, next.getVersion()});
+        } finally {
+            searching.set(false);
+        }
+        return true;
+    }
 
-                edges.forEach(edge -> {
-                    LOG.log(Level.FINE, edge.toString());
-                });
-                nodes.forEach((node) -> {
-                    LOG.log(Level.FINE, node.toStringAsRoute());
-                });
+    protected int getParallelism() {
+        return Integer.parseInt(prop.get(GAME_ROUTE_PARALLELISM));
+    }
 
-                // 経路探索結果を登録
-                routes.put(company.getId(), nodes);
+    /**
+     * すべての会社への経路を求める. 並列度が2以上のときは会社ごとの探索を ForkJoinPool で並列に実行する.
+     * 探索結果の登録は呼び出し元のスレッドで行う.
+     *
+     * @param bPack 探索対象
+     * @param previous 前回の探索結果 (差分計算しない場合は空)
+     * @return 会社ごとの探索結果
+     */
+    protected List<CompanyRoute> searchAll(BaseObjPack bPack, Map<Long, List<RouteNode>> previous) {
+        int parallelism = getParallelism();
 
-                // 移動中の人に移動経路をセット
-                // 車内の場合、行先がなくなるため、h.currentがnullになるようにする
-                tPack.humanNodes.stream().filter(node -> !node.isEnd())
-                        .forEach(node -> node.registerCurrentTaskToHuman());
-            });
+        if (parallelism <= 1 || bPack.companies.size() <= 1) {
+            return bPack.companies.stream()
+                    .map(company -> searchCompany(bPack, previous, company))
+                    .collect(Collectors.toList());
+        }
 
-            LOG.log(Level.INFO, "{0}#call end", this.getClass().getSimpleName());
-        } finally {
-            lock.unlock();
+        try {
+            return getPool(parallelism).submit(() -> bPack.companies.parallelStream()
+                    .map(company -> searchCompany(bPack, previous, company))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new IllegalStateException("fail to search routes in parallel.", ex);
+        }
+    }
+
+    /**
+     * @param parallelism 並列度
+     * @return 並列度が同じならば前回と同じスレッドプール
+     */
+    protected synchronized ForkJoinPool getPool(int parallelism) {
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * 指定した会社への経路を求める. 複数スレッドから同時に呼ばれるため、bPack や previous を変更しないこと.
+     *
+     * @param bPack 探索対象 (読み取り専用)
+     * @param previous 前回の探索結果 (読み取り専用)
+     * @param company 目的地
+     * @return 探索結果
+     */
+    protected CompanyRoute searchCompany(BaseObjPack bPack, Map<Long, List<RouteNode>> previous, Company company) {
+        RouteGraph graph = bPack.graph;
+        int goal = graph.indexOf(company);
+
+        // 探索は節点番号と配列だけで行い、結果だけを RouteNode に変換する
+        double[] cost = new double[graph.size()];
+        int[] viaEdge = new int[graph.size()];
+        IndexedMinHeap heap = new IndexedMinHeap(graph.size());
+
+        if (previous.containsKey(company.getId())
+                && inherit(graph, previous.get(company.getId()), cost, viaEdge)) {
+            graph.repair(goal, cost, viaEdge, heap);
+        } else {
+            graph.search(goal, cost, viaEdge, heap);
+        }
+
+        PermanentObjPack pPack = this.new PermanentObjPack(bPack, cost, viaEdge);
+        TemporaryObjPack tPack = this.new TemporaryObjPack(pPack, bPack.humanMap.get(company.getId()));
+
+        // 移動中の人座標を経路に追加
+        tPack.searchHumanRoutes();
+
+        List<RouteNode> nodes = constructRouteNodes(pPack, tPack);
+        List<RouteEdge> edges = constructRouteEdges(pPack, tPack);
+
+        nodes.forEach(node -> node.fix());
+
+        edges.forEach(edge -> {
+            LOG.log(Level.FINE, edge.toString());
+        });
+        nodes.forEach((node) -> {
+            LOG.log(Level.FINE, node.toStringAsRoute());
+        });
+
+        return new CompanyRoute(company.getId(), nodes, tPack);
+    }
+
+    /**
+     * 前回の探索結果のコストと経由する辺を引き継ぐ. 新しく追加された節点のコストは無限大とする.
+     * 同じ節点の組を複数の路線が結ぶことがあるため、経由する辺は端点ではなく前回通った移動ステップから引く.
+     * 移動ステップから辺を決められない節点があれば引き継がず、呼び出し元で全探索させる.
+     *
+     * @param graph 経路網
+     * @param oldNodes 前回の探索結果
+     * @param cost 節点ごとのコスト (出力)
+     * @param viaEdge 節点ごとの経由する辺 (出力)
+     * @return すべての節点を引き継げたか
+     */
+    protected boolean inherit(RouteGraph graph, List<RouteNode> oldNodes, double[] cost, int[] viaEdge) {
+        Arrays.fill(cost, Double.MAX_VALUE);
+        Arrays.fill(viaEdge, -1);
+
+        for (RouteNode old : oldNodes) {
+            int node = graph.indexOf(old.getOriginal());
+            if (node < 0 || old.getVia() == null) {
+                // 人の一時的な節点, 目的地, 到達不能な節点
+                continue;
+            }
+            int edge = old.getViaEdge() == null ? -1 : graph.indexOfStep(old.getViaEdge().getOriginal());
+            if (edge < 0 || graph.getFrom(edge) != node
+                    || graph.getTo(edge) != graph.indexOf(old.getVia().getOriginal())) {
+                LOG.log(Level.FINE, "{0}#inherit fail to resolve via edge of {1}", new Object[]{RouteSearcher.class, old});
+                return false;
+            }
+            cost[node] = old.getCost();
+            viaEdge[node] = edge;
         }
-        isAvailble = true;
         return true;
     }
 
@@ -281,35 +587,19 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
     }
 
     /**
-     * nodesの要素にviaとcostをセットして終える. ダイクストラ法で探す
-     *
-     * @param nodes 出発地一覧
-     * @param goal 目的地
+     * 会社ひとつ分の探索結果
      */
-    protected void search(List<RouteNode> nodes, RouteNode goal) {
-
-        nodes.forEach(node -> node.setCost(Double.MAX_VALUE));
-
-        goal.setCost(0);
+    protected static final class CompanyRoute {
 
-        PriorityQueue<RouteNode> queue = new PriorityQueue<>();
-        queue.add(goal);
+        protected final long companyId;
+        protected final List<RouteNode> nodes;
+        protected final TemporaryObjPack tPack;
 
-        while (!queue.isEmpty()) {
-            RouteNode x = queue.poll();
-
-            x.getInEdges().forEach(link -> {
-                RouteNode y = link.getFrom();
-                double newValue = x.getCost() + link.getCost();
-                if (newValue < y.getCost()) {
-                    y.setCost(newValue);
-                    y.setVia(x);
-                    queue.offer(y);
-                }
-            });
+        public CompanyRoute(long companyId, List<RouteNode> nodes, TemporaryObjPack tPack) {
+            this.companyId = companyId;
+            this.nodes = nodes;
+            this.tPack = tPack;
         }
-
-        nodes.forEach(node -> node.fix());
     }
 
     protected final class BaseObjPack {
@@ -322,20 +612,33 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
         protected List<StepForHuman> steps;
 
         protected List<Human> humans;
-        protected Map<Long, Set<Human>> humanMap;
+
+        /**
+         * 会社の id → 向かっている人の写し
+         */
+        protected Map<Long, List<TemporaryHumanPoint>> humanMap;
+
+        /**
+         * すべての会社の探索で共有する経路網
+         */
+        protected RouteGraph graph;
 
         public BaseObjPack() {
             fetchObj();
             categorizeHumans();
+            graph = new RouteGraph(residences, companies, ticketGates, platforms, steps);
         }
 
+        /**
+         * 探索中もゲームが一覧を変更するため、写しをとる
+         */
         protected void fetchObj() {
-            residences = rCon.findAll();
-            companies = cCon.findAll();
+            residences = new ArrayList<>(rCon.findAll());
+            companies = new ArrayList<>(cCon.findAll());
             ticketGates = stCon.findTicketGateAll();
             platforms = stCon.findPlatformAll();
             steps = sCon.findAll();
-            humans = hCon.findAll();
+            humans = new ArrayList<>(hCon.findAll());
         }
 
         protected void categorizeHumans() {
@@ -343,15 +646,18 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
 
             humans.forEach(h -> {
                 if (!humanMap.containsKey(h.getDest().getId())) {
-                    humanMap.put(h.getDest().getId(), new HashSet<>());
+                    humanMap.put(h.getDest().getId(), new ArrayList<>());
                 }
-                humanMap.get(h.getDest().getId()).add(h);
+                humanMap.get(h.getDest().getId()).add(new TemporaryHumanPoint(h));
             });
         }
     }
 
     protected final class PermanentObjPack {
 
+        protected final RouteGraph graph;
+        protected final RouteNode[] nodes;
+
         protected Map<Long, RouteNode> residenceNodes = new HashMap<>();
         protected Map<Long, RouteNode> companyNodes = new HashMap<>();
         protected Map<Long, RouteNode> ticketGateNodes = new HashMap<>();
@@ -360,44 +666,60 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
 
         protected List<RouteEdge> allEdges;
 
-        public PermanentObjPack(BaseObjPack base) {
-            buildRouteNode(base);
-            buildRouteEdge(base);
+        /**
+         * 探索結果から節点を作る. 辺は各節点が経由する辺のみ作る.
+         *
+         * @param base 探索対象
+         * @param cost 節点ごとのコスト
+         * @param viaEdge 節点ごとの経由する辺
+         */
+        public PermanentObjPack(BaseObjPack base, double[] cost, int[] viaEdge) {
+            graph = base.graph;
+            nodes = new RouteNode[graph.size()];
+            buildRouteNode();
+            buildViaEdge(cost, viaEdge);
         }
 
-        protected void buildRouteNode(BaseObjPack base) {
-            base.residences.stream().forEach(o -> residenceNodes.put(o.getId(), new PermanentRouteNode(o)));
-            base.companies.stream().forEach(o -> companyNodes.put(o.getId(), new PermanentRouteNode(o)));
-            base.ticketGates.stream().forEach(o -> ticketGateNodes.put(o.getId(), new PermanentRouteNode(o)));
-            base.platforms.stream().forEach(o -> platformNodes.put(o.getId(), new PermanentRouteNode(o)));
-
-            allNodes = new ArrayList<>();
-            allNodes.addAll(residenceNodes.values());
-            allNodes.addAll(companyNodes.values());
-            allNodes.addAll(ticketGateNodes.values());
-            allNodes.addAll(platformNodes.values());
+        protected void buildRouteNode() {
+            allNodes = new ArrayList<>(graph.size());
+
+            for (int i = 0; i < graph.size(); i++) {
+                RelayPointForHuman original = graph.getOriginal(i);
+                RouteNode node = new PermanentRouteNode(original);
+                nodes[i] = node;
+                allNodes.add(node);
+
+                if (graph.isResidence(i)) {
+                    residenceNodes.put(original.getId(), node);
+                } else if (graph.isCompany(i)) {
+                    companyNodes.put(original.getId(), node);
+                } else if (graph.isTicketGate(i)) {
+                    ticketGateNodes.put(original.getId(), node);
+                } else if (graph.isPlatform(i)) {
+                    platformNodes.put(original.getId(), node);
+                }
+            }
         }
 
-        protected void buildRouteEdge(BaseObjPack base) {
-            allEdges = base.steps.stream().map(original -> {
-                // from に対応する node の取得
-                RouteNode from = allNodes.stream()
-                        .filter(node -> node.getOriginal().equalsId(original.getFrom())
-                        ).findFirst().get();
+        protected void buildViaEdge(double[] cost, int[] viaEdge) {
+            allEdges = new ArrayList<>();
 
-                // to に対応する node の取得
-                RouteNode to = allNodes.stream()
-                        .filter(node -> node.getOriginal().equalsId(original.getTo())
-                        ).findFirst().get();
+            for (int i = 0; i < nodes.length; i++) {
+                RouteNode from = nodes[i];
+                from.setCost(cost[i]);
 
-                RouteEdge edge = new PermanentRouteEdge(original, from, to);
+                int e = viaEdge[i];
+                if (e >= 0) {
+                    RouteNode to = nodes[graph.getTo(e)];
+                    RouteEdge edge = new PermanentRouteEdge(graph.getStep(e), from, to);
 
-                // Node へのリンクを追加
-                from.getOutEdges().add(edge);
-                to.getInEdges().add(edge);
+                    from.setVia(to);
+                    from.getOutEdges().add(edge);
+                    to.getInEdges().add(edge);
 
-                return edge;
-            }).collect(Collectors.toList());
+                    allEdges.add(edge);
+                }
+            }
         }
     }
 
@@ -406,14 +728,18 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
         protected List<TemporaryHumanRouteNode> humanNodes;
         protected List<TemporaryHumanRouteEdge> humanEdges;
 
-        public TemporaryObjPack(PermanentObjPack pPack, Set<Human> humans) {
+        /**
+         * @param pPack 経路網
+         * @param humans 探索を始めた時点の人の写し. いなければ null
+         */
+        public TemporaryObjPack(PermanentObjPack pPack, List<TemporaryHumanPoint> humans) {
             buildHumanNodes(humans);
             buildHumanEdges(pPack);
         }
 
-        protected void buildHumanNodes(Set<Human> humans) {
+        protected void buildHumanNodes(List<TemporaryHumanPoint> humans) {
             humanNodes = humans != null
-                    ? humans.stream().map(h -> new TemporaryHumanRouteNode(new TemporaryHumanPoint(h))).collect(Collectors.toList())
+                    ? humans.stream().map(h -> new TemporaryHumanRouteNode(h)).collect(Collectors.toList())
                     : Collections.emptyList();
         }
 
@@ -421,7 +747,7 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
             humanEdges = new ArrayList<>();
 
             humanNodes.forEach(humanN -> {
-                switch (humanN.getHuman().getStandingOn()) {
+                switch (humanN.getOriginal().getStandingOn()) {
                     case GROUND:
                         // 人(改札外) -> 会社
                         // 人(改札外) -> 改札
@@ -430,7 +756,7 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
                         break;
                     case PLATFORM:
                         // 人(プラットフォーム上) -> そのプラットフォーム
-                        addHumanEdges(humanN, pPack.platformNodes.get(humanN.getHuman().getOnPlatform().getId()));
+                        addHumanEdges(humanN, pPack.platformNodes.get(humanN.getOriginal().getOnPlatform().getId()));
                         break;
                     case TRAIN:
                         // 人(電車内) -> (何もしない)
@@ -439,6 +765,26 @@ public class RouteSearcher extends AbstractController implements Callable<Boolea
             });
         }
 
+        /**
+         * 人の節点は出ていく辺しかないため、辺の先の節点のコストが確定していれば一度の緩和で求まる
+         */
+        protected void searchHumanRoutes() {
+            humanNodes.forEach(humanN -> {
+                humanN.setCost(Double.MAX_VALUE);
+                humanN.getOutEdges().forEach(link -> {
+                    RouteNode x = link.getTo();
+                    if (x.getCost() == Double.MAX_VALUE) {
+                        return;
+                    }
+                    double newValue = x.getCost() + link.getCost();
+                    if (newValue < humanN.getCost()) {
+                        humanN.setCost(newValue);
+                        humanN.setVia(x);
+                    }
+                });
+            });
+        }
+
         protected void addHumanEdges(TemporaryHumanRouteNode humanN, RouteNode to) {
             TemporaryHumanRouteEdge edge = new TemporaryHumanRouteEdge(humanN, to);
 
@@ -23,7 +23,9 @@
  */
 package net.rushhourgame.controller;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -58,8 +60,10 @@ public class StationController extends CachedController<Station> {
     protected LineController lCon;
     @Inject
     protected RailController rCon;
-    @Inject
-    protected HumanController hCon;
+
+    protected EntityIndex<Station> platformIndex = new EntityIndex<>(st -> st.getPlatform());
+    protected EntityIndex<Station> ticketGateIndex = new EntityIndex<>(st -> st.getTicketGate());
+    protected EntityIndex<Station> railNodeIndex = new EntityIndex<>(st -> st.getPlatform().getRailNode());
 
     @Override
     public void synchronizeDatabase() {
@@ -72,53 +76,96 @@ public class StationController extends CachedController<Station> {
         }
         LOG.log(Level.INFO, "{0}#synchronizeDatabase end", new Object[]{StationController.class});
     }
+
+    @Override
+    protected void writeEntity(Station entity) {
+        // 混雑度などはプラットフォーム、改札口が持つ
+        em.merge(entity.getPlatform());
+        em.merge(entity.getTicketGate());
+        if (entity.isDirty()) {
+            em.merge(entity);
+        }
+    }
+
+    /**
+     * プラットフォーム、改札口は駅と一緒に書き出すため、それらの変更も含める
+     *
+     * @param entity 駅
+     * @return 駅、プラットフォーム、改札口のいずれかが変更されたか
+     */
+    @Override
+    protected boolean isDirty(Station entity) {
+        return entity.isDirty() || entity.getPlatform().isDirty() || entity.getTicketGate().isDirty();
+    }
+
+    @Override
+    protected void clean(Station entity) {
+        entity.clean();
+        entity.getPlatform().clean();
+        entity.getTicketGate().clean();
+    }
+
+    /**
+     * 駅からプラットフォーム、改札口へは merge が伝播しないため、先に書き出す
+     *
+     * @param entity 駅
+     * @return 管理下の駅
+     */
+    @Override
+    protected Station mergeEntity(Station entity) {
+        em.merge(entity.getPlatform());
+        em.merge(entity.getTicketGate());
+        return em.merge(entity);
+    }
     
+    /**
+     * 線路の編集中 (路線のロック中) に呼ばれるため、ロックをとらずに索引から引く.
+     *
+     * @param node 線路ノード
+     * @return node 上のプラットフォーム. なければ null
+     */
     public Platform findOn(RailNode node) {
-        readLock.lock();
-        try {
-            if (entities == null) {
-                LOG.log(Level.WARNING, "{0}#findOn controller never synchronize database", new Object[]{StationController.class});
-                return null;
-            }
-            return entities.stream()
-                    .map(e -> e.getPlatform())
-                    .filter(p -> p.getRailNode().equalsId(node)).findFirst().orElse(null);
-        } finally {
-            readLock.unlock();
+        if (entities == null) {
+            LOG.log(Level.WARNING, "{0}#findOn controller never synchronize database", new Object[]{StationController.class});
+            return null;
         }
+        Station st = railNodeIndex.find(entities, node);
+        return st != null ? st.getPlatform() : null;
     }
 
     public Platform find(Platform old) {
-        readLock.lock();
-        try {
-            if (old == null) {
-                return null;
-            }
-            if (entities == null) {
-                LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{StationController.class});
-                return null;
-            }
-            Station st = entities.stream().filter(e -> e.getPlatform().equalsId(old)).findFirst().orElse(null);
-            return st != null ? st.getPlatform() : null;
-        } finally {
-            readLock.unlock();
+        if (old == null) {
+            return null;
+        }
+        if (entities == null) {
+            LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{StationController.class});
+            return null;
         }
+        Station st = platformIndex.find(entities, old);
+        return st != null ? st.getPlatform() : null;
     }
 
     public TicketGate find(TicketGate old) {
-        readLock.lock();
-        try {
-            if (old == null) {
-                return null;
-            }
-            if (entities == null) {
-                LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{StationController.class});
-                return null;
-            }
-            return entities.stream().filter(e -> e.getTicketGate().equalsId(old)).findFirst().get().getTicketGate();
-        } finally {
-            readLock.unlock();
+        if (old == null) {
+            return null;
+        }
+        if (entities == null) {
+            LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{StationController.class});
+            return null;
         }
+        Station st = ticketGateIndex.find(entities, old);
+        if (st == null) {
+            throw new NoSuchElementException("no cached station for " + old);
+        }
+        return st.getTicketGate();
+    }
+
+    @Override
+    protected void removeFromCache(Station oldEntity) {
+        super.removeFromCache(oldEntity);
+        platformIndex.remove(oldEntity);
+        ticketGateIndex.remove(oldEntity);
+        railNodeIndex.remove(oldEntity);
     }
 
     public void step(long interval) {
@@ -218,22 +265,22 @@ public class StationController extends CachedController<Station> {
         }
     }
 
+    /**
+     * 経路探索 (RouteSearcher) のロック中に呼ばれるため、ロックをとらずに写しから作る.
+     *
+     * @return すべてのプラットフォーム
+     */
     public List<Platform> findPlatformAll() {
-        readLock.lock();
-        try {
-            return findAll().stream().map(st -> st.getPlatform()).collect(Collectors.toList());
-        } finally {
-            readLock.unlock();
-        }
+        return snapshot().stream().map(st -> st.getPlatform()).collect(Collectors.toList());
     }
 
+    /**
+     * 経路探索 (RouteSearcher) のロック中に呼ばれるため、ロックをとらずに写しから作る.
+     *
+     * @return すべての改札口
+     */
     public List<TicketGate> findTicketGateAll() {
-        readLock.lock();
-        try {
-            return findAll().stream().map(st -> st.getTicketGate()).collect(Collectors.toList());
-        } finally {
-            readLock.unlock();
-        }
+        return snapshot().stream().map(st -> st.getTicketGate()).collect(Collectors.toList());
     }
 
     public void remove(@NotNull Station st, @NotNull Player owner) throws RushHourException {
@@ -243,15 +290,16 @@ public class StationController extends CachedController<Station> {
                 throw new RushHourException(errMsgBuilder.createNoPrivileged(GAME_NO_PRIVILEDGE_OTHER_OWNED));
             }
             
-            hCon.findAll().stream()
-                    .filter(h -> st.getPlatform().equalsId(h.getOnPlatform()))
-                    .forEach(h -> h.exitFromPlatformForce());
+            Platform platform = find(st.getPlatform());
+            if (platform != null) {
+                new ArrayList<>(platform.getWaiting()).forEach(h -> h.exitFromPlatformForce());
+            }
             
             lCon.remove(st.getPlatform(), owner);
             sCon.removeStation(st);
             
             em.remove(em.merge(st));
-            entities.remove(st);
+            removeFromCache(st);
             
             rCon.removeIfIsolatedRailNode(em.merge(st.getPlatform().getRailNode()));
             
@@ -152,7 +152,7 @@ public class StepForHumanController extends AbstractController {
 
             LOG.log(Level.INFO, "{0}#addCompany created for {1}", new Object[]{StepForHumanController.class, newInst});
             // ここで submit すると EntityManager が close して JSF でエラーになる
-            searcher.notifyUpdate();
+            searcher.notifyAddition();
         } finally {
             searcher.unlock();
         }
@@ -176,7 +176,7 @@ public class StepForHumanController extends AbstractController {
 
             LOG.log(Level.INFO, "{0}#addResidence created for {1}", new Object[]{StepForHumanController.class, newInst});
             // ここで submit すると EntityManager が close して JSF でエラーになる
-            searcher.notifyUpdate();
+            searcher.notifyAddition();
         } finally {
             searcher.unlock();
         }
@@ -217,7 +217,7 @@ public class StepForHumanController extends AbstractController {
 
             LOG.log(Level.INFO, "{0}#addStation created for {1}", new Object[]{StepForHumanController.class, newInst});
             // ここで submit すると EntityManager が close して JSF でエラーになる
-            searcher.notifyUpdate();
+            searcher.notifyAddition();
         } finally {
             searcher.unlock();
         }
@@ -269,7 +269,7 @@ public class StepForHumanController extends AbstractController {
 
             LOG.log(Level.INFO, "{0}#addCompletedLine created for {1}", new Object[]{StepForHumanController.class, line});
             // ここで submit すると EntityManager が close して JSF でエラーになる
-            searcher.notifyUpdate();
+            searcher.notifyAddition();
         } finally {
             searcher.unlock();
         }
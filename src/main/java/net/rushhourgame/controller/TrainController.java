@@ -23,7 +23,9 @@
  */
 package net.rushhourgame.controller;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -63,6 +65,11 @@ public class TrainController extends CachedController<Train> {
     @Inject
     protected StationController stCon;
 
+    /**
+     * 配置中の電車から Train を引くための索引. 未配置の電車は登録しない
+     */
+    protected EntityIndex<Train> deployedIndex = new EntityIndex<>(t -> t.getDeployed());
+
     @Override
     public void synchronizeDatabase() {
         LOG.log(Level.INFO, "{0}#synchronizeDatabase start", new Object[]{TrainController.class});
@@ -79,23 +86,75 @@ public class TrainController extends CachedController<Train> {
         LOG.log(Level.INFO, "{0}#synchronizeDatabase end", new Object[]{TrainController.class});
     }
 
+    @Override
+    protected void writeEntity(Train entity) {
+        // 進捗や座標は TrainDeployed が持つ
+        if (entity.isDeployed()) {
+            em.merge(entity.getDeployed());
+        }
+    }
+
+    /**
+     * 進捗や座標は TrainDeployed が持つため、その変更も含める
+     *
+     * @param entity 電車
+     * @return 電車か配置中の電車が変更されたか
+     */
+    @Override
+    protected boolean isDirty(Train entity) {
+        return entity.isDirty() || (entity.isDeployed() && entity.getDeployed().isDirty());
+    }
+
+    @Override
+    protected void clean(Train entity) {
+        entity.clean();
+        if (entity.isDeployed()) {
+            entity.getDeployed().clean();
+        }
+    }
+
+    /**
+     * 電車から TrainDeployed へは merge が伝播しないため、先に書き出す
+     *
+     * @param entity 電車
+     * @return 管理下の電車
+     */
+    @Override
+    protected Train mergeEntity(Train entity) {
+        if (entity.isDeployed()) {
+            em.merge(entity.getDeployed());
+        }
+        return em.merge(entity);
+    }
+
+    @Override
+    protected boolean isLocated(Train e) {
+        return e.isDeployed();
+    }
+
     public TrainDeployed find(TrainDeployed old) {
-        readLock.lock();
-        try {
-            if (old == null) {
-                return null;
-            }
-            if (entities == null) {
-                LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{TrainController.class});
-                return null;
-            }
-            return entities.stream()
-                    .filter(e -> e.isDeployed())
-                    .filter(e -> e.getDeployed().equalsId(old))
-                    .findFirst().get().getDeployed();
-        } finally {
-            readLock.unlock();
+        if (old == null) {
+            return null;
+        }
+        if (entities == null) {
+            LOG.log(Level.WARNING, "{0}#find controller never synchronize database", new Object[]{TrainController.class});
+            return null;
+        }
+        Train train = deployedIndex.find(entities, old);
+        if (train == null) {
+            throw new NoSuchElementException("no cached train for " + old);
         }
+        return train.getDeployed();
+    }
+
+    /**
+     * ロックをとらずに写しから作る.
+     *
+     * @return 配置中のすべての電車
+     */
+    public List<TrainDeployed> findDeployedAll() {
+        return snapshot().stream().filter(t -> t.isDeployed())
+                .map(t -> t.getDeployed()).collect(Collectors.toList());
     }
 
     public Train create(@NotNull Player p) {
@@ -145,6 +204,7 @@ public class TrainController extends CachedController<Train> {
             LOG.log(Level.INFO, "{0}#deploy created {1}", new Object[]{TrainController.class, info});
 
             train.setDeployed(info);
+            relocate(train);
 
             return info;
         } finally {
@@ -161,6 +221,7 @@ public class TrainController extends CachedController<Train> {
             }
             getOffPassenger(train);
             train.getTrain().setDeployed(null);
+            relocate(train.getTrain());
             em.createNamedQuery("TrainDeployed.deleteBy", TrainDeployed.class)
                     .setParameter("obj", train).executeUpdate();
 
@@ -183,17 +244,19 @@ public class TrainController extends CachedController<Train> {
     }
 
     public void step(long time) {
-        writeLock.lock();
+        // 路線の編集は路線 → 電車の順にロックをとるため、路線を先にとる
+        lCon.getReadLock().lock();
         try {
-            lCon.getReadLock().lock();
+            writeLock.lock();
             try {
                 findAll().stream().filter(t -> t.isDeployed())
-                        .forEach(t -> t.getDeployed().step(hCon.findAll(), time));
+                        .forEach(t -> t.getDeployed().step(time));
+                relocateAll();
             } finally {
-                lCon.getReadLock().unlock();
+                writeLock.unlock();
             }
         } finally {
-            writeLock.unlock();
+            lCon.getReadLock().unlock();
         }
     }
 
@@ -240,10 +303,9 @@ public class TrainController extends CachedController<Train> {
     protected void getOffPassenger(TrainDeployed train) {
         hCon.getWriteLock().lock();
         try {
-            hCon.findAll().stream()
-                    .filter(h -> train.equalsId(h.getOnTrain()))
-                    .forEach(h -> h.getOffTrainForce());
-            searcher.notifyUpdate();
+            new ArrayList<>(train.getPassengers()).forEach(h -> h.getOffTrainForce());
+            // 経路網自体は変わらないので、降ろした人の経路だけ求めればよい
+            searcher.notifyAddition();
         } finally {
             hCon.getWriteLock().unlock();
         }
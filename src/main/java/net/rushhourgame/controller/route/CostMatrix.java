@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import net.rushhourgame.entity.Identifiable;
+import net.rushhourgame.entity.Residence;
+
+/**
+ * 住宅 × 会社 の移動コスト表. 経路探索の結果から作り、人を生成するときに引く.
+ * 経路網にない組み合わせのコストは正の無限大.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class CostMatrix {
+
+    protected final Map<Long, Integer> residenceRows = new HashMap<>();
+    protected final Map<Long, Integer> companyCols = new HashMap<>();
+    protected final double[][] costs;
+
+    /**
+     * @param residenceIds 行にする住宅の id
+     * @param companyIds 列にする会社の id
+     */
+    public CostMatrix(Collection<Long> residenceIds, Collection<Long> companyIds) {
+        residenceIds.forEach(id -> residenceRows.putIfAbsent(id, residenceRows.size()));
+        companyIds.forEach(id -> companyCols.putIfAbsent(id, companyCols.size()));
+        costs = new double[residenceRows.size()][companyCols.size()];
+        for (double[] row : costs) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    /**
+     * 会社ごとの経路探索結果から、住宅を起点とするコストを集める.
+     *
+     * @param routes 会社の id → 経路ノード
+     * @return コスト表
+     */
+    public static CostMatrix of(Map<Long, List<RouteNode>> routes) {
+        TreeSet<Long> residenceIds = new TreeSet<>();
+        routes.values().forEach(nodes -> nodes.stream()
+                .filter(node -> node.getOriginal() instanceof Residence)
+                .forEach(node -> residenceIds.add(node.getOriginal().getId())));
+
+        CostMatrix matrix = new CostMatrix(residenceIds, new TreeSet<>(routes.keySet()));
+        routes.forEach((companyId, nodes) -> {
+            int col = matrix.companyCols.get(companyId);
+            nodes.stream()
+                    .filter(node -> node.getOriginal() instanceof Residence)
+                    .forEach(node -> matrix.costs[matrix.residenceRows.get(node.getOriginal().getId())][col] = node.getCost());
+        });
+        return matrix;
+    }
+
+    /**
+     * 公開した経路表のコストを書き換えられないよう、表を作るときだけ使う
+     *
+     * @param residence 住宅
+     * @param company 会社
+     * @param cost 移動コスト
+     */
+    void set(Identifiable residence, Identifiable company, double cost) {
+        Integer row = residenceRows.get(residence.getId());
+        Integer col = companyCols.get(company.getId());
+        if (row == null || col == null) {
+            throw new IllegalArgumentException("no cell for " + residence + " -> " + company);
+        }
+        costs[row][col] = cost;
+    }
+
+    /**
+     * @param residence 住宅
+     * @param company 会社
+     * @return 移動コスト. 表にない組み合わせは正の無限大
+     */
+    public double get(Identifiable residence, Identifiable company) {
+        Integer row = residenceRows.get(residence.getId());
+        Integer col = companyCols.get(company.getId());
+        if (row == null || col == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return costs[row][col];
+    }
+
+    public int getResidenceSize() {
+        return residenceRows.size();
+    }
+
+    public int getCompanySize() {
+        return companyCols.size();
+    }
+}
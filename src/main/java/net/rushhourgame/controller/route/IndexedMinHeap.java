@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Arrays;
+
+/**
+ * 節点番号をキーにした二分ヒープ. 同じ節点を何度 offer しても要素はひとつで、キーが小さくなったときだけ位置を更新する
+ * (decrease-key). 作業領域は生成時に確保し、clear() して使いまわす.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class IndexedMinHeap {
+
+    /**
+     * heap[k] はヒープの k 番目にある節点
+     */
+    protected int[] heap;
+
+    /**
+     * position[node] は node のヒープ上の位置. ヒープにない場合は -1
+     */
+    protected int[] position;
+
+    protected double[] keys;
+
+    protected int size;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public int capacity() {
+        return position.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int node) {
+        return position[node] >= 0;
+    }
+
+    public void clear() {
+        for (int k = 0; k < size; k++) {
+            position[heap[k]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * 節点を追加する. すでにある場合は key が小さくなるときだけ更新する.
+     *
+     * @param node 節点番号
+     * @param key キー
+     */
+    public void offer(int node, double key) {
+        int k = position[node];
+        if (k < 0) {
+            k = size++;
+            heap[k] = node;
+            position[node] = k;
+        } else if (key >= keys[node]) {
+            return;
+        }
+        keys[node] = key;
+        siftUp(k);
+    }
+
+    /**
+     * @return キーが最小の節点. 取り出した節点はヒープから取り除かれる
+     */
+    public int poll() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty.");
+        }
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    public double peekKey() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty.");
+        }
+        return keys[heap[0]];
+    }
+
+    protected void siftUp(int k) {
+        int node = heap[k];
+        double key = keys[node];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) {
+                break;
+            }
+            heap[k] = p;
+            position[p] = k;
+            k = parent;
+        }
+        heap[k] = node;
+        position[node] = k;
+    }
+
+    protected void siftDown(int k) {
+        int node = heap[k];
+        double key = keys[node];
+        int half = size >>> 1;
+        while (k < half) {
+            int child = 2 * k + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int c = heap[child];
+            if (key <= keys[c]) {
+                break;
+            }
+            heap[k] = c;
+            position[c] = k;
+            k = child;
+        }
+        heap[k] = node;
+        position[node] = k;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Platform;
+import net.rushhourgame.entity.RelayPointForHuman;
+import net.rushhourgame.entity.Residence;
+import net.rushhourgame.entity.StepForHuman;
+import net.rushhourgame.entity.TicketGate;
+
+/**
+ * 人用移動ステップからなる経路網. 節点は 0 から始まる整数で、辺は CSR 形式の配列で保持する.
+ * 経路探索のたびに一度だけ構築し、すべての会社の探索で共有する. 構築後は変更しないこと.
+ * <p>
+ * 節点番号は 住宅, 会社, 改札口, プラットフォーム の順に、それぞれ id の昇順に割り当てる.
+ * id から節点番号への変換はソート済みの id 配列を二分探索して求める.
+ * 同じ節点の組を複数の辺が結ぶことがある (同じプラットフォームの組を通る複数の路線) ため、
+ * 辺は端点の組ではなく移動ステップの uid から引く.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RouteGraph {
+
+    protected static final int RESIDENCE = 0;
+    protected static final int COMPANY = 1;
+    protected static final int TICKET_GATE = 2;
+    protected static final int PLATFORM = 3;
+    protected static final int KIND_NUM = 4;
+
+    /**
+     * 種類ごとのソート済み id
+     */
+    protected final long[][] ids = new long[KIND_NUM][];
+
+    /**
+     * 種類ごとの先頭の節点番号. offsets[KIND_NUM] は節点数
+     */
+    protected final int[] offsets = new int[KIND_NUM + 1];
+
+    protected final RelayPointForHuman[] originals;
+
+    protected final StepForHuman[] steps;
+    protected final int[] edgeFrom;
+    protected final int[] edgeTo;
+    protected final double[] edgeCost;
+
+    /**
+     * 移動ステップの uid → 辺番号. 同じ uid の辺が複数あるときは AMBIGUOUS
+     */
+    protected final Map<String, Integer> stepIndex;
+    protected static final int AMBIGUOUS = -2;
+
+    /**
+     * 節点 i に入る辺は inEdges[inOffsets[i]] から inEdges[inOffsets[i + 1] - 1]
+     */
+    protected final int[] inOffsets;
+    protected final int[] inEdges;
+
+    /**
+     * 節点 i から出る辺は outEdges[outOffsets[i]] から outEdges[outOffsets[i + 1] - 1]
+     */
+    protected final int[] outOffsets;
+    protected final int[] outEdges;
+
+    public RouteGraph(List<Residence> residences, List<Company> companies,
+            List<TicketGate> ticketGates, List<Platform> platforms, List<StepForHuman> steps) {
+        originals = new RelayPointForHuman[residences.size() + companies.size() + ticketGates.size() + platforms.size()];
+
+        register(RESIDENCE, residences);
+        register(COMPANY, companies);
+        register(TICKET_GATE, ticketGates);
+        register(PLATFORM, platforms);
+
+        int edgeNum = steps.size();
+        this.steps = steps.toArray(new StepForHuman[edgeNum]);
+        edgeFrom = new int[edgeNum];
+        edgeTo = new int[edgeNum];
+        edgeCost = new double[edgeNum];
+        stepIndex = new HashMap<>(edgeNum * 4 / 3 + 1);
+
+        for (int e = 0; e < edgeNum; e++) {
+            StepForHuman step = this.steps[e];
+            edgeFrom[e] = indexOfOrThrow(step, step.getFrom());
+            edgeTo[e] = indexOfOrThrow(step, step.getTo());
+            edgeCost[e] = step.getCost();
+            stepIndex.merge(step.getUid(), e, (prev, cur) -> AMBIGUOUS);
+        }
+
+        inOffsets = new int[size() + 1];
+        inEdges = new int[edgeNum];
+        buildAdjacency(edgeTo, inOffsets, inEdges);
+
+        outOffsets = new int[size() + 1];
+        outEdges = new int[edgeNum];
+        buildAdjacency(edgeFrom, outOffsets, outEdges);
+    }
+
+    protected final void register(int kind, List<? extends RelayPointForHuman> list) {
+        RelayPointForHuman[] sorted = list.toArray(new RelayPointForHuman[list.size()]);
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.getId(), b.getId()));
+
+        offsets[kind + 1] = offsets[kind] + sorted.length;
+        ids[kind] = new long[sorted.length];
+
+        for (int i = 0; i < sorted.length; i++) {
+            ids[kind][i] = sorted[i].getId();
+            originals[offsets[kind] + i] = sorted[i];
+        }
+    }
+
+    /**
+     * 辺の端点ごとに計数ソートして CSR 形式の隣接配列を作る.
+     *
+     * @param endpoints 辺ごとの端点
+     * @param index 端点ごとの先頭位置 (出力)
+     * @param adjacency 端点ごとに並べた辺番号 (出力)
+     */
+    protected static void buildAdjacency(int[] endpoints, int[] index, int[] adjacency) {
+        for (int node : endpoints) {
+            index[node + 1]++;
+        }
+        for (int i = 0; i < index.length - 1; i++) {
+            index[i + 1] += index[i];
+        }
+        int[] cursor = Arrays.copyOf(index, index.length - 1);
+        for (int e = 0; e < endpoints.length; e++) {
+            adjacency[cursor[endpoints[e]]++] = e;
+        }
+    }
+
+    protected int indexOfOrThrow(StepForHuman step, RelayPointForHuman p) {
+        int index = indexOf(p);
+        if (index < 0) {
+            throw new IllegalStateException("no route node for " + p + " in " + step);
+        }
+        return index;
+    }
+
+    protected static int kindOf(RelayPointForHuman p) {
+        if (p instanceof Residence) {
+            return RESIDENCE;
+        } else if (p instanceof Company) {
+            return COMPANY;
+        } else if (p instanceof TicketGate) {
+            return TICKET_GATE;
+        } else if (p instanceof Platform) {
+            return PLATFORM;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * @param p 経由点
+     * @return 節点番号. 経路網に含まれない場合は負の値
+     */
+    public int indexOf(RelayPointForHuman p) {
+        int kind = kindOf(p);
+        if (kind < 0) {
+            return -1;
+        }
+        int pos = Arrays.binarySearch(ids[kind], p.getId());
+        return pos < 0 ? -1 : offsets[kind] + pos;
+    }
+
+    /**
+     * @param step 移動ステップ
+     * @return 辺番号. 経路網に含まれない場合、同じ uid の辺が複数あって決められない場合は負の値
+     */
+    public int indexOfStep(StepForHuman step) {
+        Integer edge = stepIndex.get(step.getUid());
+        return edge == null || edge == AMBIGUOUS ? -1 : edge;
+    }
+
+    public int size() {
+        return originals.length;
+    }
+
+    public int edgeSize() {
+        return steps.length;
+    }
+
+    public RelayPointForHuman getOriginal(int node) {
+        return originals[node];
+    }
+
+    public boolean isResidence(int node) {
+        return node >= offsets[RESIDENCE] && node < offsets[RESIDENCE + 1];
+    }
+
+    public boolean isCompany(int node) {
+        return node >= offsets[COMPANY] && node < offsets[COMPANY + 1];
+    }
+
+    public boolean isTicketGate(int node) {
+        return node >= offsets[TICKET_GATE] && node < offsets[TICKET_GATE + 1];
+    }
+
+    public boolean isPlatform(int node) {
+        return node >= offsets[PLATFORM] && node < offsets[PLATFORM + 1];
+    }
+
+    public StepForHuman getStep(int edge) {
+        return steps[edge];
+    }
+
+    public int getFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    public int getTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    public double getCost(int edge) {
+        return edgeCost[edge];
+    }
+
+    public int getInBegin(int node) {
+        return inOffsets[node];
+    }
+
+    public int getInEnd(int node) {
+        return inOffsets[node + 1];
+    }
+
+    /**
+     * @param pos getInBegin(node) 以上 getInEnd(node) 未満
+     * @return 辺番号
+     */
+    public int getInEdge(int pos) {
+        return inEdges[pos];
+    }
+
+    public int getOutBegin(int node) {
+        return outOffsets[node];
+    }
+
+    public int getOutEnd(int node) {
+        return outOffsets[node + 1];
+    }
+
+    /**
+     * @param pos getOutBegin(node) 以上 getOutEnd(node) 未満
+     * @return 辺番号
+     */
+    public int getOutEdge(int pos) {
+        return outEdges[pos];
+    }
+
+    /**
+     * goal への最短経路をダイクストラ法で求める. 探索中にメモリを確保しないよう、作業領域は呼び出し元が用意する.
+     *
+     * @param goal 目的地の節点番号
+     * @param cost 節点ごとの goal までのコスト (出力). 到達できない節点は Double.MAX_VALUE
+     * @param viaEdge 節点ごとに最初にたどる辺の番号 (出力). goal と到達できない節点は -1
+     * @param heap size() 以上の容量をもつヒープ
+     */
+    public void search(int goal, double[] cost, int[] viaEdge, IndexedMinHeap heap) {
+        Arrays.fill(cost, 0, size(), Double.MAX_VALUE);
+        Arrays.fill(viaEdge, 0, size(), -1);
+        heap.clear();
+
+        cost[goal] = 0;
+        heap.offer(goal, 0);
+
+        relax(cost, viaEdge, heap);
+    }
+
+    /**
+     * 辺が追加されたときの差分計算. cost と viaEdge には前回の探索結果を引き継いでおくこと
+     * (新しい節点は Double.MAX_VALUE と -1). すべての辺を一度だけ緩和し、改善された節点からのみ探索を再開する.
+     *
+     * @param goal 目的地の節点番号
+     * @param cost 節点ごとの goal までのコスト (入出力)
+     * @param viaEdge 節点ごとに最初にたどる辺の番号 (入出力)
+     * @param heap size() 以上の容量をもつヒープ
+     */
+    public void repair(int goal, double[] cost, int[] viaEdge, IndexedMinHeap heap) {
+        heap.clear();
+
+        cost[goal] = 0;
+        viaEdge[goal] = -1;
+
+        for (int e = 0; e < edgeFrom.length; e++) {
+            int x = edgeTo[e];
+            if (cost[x] == Double.MAX_VALUE) {
+                continue;
+            }
+            int y = edgeFrom[e];
+            double newValue = cost[x] + edgeCost[e];
+            if (newValue < cost[y]) {
+                cost[y] = newValue;
+                viaEdge[y] = e;
+                heap.offer(y, newValue);
+            }
+        }
+
+        relax(cost, viaEdge, heap);
+    }
+
+    protected void relax(double[] cost, int[] viaEdge, IndexedMinHeap heap) {
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+
+            for (int pos = inOffsets[x]; pos < inOffsets[x + 1]; pos++) {
+                int e = inEdges[pos];
+                int y = edgeFrom[e];
+                double newValue = cost[x] + edgeCost[e];
+                if (newValue < cost[y]) {
+                    cost[y] = newValue;
+                    viaEdge[y] = e;
+                    heap.offer(y, newValue);
+                }
+            }
+        }
+    }
+}
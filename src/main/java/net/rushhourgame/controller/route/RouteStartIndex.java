@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rushhourgame.entity.Identifiable;
+import net.rushhourgame.entity.RelayPointForHuman;
+
+/**
+ * ある会社を目的地とする経路ノードを、出発地の種類と id から O(1) で引くための索引.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RouteStartIndex {
+
+    /**
+     * byKind.get(RouteGraph の種類) は id から経路ノードを引く
+     */
+    protected final List<Map<Long, RouteNode>> byKind = new ArrayList<>();
+
+    public RouteStartIndex(List<RouteNode> nodes) {
+        for (int kind = 0; kind < RouteGraph.KIND_NUM; kind++) {
+            byKind.add(new HashMap<>());
+        }
+        nodes.forEach(node -> {
+            int kind = RouteGraph.kindOf(node.getOriginal());
+            if (kind >= 0) {
+                byKind.get(kind).putIfAbsent(node.getOriginal().getId(), node);
+            }
+        });
+    }
+
+    /**
+     * @param start 出発地
+     * @return start を起点とする経路ノード. 経路網になければ null
+     */
+    public RouteNode find(Identifiable start) {
+        if (!(start instanceof RelayPointForHuman)) {
+            return null;
+        }
+        int kind = RouteGraph.kindOf((RelayPointForHuman) start);
+        return kind < 0 ? null : byKind.get(kind).get(start.getId());
+    }
+}
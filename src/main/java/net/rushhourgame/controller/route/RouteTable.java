@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 1回の経路探索の結果. 作った後は会社ごとの経路ノードの一覧を変更しないため、
+ * 経路探索スレッドで作ったものをゲームスレッドへそのまま渡せる.
+ * 出発地の索引とコスト表も作るときにまとめて求める.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public final class RouteTable {
+
+    /**
+     * 一度も経路探索していないときの経路表
+     */
+    public static final RouteTable EMPTY = new RouteTable(0, 0, Collections.emptyMap(), Collections.emptyList());
+
+    protected final long version;
+    protected final long basedOn;
+    protected final Map<Long, List<RouteNode>> routes;
+    protected final Map<Long, RouteStartIndex> starts;
+    protected final CostMatrix costMatrix;
+    protected final List<TemporaryHumanRouteNode> humanNodes;
+
+    /**
+     * @param version 経路表の通し番号
+     * @param basedOn 探索を始めた時点での経路網の変更の通し番号
+     * @param routes 会社の id → 経路ノード
+     * @param humanNodes 探索を始めた時点で移動中だった人の節点
+     */
+    public RouteTable(long version, long basedOn, Map<Long, List<RouteNode>> routes, List<TemporaryHumanRouteNode> humanNodes) {
+        this.version = version;
+        this.basedOn = basedOn;
+        this.routes = Collections.unmodifiableMap(new HashMap<>(routes));
+        Map<Long, RouteStartIndex> index = new HashMap<>();
+        routes.forEach((companyId, nodes) -> index.put(companyId, new RouteStartIndex(nodes)));
+        this.starts = Collections.unmodifiableMap(index);
+        this.costMatrix = CostMatrix.of(routes);
+        this.humanNodes = Collections.unmodifiableList(humanNodes);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getBasedOn() {
+        return basedOn;
+    }
+
+    public Map<Long, List<RouteNode>> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @param companyId 会社の id
+     * @return 出発地から経路ノードを引く索引. 会社が経路表になければ null
+     */
+    public RouteStartIndex findStartIndex(long companyId) {
+        return starts.get(companyId);
+    }
+
+    public CostMatrix getCostMatrix() {
+        return costMatrix;
+    }
+
+    public List<TemporaryHumanRouteNode> getHumanNodes() {
+        return humanNodes;
+    }
+}
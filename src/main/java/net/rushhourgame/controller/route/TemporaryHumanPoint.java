@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.List;
 import net.rushhourgame.entity.Human;
 import net.rushhourgame.entity.Identifiable;
+import net.rushhourgame.entity.Platform;
 import net.rushhourgame.entity.Pointable;
 import net.rushhourgame.entity.RelayPointForHuman;
 import net.rushhourgame.entity.SimplePoint;
@@ -34,22 +35,54 @@ import net.rushhourgame.entity.StepForHuman;
 
 /**
  * 人の移動中に経路がリセットされたとき、その人の現在地を開始点として再経路探索するためのクラス.
+ * 経路探索は人が動いている間に行うため、作った時点の座標と居場所を写しておく.
  * @author yasshi2525 (https://twitter.com/yasshi2525)
  */
 public class TemporaryHumanPoint implements RelayPointForHuman {
     protected Human human;
     protected Pointable point;
+    protected Human.StandingOn stand;
+    protected Platform onPlatform;
     protected RouteNode node;
     
     public TemporaryHumanPoint(Human h) {
         this.point = new SimplePoint(h);
         this.human = h;
+        this.stand = h.getStandingOn();
+        this.onPlatform = h.getOnPlatform();
     }
 
     public Human getHuman() {
         return human;
     }
 
+    /**
+     * @return 作った時点で人がいた場所
+     */
+    public Human.StandingOn getStandingOn() {
+        return stand;
+    }
+
+    /**
+     * @return 作った時点で人がいたプラットフォーム
+     */
+    public Platform getOnPlatform() {
+        return onPlatform;
+    }
+
+    /**
+     * @return 作った時点から人の居場所が変わっていないか. 変わっていればこの点から求めた経路は使えない
+     */
+    public boolean isUpToDate() {
+        if (human.getStandingOn() != stand) {
+            return false;
+        }
+        if (onPlatform == null) {
+            return human.getOnPlatform() == null;
+        }
+        return onPlatform.equalsId(human.getOnPlatform());
+    }
+
     public RouteNode getNode() {
         return node;
     }
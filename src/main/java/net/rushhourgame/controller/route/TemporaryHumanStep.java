@@ -72,6 +72,11 @@ public class TemporaryHumanStep implements StepForHuman {
         return h.walkTo(interval, speed, to);
     }
 
+    @Override
+    public Pointable getWalkingGoal() {
+        return to;
+    }
+
     @Override
     public boolean isFinished(Human h) {
         return h.distTo(to) == 0;
@@ -23,9 +23,14 @@
  */
 package net.rushhourgame.entity;
 
+import java.util.SplittableRandom;
 import javax.persistence.MappedSuperclass;
+import net.rushhourgame.RushHourRandom;
 
 /**
+ * 座標をもつEntity. キャッシュ中に状態が変わったものは dirty になり、
+ * CachedController はデータベースと同期するとき dirty なものだけを書き出す.
+ * 乱数は Entity ごとの乱数列 ({@link RushHourRandom#streamOf(Class, long)}) から取り出す.
  *
  * @author yasshi2525 (https://twitter.com/yasshi2525)
  */
@@ -37,6 +42,22 @@ public class GeoEntity extends AbstractEntity implements Pointable {
     protected double x;
     protected double y;
 
+    /**
+     * 最後にデータベースと同期してから状態が変わったか. 永続化しない
+     */
+    protected transient boolean dirty;
+
+    /**
+     * この Entity の乱数列. 永続化しない
+     */
+    protected transient SplittableRandom random;
+
+    /**
+     * random を作ったときの RushHourRandom の世代と id
+     */
+    protected transient long randomGeneration;
+    protected transient long randomId;
+
     @Override
     public double getX() {
         return x;
@@ -44,6 +65,7 @@ public class GeoEntity extends AbstractEntity implements Pointable {
 
     public void setX(double x) {
         this.x = x;
+        markDirty();
     }
 
     @Override
@@ -53,16 +75,51 @@ public class GeoEntity extends AbstractEntity implements Pointable {
 
     public void setY(double y) {
         this.y = y;
+        markDirty();
     }
     
     public void setXY(Pointable p) {
         this.x = p.getX();
         this.y = p.getY();
+        markDirty();
+    }
+
+    /**
+     * 永続化する状態を変えたときに呼ぶ
+     */
+    protected void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * データベースと同期したときに呼ぶ
+     */
+    public void clean() {
+        dirty = false;
     }
     
+    /**
+     * 種が変わったとき、永続化して id が決まったときは作り直す
+     *
+     * @return この Entity の乱数列
+     */
+    protected SplittableRandom random() {
+        RushHourRandom rand = RushHourRandom.getInstance();
+        if (random == null || randomGeneration != rand.getGeneration() || randomId != id) {
+            randomGeneration = rand.getGeneration();
+            randomId = id;
+            random = rand.streamOf(getClass(), id);
+        }
+        return random;
+    }
+
     public Pointable makeNearPoint(double maxdist) {
-        double dist = Math.random() * maxdist;
-        double radian = Math.random() * Math.PI * 2;
+        double dist = random().nextDouble() * maxdist;
+        double radian = random().nextDouble() * Math.PI * 2;
 
         return new SimplePoint(getX() + Math.cos(radian) * dist, getY() + Math.sin(radian) * dist);
     }
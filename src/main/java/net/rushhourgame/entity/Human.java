@@ -30,6 +30,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.PreUpdate;
 import javax.validation.constraints.NotNull;
 import net.rushhourgame.controller.RouteSearcher;
 import net.rushhourgame.controller.route.RouteEdge;
@@ -52,6 +53,10 @@ import net.rushhourgame.entity.hroute.StepForHumanThroughTrain;
         name = "Human.deleteBy",
         query = "DELETE FROM Human obj WHERE obj = :obj"
 )
+@NamedQuery(
+        name = "Human.deleteByIds",
+        query = "DELETE FROM Human obj WHERE obj.id IN :ids"
+)
 public class Human extends GeoEntity implements Pointable {
 
     private static final Logger LOG = Logger.getLogger(Human.class.getName());
@@ -82,22 +87,43 @@ public class Human extends GeoEntity implements Pointable {
     protected boolean isFinished;
 
     public void step(long interval, double speed) {
+        step(interval, speed, false);
+    }
+
+    /**
+     * 改札口の通過など、ほかの人と共有する混雑度を変更するステップの手前まで進める.
+     * 残りは {@link #step(long, double)} に渡すと、一度に進めた場合と同じ結果になる
+     *
+     * @param interval 進める時間
+     * @param speed 歩く速さ
+     * @return 進めきれなかった時間. 0 ならば進め終わった
+     */
+    public long stepUntilExclusive(long interval, double speed) {
+        return step(interval, speed, true);
+    }
+
+    protected long step(long interval, double speed, boolean untilExclusive) {
         if (isFinished || current == null) {
-            return;
+            return 0;
         }
 
         while (interval > 0) {
             StepForHuman currentStep = current.getOriginal();
+            if (untilExclusive && currentStep.isExclusive()) {
+                return interval;
+            }
             interval -= currentStep.step(this, interval, speed);
             if (currentStep.isFinished(this)) {
                 // 目的地に到着した
                 if (current.getTo().isEnd()) {
                     isFinished = true;
-                    return;
+                    markDirty();
+                    return 0;
                 }
                 shiftEdge();
             }
         }
+        return 0;
     }
 
     public long walkTo(long interval, double speed, Pointable goal) {
@@ -108,13 +134,40 @@ public class Human extends GeoEntity implements Pointable {
         return isFinished;
     }
 
+    /**
+     * クライアントが次の回までの位置を補間するために使う.
+     * 乗車中は電車が向かっている地点、歩いているときは歩いて向かっている地点を返す
+     *
+     * @return 向かっている地点. 止まっているときは null
+     */
+    public Pointable getHeading() {
+        if (onTrain != null) {
+            return onTrain.getHeading();
+        }
+        if (isFinished || current == null) {
+            return null;
+        }
+        return current.getOriginal().getWalkingGoal();
+    }
+
+    /**
+     * @param walkingSpeed 歩く速さ
+     * @return getHeading の地点へ向かう速さ
+     */
+    public double getHeadingSpeed(double walkingSpeed) {
+        return onTrain != null ? onTrain.getTrain().getSpeed() : walkingSpeed;
+    }
+
     public void getInTrain(TrainDeployed t) {
         onPlatform.exit();
+        onPlatform.removeWaiting(this);
         LOG.log(Level.FINER, "{0}#getInTraiin {1} exitted from {2} ({3})", 
                 new Object[]{Human.class, this, onPlatform, onPlatform.occupied});
         onPlatform = null;
         onTrain = t;
+        onTrain.addPassenger(this);
         stand = StandingOn.TRAIN;
+        markDirty();
     }
     
     /**
@@ -122,23 +175,61 @@ public class Human extends GeoEntity implements Pointable {
      */
     public void getOffTrainForce() {
         setXY(makeNearPoint(onTrain.getTrain().getProdist()));
+        onTrain.removePassenger(this);
         onTrain = null;
         stand = StandingOn.GROUND;
         current = null;
+        markDirty();
     }
 
     public void getOffTrain(Platform platform) {
+        setXY(onTrain);
+        onTrain.removePassenger(this);
         onTrain = null;
         onPlatform = platform;
         onPlatform.enter(true);
+        onPlatform.addWaiting(this);
         LOG.log(Level.FINER, "{0}#getOffTrain {1} entered to {2} ({3})", 
                 new Object[]{Human.class, this, onPlatform, onPlatform.occupied});
         shiftEdge(); // 乗車タスクの完了
         stand = StandingOn.PLATFORM;
+        markDirty();
+    }
+
+    /**
+     * 乗車中は電車の座標を返す. 電車が動くたびに乗客の座標を書き換えずに済むようにするため
+     *
+     * @return x座標
+     */
+    @Override
+    public double getX() {
+        return onTrain != null ? onTrain.getX() : x;
+    }
+
+    /**
+     * 乗車中は電車の座標を返す
+     *
+     * @return y座標
+     */
+    @Override
+    public double getY() {
+        return onTrain != null ? onTrain.getY() : y;
+    }
+
+    /**
+     * 乗車中の座標は電車から引いているため、保存する前に書き写す
+     */
+    @PreUpdate
+    protected void materializePoint() {
+        if (onTrain != null) {
+            x = onTrain.getX();
+            y = onTrain.getY();
+        }
     }
 
     public void setStandingOn(StandingOn stand) {
         this.stand = stand;
+        markDirty();
     }
 
     public StandingOn getStandingOn() {
@@ -150,7 +241,13 @@ public class Human extends GeoEntity implements Pointable {
     }
 
     public void setOnPlatform(Platform onPlatform) {
+        if (this.onPlatform != null && this.onPlatform != onPlatform) {
+            this.onPlatform.removeWaiting(this);
+        }
         this.onPlatform = onPlatform;
+        if (onPlatform != null) {
+            onPlatform.addWaiting(this);
+        }
     }
 
     public TrainDeployed getOnTrain() {
@@ -161,13 +258,16 @@ public class Human extends GeoEntity implements Pointable {
         from.pass();
         to.enter();
         this.onPlatform = to;
+        to.addWaiting(this);
         LOG.log(Level.FINER, "{0}#enterIntoPlatform {1} entered to {2} ({3})", 
                 new Object[]{Human.class, this, onPlatform, onPlatform.occupied});
         stand = StandingOn.PLATFORM;
+        markDirty();
     }
 
     public void exitFromPlatform(Platform from, TicketGate to) {
         from.exit();
+        from.removeWaiting(this);
         to.pass();
         LOG.log(Level.FINER, "{0}#exitFromPlatform {1} exitted from {2} ({3})", 
                 new Object[]{Human.class, this, from, from.occupied});
@@ -175,6 +275,7 @@ public class Human extends GeoEntity implements Pointable {
 
         setXY(makeNearPoint(to.getProdist()));
         stand = StandingOn.GROUND;
+        markDirty();
     }
     
     /**
@@ -182,19 +283,39 @@ public class Human extends GeoEntity implements Pointable {
      */
     public void exitFromPlatformForce() {
         onPlatform.exit();
+        onPlatform.removeWaiting(this);
         
         setXY(makeNearPoint(onPlatform.getStation().getTicketGate().getProdist()));
         stand = StandingOn.GROUND;
         
         onPlatform = null;
         current = null;
+        markDirty();
     }
 
     public void setOnTrain(TrainDeployed onTrain) {
+        if (this.onTrain != null && this.onTrain != onTrain) {
+            this.onTrain.removePassenger(this);
+        }
         this.onTrain = onTrain;
+        if (onTrain != null) {
+            onTrain.addPassenger(this);
+        }
         stand = StandingOn.TRAIN;
     }
 
+    /**
+     * 死んだ人を乗っている電車、いるプラットフォームの一覧から外す
+     */
+    public void leave() {
+        if (onTrain != null) {
+            onTrain.removePassenger(this);
+        }
+        if (onPlatform != null) {
+            onPlatform.removeWaiting(this);
+        }
+    }
+
     protected void shiftEdge() {
         current = current.getTo().getViaEdge();
     }
@@ -209,10 +330,12 @@ public class Human extends GeoEntity implements Pointable {
 
     public void consumeLifespan(long interval) {
         lifespan -= interval;
+        markDirty();
     }
 
     public void setLifespan(long lifespan) {
         this.lifespan = lifespan;
+        markDirty();
     }
 
     public boolean shouldDie() {
@@ -266,6 +389,7 @@ public class Human extends GeoEntity implements Pointable {
 
         x += dist * Math.cos(theta);
         y += dist * Math.sin(theta);
+        markDirty();
     }
 
     public void merge(Company cmp) {
@@ -70,6 +70,7 @@ public class Line extends GeoEntity implements Ownable, Nameable {
 
     public void setName(String name) {
         this.name = name;
+        markDirty();
     }
 
     public void setSteps(List<LineStep> steps) {
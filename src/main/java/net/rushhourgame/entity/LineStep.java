@@ -96,6 +96,10 @@ public class LineStep extends AbstractEntity implements Ownable {
 
     public void setNext(LineStep next) {
         this.next = next;
+        // つなぎ替えた区間はキャッシュ中の路線ごと書き出す
+        if (parent != null) {
+            parent.markDirty();
+        }
     }
 
     public Station getOnStation() {
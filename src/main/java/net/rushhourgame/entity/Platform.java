@@ -23,7 +23,10 @@
  */
 package net.rushhourgame.entity;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -77,6 +80,11 @@ public class Platform extends GeoEntity implements Pointable, RelayPointForHuman
     @Min(0)
     protected int occupied;
 
+    /**
+     * プラットフォームにいる人. Human が出入りするときに更新する
+     */
+    protected transient Set<Human> waiting;
+
     public Station getStation() {
         return station;
     }
@@ -99,6 +107,7 @@ public class Platform extends GeoEntity implements Pointable, RelayPointForHuman
 
     public void setCapacity(int capacity) {
         this.capacity = capacity;
+        markDirty();
     }
 
     public boolean canEnter() {
@@ -114,14 +123,45 @@ public class Platform extends GeoEntity implements Pointable, RelayPointForHuman
             throw new IllegalStateException("Tried to enter full platform.");
         }
         occupied++;
+        markDirty();
         LOG.log(Level.FINER, "{0}#enter occupied = {1}", new Object[]{Platform.class, occupied});
     }
 
     public void exit() {
         occupied--;
+        markDirty();
         LOG.log(Level.FINER, "{0}#exit occupied = {1}", new Object[]{Platform.class, occupied});
     }
 
+    /**
+     * @return プラットフォームにいる人
+     */
+    public Set<Human> getWaiting() {
+        return Collections.unmodifiableSet(waiting());
+    }
+
+    public void addWaiting(Human h) {
+        waiting().add(h);
+    }
+
+    public void removeWaiting(Human h) {
+        waiting().remove(h);
+    }
+
+    /**
+     * 人の一覧を作り直す前に空にする
+     */
+    public void clearWaiting() {
+        waiting().clear();
+    }
+
+    protected Set<Human> waiting() {
+        if (waiting == null) {
+            waiting = new LinkedHashSet<>();
+        }
+        return waiting;
+    }
+
     @Override
     public double getX() {
         return railNode.getX();
@@ -43,6 +43,10 @@ import net.rushhourgame.entity.troute.LineStepStopping;
  */
 @Entity
 @NamedQueries({
+    @NamedQuery(
+            name = "RailEdge.findAll",
+            query = "SELECT obj FROM RailEdge obj"
+    ),
     @NamedQuery(
             name = "RailEdge.find",
             query = "SELECT obj FROM RailEdge obj WHERE obj._from = :from AND obj._to = :to"
@@ -42,6 +42,10 @@ import net.rushhourgame.entity.troute.LineStepMoving;
  */
 @Entity
 @NamedQueries({
+    @NamedQuery(
+            name = "RailNode.findAll",
+            query = "SELECT obj FROM RailNode obj"
+    ),
     @NamedQuery(
             name = "RailNode.findIn",
             query = "SELECT obj FROM RailNode obj WHERE obj.x > :x1 AND obj.x < :x2 AND obj.y > :y1 AND obj.y < :y2"
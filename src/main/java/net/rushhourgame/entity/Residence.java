@@ -72,6 +72,7 @@ public class Residence extends GeoEntity implements Pointable, RelayPointForHuma
 
     public void setCapacity(int capacity) {
         this.capacity = capacity;
+        markDirty();
     }
 
     public long getInterval() {
@@ -80,6 +81,7 @@ public class Residence extends GeoEntity implements Pointable, RelayPointForHuma
 
     public void setInterval(long _interval) {
         this._interval = _interval;
+        markDirty();
     }
 
     public long getCount() {
@@ -88,26 +90,38 @@ public class Residence extends GeoEntity implements Pointable, RelayPointForHuma
 
     public void setCount(long count) {
         this.count = count;
+        markDirty();
     }
 
     public void step(long interval) {
         count += interval;
+        markDirty();
     }
 
     public void consume() {
         count -= _interval;
+        markDirty();
     }
 
     public boolean expires() {
         return count >= _interval;
     }
 
+    /**
+     * @param companies 行き先の候補. 空でないこと
+     * @return この住宅の乱数列で選んだ行き先
+     */
+    public Company chooseDest(List<Company> companies) {
+        return companies.get(random().nextInt(companies.size()));
+    }
+
     public double getProdist() {
         return prodist;
     }
 
     public void setProdist(double prodist) {
         this.prodist = prodist;
+        markDirty();
     }
 
     @Override
@@ -84,6 +84,7 @@ public class Station extends GeoEntity implements Pointable, Ownable, Nameable {
 
     public void setName(String name) {
         this.name = name;
+        markDirty();
     }
 
     @Override
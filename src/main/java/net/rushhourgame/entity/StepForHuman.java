@@ -45,4 +45,23 @@ public interface StepForHuman {
     public long step(Human h, long interval, double speed);
     
     public boolean isFinished(Human h);
+
+    /**
+     * 改札口やプラットフォームなど、複数の人で共有する混雑度を変更するか.
+     * 人を並列に動かすときは、このステップだけ元の順序で1人ずつ進める
+     *
+     * @return 共有する混雑度を変更するか
+     */
+    public default boolean isExclusive() {
+        return false;
+    }
+
+    /**
+     * 歩いて移動するステップならば、向かっている地点を返す. クライアントが位置を補間するために使う
+     *
+     * @return 向かっている地点. 歩かないステップは null
+     */
+    public default Pointable getWalkingGoal() {
+        return null;
+    }
 }
@@ -85,10 +85,15 @@ public class TicketGate extends GeoEntity implements Pointable, RelayPointForHum
     protected List<StepForHumanTransfer> tgToList;
     
     public void step(long interval) {
+        // 混雑していない改札口は変化しないため、書き出し対象にしない
+        if (occupied <= 0) {
+            return;
+        }
         occupied -= mobility * interval;
         if (occupied < 0) {
             occupied = 0;
         }
+        markDirty();
     }
     
     public boolean canEnter() {
@@ -101,6 +106,7 @@ public class TicketGate extends GeoEntity implements Pointable, RelayPointForHum
     
     public void pass() {
         occupied++;
+        markDirty();
     }
     
     protected boolean isAvailable() {
@@ -121,6 +127,7 @@ public class TicketGate extends GeoEntity implements Pointable, RelayPointForHum
 
     public void setGateNum(int gateNum) {
         this.gateNum = gateNum;
+        markDirty();
     }
 
     public double getMobility() {
@@ -129,6 +136,7 @@ public class TicketGate extends GeoEntity implements Pointable, RelayPointForHum
 
     public void setMobility(double mobility) {
         this.mobility = mobility;
+        markDirty();
     }
 
     public double getProdist() {
@@ -137,6 +145,7 @@ public class TicketGate extends GeoEntity implements Pointable, RelayPointForHum
 
     public void setProdist(double prodist) {
         this.prodist = prodist;
+        markDirty();
     }
 
     @Override
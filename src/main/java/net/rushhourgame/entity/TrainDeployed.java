@@ -23,7 +23,11 @@
  */
 package net.rushhourgame.entity;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.persistence.Entity;
@@ -68,6 +72,11 @@ public class TrainDeployed extends GeoEntity {
 
     protected int occupied;
 
+    /**
+     * 乗っている人. Human が乗り降りするときに更新する
+     */
+    protected transient Set<Human> passengers;
+
     public Train getTrain() {
         return train;
     }
@@ -87,7 +96,7 @@ public class TrainDeployed extends GeoEntity {
     public void registerCurrent(LineStep current) {
         progress = 0.0;
         replaceCurrent(current);
-        registerPoint(null);
+        registerPoint();
     }
     
     /**
@@ -96,26 +105,27 @@ public class TrainDeployed extends GeoEntity {
      */
     public void replaceCurrent(LineStep current) {
         this.current = current;
+        markDirty();
     }
     
     public void mergeCurrent(LineStep current) {
         this.current = current;
-        registerPoint(null);
+        registerPoint();
     }
 
-    public void consumeTime(List<Human> humans, @Min(0) long remainTime) {
+    public void consumeTime(@Min(0) long remainTime) {
         while (remainTime > 0) {
             if (shouldRun()) {
-                remainTime -= consumeTimeByRunning(remainTime, humans);
+                remainTime -= consumeTimeByRunning(remainTime);
             }
             if (shouldShiftStep()) {
-                shiftStep(humans);
+                shiftStep();
             }
             if (shouldStay()) {
                 remainTime -= consumeTimeByStaying(remainTime);
             }
             if (shouldShiftStep()) {
-                shiftStep(humans);
+                shiftStep();
             }
         }
     }
@@ -128,8 +138,8 @@ public class TrainDeployed extends GeoEntity {
         return current.getDeparture() != null;
     }
 
-    protected long consumeTimeByRunning(@Min(0) long time, List<Human> humans) {
-        return run(Math.min(calcMovableDist(time), calcRemainDist()), humans);
+    protected long consumeTimeByRunning(@Min(0) long time) {
+        return run(Math.min(calcMovableDist(time), calcRemainDist()));
     }
 
     protected double calcRemainDist() {
@@ -144,12 +154,12 @@ public class TrainDeployed extends GeoEntity {
      * 指定された距離走行する
      *
      * @param dist 走行する距離
-     * @param humans すべての人
      * @return 消費した時間
      */
-    protected long run(@Min(0) double dist, List<Human> humans) {
+    protected long run(@Min(0) double dist) {
         progress += dist / current.getDist();
-        registerPoint(humans);
+        registerPoint();
+        markDirty();
         return (long) Math.ceil(dist / train.getSpeed());
     }
 
@@ -169,35 +179,33 @@ public class TrainDeployed extends GeoEntity {
      */
     protected long stay(@Min(0) long time) {
         progress += time / (double) train.getMobility();
+        markDirty();
         return time;
     }
 
-    protected void registerPoint(List<Human> humans) {
+    /**
+     * 進捗から座標を求める. 乗客の座標は Human が電車から引くため、書き換えない
+     */
+    protected void registerPoint() {
         x = current.getStartRailNode().getX() * (1.0 - progress)
                 + current.getGoalRailNode().getX() * progress;
         y = current.getStartRailNode().getY() * (1.0 - progress)
                 + current.getGoalRailNode().getY() * progress;
-        if (humans != null) {
-            humans.stream().filter(h -> equalsId(h.getOnTrain()))
-                    .forEach(h -> {
-                        h.setX(x);
-                        h.setY(y);
-                    });
-        }
     }
 
     protected boolean shouldShiftStep() {
         return progress >= 1.0;
     }
 
-    protected void shiftStep(List<Human> humans) {
+    protected void shiftStep() {
         // 到着した瞬間に人を降ろす
         if (current.getStopping() != null) {
-            freeHuman(humans, current.getStopping().getGoal());
+            freeHuman(new ArrayList<>(getPassengers()), current.getStopping().getGoal());
         }
         // 発車する瞬間に人を乗せる
         if (current.getDeparture() != null) {
-            collectHuman(humans, current.getDeparture().getStaying());
+            Platform staying = current.getDeparture().getStaying();
+            collectHuman(new ArrayList<>(staying.getWaiting()), staying);
         }
 
         if (current.getNext() == null) {
@@ -208,22 +216,31 @@ public class TrainDeployed extends GeoEntity {
                     new Object[]{TrainDeployed.class, this, current, current.next});
         current = current.getNext();
         progress = 0.0;
+        markDirty();
     }
 
     protected boolean canRide() {
         return train.getCapacity() - occupied >= 1;
     }
 
-    protected void freeHuman(List<Human> humans, Platform platform) {
-        humans.stream().filter(h -> h.shouldGetOff(this, platform))
+    /**
+     * @param passengers 乗客. 降りた人は乗客から外れるため、写しを渡す
+     * @param platform 到着したプラットフォーム
+     */
+    protected void freeHuman(List<Human> passengers, Platform platform) {
+        passengers.stream().filter(h -> h.shouldGetOff(this, platform))
                 .forEach(h -> {
                     h.getOffTrain(platform);
                     occupied--;
                 });
     }
 
-    protected void collectHuman(List<Human> humans, Platform platform) {
-        humans.stream().filter(h -> h.shouldRide(platform, this))
+    /**
+     * @param waiters プラットフォームにいる人. 乗った人はプラットフォームから外れるため、写しを渡す
+     * @param platform 停車しているプラットフォーム
+     */
+    protected void collectHuman(List<Human> waiters, Platform platform) {
+        waiters.stream().filter(h -> h.shouldRide(platform, this))
                 .forEach(h -> {
                     if (canRide()) {
                         h.getInTrain(this);
@@ -232,14 +249,52 @@ public class TrainDeployed extends GeoEntity {
                 });
     }
 
-    public void step(List<Human> humans, long time) {
-        consumeTime(humans, time);
+    public void step(long time) {
+        consumeTime(time);
+    }
+
+    /**
+     * @return 乗っている人
+     */
+    public Set<Human> getPassengers() {
+        return Collections.unmodifiableSet(passengers());
+    }
+
+    public void addPassenger(Human h) {
+        passengers().add(h);
+    }
+
+    public void removePassenger(Human h) {
+        passengers().remove(h);
+    }
+
+    /**
+     * 乗客の一覧を作り直す前に空にする
+     */
+    public void clearPassengers() {
+        passengers().clear();
+    }
+
+    protected Set<Human> passengers() {
+        if (passengers == null) {
+            passengers = new LinkedHashSet<>();
+        }
+        return passengers;
     }
 
     public double getProgress() {
         return progress;
     }
 
+    /**
+     * クライアントが次の回までの位置を補間するために使う
+     *
+     * @return 走行中ならば向かっている RailNode. 停車中は null
+     */
+    public RailNode getHeading() {
+        return current != null && shouldRun() ? current.getGoalRailNode() : null;
+    }
+
     @Override
     public String toString() {
         return "td(" + id + ")";
@@ -100,6 +100,11 @@ public class StepForHumanDirectly extends AbstractEntity implements StepForHuman
         return h.walkTo(interval, speed, _to);
     }
 
+    @Override
+    public Pointable getWalkingGoal() {
+        return _to;
+    }
+
     @Override
     public boolean isFinished(Human h) {
         return h.distTo(_to) == 0;
@@ -111,6 +111,11 @@ public class StepForHumanIntoStation extends AbstractEntity implements StepForHu
         return _to.equalsId(h.getOnPlatform());
     }
     
+    @Override
+    public boolean isExclusive() {
+        return true;
+    }
+    
     @Override
     public String toString() {
         return _toString(this);
@@ -110,6 +110,11 @@ public class StepForHumanOutOfStation extends AbstractEntity implements StepForH
         return !_from.equalsId(h.getOnPlatform());
     }
     
+    @Override
+    public boolean isExclusive() {
+        return true;
+    }
+    
     @Override
     public String toString() {
         return _toString(this);
@@ -102,6 +102,11 @@ public class StepForHumanTransfer extends AbstractEntity implements StepForHuman
         return h.walkTo(interval, speed, _to);
     }
 
+    @Override
+    public Pointable getWalkingGoal() {
+        return _to;
+    }
+
     @Override
     public boolean isFinished(Human h) {
         return h.distTo(_to) == 0;
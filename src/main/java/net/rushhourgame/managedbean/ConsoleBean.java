@@ -33,7 +33,10 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 import javax.validation.constraints.Min;
+import net.rushhourgame.GameMaster;
 import net.rushhourgame.RushHourSession;
+import net.rushhourgame.TickStatistics;
+import net.rushhourgame.WorldSnapshot;
 import net.rushhourgame.controller.CompanyController;
 import net.rushhourgame.controller.LineController;
 import net.rushhourgame.controller.PlayerController;
@@ -83,6 +86,9 @@ public class ConsoleBean implements Serializable{
     @Inject
     protected LineController lCon;
     
+    @Inject
+    protected GameMaster gm;
+    
     protected Player player;
     
     protected SimplePoint p;
@@ -162,6 +168,34 @@ public class ConsoleBean implements Serializable{
         this.text = text;
     }
     
+    /**
+     * @return 直前の step で削除した人数
+     */
+    public int getLastKilled() {
+        return gm.getSnapshot().getLastKilled();
+    }
+    
+    /**
+     * @return 起動してから削除した人数
+     */
+    public long getTotalKilled() {
+        return gm.getSnapshot().getTotalKilled();
+    }
+
+    /**
+     * @return 最後に終えた回の電車と人の写し. ロックをとらずに読める
+     */
+    public WorldSnapshot getSnapshot() {
+        return gm.getSnapshot();
+    }
+    
+    /**
+     * @return ゲームスレッドの処理時間
+     */
+    public TickStatistics getTickStatistics() {
+        return gm.getStatistics();
+    }
+    
     public boolean hasTailRail() {
         return tailRail != null;
     }
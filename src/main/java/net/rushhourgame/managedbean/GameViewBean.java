@@ -40,14 +40,16 @@ import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import net.rushhourgame.GameMaster;
+import net.rushhourgame.MovementLog.Kind;
 import net.rushhourgame.RushHourProperties;
 import static net.rushhourgame.RushHourProperties.*;
 import net.rushhourgame.RushHourResourceBundle;
 import static net.rushhourgame.RushHourResourceBundle.*;
 import net.rushhourgame.RushHourSession;
+import net.rushhourgame.WorldSnapshot;
 import net.rushhourgame.controller.AssistanceController;
 import net.rushhourgame.controller.CompanyController;
-import net.rushhourgame.controller.HumanController;
 import net.rushhourgame.controller.LineController;
 import net.rushhourgame.controller.PlayerController;
 import net.rushhourgame.controller.RailController;
@@ -56,7 +58,6 @@ import net.rushhourgame.controller.StationController;
 import net.rushhourgame.controller.StepForHumanController;
 import net.rushhourgame.controller.TrainController;
 import net.rushhourgame.entity.Company;
-import net.rushhourgame.entity.Human;
 import net.rushhourgame.entity.Line;
 import net.rushhourgame.entity.LineStep;
 import net.rushhourgame.entity.Player;
@@ -68,7 +69,6 @@ import net.rushhourgame.entity.Residence;
 import net.rushhourgame.entity.SimplePoint;
 import net.rushhourgame.entity.Station;
 import net.rushhourgame.entity.StepForHuman;
-import net.rushhourgame.entity.Train;
 import net.rushhourgame.entity.TrainDeployed;
 import net.rushhourgame.exception.RushHourException;
 import org.primefaces.PrimeFaces;
@@ -108,7 +108,7 @@ public class GameViewBean implements Serializable {
     @Inject
     protected TrainController tCon;
     @Inject
-    protected HumanController hCon;
+    protected GameMaster gm;
     @Inject
     protected RushHourSession session;
     @Inject
@@ -213,10 +213,17 @@ public class GameViewBean implements Serializable {
                 : stCon.findIn(center, getLoadScale());
     }
 
-    public List<Human> getHumans() {
+    /**
+     * 人を1人ずつ表示しない縮尺のとき、代わりに表示する格子ごとの人数.
+     * 写しの中でセルごとにまとめてあるため、人数によらずセルの数だけで済む
+     *
+     * @return 範囲内の人をまとめたもの. 1人ずつ表示する縮尺のときは空
+     */
+    public List<WorldSnapshot.Cluster> getHumanClusters() {
         return scale > Double.parseDouble(prop.get(VIEW_SCALE_HUMAN))
-                ? Collections.EMPTY_LIST
-                : hCon.findIn(center, getLoadScale());
+                ? gm.getSnapshot().aggregateIn(Kind.HUMAN, center, getLoadScale(),
+                        Math.pow(2.0, scale) / Double.parseDouble(prop.get(VIEW_CLUSTER_DIVISION)))
+                : Collections.EMPTY_LIST;
     }
 
     @Transactional
@@ -252,12 +259,6 @@ public class GameViewBean implements Serializable {
                 : sCon.findIn(center, getLoadScale());
     }
 
-    public List<Train> getTrains() {
-        return scale > Double.parseDouble(prop.get(VIEW_SCALE_TRAIN))
-                ? Collections.EMPTY_LIST
-                : tCon.findIn(center, getLoadScale());
-    }
-
     public double getClickX() {
         return click.getX();
     }
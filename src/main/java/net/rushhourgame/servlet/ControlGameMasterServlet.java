@@ -36,6 +36,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.transaction.Transactional;
 import net.rushhourgame.GameMaster;
+import net.rushhourgame.RushHourRandom;
 import net.rushhourgame.entity.Pointable;
 import net.rushhourgame.entity.SimplePoint;
 import net.rushhourgame.exception.RushHourException;
@@ -154,8 +155,8 @@ public class ControlGameMasterServlet extends HttpServlet {
     protected Pointable getPoint(HttpServletRequest request, double defRange) {
         String xStr = request.getParameter("x");
         String yStr = request.getParameter("y");
-        double x = Math.random() * defRange * 2 - defRange;
-        double y = Math.random() * defRange * 2 - defRange;
+        double x = RushHourRandom.getInstance().nextDouble() * defRange * 2 - defRange;
+        double y = RushHourRandom.getInstance().nextDouble() * defRange * 2 - defRange;
 
         try {
             if (xStr != null) {
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.servlet;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import net.rushhourgame.GameMaster;
+import net.rushhourgame.RushHourProperties;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.entity.SimplePoint;
+
+/**
+ * 電車と人の位置を、クライアントが前回受け取った tick からの変化だけ返す.
+ * 画面全体を描き直す p:poll の代わりに gameview.js が定期的に呼ぶ.
+ * <p>
+ * GET パラメタ since, cx, cy, scale をとり、次の形の JSON を返す. 座標は列ごとに並べる.
+ * <pre>
+ * {"tick":12,
+ *  "train":{"full":false,"id":[..],"owner":[..],"x":[..],"y":[..],"tx":[..],"ty":[..],"speed":[..],"removed":[..]},
+ *  "human":{"full":false,"id":[..],"x":[..],"y":[..],"tx":[..],"ty":[..],"speed":[..],"removed":[..]}}
+ * </pre>
+ * tx, ty は向かっている地点 (電車は次の駅の線路の点、歩いている人は目的地)、speed はその速さ (距離/ms).
+ * 止まっているときは tx, ty が x, y と同じで speed が 0. クライアントは次に受け取るまでの位置をこれで補間する.
+ * full が true のときは範囲内の全件を返しているため、クライアントはそれ以外を消す.
+ * since が 0 のとき、変化の記録が残っていないとき、縮尺が表示しない大きさのときは全件 (表示しないときは0件) を返す.
+ * 人を表示しない縮尺のときは、代わりに格子ごとにまとめた数を返す.
+ * <pre>
+ *  "human":{"full":true,"id":[],"x":[],"y":[],..,
+ *           "clusters":{"x":[..],"y":[..],"count":[..],"state":{"GROUND":[..],"PLATFORM":[..],"TRAIN":[..]}}}
+ * </pre>
+ * 全件は GameMaster の WorldSnapshot から読むため、コントローラのロックを待たない.
+ * クライアントは次回 tick を since に渡す.
+ * WebSocket で購読しているクライアントには {@link net.rushhourgame.websocket.MovableEndpoint} から同じ形式で毎回送る.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@WebServlet(name = "MovableServlet", urlPatterns = {"/movable"})
+public class MovableServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = Logger.getLogger(MovableServlet.class.getName());
+
+    @Inject
+    GameMaster gm;
+    @Inject
+    RushHourProperties prop;
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        long since = parseLong(request.getParameter("since"), 0);
+        SimplePoint center = new SimplePoint(
+                parseDouble(request.getParameter("cx"), 0),
+                parseDouble(request.getParameter("cy"), 0));
+        String scaleStr = request.getParameter("scale");
+        double scale = parseDouble(scaleStr != null ? scaleStr : prop.get(VIEW_SCALE_DEFAULT), 0);
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        new MovableWriter(gm.getMovements(), gm.getSnapshot(), prop)
+                .write(response.getWriter(), since, center, scale);
+    }
+
+    protected static long parseLong(String value, long def) {
+        try {
+            return value == null ? def : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            LOG.log(Level.WARNING, "{0}#parseLong invalid parameter {1}", new Object[]{MovableServlet.class, value});
+            return def;
+        }
+    }
+
+    protected static double parseDouble(String value, double def) {
+        try {
+            return value == null ? def : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOG.log(Level.WARNING, "{0}#parseDouble invalid parameter {1}", new Object[]{MovableServlet.class, value});
+            return def;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.servlet;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import net.rushhourgame.MovementLog;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.RushHourProperties;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.WorldSnapshot;
+import net.rushhourgame.entity.SimplePoint;
+
+/**
+ * 電車と人の位置の変化を JSON で書き出す. 形式は {@link MovableServlet} を参照.
+ * MovableServlet と WebSocket での配信で共有する.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class MovableWriter {
+
+    protected final MovementLog log;
+    protected final WorldSnapshot snapshot;
+    protected final RushHourProperties prop;
+
+    /**
+     * @param log 変化の記録
+     * @param snapshot 全件を返すときに読む写し. ロックをとらずに読める
+     * @param prop prop
+     */
+    public MovableWriter(MovementLog log, WorldSnapshot snapshot, RushHourProperties prop) {
+        this.log = log;
+        this.snapshot = snapshot;
+        this.prop = prop;
+    }
+
+    /**
+     * since からの変化を書き出す. 書き出し終わったら writer を閉じる.
+     *
+     * @param writer 書き出し先
+     * @param since クライアントが前回受け取った tick
+     * @param center 表示中心
+     * @param scale 表示縮尺
+     * @return 書き出した内容の tick. クライアントは次回これを since に渡す
+     */
+    public long write(Writer writer, long since, SimplePoint center, double scale) {
+        try (JsonGenerator out = Json.createGenerator(writer)) {
+            out.writeStartObject();
+            long train = writeKind(out, "train", Kind.TRAIN, VIEW_SCALE_TRAIN, true, false, since, center, scale);
+            long human = writeKind(out, "human", Kind.HUMAN, VIEW_SCALE_HUMAN, false, true, since, center, scale);
+            // 種類ごとに求めた時点が異なる場合は古い方を返す. 重複して返した変化はクライアントで上書きされる
+            long tick = Math.min(train, human);
+            out.write("tick", tick);
+            out.writeEnd();
+            return tick;
+        }
+    }
+
+    /**
+     * 1種類分の変化を書き出す
+     *
+     * @param aggregate 1つずつ表示しない縮尺のとき、まとめた数を書き出すか
+     * @return 書き出した内容の tick
+     */
+    protected long writeKind(JsonGenerator out, String name, Kind kind, String viewScaleKey, boolean withOwner,
+            boolean aggregate, long since, SimplePoint center, double scale) {
+        // GameViewBean#getLoadScale と同じく、表示より広い範囲を返す
+        double loadScale = scale + 1;
+
+        out.writeStartObject(name);
+        long tick;
+        if (scale > Double.parseDouble(prop.get(viewScaleKey))) {
+            tick = snapshot.getTick();
+            out.write("full", true);
+            writeColumns(out, new MovementLog.Columns(), withOwner);
+            out.writeStartArray("removed").writeEnd();
+            if (aggregate) {
+                double binSize = Math.pow(2.0, scale) / Double.parseDouble(prop.get(VIEW_CLUSTER_DIVISION));
+                writeClusters(out, snapshot.aggregateIn(kind, center, loadScale, binSize));
+            }
+        } else {
+            MovementLog.Delta delta = log.since(kind, since, center, loadScale);
+            if (delta == null) {
+                // 写しの tick は MovementLog の tick と揃っているため、次回はその続きから変化を求められる
+                tick = snapshot.getTick();
+                out.write("full", true);
+                writeColumns(out, toColumns(snapshot.findIn(kind, center, loadScale)), withOwner);
+                out.writeStartArray("removed").writeEnd();
+            } else {
+                tick = delta.getTick();
+                out.write("full", false);
+                writeColumns(out, delta.getMoved(), withOwner);
+                out.writeStartArray("removed");
+                for (int i = 0; i < delta.getRemoved().size(); i++) {
+                    out.write(delta.getRemoved().get(i));
+                }
+                out.writeEnd();
+            }
+        }
+        out.writeEnd();
+        return tick;
+    }
+
+    protected static MovementLog.Columns toColumns(List<WorldSnapshot.Entry> entries) {
+        MovementLog.Columns columns = new MovementLog.Columns();
+        entries.forEach(e -> columns.add(e.getId(), e.getOwner(), e.getX(), e.getY(),
+                e.getTargetX(), e.getTargetY(), e.getSpeed()));
+        return columns;
+    }
+
+    /**
+     * まとめた数を書き出す. 状態ごとの数は状態の名前ごとに列で並べる
+     */
+    protected static void writeClusters(JsonGenerator out, List<WorldSnapshot.Cluster> clusters) {
+        Set<String> states = new TreeSet<>();
+        clusters.forEach(c -> states.addAll(c.getStates().keySet()));
+
+        out.writeStartObject("clusters");
+        out.writeStartArray("x");
+        clusters.forEach(c -> out.write(c.getX()));
+        out.writeEnd();
+        out.writeStartArray("y");
+        clusters.forEach(c -> out.write(c.getY()));
+        out.writeEnd();
+        out.writeStartArray("count");
+        clusters.forEach(c -> out.write(c.getCount()));
+        out.writeEnd();
+        out.writeStartObject("state");
+        for (String state : states) {
+            out.writeStartArray(state);
+            clusters.forEach(c -> out.write(c.getCount(state)));
+            out.writeEnd();
+        }
+        out.writeEnd();
+        out.writeEnd();
+    }
+
+    protected static void writeColumns(JsonGenerator out, MovementLog.Columns columns, boolean withOwner) {
+        out.writeStartArray("id");
+        for (int i = 0; i < columns.size(); i++) {
+            out.write(columns.getId(i));
+        }
+        out.writeEnd();
+        if (withOwner) {
+            out.writeStartArray("owner");
+            for (int i = 0; i < columns.size(); i++) {
+                out.write(columns.getOwner(i));
+            }
+            out.writeEnd();
+        }
+        out.writeStartArray("x");
+        for (int i = 0; i < columns.size(); i++) {
+            out.write(columns.getX(i));
+        }
+        out.writeEnd();
+        out.writeStartArray("y");
+        for (int i = 0; i < columns.size(); i++) {
+            out.write(columns.getY(i));
+        }
+        out.writeEnd();
+        out.writeStartArray("tx");
+        for (int i = 0; i < columns.size(); i++) {
+            out.write(columns.getTargetX(i));
+        }
+        out.writeEnd();
+        out.writeStartArray("ty");
+        for (int i = 0; i < columns.size(); i++) {
+            out.write(columns.getTargetY(i));
+        }
+        out.writeEnd();
+        out.writeStartArray("speed");
+        for (int i = 0; i < columns.size(); i++) {
+            out.write(columns.getSpeed(i));
+        }
+        out.writeEnd();
+    }
+}
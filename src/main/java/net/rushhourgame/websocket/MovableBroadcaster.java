@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.websocket;
+
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.websocket.Session;
+import net.rushhourgame.MovementLog;
+import net.rushhourgame.RushHourProperties;
+import net.rushhourgame.WorldSnapshot;
+import net.rushhourgame.entity.SimplePoint;
+import net.rushhourgame.servlet.MovableWriter;
+
+/**
+ * 毎回の電車と人の位置の変化を、WebSocket で購読しているクライアントに送る.
+ * <p>
+ * GameMaster が MovementLog に記録し終わるたびに {@link #publish(MovementLog, WorldSnapshot)} を呼ぶ.
+ * 送信はゲームのスレッドとは別のスレッドで行う. 前回の送信が終わっていなければその回は送らず、
+ * 次の回に前回からの変化をまとめて送る.
+ * 表示範囲と前回受け取った tick が同じクライアントには、同じ JSON を1度だけ作って送る.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@ApplicationScoped
+public class MovableBroadcaster implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = Logger.getLogger(MovableBroadcaster.class.getName());
+
+    @Inject
+    protected RushHourProperties prop;
+    @Resource
+    protected ManagedExecutorService executorService;
+
+    protected final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    protected final AtomicBoolean broadcasting = new AtomicBoolean();
+
+    public void subscribe(Session session, SimplePoint center, double scale) {
+        subscribers.put(session.getId(), new Subscriber(session, center, scale));
+        LOG.log(Level.FINE, "{0}#subscribe {1} at {2} x {3}", new Object[]{MovableBroadcaster.class, session.getId(), center, scale});
+    }
+
+    /**
+     * 表示範囲を変える. 次に送るときは範囲内の全件を送る.
+     *
+     * @param session session
+     * @param center 表示中心
+     * @param scale 表示縮尺
+     */
+    public void changeViewport(Session session, SimplePoint center, double scale) {
+        Subscriber subscriber = subscribers.get(session.getId());
+        if (subscriber == null) {
+            LOG.log(Level.WARNING, "{0}#changeViewport unsubscribed session {1}", new Object[]{MovableBroadcaster.class, session.getId()});
+            return;
+        }
+        subscriber.viewport = new Viewport(center, scale);
+    }
+
+    public void unsubscribe(Session session) {
+        subscribers.remove(session.getId());
+        LOG.log(Level.FINE, "{0}#unsubscribe {1}", new Object[]{MovableBroadcaster.class, session.getId()});
+    }
+
+    /**
+     * 購読しているクライアントへの送信を別スレッドで始める.
+     *
+     * @param log 記録し終わった MovementLog
+     * @param snapshot 記録し終わった回の写し
+     */
+    public void publish(MovementLog log, WorldSnapshot snapshot) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        if (!broadcasting.compareAndSet(false, true)) {
+            LOG.log(Level.FINE, "{0}#publish skipped because previous broadcast is running", MovableBroadcaster.class);
+            return;
+        }
+        try {
+            executorService.submit(() -> broadcast(log, snapshot));
+        } catch (RejectedExecutionException e) {
+            broadcasting.set(false);
+            LOG.log(Level.WARNING, "{0}#publish rejected", new Object[]{MovableBroadcaster.class});
+        }
+    }
+
+    protected void broadcast(MovementLog log, WorldSnapshot snapshot) {
+        try {
+            MovableWriter writer = new MovableWriter(log, snapshot, prop);
+            Map<String, Payload> payloads = new HashMap<>();
+            subscribers.values().forEach(s -> s.send(writer, payloads));
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "{0}#broadcast exception in broadcast()", MovableBroadcaster.class);
+            LOG.log(Level.SEVERE, null, e);
+        } finally {
+            broadcasting.set(false);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * 購読しているクライアント
+     */
+    protected static class Subscriber {
+
+        protected final Session session;
+        /**
+         * クライアントが最後に知らせた表示範囲
+         */
+        protected volatile Viewport viewport;
+        /**
+         * 前回送った表示範囲. 送信に失敗したときは null にし、次回全件を送る
+         */
+        protected volatile Viewport sentViewport;
+        /**
+         * 前回送った tick. 送信スレッドだけが読み書きする
+         */
+        protected long since;
+        protected final AtomicBoolean sending = new AtomicBoolean();
+
+        protected Subscriber(Session session, SimplePoint center, double scale) {
+            this.session = session;
+            this.viewport = new Viewport(center, scale);
+        }
+
+        protected void send(MovableWriter writer, Map<String, Payload> payloads) {
+            if (!session.isOpen()) {
+                return;
+            }
+            if (!sending.compareAndSet(false, true)) {
+                // 前回の送信が終わっていないので、次回まとめて送る
+                return;
+            }
+            Viewport current = viewport;
+            long from = current == sentViewport ? since : 0;
+            Payload payload = payloads.computeIfAbsent(from + "," + current.key,
+                    key -> Payload.write(writer, from, current));
+            sentViewport = current;
+            since = payload.tick;
+            session.getAsyncRemote().sendText(payload.text, result -> {
+                if (!result.isOK()) {
+                    LOG.log(Level.FINE, "{0}#send failed to {1}", new Object[]{MovableBroadcaster.class, session.getId()});
+                    sentViewport = null;
+                }
+                sending.set(false);
+            });
+        }
+    }
+
+    /**
+     * 表示範囲
+     */
+    protected static class Viewport {
+
+        protected final SimplePoint center;
+        protected final double scale;
+        protected final String key;
+
+        protected Viewport(SimplePoint center, double scale) {
+            this.center = center;
+            this.scale = scale;
+            this.key = center.getX() + "," + center.getY() + "," + scale;
+        }
+    }
+
+    /**
+     * 1回の送信で共有する JSON
+     */
+    protected static class Payload {
+
+        protected final String text;
+        protected final long tick;
+
+        protected Payload(String text, long tick) {
+            this.text = text;
+            this.tick = tick;
+        }
+
+        protected static Payload write(MovableWriter writer, long since, Viewport viewport) {
+            StringWriter buf = new StringWriter();
+            long tick = writer.write(buf, since, viewport.center, viewport.scale);
+            return new Payload(buf.toString(), tick);
+        }
+    }
+}
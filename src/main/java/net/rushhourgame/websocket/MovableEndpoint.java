@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.websocket;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+import net.rushhourgame.RushHourProperties;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.entity.SimplePoint;
+
+/**
+ * 電車と人の位置の変化を毎回送る WebSocket の窓口.
+ * 送る内容は {@link net.rushhourgame.servlet.MovableServlet} と同じ形式.
+ * <p>
+ * 接続時の表示範囲は接続 URL のパラメタ cx, cy, scale から読む. 表示範囲が変わったら、クライアントは
+ * {"cx":0,"cy":0,"scale":8} の形で知らせる. 知らせた次の回は範囲内の全件が届く.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@ServerEndpoint("/movable/ws")
+public class MovableEndpoint {
+
+    private static final Logger LOG = Logger.getLogger(MovableEndpoint.class.getName());
+
+    @Inject
+    protected MovableBroadcaster broadcaster;
+    @Inject
+    protected RushHourProperties prop;
+
+    @OnOpen
+    public void onOpen(Session session) {
+        Map<String, List<String>> params = session.getRequestParameterMap();
+        String scale = getParameter(params, "scale");
+        broadcaster.subscribe(session,
+                new SimplePoint(parseDouble(getParameter(params, "cx"), 0), parseDouble(getParameter(params, "cy"), 0)),
+                parseDouble(scale != null ? scale : prop.get(VIEW_SCALE_DEFAULT), 0));
+    }
+
+    @OnMessage
+    public void onMessage(Session session, String message) {
+        try (JsonReader reader = Json.createReader(new StringReader(message))) {
+            JsonObject obj = reader.readObject();
+            broadcaster.changeViewport(session,
+                    new SimplePoint(obj.getJsonNumber("cx").doubleValue(), obj.getJsonNumber("cy").doubleValue()),
+                    obj.getJsonNumber("scale").doubleValue());
+        } catch (JsonException | ClassCastException | NullPointerException e) {
+            LOG.log(Level.WARNING, "{0}#onMessage invalid message {1}", new Object[]{MovableEndpoint.class, message});
+        }
+    }
+
+    @OnClose
+    public void onClose(Session session) {
+        broadcaster.unsubscribe(session);
+    }
+
+    @OnError
+    public void onError(Session session, Throwable t) {
+        LOG.log(Level.FINE, "{0}#onError {1}", new Object[]{MovableEndpoint.class, t});
+        broadcaster.unsubscribe(session);
+    }
+
+    protected static String getParameter(Map<String, List<String>> params, String name) {
+        List<String> values = params != null ? params.get(name) : null;
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    protected static double parseDouble(String value, double def) {
+        try {
+            return value == null ? def : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOG.log(Level.WARNING, "{0}#parseDouble invalid parameter {1}", new Object[]{MovableEndpoint.class, value});
+            return def;
+        }
+    }
+}
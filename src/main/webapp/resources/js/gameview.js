@@ -43,6 +43,8 @@ var pixi = require('pixi.js');
  * @property {object} slider 拡大縮小情報。マウスホイールで動的変更する際、最大最小値制御が必要なため導入
  * @property {number} slider.min 許容最小倍率
  * @property {number} slider.max 許容最大倍率 
+ * @property {number} pollInterval 電車と人の位置を取得する間隔 (ms)。
+ * 間は受け取った向かっている地点と速さで補間するため、サーバの処理間隔より長くしている
  */
 var consts = {
     round: 20,
@@ -54,7 +56,8 @@ var consts = {
     slider: {
         min: 0.0,
         max: 16.0
-    }
+    },
+    pollInterval: 3000
 };
 
 /**
@@ -143,7 +146,7 @@ var lineResources = {
 };
 
 /**
- * 移動画像リソースの情報。ポーリングのたびに書き直す必要があるため {@link spriteResources} から分離した。
+ * 移動画像リソースの情報。差分を取得するたびに書き直す必要があるため {@link spriteResources} から分離した。
  * @type {object}
  * @property {SpriteOpts} train 電車画像情報 
  */
@@ -169,12 +172,27 @@ var movableSprites = {
  * 移動ベクタ円情報
  * @type {object}
  * @property {CircleOpts} human 人情報 
+ * @property {object} cluster 1人ずつ表示しない縮尺で、格子ごとにまとめた人数の情報
+ * @property {object} cluster.colors 一番多い状態ごとの描画色
+ * @property {number} cluster.radius 1人のときの大きさ。面積が人数に比例するよう大きくする
+ * @property {number} cluster.maxRadius 最大の大きさ
+ * @property {number} cluster.alpha 透明度
  */
 var movableCircles = {
     human: {
         color: 0xff69b4,
         radius: 3,
         alpha: 0.5
+    },
+    cluster: {
+        colors: {
+            GROUND: 0xff69b4,
+            PLATFORM: 0xffa500,
+            TRAIN: 0x00bfff
+        },
+        radius: 3,
+        maxRadius: 30,
+        alpha: 0.5
     }
 };
 
@@ -227,6 +245,7 @@ exports.init = function (param) {
 
     // 画像ロード後、スプライトを表示
     initPixi();
+    startMovablePolling();
 };
 
 initPixi = function () {
@@ -266,7 +285,8 @@ initPixi = function () {
 
     scope.movablegraphics = {
         'train': {},
-        'human': {}
+        'human': {},
+        'cluster': {}
     };
 
     // 画像をロードしたあと、イベントハンドラスプライトを表示
@@ -443,31 +463,298 @@ deleteOldGraphics = function (graphics) {
     }
 };
 
+/**
+ * 表示範囲が変わったとき、描画済みの電車と人を保持しているゲーム上の座標から描き直す。
+ * 範囲外から入ってくるものを取得するため、次回は範囲内の全件を取得する。
+ */
 fetchMovableGraphics = function () {
     var scope = $(document).data('scope');
-    markOldToGraphics(scope.movablegraphics);
+    scope.movableTick = 0;
+    sendViewport();
+
+    for (var name in scope.movablegraphics) {
+        for (var key in scope.movablegraphics[name]) {
+            var obj = scope.movablegraphics[name][key];
+            var pos = toViewPos(obj.gamex, obj.gamey);
+            obj.x = pos.x;
+            obj.y = pos.y;
+        }
+    }
+    scope.renderer.render(scope.stage);
+};
 
-    for (var name in movableSprites) {
-        $('.' + name).each(function (i, elm) {
-            var opts = $(elm).data('ismine') ? movableSprites[name].my : movableSprites[name].other;
-            upsertSprite(name, name, scope.movablegraphics, $(elm).attr('id'), $(elm), opts);
-        });
+/**
+ * 電車と人の位置の変化を受け取り始める。
+ * WebSocket が使えるときはサーバから毎回送られてくる変化を反映する。
+ * 使えないとき、切断されたときは定期的に取得する。
+ */
+startMovablePolling = function () {
+    var scope = $(document).data('scope');
+    scope.movableTick = 0;
+    if (!openMovableSocket()) {
+        startPollTimer();
     }
+    if (typeof requestAnimationFrame !== 'undefined') {
+        requestAnimationFrame(advanceMovables);
+    }
+};
 
-    for (var name in movableCircles) {
-        $('.' + name).each(function (i, elm) {
-            var pos = toViewPos(
-                    parseFloat($(elm).data('x')),
-                    parseFloat($(elm).data('y')));
-            upsertCircle(name, scope.movablegraphics,
-                    $(elm).attr('id'), pos, movableCircles[name]);
-        });
+/**
+ * 前回の描画からの経過時間分、電車と人を向かっている地点へ進めて描き直す。
+ * 次の変化を受け取るまでの間を補間するため、毎フレーム呼ぶ。
+ * @param {number} now 現在時刻 (ms)
+ */
+advanceMovables = function (now) {
+    var scope = $(document).data('scope');
+    var elapsed = scope.lastFrame === undefined ? 0 : now - scope.lastFrame;
+    scope.lastFrame = now;
+
+    if (moveMovables(elapsed)) {
+        scope.renderer.render(scope.stage);
+    }
+    requestAnimationFrame(advanceMovables);
+};
+
+/**
+ * 電車と人を向かっている地点へ進める。向かっている地点を越えては進めない。
+ * @param {number} elapsed 経過時間 (ms)
+ * @returns {boolean} 動いたものがあるか
+ */
+moveMovables = function (elapsed) {
+    var scope = $(document).data('scope');
+    var moved = false;
+
+    for (var name in scope.movablegraphics) {
+        for (var key in scope.movablegraphics[name]) {
+            var obj = scope.movablegraphics[name][key];
+            if (!obj.speed) {
+                continue;
+            }
+            var rest = dist(obj.gamex, obj.gamey, obj.targetx, obj.targety);
+            var step = obj.speed * elapsed;
+            if (rest <= step) {
+                obj.gamex = obj.targetx;
+                obj.gamey = obj.targety;
+                obj.speed = 0;
+            } else {
+                obj.gamex += (obj.targetx - obj.gamex) * step / rest;
+                obj.gamey += (obj.targety - obj.gamey) * step / rest;
+            }
+            var pos = toViewPos(obj.gamex, obj.gamey);
+            obj.x = pos.x;
+            obj.y = pos.y;
+            moved = true;
+        }
+    }
+    return moved;
+};
+
+startPollTimer = function () {
+    var scope = $(document).data('scope');
+    if (!scope.pollTimer) {
+        scope.pollTimer = setInterval(pollMovables, consts.pollInterval);
+    }
+};
+
+/**
+ * 電車と人の位置の変化を送ってもらう WebSocket を開く。
+ * @returns {boolean} 開き始めたかどうか
+ */
+openMovableSocket = function () {
+    var scope = $(document).data('scope');
+    if (typeof WebSocket === 'undefined' || !scope.$movablemodel.data('url')) {
+        return false;
+    }
+    var socket = new WebSocket(toSocketUrl(scope.$movablemodel.data('url'), getViewport()));
+    socket.onopen = sendViewport;
+    socket.onmessage = function (event) {
+        applyMovables(JSON.parse(event.data));
+    };
+    socket.onclose = function () {
+        scope.movableSocket = null;
+        startPollTimer();
+    };
+    scope.movableSocket = socket;
+    return true;
+};
+
+/**
+ * 変化を取得する URL から WebSocket の URL を求める。接続時の表示範囲はパラメタで渡す。
+ * @param {string} url 変化を取得する URL (コンテキストパスからの絶対パス)
+ * @param {object} viewport 表示範囲 {cx, cy, scale}
+ * @returns {string} WebSocket の URL
+ */
+toSocketUrl = function (url, viewport) {
+    return (location.protocol === 'https:' ? 'wss://' : 'ws://') + location.host + url + '/ws'
+            + (viewport ? '?' + $.param(viewport) : '');
+};
+
+/**
+ * @returns {object} 今の表示範囲 {cx, cy, scale}
+ */
+getViewport = function () {
+    var scope = $(document).data('scope');
+    return {
+        cx: parseFloat(scope.$centerX.val()),
+        cy: parseFloat(scope.$centerY.val()),
+        scale: parseFloat($('#scale').text())
+    };
+};
+
+/**
+ * WebSocket を開いているとき、表示範囲をサーバに知らせる。次に届くのは範囲内の全件になる。
+ */
+sendViewport = function () {
+    var scope = $(document).data('scope');
+    if (scope.movableSocket && scope.movableSocket.readyState === WebSocket.OPEN) {
+        scope.movableSocket.send(JSON.stringify(getViewport()));
     }
+};
 
-    deleteOldGraphics(scope.movablegraphics);
+/**
+ * 前回受け取った tick からの電車と人の位置の変化を取得する。前回の応答を待っている間は取得しない。
+ */
+pollMovables = function () {
+    var scope = $(document).data('scope');
+    if (scope.isPolling) {
+        return;
+    }
+    scope.isPolling = true;
+    $.ajax({
+        url: scope.$movablemodel.data('url'),
+        data: {
+            since: scope.movableTick,
+            cx: scope.$centerX.val(),
+            cy: scope.$centerY.val(),
+            scale: $('#scale').text()
+        },
+        dataType: 'json',
+        global: false // ajaxStatus を表示させない
+    }).done(applyMovables).always(function () {
+        scope.isPolling = false;
+    });
+};
+
+/**
+ * 取得した変化を描画に反映する。
+ * @param {object} delta サーバから受け取った変化。種類ごとに座標を列で並べている
+ */
+applyMovables = function (delta) {
+    var scope = $(document).data('scope');
+    var player = scope.$movablemodel.data('player');
+
+    applyMovableKind('train', delta.train, function (id, i) {
+        var columns = delta.train;
+        var opts = columns.owner[i] === player ? movableSprites.train.my : movableSprites.train.other;
+        var $elm = toPosData(columns.x[i], columns.y[i]);
+        upsertSprite('train', 'train', scope.movablegraphics, id, $elm, opts);
+        return scope.movablegraphics.train[id];
+    });
+
+    applyMovableKind('human', delta.human, function (id, i) {
+        var columns = delta.human;
+        upsertCircle('human', scope.movablegraphics, id,
+                toViewPos(columns.x[i], columns.y[i]), movableCircles.human);
+        return scope.movablegraphics.human[id];
+    });
+
+    applyClusters(delta.human.clusters);
+
+    scope.movableTick = delta.tick;
     scope.renderer.render(scope.stage);
 };
 
+/**
+ * 人を1人ずつ表示しない縮尺のとき、格子ごとにまとめた人数を円で描く。
+ * 毎回範囲内の全件が届くため、描画済みのものはすべて描き直す。
+ * @param {object} clusters まとめた人数。1人ずつ表示する縮尺のときは届かないため、消すだけにする
+ */
+applyClusters = function (clusters) {
+    var scope = $(document).data('scope');
+    var graphics = scope.movablegraphics.cluster;
+
+    for (var key in graphics) {
+        scope.stage.removeChild(graphics[key]);
+        delete graphics[key];
+    }
+    if (!clusters) {
+        return;
+    }
+
+    var opts = movableCircles.cluster;
+    for (var i = 0; i < clusters.count.length; i++) {
+        var color = opts.colors.GROUND;
+        var max = 0;
+        for (var state in clusters.state) {
+            if (clusters.state[state][i] > max && opts.colors[state]) {
+                max = clusters.state[state][i];
+                color = opts.colors[state];
+            }
+        }
+        var obj = stageTempCircle(toViewPos(clusters.x[i], clusters.y[i]), {
+            color: color,
+            radius: Math.min(opts.maxRadius, opts.radius * Math.sqrt(clusters.count[i])),
+            alpha: opts.alpha
+        });
+        obj.gamex = clusters.x[i];
+        obj.gamey = clusters.y[i];
+        graphics['cluster' + i] = obj;
+    }
+};
+
+/**
+ * 1種類分の変化を反映する。全件のときは含まれなかったものを消す。
+ * @param {string} name 種類
+ * @param {object} columns 変化
+ * @param {function} upsert i 番目を描画し、描画したオブジェクトを返す関数
+ */
+applyMovableKind = function (name, columns, upsert) {
+    var scope = $(document).data('scope');
+    var graphics = scope.movablegraphics[name];
+
+    if (columns.full) {
+        for (var key in graphics) {
+            graphics[key].old = true;
+        }
+    }
+
+    for (var i = 0; i < columns.id.length; i++) {
+        var obj = upsert(name + columns.id[i], i);
+        obj.gamex = columns.x[i];
+        obj.gamey = columns.y[i];
+        obj.targetx = columns.tx ? columns.tx[i] : columns.x[i];
+        obj.targety = columns.ty ? columns.ty[i] : columns.y[i];
+        obj.speed = columns.speed ? columns.speed[i] : 0;
+    }
+
+    columns.removed.forEach(function (id) {
+        if (graphics[name + id]) {
+            scope.stage.removeChild(graphics[name + id]);
+            delete graphics[name + id];
+        }
+    });
+
+    if (columns.full) {
+        var target = {};
+        target[name] = graphics;
+        deleteOldGraphics(target);
+    }
+};
+
+/**
+ * 座標を data 属性と同じ形で参照できるようにする。
+ * @param {number} x ゲーム上の x 座標
+ * @param {number} y ゲーム上の y 座標
+ * @returns {object} data('x'), data('y') で座標を返すオブジェクト
+ */
+toPosData = function (x, y) {
+    return {
+        data: function (key) {
+            return key === 'x' ? x : y;
+        }
+    };
+};
+
 /**
  * 画像リソースを描画する。
  * @param {type} name リソース識別子
@@ -717,23 +1004,8 @@ onWheel = function (event) {
     registerScale([{name: 'scale', value: sliderscale / 100}]);
 };
 
-onPollStart = function () {
-    var scope = $(document).data('scope');
-    scope.isPolling = true;
-};
-
-onPollEnd = function () {
-    var scope = $(document).data('scope');
-    scope.isPolling = false;
-};
-
 onAjaxStart = function () {
-    var scope = $(document).data('scope');
-    if (scope.isPolling) {
-        $('#ajaxstatus').hide();
-    } else {
-        $('#ajaxstatus').show();
-    }
+    $('#ajaxstatus').show();
 };
 
 /**
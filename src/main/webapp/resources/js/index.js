@@ -35,6 +35,7 @@ $(function(){
         // $scale: $('#scale'), 途中で参照が変わるため、直接取得に変更
         $clickX: $('#clickX'),
         $clickY: $('#clickY'),
+        $movablemodel: $('#movablemodel'),
         resources : {
             company : 'resources/image/s_company.png',
             residence : 'resources/image/s_residence.png',
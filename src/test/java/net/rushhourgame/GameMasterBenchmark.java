@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.persistence.EntityManager;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.controller.AssistanceController;
+import net.rushhourgame.controller.ControllerFactory;
+import net.rushhourgame.controller.InMemoryEntityManager;
+import net.rushhourgame.controller.RouteSearcher;
+import net.rushhourgame.controller.TrainController;
+import net.rushhourgame.entity.Player;
+import net.rushhourgame.entity.RailNode;
+import net.rushhourgame.entity.SimplePoint;
+import net.rushhourgame.exception.RushHourException;
+
+/**
+ * コンテナとデータベースなしで GameMaster#run を回し、1秒あたりの tick 数、経路探索時間、メモリ割り当て量を測る.
+ * Entity は InMemoryEntityManager に置くため、データベースの読み書きにかかる時間は含まない.
+ * テストとしては実行されない. 例:
+ * <pre>
+ * mvn -Pdevelopment test-compile
+ * java -cp target/test-classes:target/classes:(依存ライブラリ) net.rushhourgame.GameMasterBenchmark 100 100 10 10 1000 4
+ * </pre>
+ * 引数は順に 住宅数、会社数、路線数、路線あたりの駅数、計測する tick 数、人の移動の並列度.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class GameMasterBenchmark {
+
+    protected static final int WARMUP = 100;
+    protected static final int ROUTE_ITERATION = 5;
+    protected static final double SPACING = 20.0;
+    protected static final long SEED = 20181018L;
+
+    protected final int residences;
+    protected final int companies;
+    protected final int lines;
+    protected final int stations;
+
+    protected final ControllerFactory factory;
+    protected final SimpleGameMaster gm;
+    protected final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    protected long elapsed;
+    protected long allocation;
+
+    public GameMasterBenchmark(int residences, int companies, int lines, int stations, int parallelism) {
+        this.residences = residences;
+        this.companies = companies;
+        this.lines = lines;
+        this.stations = stations;
+
+        RushHourProperties prop = RushHourProperties.getInstance();
+        prop.update(GAME_SCHEDULER_FIXEDRATE, "false");
+        prop.update(GAME_HUMAN_PARALLELISM, Integer.toString(parallelism));
+        prop.update(GAME_RANDOM_SEED, Long.toString(SEED));
+
+        factory = new ControllerFactory(InMemoryEntityManager.create(), false);
+        gm = (SimpleGameMaster) factory.getGameMaster();
+        gm.executorService = managed(executor);
+    }
+
+    public static void main(String[] args) throws RushHourException {
+        int[] params = {100, 100, 10, 10, 1000, 1};
+        for (int i = 0; i < args.length && i < params.length; i++) {
+            params[i] = Integer.parseInt(args[i]);
+        }
+
+        GameMasterBenchmark bench = new GameMasterBenchmark(params[0], params[1], params[2], params[3], params[5]);
+        try {
+            bench.build();
+            double routeMillis = bench.searchRoute();
+            bench.run(params[4]);
+            bench.report(routeMillis);
+        } finally {
+            bench.shutdown();
+        }
+    }
+
+    /**
+     * 路線を平行に並べ、そのまわりに住宅と会社を散らばらせる.
+     *
+     * @throws RushHourException 例外
+     */
+    protected void build() throws RushHourException {
+        RushHourRandom.getInstance().reseed(SEED);
+        gm.synchronizeDatabase();
+
+        EntityManager em = factory.getEntityManager();
+        Player owner = new Player();
+        owner.setUserId("benchmark");
+        em.persist(owner);
+
+        AssistanceController aCon = factory.getAssistanceController();
+        TrainController tCon = factory.getTrainController();
+        for (int i = 0; i < lines; i++) {
+            AssistanceController.Result result = aCon.startWithStation(owner, new SimplePoint(0, i * SPACING), Locale.JAPANESE);
+            RailNode tail = result.node;
+            for (int j = 1; j < stations; j++) {
+                tail = aCon.extendWithStation(owner, tail, new SimplePoint(j * SPACING, i * SPACING), Locale.JAPANESE).node;
+            }
+            tCon.deploy(tCon.create(owner), owner, result.line.findTopDeparture());
+        }
+
+        double width = stations * SPACING;
+        double height = lines * SPACING;
+        for (int i = 0; i < residences; i++) {
+            factory.getResidenceController().create(randomPoint(width, height));
+        }
+        for (int i = 0; i < companies; i++) {
+            factory.getCompanyController().create(randomPoint(width, height));
+        }
+    }
+
+    /**
+     * 経路表を作り直す時間を測る. 最後に作った経路表は次の tick で取り込まれる
+     *
+     * @return 1回あたりの時間 (ms)
+     */
+    protected double searchRoute() {
+        RouteSearcher searcher = factory.getRouteSearcher();
+        long elapsed = 0;
+        for (int i = 0; i < ROUTE_ITERATION; i++) {
+            searcher.notifyUpdate();
+            long start = System.nanoTime();
+            searcher.call();
+            elapsed += System.nanoTime() - start;
+        }
+        return elapsed / 1e6 / ROUTE_ITERATION;
+    }
+
+    protected void run(int ticks) {
+        for (int i = 0; i < WARMUP; i++) {
+            gm.run();
+        }
+        gm.getStatistics().reset();
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            gm.run();
+        }
+        elapsed = System.nanoTime() - start;
+        allocation = allocatedBytes() - allocated;
+    }
+
+    protected void report(double routeMillis) {
+        TickStatistics stats = gm.getStatistics();
+        double seconds = elapsed / 1e9;
+        System.out.println("residences\tcompanies\tstations\ttrains\thumans\troute(ms/op)"
+                + "\tticks/s\tmean(ms)\tp99(ms)\tmax(ms)\talloc(MB/s)\talloc(KB/tick)");
+        System.out.printf("%d\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%.3f\t%.3f\t%.3f\t%.1f\t%.1f%n",
+                residences, companies, lines * stations, lines,
+                factory.getHumanController().findAll().size(), routeMillis,
+                stats.getTicks() / seconds, stats.getMeanMillis(), stats.getPercentileMillis(99), stats.getMaxMillis(),
+                allocation / 1e6 / seconds, allocation / 1e3 / Math.max(stats.getTicks(), 1));
+
+        System.out.println("phase\tmean(ms)");
+        stats.getPhases().forEach(phase
+                -> System.out.printf("%s\t%.3f%n", phase, stats.getMeanMillis(phase)));
+    }
+
+    protected void shutdown() {
+        executor.shutdownNow();
+        factory.getHumanController().preDestroy();
+    }
+
+    protected static SimplePoint randomPoint(double width, double height) {
+        RushHourRandom random = RushHourRandom.getInstance();
+        return new SimplePoint(random.nextDouble() * width, random.nextDouble() * height);
+    }
+
+    /**
+     * 人の移動を並列化した場合のワーカスレッドも含めた、全スレッドの割り当て量
+     *
+     * @return 割り当て量 (byte)
+     */
+    protected static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return Arrays.stream(bean.getThreadAllocatedBytes(bean.getAllThreadIds()))
+                .filter(bytes -> bytes > 0).sum();
+    }
+
+    /**
+     * 経路探索をバックグラウンドで回すため、通常の ExecutorService を ManagedExecutorService として渡す
+     *
+     * @param executor 実体
+     * @return ManagedExecutorService
+     */
+    protected static ManagedExecutorService managed(ExecutorService executor) {
+        return (ManagedExecutorService) Proxy.newProxyInstance(GameMasterBenchmark.class.getClassLoader(),
+                new Class<?>[]{ManagedExecutorService.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(executor, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+}
@@ -32,12 +32,14 @@ import java.util.concurrent.locks.Lock;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.persistence.EntityManager;
+import net.rushhourgame.MovementLog.Kind;
 import net.rushhourgame.controller.AssistanceController;
 import net.rushhourgame.controller.ControllerFactory;
 import net.rushhourgame.controller.RouteSearcher;
 import net.rushhourgame.entity.Company;
 import net.rushhourgame.entity.Human;
 import net.rushhourgame.entity.Line;
+import net.rushhourgame.entity.Platform;
 import net.rushhourgame.entity.Player;
 import net.rushhourgame.entity.Pointable;
 import net.rushhourgame.entity.Residence;
@@ -122,6 +124,42 @@ public class GameMasterTest {
 
         verify(inst.timerService, times(1)).scheduleWithFixedDelay(any(GameMaster.class), anyLong(), anyLong(), any(TimeUnit.class));
         verify(inst, times(1)).synchronizeDatabase();
+        // 読み込んだ直後は書き出さない
+        assertFalse(inst.isWriteBehindDue());
+    }
+
+    @Test
+    public void testStartGameReseed() {
+        doReturn("12345").when(inst.prop).get(eq(RushHourProperties.GAME_RANDOM_SEED));
+        inst.timerFuture = null;
+        RushHourRandom.getInstance().reseed(1L);
+
+        assertTrue(inst.startGame());
+
+        assertEquals(12345L, RushHourRandom.getInstance().getSeed());
+    }
+
+    @Test
+    public void testReseedWithoutSeed() {
+        doReturn("").when(inst.prop).get(eq(RushHourProperties.GAME_RANDOM_SEED));
+        long generation = RushHourRandom.getInstance().getGeneration();
+
+        inst.reseed();
+
+        assertEquals(generation + 1, RushHourRandom.getInstance().getGeneration());
+    }
+
+    @Test
+    public void testStartGameFixedRate() {
+        doReturn("true").when(inst.prop).get(eq(RushHourProperties.GAME_SCHEDULER_FIXEDRATE));
+        inst.timerFuture = null;
+        inst.scheduledTicks = 10;
+
+        assertTrue(inst.startGame());
+
+        verify(inst.timerService, times(1)).scheduleAtFixedRate(any(GameMaster.class), anyLong(), anyLong(), any(TimeUnit.class));
+        verify(inst.timerService, never()).scheduleWithFixedDelay(any(GameMaster.class), anyLong(), anyLong(), any(TimeUnit.class));
+        assertEquals(0, inst.scheduledTicks);
     }
 
     @Test
@@ -191,6 +229,40 @@ public class GameMasterTest {
         verify(inst.rCon, times(1)).synchronizeDatabase();
         verify(inst.tCon, times(1)).synchronizeDatabase();
         verify(inst.hCon, times(1)).synchronizeDatabase();
+        verify(inst.searcher, times(1)).notifySynchronized();
+    }
+
+    /**
+     * 停止、再開すると、経路表は差し替え後のプラットフォームを参照する
+     *
+     * @throws RushHourException 例外
+     */
+    @Test
+    public void testRestartResolvesRouteTable() throws RushHourException {
+        inst.synchronizeDatabase();
+        WorldPack world = createSmallWorld(false);
+        inst.searcher.call();
+        inst.searcher.swap();
+        Platform oldPlatform = inst.stCon.find(world.st2.getPlatform());
+        assertSame(oldPlatform, inst.searcher.getStart(oldPlatform, world.cmp).getOriginal());
+
+        // 変更した駅は em.merge で別のインスタンスに差し替わる
+        oldPlatform.setCapacity(oldPlatform.getCapacity() + 1);
+        EntityManager em = factory.getEntityManager();
+        em.detach(world.st2);
+        em.detach(oldPlatform);
+        em.detach(world.st2.getTicketGate());
+
+        doReturn(false).when(inst.timerFuture).isDone();
+        doReturn(true).when(inst.timerFuture).cancel(eq(false));
+        assertTrue(inst.stopGame());
+        doReturn(true).when(inst.timerFuture).isDone();
+        assertTrue(inst.startGame());
+
+        Platform newPlatform = inst.stCon.find(oldPlatform);
+        assertNotSame(oldPlatform, newPlatform);
+        assertSame(newPlatform, inst.searcher.getStart(newPlatform, world.cmp).getOriginal());
+        assertTrue(inst.searcher.isOutdated());
     }
     
     @Test
@@ -217,14 +289,75 @@ public class GameMasterTest {
         assertFalse(inst.search());
     }
 
+    /**
+     * 経路探索の終了を待たない
+     *
+     * @throws InterruptedException 例外
+     * @throws ExecutionException 例外
+     */
     @Test
-    public void testRunException() throws InterruptedException, ExecutionException {
-        doThrow(ExecutionException.class).when(future).get();
+    public void testRunNotWaitSearching() throws InterruptedException, ExecutionException {
         doReturn(false).when(inst.searcher).isAvailable();
 
         inst.run();
-        
-        verify(future, times(1)).get();
+
+        verify(inst.executorService, times(1)).submit(any(RouteSearcher.class));
+        verify(future, never()).get();
+        verify(inst.stCon, never()).step(anyLong());
+    }
+
+    /**
+     * 探索中は重ねて依頼しない
+     */
+    @Test
+    public void testRunWhileSearching() {
+        doReturn(false).when(inst.searcher).isAvailable();
+        doReturn(false).when(inst.searcher).startSearching();
+
+        inst.run();
+
+        verify(inst.executorService, never()).submit(any(RouteSearcher.class));
+    }
+
+    /**
+     * 探索し終えた経路表はゲームスレッドで取り込む
+     *
+     * @throws RushHourException 例外
+     */
+    @Test
+    public void testRunSwapRouteTable() throws RushHourException {
+        inst.synchronizeDatabase();
+        createSmallWorld();
+        doReturn(true).when(inst.searcher).isAvailable();
+
+        inst.run();
+
+        verify(inst.searcher, times(1)).swap();
+    }
+
+    /**
+     * 毎回の最後に電車と人の位置を公開する
+     *
+     * @throws RushHourException 例外
+     */
+    @Test
+    public void testRunPublishMovements() throws RushHourException {
+        inst.synchronizeDatabase();
+        WorldPack world = createSmallWorld();
+        doReturn(true).when(inst.searcher).isAvailable();
+
+        inst.run();
+
+        assertEquals(1, inst.getMovements().getTick());
+        assertEquals(0, inst.getMovements().since(Kind.HUMAN, 1, ORIGIN, 16).getMoved().size());
+
+        inst.run();
+
+        assertEquals(2, inst.getMovements().getTick());
+        assertNotNull(inst.getMovements().since(Kind.TRAIN, 1, ORIGIN, 16));
+        assertEquals(2, inst.getSnapshot().getTick());
+        assertEquals(inst.hCon.findAll().size(), inst.getSnapshot().size(Kind.HUMAN));
+        verify(inst.broadcaster, times(2)).publish(eq(inst.getMovements()), any(WorldSnapshot.class));
     }
 
     @Test
@@ -273,6 +406,88 @@ public class GameMasterTest {
         assertNull(world.h.getCurrent());
     }
 
+    @Test
+    public void testRunRecordsStatistics() throws RushHourException {
+        inst.synchronizeDatabase();
+        createSmallWorld();
+        doReturn(true).when(inst.searcher).isAvailable();
+
+        inst.run();
+
+        assertEquals(1, inst.getStatistics().getTicks());
+        assertTrue(inst.getStatistics().getLastTickMillis() > 0.0);
+    }
+
+    @Test
+    public void testRunCatchUp() throws RushHourException {
+        doReturn("true").when(inst.prop).get(eq(RushHourProperties.GAME_SCHEDULER_FIXEDRATE));
+        inst.synchronizeDatabase();
+        createSmallWorld();
+        doReturn(true).when(inst.searcher).isAvailable();
+        // 3回分遅れている
+        inst.startedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(inst.getInterval() * 3);
+        inst.scheduledTicks = 0;
+
+        inst.run();
+
+        verify(inst.hCon, times(1)).step(anyLong(), anyDouble());
+        assertEquals(0, inst.getStatistics().getDropped());
+        assertEquals(1, inst.scheduledTicks);
+    }
+
+    @Test
+    public void testRunDropTooLate() throws RushHourException {
+        doReturn("true").when(inst.prop).get(eq(RushHourProperties.GAME_SCHEDULER_FIXEDRATE));
+        doReturn("2").when(inst.prop).get(eq(RushHourProperties.GAME_SCHEDULER_MAXCATCHUP));
+        // 3回分遅れている
+        inst.startedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(inst.getInterval() * 3);
+        inst.scheduledTicks = 0;
+
+        inst.run();
+
+        verify(inst.stCon, never()).step(anyLong());
+        verify(inst.hCon, never()).step(anyLong(), anyDouble());
+        assertEquals(1, inst.getStatistics().getDropped());
+        assertEquals(0, inst.getStatistics().getTicks());
+    }
+
+    @Test
+    public void testRunWriteBehind() throws RushHourException {
+        inst.synchronizeDatabase();
+        createSmallWorld();
+        doReturn(true).when(inst.searcher).isAvailable();
+        inst.lastWriteBehind = 0L;
+
+        inst.run();
+
+        verify(inst, times(1)).writeBehind();
+        verify(inst.rCon, times(1)).writeBehind();
+        verify(inst.stCon, times(1)).writeBehind();
+        verify(inst.tCon, times(1)).writeBehind();
+        verify(inst.hCon, times(1)).writeBehind();
+        assertTrue(inst.lastWriteBehind > 0L);
+    }
+
+    @Test
+    public void testRunSkipWriteBehind() throws RushHourException {
+        inst.synchronizeDatabase();
+        createSmallWorld();
+        doReturn(true).when(inst.searcher).isAvailable();
+        inst.lastWriteBehind = System.currentTimeMillis();
+
+        inst.run();
+
+        verify(inst, never()).writeBehind();
+    }
+
+    @Test
+    public void testWriteBehindDisabled() {
+        doReturn("0").when(inst.prop).get(eq(RushHourProperties.GAME_WRITEBEHIND_INTERVAL));
+        inst.lastWriteBehind = 0L;
+
+        assertFalse(inst.isWriteBehindDue());
+    }
+
     /**
      * R St--St C
      *
@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.rushhourgame.MovementLog.Delta;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.SimplePoint;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class MovementLogTest {
+
+    protected static final SimplePoint ORIGIN = new SimplePoint();
+    /**
+     * 2^4 = 16 四方. 中心から ±8 が範囲内
+     */
+    protected static final double SCALE = 4;
+    protected static final int CAPACITY = 3;
+
+    protected MovementLog inst;
+    protected Human inside;
+    protected Human outside;
+
+    @Before
+    public void setUp() {
+        inst = new MovementLog();
+        inside = createHuman(1, 0, 0);
+        outside = createHuman(2, 100, 100);
+    }
+
+    @Test
+    public void testSinceZero() {
+        tick(inside, outside);
+
+        assertEquals(1, inst.getTick());
+        assertNull(inst.since(Kind.HUMAN, 0, ORIGIN, SCALE));
+    }
+
+    @Test
+    public void testSinceFuture() {
+        tick(inside, outside);
+
+        assertNull(inst.since(Kind.HUMAN, 2, ORIGIN, SCALE));
+    }
+
+    @Test
+    public void testSinceLatest() {
+        tick(inside, outside);
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(1, delta.getTick());
+        assertEquals(0, delta.getMoved().size());
+        assertEquals(0, delta.getRemoved().size());
+    }
+
+    @Test
+    public void testMovedInside() {
+        tick(inside, outside);
+        inside.setX(1);
+        outside.setX(101);
+        tick(inside, outside);
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(2, delta.getTick());
+        assertEquals(1, delta.getMoved().size());
+        assertEquals(1, delta.getMoved().getId(0));
+        assertTrue(1.0 == delta.getMoved().getX(0));
+        assertEquals(0, delta.getRemoved().size());
+    }
+
+    @Test
+    public void testNotMoved() {
+        tick(inside, outside);
+        tick(inside, outside);
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(0, delta.getMoved().size());
+    }
+
+    @Test
+    public void testAdded() {
+        tick(inside);
+        tick(inside, outside, createHuman(3, 1, 1));
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(1, delta.getMoved().size());
+        assertEquals(3, delta.getMoved().getId(0));
+    }
+
+    @Test
+    public void testLeft() {
+        tick(inside, outside);
+        inside.setX(50);
+        tick(inside, outside);
+        inside.setX(60);
+        tick(inside, outside);
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(0, delta.getMoved().size());
+        assertEquals(1, delta.getRemoved().size());
+        assertEquals(1, delta.getRemoved().get(0));
+
+        // 範囲外での移動は含めない
+        delta = inst.since(Kind.HUMAN, 2, ORIGIN, SCALE);
+        assertEquals(0, delta.getRemoved().size());
+    }
+
+    @Test
+    public void testEntered() {
+        tick(inside, outside);
+        outside.setXY(new SimplePoint(2, 2));
+        tick(inside, outside);
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(1, delta.getMoved().size());
+        assertEquals(2, delta.getMoved().getId(0));
+    }
+
+    @Test
+    public void testRemoved() {
+        tick(inside, outside);
+        tick();
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(0, delta.getMoved().size());
+        assertEquals(1, delta.getRemoved().size());
+        assertEquals(1, delta.getRemoved().get(0));
+    }
+
+    @Test
+    public void testAddedAndRemovedInWindow() {
+        tick();
+        tick(inside);
+        tick();
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(0, delta.getMoved().size());
+        assertEquals(0, delta.getRemoved().size());
+    }
+
+    @Test
+    public void testExpired() {
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            tick(inside);
+        }
+
+        assertNull(inst.since(Kind.HUMAN, 1, ORIGIN, SCALE));
+        assertNotNull(inst.since(Kind.HUMAN, inst.getTick() - CAPACITY, ORIGIN, SCALE));
+        assertNull(inst.since(Kind.HUMAN, inst.getTick() - CAPACITY - 1, ORIGIN, SCALE));
+    }
+
+    @Test
+    public void testHeading() {
+        SimplePoint goal = new SimplePoint(5, 0);
+        inst.record(Kind.HUMAN, Arrays.asList(inside), h -> goal, h -> 0.5);
+        inst.record(Kind.TRAIN, Collections.emptyList());
+        inst.commit(CAPACITY);
+
+        Delta delta = inst.since(Kind.HUMAN, 0, ORIGIN, SCALE);
+        assertNull(delta);
+        tick(inside);
+        delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        // 位置が同じでも止まったことを伝える
+        assertEquals(1, delta.getMoved().size());
+        assertEquals(0, delta.getMoved().getTargetX(0), 0.0);
+        assertEquals(0, delta.getMoved().getSpeed(0), 0.0);
+    }
+
+    @Test
+    public void testHeadingInDelta() {
+        tick(inside);
+        SimplePoint goal = new SimplePoint(5, 0);
+        inst.record(Kind.HUMAN, Arrays.asList(inside), h -> goal, h -> 0.5);
+        inst.record(Kind.TRAIN, Collections.emptyList());
+        inst.commit(CAPACITY);
+
+        Delta delta = inst.since(Kind.HUMAN, 1, ORIGIN, SCALE);
+        assertEquals(1, delta.getMoved().size());
+        assertEquals(5, delta.getMoved().getTargetX(0), 0.0);
+        assertEquals(0, delta.getMoved().getTargetY(0), 0.0);
+        assertEquals(0.5, delta.getMoved().getSpeed(0), 0.0);
+    }
+
+    @Test
+    public void testKindSeparated() {
+        inst.record(Kind.HUMAN, Arrays.asList(inside));
+        inst.record(Kind.TRAIN, Collections.emptyList());
+        inst.commit(CAPACITY);
+        inst.record(Kind.HUMAN, Arrays.asList(inside));
+        inst.record(Kind.TRAIN, Collections.emptyList());
+        inst.commit(CAPACITY);
+
+        assertEquals(0, inst.since(Kind.TRAIN, 1, ORIGIN, SCALE).getRemoved().size());
+        assertEquals(0, inst.since(Kind.HUMAN, 1, ORIGIN, SCALE).getRemoved().size());
+    }
+
+    protected void tick(Human... humans) {
+        List<Human> list = new ArrayList<>(Arrays.asList(humans));
+        inst.record(Kind.HUMAN, list);
+        inst.record(Kind.TRAIN, Collections.emptyList());
+        inst.commit(CAPACITY);
+    }
+
+    protected static Human createHuman(long id, double x, double y) {
+        Human h = new Human();
+        h.setId(id);
+        h.setX(x);
+        h.setY(y);
+        return h;
+    }
+}
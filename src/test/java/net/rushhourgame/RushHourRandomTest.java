@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.Residence;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RushHourRandomTest {
+
+    protected static final long SEED = 20181018L;
+
+    @Test
+    public void testReseed() {
+        RushHourRandom inst = RushHourRandom.getInstance();
+        long generation = inst.getGeneration();
+
+        inst.reseed(SEED);
+        double first = inst.nextDouble();
+        inst.reseed(SEED);
+
+        assertEquals(SEED, inst.getSeed());
+        assertEquals(generation + 2, inst.getGeneration());
+        assertTrue(first == inst.nextDouble());
+    }
+
+    @Test
+    public void testStreamOf() {
+        RushHourRandom inst = RushHourRandom.getInstance();
+        inst.reseed(SEED);
+
+        assertEquals(inst.streamOf(Human.class, 1).nextLong(), inst.streamOf(Human.class, 1).nextLong());
+        assertNotEquals(inst.streamOf(Human.class, 1).nextLong(), inst.streamOf(Human.class, 2).nextLong());
+        assertNotEquals(inst.streamOf(Human.class, 1).nextLong(), inst.streamOf(Residence.class, 1).nextLong());
+
+        long before = inst.streamOf(Human.class, 1).nextLong();
+        inst.reseed(SEED + 1);
+        assertNotEquals(before, inst.streamOf(Human.class, 1).nextLong());
+    }
+
+    /**
+     * ほかの Entity の乱数の消費に左右されない
+     */
+    @Test
+    public void testMakeNearPointIndependent() {
+        RushHourRandom.getInstance().reseed(SEED);
+        Residence r1 = residence(1);
+        Residence r2 = residence(2);
+        Pointable expected = r1.makeNearPoint(10);
+
+        RushHourRandom.getInstance().reseed(SEED);
+        for (int i = 0; i < 5; i++) {
+            r2.makeNearPoint(10);
+        }
+        Pointable actual = r1.makeNearPoint(10);
+
+        assertTrue(expected.getX() == actual.getX());
+        assertTrue(expected.getY() == actual.getY());
+        assertTrue(r1.distTo(actual) <= 10);
+    }
+
+    @Test
+    public void testChooseDest() {
+        List<Company> companies = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Company c = new Company();
+            c.setId(i);
+            companies.add(c);
+        }
+        Residence r = residence(1);
+
+        RushHourRandom.getInstance().reseed(SEED);
+        List<Company> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(r.chooseDest(companies));
+        }
+
+        RushHourRandom.getInstance().reseed(SEED);
+        for (int i = 0; i < 20; i++) {
+            assertSame(expected.get(i), r.chooseDest(companies));
+        }
+        // 同じ行き先ばかりにならない
+        assertTrue(expected.stream().distinct().count() > 1);
+    }
+
+    protected static Residence residence(long id) {
+        Residence r = new Residence();
+        r.setId(id);
+        r.setX(id * 100);
+        r.setY(-id * 100);
+        return r;
+    }
+}
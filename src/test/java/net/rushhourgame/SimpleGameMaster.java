@@ -35,6 +35,7 @@ import net.rushhourgame.controller.ResidenceController;
 import net.rushhourgame.controller.RouteSearcher;
 import net.rushhourgame.controller.StationController;
 import net.rushhourgame.controller.TrainController;
+import net.rushhourgame.websocket.MovableBroadcaster;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -71,5 +72,6 @@ public class SimpleGameMaster extends GameMaster {
         timerFuture = mock(ScheduledFuture.class);
         executorService = mock(ManagedExecutorService.class);
         timerService = mock(ManagedScheduledExecutorService.class);
+        broadcaster = mock(MovableBroadcaster.class);
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class TickHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        TickHistogram inst = new TickHistogram();
+
+        assertEquals(0, inst.getTotalCount());
+        assertEquals(0, inst.getValueAtPercentile(99));
+        assertTrue(0.0 == inst.getMean());
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        TickHistogram inst = new TickHistogram();
+        for (int i = 1; i <= 50; i++) {
+            inst.recordValue(i);
+        }
+
+        assertEquals(50, inst.getTotalCount());
+        assertEquals(25, inst.getValueAtPercentile(50));
+        assertEquals(50, inst.getValueAtPercentile(100));
+        assertEquals(1, inst.getValueAtPercentile(0));
+        assertTrue(25.5 == inst.getMean());
+    }
+
+    @Test
+    public void testRelativeError() {
+        TickHistogram inst = new TickHistogram();
+        for (long v = 1; v <= 1_000_000; v += 7) {
+            inst.recordValue(v);
+        }
+
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            double expected = p / 100.0 * 1_000_000;
+            long actual = inst.getValueAtPercentile(p);
+            assertEquals(expected, actual, expected / 32.0);
+        }
+        assertEquals(1_000_000, inst.getMax());
+        assertEquals(1_000_000, inst.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testBucketBoundary() {
+        for (long v : new long[]{63, 64, 65, 127, 128, 1L << 40, Long.MAX_VALUE}) {
+            int index = TickHistogram.indexOf(v);
+            assertTrue(v <= TickHistogram.highestOf(index));
+            if (index > 0) {
+                assertTrue(v > TickHistogram.highestOf(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testReset() {
+        TickHistogram inst = new TickHistogram();
+        inst.recordValue(100);
+        inst.recordValue(-1);
+
+        assertEquals(2, inst.getTotalCount());
+        assertEquals(0, inst.getValueAtPercentile(50));
+
+        inst.reset();
+
+        assertEquals(0, inst.getTotalCount());
+        assertEquals(0, inst.getMax());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.util.concurrent.TimeUnit;
+import net.rushhourgame.TickStatistics.Phase;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class TickStatisticsTest {
+
+    protected static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRecordTick() {
+        TickStatistics inst = new TickStatistics();
+
+        assertFalse(inst.recordTick(100 * MILLIS, 1000));
+        assertTrue(inst.recordTick(1500 * MILLIS, 1000));
+
+        assertEquals(2, inst.getTicks());
+        assertEquals(1, inst.getOverruns());
+        assertTrue(1500.0 == inst.getLastTickMillis());
+        assertTrue(1500.0 == inst.getMaxMillis());
+        assertTrue(800.0 == inst.getMeanMillis());
+        assertEquals(100.0, inst.getPercentileMillis(50), 100.0 / 32);
+    }
+
+    @Test
+    public void testRecordPhase() {
+        TickStatistics inst = new TickStatistics();
+        inst.recordPhase(Phase.HUMAN, 10 * MILLIS);
+        inst.recordTick(10 * MILLIS, 1000);
+        inst.recordPhase(Phase.HUMAN, 30 * MILLIS);
+        inst.recordTick(30 * MILLIS, 1000);
+
+        assertTrue(30.0 == inst.getLastMillis(Phase.HUMAN));
+        assertTrue(20.0 == inst.getMeanMillis(Phase.HUMAN));
+        assertTrue(0.0 == inst.getMeanMillis(Phase.TRAIN));
+        assertTrue(inst.describeLastTick().contains("HUMAN=30.0ms"));
+        assertEquals(Phase.values().length, inst.getPhases().size());
+    }
+
+    @Test
+    public void testLap() {
+        TickStatistics inst = new TickStatistics();
+        long start = System.nanoTime();
+
+        long next = inst.lap(Phase.STATION, start);
+
+        assertTrue(next >= start);
+        assertTrue(inst.getLastMillis(Phase.STATION) >= 0.0);
+    }
+
+    @Test
+    public void testReset() {
+        TickStatistics inst = new TickStatistics();
+        inst.recordTick(1500 * MILLIS, 1000);
+        inst.recordDropped();
+
+        inst.reset();
+
+        assertEquals(0, inst.getTicks());
+        assertEquals(0, inst.getOverruns());
+        assertEquals(0, inst.getDropped());
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.WorldSnapshot.Cluster;
+import net.rushhourgame.WorldSnapshot.Entry;
+import net.rushhourgame.WorldSnapshot.Layer;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Human.StandingOn;
+import net.rushhourgame.entity.SimplePoint;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class WorldSnapshotTest {
+
+    protected static final double CELL = 10;
+    protected static final SimplePoint ORIGIN = new SimplePoint();
+
+    protected Human h1;
+    protected Human h2;
+
+    @Before
+    public void setUp() {
+        h1 = human(1, 1, 1);
+        h2 = human(2, 25, 25);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, WorldSnapshot.EMPTY.getTick());
+        assertEquals(0, WorldSnapshot.EMPTY.size(Kind.HUMAN));
+        assertTrue(WorldSnapshot.EMPTY.findIn(Kind.TRAIN, ORIGIN, 10).isEmpty());
+        assertNull(WorldSnapshot.EMPTY.find(Kind.HUMAN, 1));
+    }
+
+    @Test
+    public void testNext() {
+        Layer layer = next(Layer.EMPTY, h1, h2);
+
+        assertEquals(2, layer.size());
+        Entry e = layer.find(2);
+        assertEquals(25, e.getX(), 0.0);
+        assertEquals(25, e.getY(), 0.0);
+        assertEquals(StandingOn.GROUND.name(), e.getState());
+        assertNull(layer.find(3));
+    }
+
+    @Test
+    public void testNextUnchanged() {
+        Layer layer = next(Layer.EMPTY, h1, h2);
+
+        assertSame(layer, next(layer, h1, h2));
+    }
+
+    @Test
+    public void testNextSharesUnchanged() {
+        Layer before = next(Layer.EMPTY, h1, h2);
+        h2.setX(26);
+
+        Layer after = next(before, h1, h2);
+
+        assertNotSame(before, after);
+        assertSame(before.find(1), after.find(1));
+        assertNotSame(before.find(2), after.find(2));
+        assertEquals(26, after.find(2).getX(), 0.0);
+        // h1 のいるセルは中身が変わらないので使い回す
+        long cell = Layer.key(0, 0);
+        assertSame(before.cells.get(cell), after.cells.get(cell));
+        assertNotSame(before.cells.get(Layer.key(2, 2)), after.cells.get(Layer.key(2, 2)));
+        // 前の写しは変わらない
+        assertEquals(25, before.find(2).getX(), 0.0);
+    }
+
+    @Test
+    public void testNextHeadingChanged() {
+        Layer before = next(Layer.EMPTY, h1, h2);
+        SimplePoint goal = new SimplePoint(10, 0);
+
+        Layer after = before.next(Arrays.asList(h1, h2), h -> h.getStandingOn().name(),
+                h -> h == h1 ? goal : null, h -> 0.5, CELL);
+
+        assertNotSame(before.find(1), after.find(1));
+        assertSame(before.find(2), after.find(2));
+        assertEquals(10, after.find(1).getTargetX(), 0.0);
+        assertEquals(0, after.find(1).getTargetY(), 0.0);
+        assertEquals(0.5, after.find(1).getSpeed(), 0.0);
+        // 止まっているときは向かっている地点が位置と同じ
+        assertEquals(25, after.find(2).getTargetX(), 0.0);
+        assertEquals(0, after.find(2).getSpeed(), 0.0);
+    }
+
+    @Test
+    public void testNextStateChanged() {
+        Layer before = next(Layer.EMPTY, h1, h2);
+        h1.setStandingOn(StandingOn.PLATFORM);
+
+        Layer after = next(before, h1, h2);
+
+        assertEquals(StandingOn.PLATFORM.name(), after.find(1).getState());
+        assertEquals(StandingOn.GROUND.name(), before.find(1).getState());
+    }
+
+    @Test
+    public void testNextRemoved() {
+        Layer before = next(Layer.EMPTY, h1, h2);
+
+        Layer after = next(before, h2);
+
+        assertEquals(1, after.size());
+        assertNull(after.find(1));
+        assertSame(before.find(2), after.find(2));
+        assertTrue(after.findIn(new SimplePoint(1, 1), 2).isEmpty());
+    }
+
+    @Test
+    public void testNextUnsorted() {
+        Layer layer = next(Layer.EMPTY, h2, h1);
+
+        assertEquals(Arrays.asList(1L, 2L),
+                layer.getEntries().stream().map(Entry::getId).collect(Collectors.toList()));
+        assertSame(layer, next(layer, h1, h2));
+    }
+
+    @Test
+    public void testNextCellSizeChanged() {
+        Layer before = next(Layer.EMPTY, h1, h2);
+
+        Layer after = before.next(Arrays.asList(h1, h2), h -> h.getStandingOn().name(), 100);
+
+        assertNotSame(before, after);
+        assertEquals(2, after.findIn(ORIGIN, 7).size());
+    }
+
+    @Test
+    public void testFindInSameAsAreaIn() {
+        Random rand = new Random(1);
+        List<Human> humans = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            humans.add(human(i, rand.nextDouble() * 200 - 100, rand.nextDouble() * 200 - 100));
+        }
+        Layer layer = Layer.EMPTY.next(humans, h -> null, CELL);
+
+        for (double scale : new double[]{0, 3, 5.5, 8, 12}) {
+            SimplePoint center = new SimplePoint(rand.nextDouble() * 100 - 50, rand.nextDouble() * 100 - 50);
+            List<Long> expected = humans.stream().filter(h -> h.isAreaIn(center, scale))
+                    .map(Human::getId).sorted().collect(Collectors.toList());
+            List<Long> actual = layer.findIn(center, scale).stream()
+                    .map(Entry::getId).sorted().collect(Collectors.toList());
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testAggregate() {
+        Layer layer = next(Layer.EMPTY, h1, h2);
+
+        List<Cluster> clusters = layer.aggregateIn(ORIGIN, 7, CELL);
+
+        assertEquals(2, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals(1, clusters.get(0).getX(), 0.0);
+        assertEquals(1, clusters.get(0).getCount(StandingOn.GROUND.name()));
+        assertEquals(0, clusters.get(0).getCount(StandingOn.TRAIN.name()));
+    }
+
+    @Test
+    public void testAggregateMergesCells() {
+        h1.setStandingOn(StandingOn.PLATFORM);
+        Layer layer = next(Layer.EMPTY, h1, h2);
+
+        // 格子の幅の 4 倍に切り上げるため、(0, 0) と (2, 2) のセルが1つにまとまる
+        List<Cluster> clusters = layer.aggregateIn(ORIGIN, 7, 30);
+
+        assertEquals(1, clusters.size());
+        assertEquals(2, clusters.get(0).getCount());
+        assertEquals(13, clusters.get(0).getX(), 0.0);
+        assertEquals(13, clusters.get(0).getY(), 0.0);
+        assertEquals(1, clusters.get(0).getCount(StandingOn.GROUND.name()));
+        assertEquals(1, clusters.get(0).getCount(StandingOn.PLATFORM.name()));
+    }
+
+    @Test
+    public void testAggregateOutOfRange() {
+        Layer layer = next(Layer.EMPTY, h1, h2);
+
+        assertTrue(layer.aggregateIn(new SimplePoint(1000, 1000), 3, CELL).isEmpty());
+        assertTrue(Layer.EMPTY.aggregateIn(ORIGIN, 7, CELL).isEmpty());
+    }
+
+    @Test
+    public void testAggregateSharesUnchanged() {
+        Layer before = next(Layer.EMPTY, h1, h2);
+        h2.setX(26);
+
+        Layer after = next(before, h1, h2);
+
+        assertSame(before.clusters.get(Layer.key(0, 0)), after.clusters.get(Layer.key(0, 0)));
+        assertNotSame(before.clusters.get(Layer.key(2, 2)), after.clusters.get(Layer.key(2, 2)));
+        assertEquals(26, after.clusters.get(Layer.key(2, 2)).getX(), 0.0);
+    }
+
+    @Test
+    public void testSnapshot() {
+        Layer humans = next(Layer.EMPTY, h1, h2);
+        WorldSnapshot inst = new WorldSnapshot(5, Layer.EMPTY, humans, 1, 3);
+
+        assertEquals(5, inst.getTick());
+        assertSame(humans, inst.getLayer(Kind.HUMAN));
+        assertEquals(2, inst.size(Kind.HUMAN));
+        assertEquals(0, inst.size(Kind.TRAIN));
+        assertEquals(1, inst.findIn(Kind.HUMAN, ORIGIN, 3).size());
+        assertSame(humans.find(1), inst.find(Kind.HUMAN, 1));
+        assertEquals(1, inst.getLastKilled());
+        assertEquals(3, inst.getTotalKilled());
+        assertEquals(2, inst.aggregateIn(Kind.HUMAN, ORIGIN, 7, CELL).size());
+    }
+
+    @Test
+    public void testEntry() {
+        Entry e = new Entry(1, 2, 3, 4, null);
+
+        assertEquals(1, e.getId());
+        assertEquals(2, e.getOwner());
+        assertEquals(5, e.distTo(new SimplePoint(0, 0)), 0.0);
+        assertTrue(e.isAreaIn(ORIGIN, 4));
+        assertFalse(e.isAreaIn(ORIGIN, 2));
+        assertEquals(Collections.emptyList(), Layer.EMPTY.getEntries());
+    }
+
+    protected static Layer next(Layer prev, Human... humans) {
+        return prev.next(Arrays.asList(humans), h -> h.getStandingOn().name(), CELL);
+    }
+
+    protected static Human human(long id, double x, double y) {
+        Human h = new Human();
+        h.setId(id);
+        h.setX(x);
+        h.setY(y);
+        h.setStandingOn(StandingOn.GROUND);
+        return h;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import net.rushhourgame.entity.SimpleGeoEntity;
+import net.rushhourgame.entity.SimplePoint;
+
+/**
+ * ゲームスレッドが定期的に書き込みロックをとっている間に、画面からの findIn がどれだけさばけるかを測る.
+ * テストとしては実行されない. 例:
+ * <pre>
+ * mvn -Pdevelopment test-compile
+ * java -cp target/classes:target/test-classes:(依存ライブラリ) net.rushhourgame.controller.CachedControllerStressBenchmark 1 2 4 8
+ * </pre>
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class CachedControllerStressBenchmark {
+
+    protected static final int ENTITIES = 10_000;
+    protected static final long DURATION = 3_000L;
+    /**
+     * ゲームスレッドの実行間隔 (ms)
+     */
+    protected static final long INTERVAL = 100L;
+    /**
+     * 1回の実行で書き込みロックを保持する時間 (ms)
+     */
+    protected static final long TICK = 20L;
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] readers = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8};
+
+        System.out.println("readers\tfindIn(ops/s)\tticks\tmaxTickWait(ms)");
+        for (int num : readers) {
+            run(num);
+        }
+    }
+
+    protected static void run(int readers) throws InterruptedException {
+        CachedController<SimpleGeoEntity> inst = new CachedController<SimpleGeoEntity>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void synchronizeDatabase() {
+            }
+        };
+        inst.init();
+        inst.entities = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            SimpleGeoEntity e = new SimpleGeoEntity();
+            e.setId(i + 1);
+            e.setX(i % 100);
+            e.setY(i / 100);
+            inst.entities.add(e);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder ops = new LongAdder();
+        CountDownLatch finished = new CountDownLatch(readers + 1);
+        long[] ticks = new long[2];
+
+        Thread writer = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    inst.getWriteLock().lock();
+                    try {
+                        ticks[1] = Math.max(ticks[1], System.nanoTime() - start);
+                        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TICK);
+                        while (System.nanoTime() < until) {
+                            inst.entities.forEach(e -> e.setX(e.getX() + 0.001));
+                        }
+                        ticks[0]++;
+                    } finally {
+                        inst.getWriteLock().unlock();
+                    }
+                    Thread.sleep(INTERVAL - TICK);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finished.countDown();
+            }
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(() -> {
+                SimplePoint center = new SimplePoint(50, 50);
+                while (running.get()) {
+                    inst.findIn(center, 5);
+                    ops.increment();
+                }
+                finished.countDown();
+            }));
+        }
+
+        writer.start();
+        threads.forEach(Thread::start);
+        Thread.sleep(DURATION);
+        running.set(false);
+        finished.await();
+
+        System.out.printf("%d\t%.0f\t%d\t%.3f%n", readers, ops.sum() * 1000.0 / DURATION,
+                ticks[0], ticks[1] / 1e6);
+    }
+}
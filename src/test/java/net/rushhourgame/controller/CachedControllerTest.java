@@ -24,9 +24,19 @@
 package net.rushhourgame.controller;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import net.rushhourgame.RushHourProperties;
 import net.rushhourgame.entity.Player;
+import net.rushhourgame.entity.Pointable;
 import net.rushhourgame.entity.SimpleGeoEntity;
 import net.rushhourgame.entity.SimplePoint;
 import org.junit.Test;
@@ -60,6 +70,7 @@ public class CachedControllerTest {
     @Before
     public void setUp() {
         inst.em = em;
+        inst.prop = RushHourProperties.getInstance();
         doReturn(query).when(em).createNamedQuery(anyString(), any());
         doReturn(query).when(query).setParameter(anyString(), any(SimpleGeoEntity.class));
         doReturn(0).when(query).executeUpdate();
@@ -80,6 +91,125 @@ public class CachedControllerTest {
         assertEquals(e, inst.find(e));
     }
     
+    @Test
+    public void testWriteBehind() {
+        SimpleGeoEntity e1 = new SimpleGeoEntity();
+        e1.setX(1);
+        SimpleGeoEntity e2 = new SimpleGeoEntity();
+        e2.setY(1);
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e1);
+        inst.entities.add(e2);
+        List<SimpleGeoEntity> before = inst.entities;
+
+        assertEquals(2, inst.writeBehind());
+
+        verify(em, times(1)).merge(same(e1));
+        verify(em, times(1)).merge(same(e2));
+        verify(inst.readLock, times(1)).lock();
+        verify(inst.readLock, times(1)).unlock();
+        // キャッシュは差し替えない
+        assertSame(before, inst.entities);
+        assertSame(e1, inst.entities.get(0));
+        assertFalse(e1.isDirty());
+        assertFalse(e2.isDirty());
+        assertEquals(2, inst.getLastMerged());
+        assertEquals(0, inst.getLastSkipped());
+    }
+
+    @Test
+    public void testWriteBehindSkipsClean() {
+        SimpleGeoEntity changed = new SimpleGeoEntity();
+        changed.setX(1);
+        SimpleGeoEntity unchanged = new SimpleGeoEntity();
+        inst.entities = new ArrayList<>();
+        inst.entities.add(changed);
+        inst.entities.add(unchanged);
+
+        assertEquals(1, inst.writeBehind());
+
+        verify(em, times(1)).merge(same(changed));
+        verify(em, never()).merge(same(unchanged));
+        assertEquals(1, inst.getLastMerged());
+        assertEquals(1, inst.getLastSkipped());
+
+        // 書き出した後は変更がなければ書き出さない
+        assertEquals(0, inst.writeBehind());
+        assertEquals(0, inst.getLastMerged());
+        assertEquals(2, inst.getLastSkipped());
+    }
+
+    @Test
+    public void testWriteBehindUnsynchronized() {
+        inst.entities = null;
+
+        assertEquals(0, inst.writeBehind());
+
+        verify(em, never()).merge(any());
+    }
+
+    @Test
+    public void testFindByIndex() {
+        SimpleGeoEntity e1 = new SimpleGeoEntity();
+        e1.setId(1);
+        SimpleGeoEntity e2 = new SimpleGeoEntity();
+        e2.setId(2);
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e1);
+        inst.entities.add(e2);
+
+        SimpleGeoEntity old = new SimpleGeoEntity();
+        old.setId(2);
+
+        assertSame(e2, inst.find(old));
+        assertEquals(2, inst.index.size());
+    }
+
+    @Test
+    public void testFindAddedAfterIndexed() {
+        SimpleGeoEntity e1 = new SimpleGeoEntity();
+        e1.setId(1);
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e1);
+        assertSame(e1, inst.find(e1));
+
+        // 永続化時には id が決まっていない
+        SimpleGeoEntity e2 = new SimpleGeoEntity();
+        inst.persistEntity(e2);
+        e2.setId(2);
+
+        assertSame(e2, inst.find(e2));
+    }
+
+    @Test
+    public void testFindAfterReplaced() {
+        SimpleGeoEntity e1 = new SimpleGeoEntity();
+        e1.setId(1);
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e1);
+        assertSame(e1, inst.find(e1));
+
+        SimpleGeoEntity merged = new SimpleGeoEntity();
+        merged.setId(1);
+        inst.entities = new ArrayList<>();
+        inst.entities.add(merged);
+
+        assertSame(merged, inst.find(e1));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testFindRemoved() {
+        SimpleGeoEntity e1 = new SimpleGeoEntity();
+        e1.setId(1);
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e1);
+        assertSame(e1, inst.find(e1));
+
+        inst.removeEntity("hoge", e1);
+
+        inst.find(e1);
+    }
+
     @Test
     public void testExistsEntitiesNull() {
         assertFalse(inst.exists(new SimplePoint()));
@@ -112,6 +242,7 @@ public class CachedControllerTest {
     
     @Test
     public void testSynchronizeDatabase() {
+        e.setX(1);
         inst.entities = new ArrayList<>();
         inst.entities.add(e);
 
@@ -120,11 +251,34 @@ public class CachedControllerTest {
         verify(inst.em, never()).createNamedQuery(anyString());
         verify(inst.em, times(1)).merge(eq(e));
         assertNotNull(inst.entities);
+        assertFalse(e.isDirty());
+        assertEquals(1, inst.getLastMerged());
+        assertEquals(0, inst.getLastSkipped());
         
         verify(inst.writeLock, times(1)).lock();
         verify(inst.writeLock, times(1)).unlock();
     }
 
+    @Test
+    public void testSynchronizeDatabaseSkipsClean() {
+        SimpleGeoEntity unchanged = new SimpleGeoEntity();
+        e.setX(1);
+        SimpleGeoEntity merged = new SimpleGeoEntity();
+        doReturn(merged).when(inst.em).merge(same(e));
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e);
+        inst.entities.add(unchanged);
+
+        inst.synchronizeDatabase("hoge", SimpleGeoEntity.class);
+
+        verify(inst.em, never()).merge(same(unchanged));
+        // 変更したものは管理下のものに差し替え、変更のないものはそのまま使う
+        assertSame(merged, inst.entities.get(0));
+        assertSame(unchanged, inst.entities.get(1));
+        assertEquals(1, inst.getLastMerged());
+        assertEquals(1, inst.getLastSkipped());
+    }
+
     @Test
     public void testSynchronizeDatabaseNull() {
         inst.entities = null;
@@ -155,4 +309,117 @@ public class CachedControllerTest {
     public void testBean() {
         assertNotNull(inst.getReadLock());
     }
+
+    @Test(timeout = 10000)
+    public void testInitSharesLock() throws Exception {
+        inst.init();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            inst.writeLock.lock();
+            try {
+                assertFalse(executor.submit(() -> inst.readLock.tryLock()).get());
+            } finally {
+                inst.writeLock.unlock();
+            }
+            assertTrue(executor.submit(() -> {
+                boolean res = inst.readLock.tryLock();
+                inst.readLock.unlock();
+                return res;
+            }).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFindInConcurrently() throws Exception {
+        int readers = 4;
+        CyclicBarrier barrier = new CyclicBarrier(readers);
+        // 読み込み中の全スレッドが同時に isAreaIn に入らないと先に進めない
+        doAnswer(invocation -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return true;
+        }).when(e).isAreaIn(any(Pointable.class), anyDouble());
+        inst.entities = new ArrayList<>();
+        inst.entities.add(e);
+
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<List<SimpleGeoEntity>>> results = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                results.add(executor.submit(() -> inst.findIn(new SimplePoint(), 0)));
+            }
+            for (Future<List<SimpleGeoEntity>> result : results) {
+                assertEquals(1, result.get().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFindInWaitsForWriter() throws Exception {
+        inst.entities = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<SimpleGeoEntity>> result;
+            inst.writeLock.lock();
+            try {
+                result = executor.submit(() -> inst.findIn(new SimplePoint(), 0));
+                try {
+                    result.get(200, TimeUnit.MILLISECONDS);
+                    fail();
+                } catch (TimeoutException ex) {
+                    // 書き込み中は読み込めない
+                }
+            } finally {
+                inst.writeLock.unlock();
+            }
+            assertTrue(result.get(5, TimeUnit.SECONDS).isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFindInByGrid() {
+        SimpleGeoEntity in = new SimpleGeoEntity();
+        in.setId(1);
+        SimpleGeoEntity out = new SimpleGeoEntity();
+        out.setId(2);
+        out.setX(100);
+        List<SimpleGeoEntity> fetched = new ArrayList<>();
+        fetched.add(in);
+        fetched.add(out);
+        doReturn(fetched).when(query).getResultList();
+
+        inst.synchronizeDatabase("hoge", SimpleGeoEntity.class);
+        assertEquals(2, inst.grid.size());
+
+        List<SimpleGeoEntity> actual = inst.findIn(new SimplePoint(), 2);
+        assertEquals(1, actual.size());
+        assertSame(in, actual.get(0));
+
+        // 移動は relocateAll するまで格子に反映されない
+        out.setX(0);
+        inst.relocateAll();
+        assertEquals(2, inst.findIn(new SimplePoint(), 2).size());
+
+        SimpleGeoEntity added = new SimpleGeoEntity();
+        inst.persistEntity(added);
+        assertEquals(3, inst.findIn(new SimplePoint(), 2).size());
+
+        inst.removeEntity("hoge", added);
+        assertEquals(2, inst.grid.size());
+    }
+
+    @Test
+    public void testFindInWithoutGrid() {
+        SimpleGeoEntity added = new SimpleGeoEntity();
+        inst.entities = new ArrayList<>();
+        // 格子を作る前に直接加えられたものも見つかる
+        inst.entities.add(added);
+
+        assertSame(added, inst.findIn(new SimplePoint(), 2).get(0));
+    }
 }
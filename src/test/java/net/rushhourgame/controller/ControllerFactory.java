@@ -69,15 +69,27 @@ public class ControllerFactory {
     protected ManagedExecutorService service;
 
     protected final EntityManager em;
+    protected final boolean spied;
     protected final RushHourProperties prop;
     protected final RushHourResourceBundle msg;
     protected final ErrorMessageBuilder builder;
 
     public ControllerFactory() {
-        this.em = Persistence.createEntityManagerFactory("RushHourGameTestPU").createEntityManager();
-        this.prop = spy(RushHourProperties.getInstance());
-        this.msg = spy(RushHourResourceBundle.getInstance());
-        this.builder = spy(ErrorMessageBuilder.getInstance());
+        this(Persistence.createEntityManagerFactory("RushHourGameTestPU").createEntityManager(), true);
+    }
+
+    /**
+     * spy はすべての呼び出しを記録し続けるため、長時間回すベンチマークでは spied = false にする.
+     *
+     * @param em EntityManager
+     * @param spied コントローラ、ロックを spy で包むか
+     */
+    public ControllerFactory(EntityManager em, boolean spied) {
+        this.em = em;
+        this.spied = spied;
+        this.prop = wrap(RushHourProperties.getInstance());
+        this.msg = wrap(RushHourResourceBundle.getInstance());
+        this.builder = wrap(ErrorMessageBuilder.getInstance());
 
         instantiate();
 
@@ -190,25 +202,25 @@ public class ControllerFactory {
     private void instantiate() {
         tableCon = new LocalTableController(em);
 
-        aCon = spy(new AssistanceController());
-        cCon = spy(new CompanyController());
-        calc = spy(new DigestCalculator());
-        converter = spy(new EncryptConverter());
-        hCon = spy(new HumanController());
-        lCon = spy(new LineController());
-        lSearcher = spy(new LineRouteSearcher());
-        oCon = spy(new OAuthController());
-        pCon = spy(new PlayerController());
-        rCon = spy(new ResidenceController());
-        railCon = spy(new RailController());
-        sCon = spy(new StepForHumanController());
-        searcher = spy(new RouteSearcher());
+        aCon = wrap(new AssistanceController());
+        cCon = wrap(new CompanyController());
+        calc = wrap(new DigestCalculator());
+        converter = wrap(new EncryptConverter());
+        hCon = wrap(new HumanController());
+        lCon = wrap(new LineController());
+        lSearcher = wrap(new LineRouteSearcher());
+        oCon = wrap(new OAuthController());
+        pCon = wrap(new PlayerController());
+        rCon = wrap(new ResidenceController());
+        railCon = wrap(new RailController());
+        sCon = wrap(new StepForHumanController());
+        searcher = wrap(new RouteSearcher());
         service = mock(ManagedExecutorService.class);
-        stCon = spy(new StationController());
-        tCon = spy(new TrainController());
+        stCon = wrap(new StationController());
+        tCon = wrap(new TrainController());
 
-        gm = spy(new SimpleGameMaster());
-        debug = spy(new SimpleDebugInitializer());
+        gm = wrap(new SimpleGameMaster());
+        debug = wrap(new SimpleDebugInitializer());
     }
 
     private void initAssistanceController() {
@@ -296,7 +308,6 @@ public class ControllerFactory {
         stCon.sCon = sCon;
         stCon.rCon = railCon;
         stCon.lCon = lCon;
-        stCon.hCon = hCon;
         stCon.init();
         init(stCon);
         initLock(stCon);
@@ -340,7 +351,11 @@ public class ControllerFactory {
     
     private void initLock(CachedController inst) {
         inst.init();
-        inst.writeLock = spy(inst.writeLock);
-        inst.readLock = spy(inst.readLock);
+        inst.writeLock = wrap(inst.writeLock);
+        inst.readLock = wrap(inst.readLock);
+    }
+
+    private <T> T wrap(T obj) {
+        return spied ? spy(obj) : obj;
     }
 }
@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import net.rushhourgame.entity.SimpleGeoEntity;
+import net.rushhourgame.entity.SimplePoint;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class GridIndexTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCellSize() {
+        new GridIndex<SimpleGeoEntity>(0, e -> true);
+    }
+
+    @Test
+    public void testFindIn() {
+        GridIndex<SimpleGeoEntity> inst = new GridIndex<>(10, e -> true);
+        SimpleGeoEntity in = create(1, 1, 1);
+        SimpleGeoEntity out = create(2, 100, 100);
+        List<SimpleGeoEntity> entities = new ArrayList<>();
+        entities.add(in);
+        entities.add(out);
+        inst.rebuild(entities);
+
+        assertEquals(2, inst.size());
+        assertEquals(2, inst.cellCount());
+
+        List<SimpleGeoEntity> actual = inst.findIn(new SimplePoint(), 3);
+        assertEquals(1, actual.size());
+        assertSame(in, actual.get(0));
+    }
+
+    @Test
+    public void testFindInSameAsScan() {
+        Random rand = new Random(1L);
+        GridIndex<SimpleGeoEntity> inst = new GridIndex<>(16, e -> true);
+        List<SimpleGeoEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entities.add(create(i + 1, rand.nextDouble() * 1000 - 500, rand.nextDouble() * 1000 - 500));
+        }
+        inst.rebuild(entities);
+
+        // 狭い範囲はセルを、広い範囲は Entity のあるセルを走査する
+        for (double scale : new double[]{0, 3, 5, 8, 12}) {
+            for (int i = 0; i < 20; i++) {
+                SimplePoint center = new SimplePoint(rand.nextDouble() * 1000 - 500, rand.nextDouble() * 1000 - 500);
+                assertEquals(ids(entities.stream().filter(e -> e.isAreaIn(center, scale)).collect(Collectors.toList())),
+                        ids(inst.findIn(center, scale)));
+            }
+        }
+    }
+
+    @Test
+    public void testRelocate() {
+        GridIndex<SimpleGeoEntity> inst = new GridIndex<>(10, e -> true);
+        SimpleGeoEntity e = create(1, 1, 1);
+        List<SimpleGeoEntity> entities = new ArrayList<>();
+        entities.add(e);
+        inst.rebuild(entities);
+
+        e.setX(55);
+        e.setY(55);
+        // 格子に反映するまでは古いセルにいる
+        assertTrue(inst.findIn(new SimplePoint(55, 55), 2).isEmpty());
+
+        inst.relocate(e);
+        assertTrue(inst.findIn(new SimplePoint(), 2).isEmpty());
+        assertSame(e, inst.findIn(new SimplePoint(55, 55), 2).get(0));
+        assertEquals(1, inst.size());
+        assertEquals(1, inst.cellCount());
+    }
+
+    @Test
+    public void testRemove() {
+        GridIndex<SimpleGeoEntity> inst = new GridIndex<>(10, e -> true);
+        SimpleGeoEntity e1 = create(1, 1, 1);
+        SimpleGeoEntity e2 = create(2, 2, 2);
+        inst.relocate(e1);
+        inst.relocate(e2);
+
+        inst.remove(e1);
+        inst.remove(e1);
+
+        assertEquals(1, inst.size());
+        assertSame(e2, inst.findIn(new SimplePoint(), 3).get(0));
+
+        inst.remove(e2);
+        assertEquals(0, inst.size());
+        assertEquals(0, inst.cellCount());
+    }
+
+    @Test
+    public void testNotLocated() {
+        GridIndex<SimpleGeoEntity> inst = new GridIndex<>(10, e -> e.getId() != 1);
+        SimpleGeoEntity e = create(1, 1, 1);
+        inst.relocate(e);
+
+        // 件数には数えるが、検索には出てこない
+        assertEquals(1, inst.size());
+        assertEquals(0, inst.cellCount());
+        assertTrue(inst.findIn(new SimplePoint(), 3).isEmpty());
+
+        e.setId(2);
+        inst.relocate(e);
+        assertEquals(1, inst.size());
+        assertSame(e, inst.findIn(new SimplePoint(), 3).get(0));
+    }
+
+    protected SimpleGeoEntity create(long id, double x, double y) {
+        SimpleGeoEntity e = new SimpleGeoEntity();
+        e.setId(id);
+        e.setX(x);
+        e.setY(y);
+        return e;
+    }
+
+    protected List<Long> ids(List<SimpleGeoEntity> entities) {
+        return entities.stream().map(e -> e.getId()).sorted(Comparator.naturalOrder()).collect(Collectors.toList());
+    }
+}
@@ -24,7 +24,9 @@
 package net.rushhourgame.controller;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import static net.rushhourgame.RushHourProperties.GAME_DEF_HUMAN_LIFESPAN;
 import net.rushhourgame.controller.route.RouteEdge;
 import net.rushhourgame.controller.route.RouteNode;
@@ -37,6 +39,7 @@ import net.rushhourgame.entity.RailNode;
 import net.rushhourgame.entity.Residence;
 import net.rushhourgame.entity.SimplePoint;
 import net.rushhourgame.entity.Station;
+import net.rushhourgame.entity.Train;
 import net.rushhourgame.entity.TrainDeployed;
 import net.rushhourgame.exception.RushHourException;
 import org.junit.After;
@@ -111,6 +114,38 @@ public class HumanControllerTest extends AbstractControllerTest {
         assertNull(inst.entities);
     }
 
+    @Test
+    public void testCreateAll() throws RushHourException {
+        inst.entities = new ArrayList<>();
+        Residence src = rCon.create(origin);
+        Company dst = cCon.create(origin);
+        inst.em = spy(inst.em);
+
+        Human h1 = inst.spawn(TEST, src, dst);
+        Human h2 = inst.spawn(TEST, src, dst);
+        assertTrue(inst.entities.isEmpty());
+
+        inst.createAll(Arrays.asList(h1, h2));
+
+        verify(inst.em, times(2)).persist(any(Human.class));
+        verify(inst.em, times(1)).flush();
+        assertEquals(2, inst.entities.size());
+        assertNotEquals(0, h1.getId());
+        assertNotEquals(h1.getId(), h2.getId());
+        assertEquals(h2, inst.find(h2));
+    }
+
+    @Test
+    public void testCreateAllEmpty() {
+        inst.entities = new ArrayList<>();
+        inst.em = spy(inst.em);
+
+        inst.createAll(new ArrayList<>());
+
+        verify(inst.em, never()).flush();
+        verify(inst.writeLock, never()).lock();
+    }
+
     @Test
     public void testFindAll() {
         inst.entities = new ArrayList<>();
@@ -170,6 +205,7 @@ public class HumanControllerTest extends AbstractControllerTest {
         Residence src = rCon.create(origin);
         Company dst = cCon.create(origin);
         inst.searcher.call();
+        inst.searcher.swap();
         
         inst.create(origin, src, dst);
         Human h = spy(inst.findAll().get(0));
@@ -232,6 +268,35 @@ public class HumanControllerTest extends AbstractControllerTest {
         assertTrue(humans.contains(happy));
         assertFalse(humans.contains(tired));
         assertFalse(humans.contains(ended));
+        verify(happy, never()).leave();
+        verify(tired, times(1)).leave();
+        verify(ended, times(1)).leave();
+        verify(inst.em, times(1)).createNamedQuery(eq("Human.deleteByIds"), eq(Human.class));
+        assertEquals(2, inst.getLastKilled());
+        assertEquals(2, inst.getTotalKilled());
+    }
+
+    @Test
+    public void testKillHumanChunked() {
+        inst.em = spy(em);
+
+        List<Human> humans = new ArrayList<>();
+        for (int i = 0; i < HumanController.DELETE_CHUNK + 1; i++) {
+            humans.add(new Human());
+        }
+        inst.entities = humans;
+
+        inst.killHuman();
+
+        assertTrue(humans.isEmpty());
+        verify(inst.em, times(2)).createNamedQuery(eq("Human.deleteByIds"), eq(Human.class));
+        assertEquals(HumanController.DELETE_CHUNK + 1, inst.getLastKilled());
+
+        inst.killHuman();
+
+        verify(inst.em, times(2)).createNamedQuery(eq("Human.deleteByIds"), eq(Human.class));
+        assertEquals(0, inst.getLastKilled());
+        assertEquals(HumanController.DELETE_CHUNK + 1, inst.getTotalKilled());
     }
     
     @Test
@@ -262,6 +327,10 @@ public class HumanControllerTest extends AbstractControllerTest {
         assertEquals(newR, h.getSrc());
         assertEquals(newP, h.getOnPlatform());
         assertEquals(newT, h.getOnTrain());
+        verify(oldP, times(1)).removeWaiting(eq(h));
+        verify(newP, times(1)).addWaiting(eq(h));
+        verify(oldT, times(1)).removePassenger(eq(h));
+        verify(newT, times(1)).addPassenger(eq(h));
     }
     
     @Test
@@ -283,4 +352,49 @@ public class HumanControllerTest extends AbstractControllerTest {
         
         assertEquals(station.getPlatform(), inst.findAll().get(0).getOnPlatform());
     }
+    
+    @Test
+    public void testSynchronizeDatabaseRelinksRiders() throws RushHourException {
+        Player player = createPlayer();
+        AssistanceController.Result result = aCon.startWithStation(player, origin, Locale.JAPANESE);
+        Train t = tCon.create(player);
+        em.flush();
+        em.refresh(result.line);
+        TrainDeployed train = tCon.deploy(t, player, result.line.findTopDeparture());
+        Platform platform = result.station.getPlatform();
+        Residence src = rCon.create(origin);
+        Company dst = cCon.create(origin);
+
+        Human rider = inst.create(TEST, src, dst);
+        rider.setOnTrain(train);
+        Human waiter = inst.create(TEST, src, dst);
+        waiter.enterIntoPlatform(result.station.getTicketGate(), platform);
+        em.flush();
+        stCon.synchronizeDatabase();
+        tCon.synchronizeDatabase();
+        inst.synchronizeDatabase();
+
+        // stop → start
+        for (int i = 0; i < 2; i++) {
+            rider = inst.find(rider);
+            waiter = inst.find(waiter);
+            // em.merge が別のインスタンスを返すよう、変更した人を管理外にする
+            rider.setStandingOn(Human.StandingOn.TRAIN);
+            waiter.setStandingOn(Human.StandingOn.PLATFORM);
+            em.detach(rider);
+            em.detach(waiter);
+            stCon.synchronizeDatabase();
+            tCon.synchronizeDatabase();
+            inst.synchronizeDatabase();
+        }
+        rider = inst.find(rider);
+        waiter = inst.find(waiter);
+
+        train = tCon.find(train);
+        platform = stCon.find(platform);
+        assertEquals(1, train.getPassengers().size());
+        assertSame(rider, train.getPassengers().iterator().next());
+        assertEquals(1, platform.getWaiting().size());
+        assertSame(waiter, platform.getWaiting().iterator().next());
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import net.rushhourgame.controller.route.CostMatrix;
+import net.rushhourgame.controller.route.PermanentRouteNode;
+import net.rushhourgame.controller.route.RouteNode;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Residence;
+import net.rushhourgame.entity.SimplePoint;
+import net.rushhourgame.exception.RushHourException;
+import static org.mockito.Mockito.*;
+
+/**
+ * 住宅の数を変えながら、人の生成にかかる時間を 1人ずつ flush する場合とまとめて flush する場合で比べる.
+ * テスト用データベース (RushHourGameTestPU) を使い、最後にロールバックする. テストとしては実行されない. 例:
+ * <pre>
+ * mvn -Pdevelopment test-compile
+ * java -cp target/classes:target/test-classes:(依存ライブラリ) net.rushhourgame.controller.HumanSpawnBenchmark 10 100 1000
+ * </pre>
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class HumanSpawnBenchmark {
+
+    protected static final int CAPACITY = 10;
+    protected static final long INTERVAL = 1L;
+
+    public static void main(String[] args) throws RushHourException {
+        int[] residences = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10, 100, 1000};
+
+        System.out.println("residences\thumans\teach flush(ms)\tbatched(ms)");
+        for (int num : residences) {
+            run(num);
+        }
+    }
+
+    protected static void run(int num) throws RushHourException {
+        ControllerFactory factory = new ControllerFactory();
+        ResidenceController rCon = factory.getResidenceController();
+        HumanController hCon = factory.getHumanController();
+        factory.begin();
+        try {
+            rCon.synchronizeDatabase();
+            hCon.synchronizeDatabase();
+
+            Company dest = factory.getCompanyController().create(new SimplePoint(0, 0));
+            List<Residence> rs = new ArrayList<>();
+            for (int i = 0; i < num; i++) {
+                rs.add(rCon.create(new SimplePoint(i, i), CAPACITY, INTERVAL, 1.0));
+            }
+            List<RouteNode> nodes = rs.stream().map(r -> {
+                RouteNode node = new PermanentRouteNode(r);
+                node.setCost(0);
+                return node;
+            }).collect(Collectors.toList());
+            CostMatrix costs = CostMatrix.of(Collections.singletonMap(dest.getId(), nodes));
+            doReturn(costs).when(factory.getRouteSearcher()).getCostMatrix();
+
+            long start = System.nanoTime();
+            for (Residence r : rs) {
+                for (int i = 0; i < CAPACITY; i++) {
+                    hCon.create(r.makeNearPoint(r.getProdist()), r, dest);
+                }
+            }
+            long each = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            rCon.step(INTERVAL);
+            long batched = System.nanoTime() - start;
+
+            System.out.printf("%d\t%d\t%.1f\t%.1f%n", num, num * CAPACITY, each / 1e6, batched / 1e6);
+        } finally {
+            factory.rollback();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import net.rushhourgame.RushHourRandom;
+import net.rushhourgame.controller.route.PermanentRouteEdge;
+import net.rushhourgame.controller.route.PermanentRouteNode;
+import net.rushhourgame.controller.route.RouteNode;
+import net.rushhourgame.controller.route.TemporaryHumanPoint;
+import net.rushhourgame.controller.route.TemporaryHumanStep;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Platform;
+import net.rushhourgame.entity.RailNode;
+import net.rushhourgame.entity.RelayPointForHuman;
+import net.rushhourgame.entity.Station;
+import net.rushhourgame.entity.StepForHuman;
+import net.rushhourgame.entity.TicketGate;
+import net.rushhourgame.entity.hroute.StepForHumanIntoStation;
+import net.rushhourgame.entity.hroute.StepForHumanOutOfStation;
+import net.rushhourgame.entity.hroute.StepForHumanStationToCompany;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class HumanStepperTest {
+
+    protected static final long SEED = 20181018L;
+    protected static final int STATIONS = 8;
+    protected static final int HUMANS = 3000;
+    protected static final long INTERVAL = 1000;
+    protected static final double SPEED = 0.01;
+
+    protected final List<HumanStepper> steppers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        steppers.forEach(s -> s.shutdown());
+    }
+
+    @Test
+    public void testSequential() {
+        World world = new World(SEED, 10);
+        int[] count = new int[1];
+
+        stepper(1).step(world.humans, INTERVAL, SPEED, h -> count[0]++);
+
+        assertEquals(10, count[0]);
+        assertNull(stepper(1).pool);
+    }
+
+    @Test
+    public void testSmallWorldNotParallel() {
+        World world = new World(SEED, HumanStepper.CHUNK);
+        HumanStepper inst = stepper(4);
+
+        inst.step(world.humans, INTERVAL, SPEED, h -> {
+        });
+
+        assertNull(inst.pool);
+    }
+
+    /**
+     * 改札口の先着順が逐次実行と同じになる
+     */
+    @Test
+    public void testSameAsSequential() {
+        RushHourRandom.getInstance().reseed(SEED);
+        World expected = new World(SEED, HUMANS);
+        World actual = new World(SEED, HUMANS);
+        HumanStepper sequential = stepper(1);
+        HumanStepper parallel = stepper(4);
+
+        for (int tick = 0; tick < 30; tick++) {
+            sequential.step(expected.humans, INTERVAL, SPEED, h -> {
+            });
+            parallel.step(actual.humans, INTERVAL, SPEED, h -> {
+            });
+            expected.stepGates();
+            actual.stepGates();
+
+            for (int i = 0; i < HUMANS; i++) {
+                Human e = expected.humans.get(i);
+                Human a = actual.humans.get(i);
+                assertEquals("tick " + tick + " " + e, e.getX(), a.getX(), 0.0);
+                assertEquals("tick " + tick + " " + e, e.getY(), a.getY(), 0.0);
+                assertEquals("tick " + tick + " " + e, e.getStandingOn(), a.getStandingOn());
+                assertEquals("tick " + tick + " " + e, e.getLifespan(), a.getLifespan());
+                assertEquals("tick " + tick + " " + e, e.isFinished(), a.isFinished());
+                assertEquals("tick " + tick + " " + e, id(e.getOnPlatform()), id(a.getOnPlatform()));
+            }
+            for (int i = 0; i < STATIONS; i++) {
+                assertEquals(expected.stations.get(i).getPlatform().getWaiting().size(),
+                        actual.stations.get(i).getPlatform().getWaiting().size());
+                assertEquals(expected.stations.get(i).getTicketGate().canEnter(),
+                        actual.stations.get(i).getTicketGate().canEnter());
+            }
+        }
+        // 混雑で待たされた人がいる
+        assertTrue(expected.humans.stream().anyMatch(h -> h.getLifespan() < World.LIFESPAN - INTERVAL));
+    }
+
+    protected HumanStepper stepper(int parallelism) {
+        HumanStepper s = new HumanStepper(parallelism);
+        steppers.add(s);
+        return s;
+    }
+
+    protected static long id(Platform p) {
+        return p == null ? 0 : p.getId();
+    }
+
+    /**
+     * 駅に入る人と駅から会社へ向かう人がいる世界. 同じ seed からは同じ世界を作る
+     */
+    protected static class World {
+
+        protected static final long LIFESPAN = 1_000_000;
+
+        protected final List<Station> stations = new ArrayList<>();
+        protected final List<Company> companies = new ArrayList<>();
+        protected final List<Human> humans = new ArrayList<>();
+
+        public World(long seed, int size) {
+            Random rand = new Random(seed);
+            for (int i = 1; i <= STATIONS; i++) {
+                stations.add(createStation(i, rand.nextDouble() * 100, rand.nextDouble() * 100));
+                Company c = new Company();
+                c.setId(i);
+                c.setX(rand.nextDouble() * 100);
+                c.setY(rand.nextDouble() * 100);
+                companies.add(c);
+            }
+            for (int i = 1; i <= size; i++) {
+                int st = rand.nextInt(STATIONS);
+                Human h = new Human();
+                h.setId(i);
+                h.setLifespan(LIFESPAN);
+                h.setX(rand.nextDouble() * 100);
+                h.setY(rand.nextDouble() * 100);
+                if (rand.nextBoolean()) {
+                    h.setStandingOn(Human.StandingOn.GROUND);
+                    h.setCurrent(routeIntoStation(h, stations.get(st)));
+                } else {
+                    Platform p = stations.get(st).getPlatform();
+                    p.enter(true);
+                    h.setOnPlatform(p);
+                    h.setStandingOn(Human.StandingOn.PLATFORM);
+                    h.setCurrent(routeToCompany(stations.get(st), companies.get(st)));
+                }
+                humans.add(h);
+            }
+        }
+
+        public void stepGates() {
+            stations.forEach(st -> st.getTicketGate().step(INTERVAL));
+        }
+
+        protected static Station createStation(long id, double x, double y) {
+            Station st = new Station();
+            st.setId(id);
+            st.setX(x);
+            st.setY(y);
+            RailNode rn = new RailNode();
+            rn.setX(x);
+            rn.setY(y);
+            Platform p = new Platform();
+            p.setId(id);
+            p.setStation(st);
+            p.setRailNode(rn);
+            p.setCapacity(400);
+            TicketGate g = new TicketGate();
+            g.setId(id);
+            g.setStation(st);
+            g.setGateNum(2);
+            g.setMobility(0.001);
+            // 改札口を出た人は人ごとの乱数列でばらける
+            g.setProdist(5);
+            st.setPlatform(p);
+            st.setTicketGate(g);
+            return st;
+        }
+
+        protected static RouteNode routeIntoStation(Human h, Station st) {
+            StepForHumanIntoStation into = new StepForHumanIntoStation();
+            into.setFrom(st.getTicketGate());
+            into.setTo(st.getPlatform());
+            TemporaryHumanPoint start = new TemporaryHumanPoint(h);
+            return chain(new RelayPointForHuman[]{start, st.getTicketGate(), st.getPlatform()},
+                    new StepForHuman[]{new TemporaryHumanStep(start, st.getTicketGate()), into});
+        }
+
+        protected static RouteNode routeToCompany(Station st, Company c) {
+            StepForHumanOutOfStation out = new StepForHumanOutOfStation();
+            out.setFrom(st.getPlatform());
+            out.setTo(st.getTicketGate());
+            StepForHumanStationToCompany walk = new StepForHumanStationToCompany();
+            walk.setFrom(st.getTicketGate());
+            walk.setTo(c);
+            return chain(new RelayPointForHuman[]{st.getPlatform(), st.getTicketGate(), c},
+                    new StepForHuman[]{out, walk});
+        }
+
+        protected static RouteNode chain(RelayPointForHuman[] points, StepForHuman[] steps) {
+            RouteNode[] nodes = new RouteNode[points.length];
+            for (int i = 0; i < points.length; i++) {
+                nodes[i] = new PermanentRouteNode(points[i]);
+            }
+            for (int i = 0; i < steps.length; i++) {
+                nodes[i].setVia(nodes[i + 1]);
+                nodes[i].getOutEdges().add(new PermanentRouteEdge(steps[i], nodes[i], nodes[i + 1]));
+            }
+            for (RouteNode n : nodes) {
+                n.fix();
+            }
+            return nodes[0];
+        }
+    }
+}
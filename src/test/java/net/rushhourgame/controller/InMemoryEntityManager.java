@@ -0,0 +1,432 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.persistence.CascadeType;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.ManyToOne;
+import javax.persistence.NoResultException;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.TypedQuery;
+import net.rushhourgame.entity.AbstractEntity;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Identifiable;
+import net.rushhourgame.entity.Player;
+import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.RailEdge;
+import net.rushhourgame.entity.TrainDeployed;
+import net.rushhourgame.entity.hroute.StepForHumanThroughTrain;
+
+/**
+ * データベースを使わない EntityManager. コンテナもデータベースもなしにコントローラを動かすベンチマーク用.
+ * <p>
+ * Entity はクラスごとに id 順でメモリ上に保持する. persist で id を採番し、null の関連コレクションを空にして、
+ * cascade 指定に従って関連 Entity も登録する.
+ * 永続化コンテキストと同じく、検索結果は保持している Entity そのものを返す.
+ * mappedBy 側の関連は refresh したときだけ、所有側の Entity から作り直す.
+ * 名前付きクエリはゲームの進行で使うものだけを実装し、それ以外は UnsupportedOperationException を投げる.
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class InMemoryEntityManager implements InvocationHandler {
+
+    protected static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    protected final Map<Class<?>, Map<Long, AbstractEntity>> tables = new LinkedHashMap<>();
+    protected final Set<Object> managed = Collections.newSetFromMap(new IdentityHashMap<>());
+    protected long sequence;
+
+    public static EntityManager create() {
+        return (EntityManager) Proxy.newProxyInstance(InMemoryEntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class}, new InMemoryEntityManager());
+    }
+
+    /**
+     * 経路探索スレッドからも呼ばれるため、呼び出しごとに排他する
+     */
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "persist":
+                persist((AbstractEntity) args[0]);
+                return null;
+            case "merge":
+                return merge((AbstractEntity) args[0]);
+            case "remove":
+                remove((AbstractEntity) args[0]);
+                return null;
+            case "find":
+                return find((Class<?>) args[0], ((Number) args[1]).longValue());
+            case "contains":
+                return managed.contains(args[0]);
+            case "refresh":
+                loadRelations(Collections.singletonList((AbstractEntity) args[0]));
+                return null;
+            case "flush":
+            case "clear":
+            case "detach":
+            case "close":
+            case "lock":
+            case "setFlushMode":
+                return null;
+            case "isOpen":
+                return true;
+            case "getTransaction":
+                return proxy(EntityTransaction.class, (p, m, a) -> m.getName().equals("isActive") ? false : null);
+            case "createNamedQuery":
+                return new NamedQuery((String) args[0]).proxy();
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return InMemoryEntityManager.class.getSimpleName();
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    protected void persist(AbstractEntity entity) {
+        if (entity == null || managed.contains(entity)) {
+            return;
+        }
+        if (entity.getId() == 0) {
+            entity.setId(++sequence);
+        }
+        managed.add(entity);
+        tables.computeIfAbsent(entity.getClass(), k -> new LinkedHashMap<>()).put(entity.getId(), entity);
+        // EclipseLink と同じく、null の関連コレクションを空にする
+        fieldsOf(entity.getClass()).stream()
+                .filter(f -> f.isAnnotationPresent(OneToMany.class) && get(f, entity) == null)
+                .forEach(f -> set(f, entity, new ArrayList<>()));
+        cascade(entity, CascadeType.PERSIST, this::persist);
+    }
+
+    /**
+     * 同じ id の Entity を置き換える. 管理外の Entity は persist する
+     */
+    protected AbstractEntity merge(AbstractEntity entity) {
+        if (managed.contains(entity)) {
+            return entity;
+        }
+        Map<Long, AbstractEntity> table = tables.get(entity.getClass());
+        AbstractEntity old = table != null ? table.get(entity.getId()) : null;
+        if (old != null) {
+            managed.remove(old);
+            managed.add(entity);
+            table.put(entity.getId(), entity);
+        } else {
+            persist(entity);
+        }
+        return entity;
+    }
+
+    protected void remove(AbstractEntity entity) {
+        if (entity == null || !managed.remove(entity)) {
+            return;
+        }
+        tables.get(entity.getClass()).remove(entity.getId());
+        cascade(entity, CascadeType.REMOVE, this::remove);
+    }
+
+    protected Object find(Class<?> entityClass, long id) {
+        return tables.entrySet().stream()
+                .filter(e -> entityClass.isAssignableFrom(e.getKey()))
+                .map(e -> e.getValue().get(id))
+                .filter(e -> e != null)
+                .findFirst().orElse(null);
+    }
+
+    protected List<AbstractEntity> findAll(String entityName) {
+        return tables.entrySet().stream()
+                .filter(e -> e.getKey().getSimpleName().equals(entityName))
+                .flatMap(e -> e.getValue().values().stream())
+                .collect(Collectors.toList());
+    }
+
+    protected void cascade(AbstractEntity entity, CascadeType type, Consumer<AbstractEntity> action) {
+        for (Field f : fieldsOf(entity.getClass())) {
+            if (!isCascaded(f, type)) {
+                continue;
+            }
+            Object value = get(f, entity);
+            if (value instanceof Collection) {
+                new ArrayList<>((Collection<?>) value).forEach(v -> action.accept((AbstractEntity) v));
+            } else if (value != null) {
+                action.accept((AbstractEntity) value);
+            }
+        }
+    }
+
+    protected boolean isCascaded(Field f, CascadeType type) {
+        CascadeType[] cascades;
+        if (f.isAnnotationPresent(OneToOne.class)) {
+            cascades = f.getAnnotation(OneToOne.class).cascade();
+        } else if (f.isAnnotationPresent(OneToMany.class)) {
+            cascades = f.getAnnotation(OneToMany.class).cascade();
+        } else if (f.isAnnotationPresent(ManyToOne.class)) {
+            cascades = f.getAnnotation(ManyToOne.class).cascade();
+        } else {
+            return false;
+        }
+        return Arrays.stream(cascades).anyMatch(c -> c == type || c == CascadeType.ALL);
+    }
+
+    /**
+     * mappedBy 側の関連を、所有側の Entity から作り直す. 所有側の表は関連ごとに1回だけ走査する
+     *
+     * @param entities 対象
+     */
+    protected void loadRelations(List<? extends AbstractEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        for (Field f : fieldsOf(entities.get(0).getClass())) {
+            String mappedBy = mappedBy(f);
+            if (mappedBy == null) {
+                continue;
+            }
+            boolean isMany = Collection.class.isAssignableFrom(f.getType());
+            Class<?> owningClass = isMany
+                    ? (Class<?>) ((ParameterizedType) f.getGenericType()).getActualTypeArguments()[0]
+                    : f.getType();
+
+            Map<Long, List<AbstractEntity>> index = new HashMap<>();
+            tables.entrySet().stream()
+                    .filter(e -> owningClass.isAssignableFrom(e.getKey()))
+                    .flatMap(e -> e.getValue().values().stream())
+                    .forEach(owning -> {
+                        Object target = get(field(owning.getClass(), mappedBy), owning);
+                        if (target != null) {
+                            index.computeIfAbsent(((Identifiable) target).getId(), k -> new ArrayList<>()).add(owning);
+                        }
+                    });
+
+            for (AbstractEntity entity : entities) {
+                List<AbstractEntity> found = index.getOrDefault(entity.getId(), Collections.emptyList());
+                set(f, entity, isMany ? new ArrayList<>(found) : (found.isEmpty() ? null : found.get(0)));
+            }
+        }
+    }
+
+    protected static String mappedBy(Field f) {
+        String mappedBy = "";
+        if (f.isAnnotationPresent(OneToOne.class)) {
+            mappedBy = f.getAnnotation(OneToOne.class).mappedBy();
+        } else if (f.isAnnotationPresent(OneToMany.class)) {
+            mappedBy = f.getAnnotation(OneToMany.class).mappedBy();
+        }
+        return mappedBy.isEmpty() ? null : mappedBy;
+    }
+
+    /**
+     * リフレクションは遅いため、クラスごとにフィールドの一覧をキャッシュする
+     *
+     * @param cls クラス
+     * @return スーパークラスのものも含むフィールド
+     */
+    protected static List<Field> fieldsOf(Class<?> cls) {
+        return FIELDS.computeIfAbsent(cls, key -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = key; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    f.setAccessible(true);
+                    fields.add(f);
+                }
+            }
+            return fields;
+        });
+    }
+
+    protected static Field field(Class<?> cls, String name) {
+        for (Field f : fieldsOf(cls)) {
+            if (f.getName().equals(name)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException(cls + " has no field " + name);
+    }
+
+    protected static Object get(Field f, Object obj) {
+        try {
+            return f.get(obj);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    protected static void set(Field f, Object obj, Object value) {
+        try {
+            f.set(obj, value);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InMemoryEntityManager.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * 名前付きクエリ. パラメタを受け取り、実行時に名前に応じてメモリ上の Entity を検索・削除する
+     */
+    protected class NamedQuery implements InvocationHandler {
+
+        protected final String name;
+        protected final String entityName;
+        protected final Map<String, Object> params = new HashMap<>();
+
+        public NamedQuery(String name) {
+            this.name = name;
+            this.entityName = name.substring(0, name.indexOf('.'));
+        }
+
+        public TypedQuery<?> proxy() {
+            return InMemoryEntityManager.proxy(TypedQuery.class, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "setParameter":
+                    params.put((String) args[0], args[1]);
+                    return proxy;
+                case "setMaxResults":
+                case "setFirstResult":
+                case "setHint":
+                case "setFlushMode":
+                case "setLockMode":
+                    return proxy;
+                case "getResultList":
+                    synchronized (InMemoryEntityManager.this) {
+                        return select();
+                    }
+                case "getSingleResult":
+                    synchronized (InMemoryEntityManager.this) {
+                        List<?> result = select();
+                        if (result.isEmpty()) {
+                            throw new NoResultException(name);
+                        }
+                        return result.get(0);
+                    }
+                case "executeUpdate":
+                    synchronized (InMemoryEntityManager.this) {
+                        return update();
+                    }
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return name;
+                default:
+                    throw new UnsupportedOperationException(name + " " + method);
+            }
+        }
+
+        protected List<?> select() {
+            List<AbstractEntity> all = findAll(entityName);
+            switch (name.substring(entityName.length() + 1)) {
+                case "findAll":
+                    return all;
+                case "exists":
+                    return Collections.singletonList(all.stream()
+                            .filter(e -> !params.containsKey("owner") || e.isOwnedBy((Player) params.get("owner")))
+                            .anyMatch(e -> ((Pointable) e).getX() == (double) params.get("x")
+                            && ((Pointable) e).getY() == (double) params.get("y")) ? 1L : 0L);
+                default:
+                    break;
+            }
+            switch (name) {
+                case "Company.findIn":
+                    return all.stream().map(e -> (Company) e)
+                            .filter(e -> e.getX() > (double) params.get("x1") && e.getX() < (double) params.get("x2")
+                            && e.getY() > (double) params.get("y1") && e.getY() < (double) params.get("y2"))
+                            .collect(Collectors.toList());
+                case "RailEdge.find":
+                    return all.stream().map(e -> (RailEdge) e)
+                            .filter(e -> e.getFrom().equalsId((Identifiable) params.get("from"))
+                            && e.getTo().equalsId((Identifiable) params.get("to")))
+                            .collect(Collectors.toList());
+                case "TrainDeployed.findByCurrentId":
+                    return all.stream().map(e -> (TrainDeployed) e)
+                            .filter(e -> e.getCurrent() != null && e.getCurrent().getId() == (long) params.get("id"))
+                            .collect(Collectors.toList());
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        }
+
+        protected int update() {
+            List<AbstractEntity> targets;
+            if (name.endsWith(".deleteBy")) {
+                targets = Collections.singletonList((AbstractEntity) params.get("obj"));
+            } else {
+                switch (name) {
+                    case "Human.deleteByIds":
+                        // 全件を走査せず id で引き、削除する人数に比例する手間にする
+                        targets = ((Collection<?>) params.get("ids")).stream()
+                                .map(id -> (AbstractEntity) find(Human.class, (Long) id))
+                                .filter(e -> e != null)
+                                .collect(Collectors.toList());
+                        break;
+                    case "StepForHumanThroughTrain.removeByLine":
+                        targets = findAll(entityName).stream()
+                                .filter(e -> ((StepForHumanThroughTrain) e).getLine().equalsId((Identifiable) params.get("line")))
+                                .collect(Collectors.toList());
+                        break;
+                    case "OAuth.purgeOld":
+                        targets = Collections.emptyList();
+                        break;
+                    default:
+                        throw new UnsupportedOperationException(name);
+                }
+            }
+            targets.forEach(InMemoryEntityManager.this::remove);
+            return targets.size();
+        }
+    }
+}
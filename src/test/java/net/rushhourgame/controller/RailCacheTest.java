@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.rushhourgame.entity.Player;
+import net.rushhourgame.entity.RailEdge;
+import net.rushhourgame.entity.RailNode;
+import net.rushhourgame.entity.SimplePoint;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RailCacheTest {
+
+    protected Player owner;
+    protected Player other;
+    protected RailNode n1;
+    protected RailNode n2;
+    protected RailNode lonely;
+    protected RailNode far;
+    protected RailEdge e12;
+    protected RailEdge e21;
+    protected RailCache inst;
+
+    @Before
+    public void setUp() {
+        owner = new Player();
+        owner.setId(1);
+        other = new Player();
+        other.setId(2);
+
+        n1 = createNode(1, 0, 0);
+        n2 = createNode(2, 100, 0);
+        lonely = createNode(3, 1, 1);
+        far = createNode(4, 1000, 1000);
+        e12 = createEdge(1, n1, n2);
+        e21 = createEdge(2, n2, n1);
+
+        inst = new RailCache(Arrays.asList(n1, n2, lonely, far), Arrays.asList(e12, e21), 16);
+    }
+
+    @Test
+    public void testFindNodeIn() {
+        List<RailNode> actual = inst.findNodeIn(new SimplePoint(), 4);
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(n1));
+        assertTrue(actual.contains(lonely));
+
+        assertTrue(inst.findNodeIn(other, new SimplePoint(), 4).isEmpty());
+    }
+
+    @Test
+    public void testFindLonelyIn() {
+        List<RailNode> actual = inst.findLonelyIn(owner, new SimplePoint(), 4, n -> false);
+        assertEquals(1, actual.size());
+        assertSame(lonely, actual.get(0));
+
+        // 駅があれば孤立していない
+        assertTrue(inst.findLonelyIn(owner, new SimplePoint(), 4, n -> n == lonely).isEmpty());
+    }
+
+    @Test
+    public void testFindEdgeIn() {
+        // 片方の端だけが範囲内にあっても含める
+        List<RailEdge> actual = inst.findEdgeIn(new SimplePoint(), 4);
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(e12));
+        assertTrue(actual.contains(e21));
+
+        // 両端が範囲内にあっても1度だけ返す
+        assertEquals(2, inst.findEdgeIn(owner, new SimplePoint(50, 0), 8).size());
+        assertTrue(inst.findEdgeIn(other, new SimplePoint(), 4).isEmpty());
+        assertTrue(inst.findEdgeIn(new SimplePoint(1000, 1000), 4).isEmpty());
+    }
+
+    @Test
+    public void testHasRailNode() {
+        assertTrue(inst.hasRailNode(owner));
+        assertFalse(inst.hasRailNode(other));
+    }
+
+    @Test
+    public void testCopied() {
+        List<RailNode> nodes = new ArrayList<>();
+        nodes.add(n1);
+        RailCache copied = new RailCache(nodes, new ArrayList<>(), 16);
+        nodes.add(n2);
+
+        assertEquals(1, copied.getNodes().size());
+    }
+
+    protected RailNode createNode(long id, double x, double y) {
+        RailNode n = new RailNode();
+        n.setId(id);
+        n.setOwner(owner);
+        n.setX(x);
+        n.setY(y);
+        return n;
+    }
+
+    protected RailEdge createEdge(long id, RailNode from, RailNode to) {
+        RailEdge e = new RailEdge();
+        e.setId(id);
+        e.setOwner(owner);
+        e.setFrom(from);
+        e.setTo(to);
+        return e;
+    }
+}
@@ -610,4 +610,46 @@ public class RailControllerTest extends AbstractControllerTest {
     public void testFindNodeIn() {
         assertTrue(inst.findNodeIn(TEST_POS, 6).isEmpty());
     }
+
+    @Test
+    public void testFindNodeInAfterCreate() throws RushHourException {
+        Player player = createPlayer();
+        assertTrue(inst.findNodeIn(TEST_POS, 6).isEmpty());
+        assertFalse(inst.hasRailNode(player));
+
+        RailNode created = inst.create(player, TEST_POS);
+
+        List<RailNode> actual = inst.findNodeIn(TEST_POS, 6);
+        assertEquals(1, actual.size());
+        assertEquals(created, actual.get(0));
+        assertTrue(inst.hasRailNode(player));
+        assertEquals(1, inst.findLonelyIn(player, TEST_POS, 6).size());
+    }
+
+    @Test
+    public void testFindEdgeInAfterExtend() throws RushHourException {
+        Player player = createPlayer();
+        RailNode created = inst.create(player, TEST_POS);
+        assertTrue(inst.findEdgeIn(TEST_POS, 6).isEmpty());
+
+        inst.extend(player, created, TEST_POS2);
+
+        assertEquals(2, inst.findEdgeIn(TEST_POS, 6).size());
+        assertEquals(2, inst.findEdgeIn(player, TEST_POS, 6).size());
+        assertTrue(inst.findLonelyIn(player, TEST_POS, 6).isEmpty());
+    }
+
+    @Test
+    public void testFindEdgeInAfterRemove() throws RushHourException {
+        Player player = createPlayer();
+        RailNode created = inst.create(player, TEST_POS);
+        inst.extend(player, created, TEST_POS2);
+        List<RailEdge> edges = inst.findEdgeIn(TEST_POS, 6);
+        assertEquals(2, edges.size());
+
+        inst.remove(player, inst.findEdge(player, edges.get(0).getId(), edges.get(1).getId()));
+
+        assertTrue(inst.findEdgeIn(TEST_POS, 6).isEmpty());
+        assertTrue(inst.findNodeIn(TEST_POS, 6).isEmpty());
+    }
 }
@@ -23,11 +23,15 @@
  */
 package net.rushhourgame.controller;
 
+import java.util.Arrays;
+import java.util.Collections;
 import net.rushhourgame.exception.RushHourException;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static net.rushhourgame.RushHourResourceBundle.*;
 import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.controller.route.CostMatrix;
+import net.rushhourgame.controller.route.PermanentRouteNode;
 import net.rushhourgame.controller.route.RouteNode;
 import net.rushhourgame.entity.Company;
 import net.rushhourgame.entity.Pointable;
@@ -130,16 +134,18 @@ public class ResidenceControllerTest extends AbstractControllerTest {
         inst.findAll().add(src);
         
         Company dest = cCon.create(TEST_POS);
-        RouteNode node = mock(RouteNode.class);
-        doReturn(node).when(inst.searcher).getStart(eq(src), eq(dest));
-        doReturn(src.distTo(dest)).when(node).getCost();
+        doReturn(costOf(src, dest)).when(inst.searcher).getCostMatrix();
         inst.hCon.em = spy(inst.hCon.em);
         doNothing().when(inst.hCon.em).flush();
         
         inst.step(TEST_INTERVAL);
         
         verify(src, times(2)).expires();
-        verify(inst.hCon, times(TEST_CAPACITY)).create(any(Pointable.class), any(Residence.class), any(Company.class));
+        verify(inst.hCon, times(TEST_CAPACITY)).spawn(any(Pointable.class), any(Residence.class), any(Company.class));
+        verify(inst.hCon, never()).create(any(Pointable.class), any(Residence.class), any(Company.class));
+        verify(inst.hCon, times(1)).createAll(argThat(humans -> humans.size() == TEST_CAPACITY));
+        verify(inst.hCon.em, times(1)).flush();
+        assertEquals(TEST_CAPACITY, inst.hCon.findAll().size());
         assertTrue(src.getCount() < src.getInterval());
     }
     
@@ -150,13 +156,12 @@ public class ResidenceControllerTest extends AbstractControllerTest {
         inst.findAll().add(src);
         
         Company dest = cCon.create(new SimplePoint(10000, 10000));
-        RouteNode node = mock(RouteNode.class);
-        doReturn(node).when(inst.searcher).getStart(eq(src), eq(dest));
-        doReturn(src.distTo(dest)).when(node).getCost();
+        doReturn(costOf(src, dest)).when(inst.searcher).getCostMatrix();
         
         inst.step(TEST_INTERVAL);
         
         verify(src, times(2)).expires();
+        verify(inst.hCon, never()).spawn(any(Pointable.class), any(Residence.class), any(Company.class));
         verify(inst.hCon, never()).create(any(Pointable.class), any(Residence.class), any(Company.class));
         assertTrue(src.getCount() < src.getInterval());
     }
@@ -170,4 +175,17 @@ public class ResidenceControllerTest extends AbstractControllerTest {
         
         assertEquals(3, inst.findAll().get(0).getCount());
     }
+    
+    /**
+     * 経路探索の結果と同じく、会社ごとの経路ノードからコスト表を作る
+     *
+     * @param src 住宅
+     * @param dest 会社
+     * @return src から dest へ直接歩くコストを持つ表
+     */
+    protected static CostMatrix costOf(Residence src, Company dest) {
+        RouteNode node = new PermanentRouteNode(src);
+        node.setCost(src.distTo(dest));
+        return CostMatrix.of(Collections.singletonMap(dest.getId(), Arrays.asList(node)));
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import net.rushhourgame.controller.route.IndexedMinHeap;
+import net.rushhourgame.controller.route.PermanentRouteEdge;
+import net.rushhourgame.controller.route.PermanentRouteNode;
+import net.rushhourgame.controller.route.RouteEdge;
+import net.rushhourgame.controller.route.RouteGraph;
+import net.rushhourgame.controller.route.RouteNode;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.RelayPointForHuman;
+import net.rushhourgame.entity.Residence;
+import net.rushhourgame.entity.StepForHuman;
+
+/**
+ * RouteNode 上の PriorityQueue による探索と、RouteGraph 上の配列による探索の速度を格子状の経路網で比べる.
+ * テストとしては実行されない. 例:
+ * <pre>
+ * mvn -Pdevelopment test-compile
+ * java -cp target/classes:target/test-classes:(依存ライブラリ) net.rushhourgame.controller.RouteSearchBenchmark 10000 100000
+ * </pre>
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class RouteSearchBenchmark {
+
+    protected static final int WARMUP = 5;
+    protected static final int ITERATION = 10;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10_000, 30_000, 100_000};
+
+        System.out.println("nodes\tedges\tPriorityQueue(ms/op)\tIndexedMinHeap(ms/op)");
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    protected static void run(int size) {
+        int side = (int) Math.sqrt(size);
+        List<Residence> residences = new ArrayList<>();
+        for (int i = 0; i < side * side; i++) {
+            Residence r = new Residence();
+            r.setId(i + 1);
+            residences.add(r);
+        }
+
+        List<StepForHuman> steps = new ArrayList<>();
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int from = y * side + x;
+                // 重みをばらつかせて同じコストの経路が多くならないようにする
+                if (x + 1 < side) {
+                    steps.add(new GridStep(residences.get(from), residences.get(from + 1), 1 + (from * 7 % 5)));
+                    steps.add(new GridStep(residences.get(from + 1), residences.get(from), 1 + (from * 11 % 5)));
+                }
+                if (y + 1 < side) {
+                    steps.add(new GridStep(residences.get(from), residences.get(from + side), 1 + (from * 13 % 5)));
+                    steps.add(new GridStep(residences.get(from + side), residences.get(from), 1 + (from * 17 % 5)));
+                }
+            }
+        }
+
+        RouteGraph graph = new RouteGraph(residences, Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), steps);
+        int goal = graph.size() / 2;
+
+        double[] expected = null;
+        long objectTime = 0;
+        for (int i = 0; i < WARMUP + ITERATION; i++) {
+            List<RouteNode> nodes = wrap(graph);
+            long start = System.nanoTime();
+            search(nodes, nodes.get(goal));
+            if (i >= WARMUP) {
+                objectTime += System.nanoTime() - start;
+            }
+            expected = nodes.stream().mapToDouble(RouteNode::getCost).toArray();
+        }
+
+        double[] cost = new double[graph.size()];
+        int[] via = new int[graph.size()];
+        IndexedMinHeap heap = new IndexedMinHeap(graph.size());
+        long arrayTime = 0;
+        for (int i = 0; i < WARMUP + ITERATION; i++) {
+            long start = System.nanoTime();
+            graph.search(goal, cost, via, heap);
+            if (i >= WARMUP) {
+                arrayTime += System.nanoTime() - start;
+            }
+        }
+
+        for (int i = 0; i < cost.length; i++) {
+            if (Math.abs(expected[i] - cost[i]) > 1e-9) {
+                throw new IllegalStateException("cost mismatch at " + i + ": " + expected[i] + " != " + cost[i]);
+            }
+        }
+
+        System.out.printf("%d\t%d\t%.3f\t%.3f%n", graph.size(), graph.edgeSize(),
+                objectTime / 1e6 / ITERATION, arrayTime / 1e6 / ITERATION);
+    }
+
+    protected static List<RouteNode> wrap(RouteGraph graph) {
+        List<RouteNode> nodes = new ArrayList<>(graph.size());
+        for (int i = 0; i < graph.size(); i++) {
+            nodes.add(new PermanentRouteNode(graph.getOriginal(i)));
+        }
+        for (int e = 0; e < graph.edgeSize(); e++) {
+            RouteNode from = nodes.get(graph.getFrom(e));
+            RouteNode to = nodes.get(graph.getTo(e));
+            RouteEdge edge = new PermanentRouteEdge(graph.getStep(e), from, to);
+            from.getOutEdges().add(edge);
+            to.getInEdges().add(edge);
+        }
+        return nodes;
+    }
+
+    /**
+     * RouteNode 上で PriorityQueue を使って探索する. 比較の基準と、配列による探索の結果の検証に使う.
+     *
+     * @param nodes 出発地一覧
+     * @param goal 目的地
+     */
+    protected static void search(List<RouteNode> nodes, RouteNode goal) {
+        nodes.forEach(node -> node.setCost(Double.MAX_VALUE));
+        goal.setCost(0);
+
+        PriorityQueue<RouteNode> queue = new PriorityQueue<>();
+        queue.add(goal);
+
+        while (!queue.isEmpty()) {
+            RouteNode x = queue.poll();
+
+            x.getInEdges().forEach(link -> {
+                RouteNode y = link.getFrom();
+                double newValue = x.getCost() + link.getCost();
+                if (newValue < y.getCost()) {
+                    y.setCost(newValue);
+                    y.setVia(x);
+                    queue.offer(y);
+                }
+            });
+        }
+
+        nodes.forEach(node -> node.fix());
+    }
+
+    /**
+     * コストが固定の移動ステップ
+     */
+    protected static class GridStep implements StepForHuman {
+
+        protected final RelayPointForHuman from;
+        protected final RelayPointForHuman to;
+        protected final double cost;
+
+        public GridStep(RelayPointForHuman from, RelayPointForHuman to, double cost) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+
+        @Override
+        public String getUid() {
+            return "grid" + from.getId() + "_" + to.getId();
+        }
+
+        @Override
+        public RelayPointForHuman getFrom() {
+            return from;
+        }
+
+        @Override
+        public RelayPointForHuman getTo() {
+            return to;
+        }
+
+        @Override
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public boolean isAreaIn(Pointable center, double scale) {
+            return false;
+        }
+
+        @Override
+        public long step(Human h, long interval, double speed) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFinished(Human h) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
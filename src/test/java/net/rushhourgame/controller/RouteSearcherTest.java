@@ -24,14 +24,20 @@
 package net.rushhourgame.controller;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import net.rushhourgame.controller.route.IndexedMinHeap;
 import net.rushhourgame.controller.route.PermanentRouteEdge;
 import net.rushhourgame.controller.route.PermanentRouteNode;
 import net.rushhourgame.controller.route.RouteEdge;
+import net.rushhourgame.controller.route.RouteGraph;
 import net.rushhourgame.controller.route.RouteNode;
+import net.rushhourgame.controller.route.RouteTable;
 import net.rushhourgame.controller.route.TemporaryHumanPoint;
 import net.rushhourgame.controller.route.TemporaryHumanRouteEdge;
 import net.rushhourgame.entity.Company;
@@ -40,6 +46,7 @@ import net.rushhourgame.entity.Line;
 import net.rushhourgame.entity.Platform;
 import net.rushhourgame.entity.Player;
 import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.RelayPointForHuman;
 import net.rushhourgame.exception.RushHourException;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -83,10 +90,11 @@ public class RouteSearcherTest extends AbstractControllerTest {
     }
 
     @Test
-    public void testFlush() {
+    public void testSwap() {
         List<Human> humans = new ArrayList<>();
         Human human = new Human();
         humans.add(human);
+        doReturn(humans).when(inst.hCon).findAll();
 
         RouteNode node = mock(RouteNode.class);
         RouteEdge edge = mock(RouteEdge.class);
@@ -94,13 +102,51 @@ public class RouteSearcherTest extends AbstractControllerTest {
 
         human.setCurrent(node);
 
-        inst.flush(humans);
+        RouteTable next = new RouteTable(1, 0, Collections.emptyMap(), Collections.emptyList());
+        inst.pending.set(next);
+
+        assertTrue(inst.swap());
 
         assertNull(human.getCurrent());
+        assertSame(next, inst.table);
+        assertNull(inst.pending.get());
+        assertEquals(1, inst.getVersion());
+    }
+
+    @Test
+    public void testSwapNothing() {
+        assertFalse(inst.swap());
+        assertSame(RouteTable.EMPTY, inst.table);
+        assertEquals(0, inst.getVersion());
+        verify(inst.hCon, never()).findAll();
+    }
+
+    @Test
+    public void testIsOutdated() {
+        assertFalse(inst.isAvailable());
+        assertTrue(inst.isOutdated());
+
+        inst.pending.set(new RouteTable(1, 0, Collections.emptyMap(), Collections.emptyList()));
+        assertTrue(inst.isAvailable());
+        assertFalse(inst.isOutdated());
+
+        inst.notifyAddition();
+        assertTrue(inst.isAvailable());
+        assertTrue(inst.isOutdated());
+
+        inst.pending.set(new RouteTable(2, 1, Collections.emptyMap(), Collections.emptyList()));
+        assertFalse(inst.isOutdated());
+    }
+
+    @Test
+    public void testStartSearching() {
+        assertTrue(inst.startSearching());
+        assertTrue(inst.isSearching());
+        assertFalse(inst.startSearching());
     }
 
     @Test
-    public void testRefreshNode() {
+    public void testResolveNode() {
         List<RouteNode> nodes = new ArrayList<>();
 
         Residence oldR = mock(Residence.class);
@@ -119,7 +165,8 @@ public class RouteSearcherTest extends AbstractControllerTest {
         nodes.add(p);
         nodes.add(tg);
 
-        inst.routes.put(1L, nodes);
+        Map<Long, List<RouteNode>> routes = new HashMap<>();
+        routes.put(1L, nodes);
 
         Residence newR = mock(Residence.class);
         Platform newP = mock(Platform.class);
@@ -132,7 +179,7 @@ public class RouteSearcherTest extends AbstractControllerTest {
         doReturn(newP).when(inst.stCon).find(any(Platform.class));
         doReturn(newTg).when(inst.stCon).find(any(TicketGate.class));
 
-        inst.refresh();
+        inst.resolve(routes);
 
         assertEquals(newR, r.getOriginal());
         assertEquals(newP, p.getOriginal());
@@ -205,6 +252,84 @@ public class RouteSearcherTest extends AbstractControllerTest {
         assertEquals(node, inst.refresh(node));
     }
 
+    /**
+     * 同じプラットフォームの組を2つの路線が結ぶとき、差分計算が全探索と同じ経路を選ぶことを確かめる
+     */
+    @Test
+    public void testInheritParallelLines() {
+        Company c = new Company();
+        c.setId(1);
+        Platform p1 = new Platform();
+        p1.setId(1);
+        Platform p2 = new Platform();
+        p2.setId(2);
+        StepForHuman lineA = mockStep("trainA", p1, p2, 5);
+        StepForHuman lineB = mockStep("trainB", p1, p2, 3);
+        StepForHuman arrive = mockStep("to", p2, c, 1);
+
+        RouteGraph graph = new RouteGraph(Collections.emptyList(), Arrays.asList(c),
+                Collections.emptyList(), Arrays.asList(p1, p2), Arrays.asList(lineA, lineB, arrive));
+        int goal = graph.indexOf(c);
+        IndexedMinHeap heap = new IndexedMinHeap(graph.size());
+
+        double[] expected = new double[graph.size()];
+        int[] expectedVia = new int[graph.size()];
+        graph.search(goal, expected, expectedVia, heap);
+
+        // 前回の探索結果. p1 は路線 B を通る
+        RouteNode cN = new PermanentRouteNode(c);
+        RouteNode p2N = new PermanentRouteNode(p2);
+        RouteNode p1N = new PermanentRouteNode(p1);
+        cN.setCost(0);
+        p2N.setCost(1);
+        p2N.setVia(cN);
+        p2N.getOutEdges().add(new PermanentRouteEdge(arrive, p2N, cN));
+        p1N.setCost(4);
+        p1N.setVia(p2N);
+        p1N.getOutEdges().add(new PermanentRouteEdge(lineB, p1N, p2N));
+        Arrays.asList(cN, p2N, p1N).forEach(RouteNode::fix);
+
+        double[] cost = new double[graph.size()];
+        int[] via = new int[graph.size()];
+        assertTrue(inst.inherit(graph, Arrays.asList(cN, p1N, p2N), cost, via));
+        graph.repair(goal, cost, via, heap);
+
+        assertArrayEquals(expected, cost, 0.0);
+        assertArrayEquals(expectedVia, via);
+        assertSame(lineB, graph.getStep(via[graph.indexOf(p1)]));
+    }
+
+    @Test
+    public void testInheritAmbiguousStep() {
+        Company c = new Company();
+        c.setId(1);
+        Platform p1 = new Platform();
+        p1.setId(1);
+        StepForHuman dup1 = mockStep("dup", p1, c, 5);
+        StepForHuman dup2 = mockStep("dup", p1, c, 3);
+
+        RouteGraph graph = new RouteGraph(Collections.emptyList(), Arrays.asList(c),
+                Collections.emptyList(), Arrays.asList(p1), Arrays.asList(dup1, dup2));
+
+        RouteNode cN = new PermanentRouteNode(c);
+        RouteNode p1N = new PermanentRouteNode(p1);
+        p1N.setVia(cN);
+        p1N.getOutEdges().add(new PermanentRouteEdge(dup2, p1N, cN));
+        p1N.fix();
+
+        // どちらの辺を通っていたか決められないため、全探索させる
+        assertFalse(inst.inherit(graph, Arrays.asList(cN, p1N), new double[2], new int[2]));
+    }
+
+    protected static StepForHuman mockStep(String uid, RelayPointForHuman from, RelayPointForHuman to, double cost) {
+        StepForHuman step = mock(StepForHuman.class);
+        doReturn(uid).when(step).getUid();
+        doReturn(from).when(step).getFrom();
+        doReturn(to).when(step).getTo();
+        doReturn(cost).when(step).getCost();
+        return step;
+    }
+
     @Test
     public void testIsReachableEmptyWorld() {
         assertFalse(inst.isReachable(new Residence(), new Company()));
@@ -216,24 +341,22 @@ public class RouteSearcherTest extends AbstractControllerTest {
         Company c = cCon.create(new SimplePoint(10, 2));
         doReturn(new ArrayList<>()).when(inst.hCon).findAll();
         assertTrue(inst.call());
+        assertTrue(inst.swap());
         assertTrue(inst.isReachable(r, c));
     }
 
     @Test
     public void testSearchEmptyWorld() {
-        inst.search(new ArrayList<>(), new PermanentRouteNode(new Company()));
+        assertTrue(inst.searchAll(inst.new BaseObjPack(), Collections.emptyMap()).isEmpty());
     }
 
     @Test
     public void testSearchOnlyCmp() throws RushHourException {
         Company cmp = cCon.create(TEST_POS);
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), cmp);
 
         RouteNode goal = pPack.companyNodes.get(cmp.getId());
 
-        inst.search(pPack.allNodes, goal);
-
         assertTrue(0 == goal.getCost());
         assertNull(goal.getVia());
     }
@@ -247,14 +370,11 @@ public class RouteSearcherTest extends AbstractControllerTest {
     public void testSearchUnreach() throws RushHourException {
         Company cmp1 = cCon.create(new SimplePoint(10, 10));
         Company cmp2 = cCon.create(new SimplePoint(20, 20));
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), cmp2);
 
         RouteNode begin = pPack.companyNodes.get(cmp1.getId());
         RouteNode goal = pPack.companyNodes.get(cmp2.getId());
 
-        inst.search(pPack.allNodes, goal);
-
         assertTrue(0 == goal.getCost());
         assertTrue(Double.MAX_VALUE == begin.getCost());
         assertNull(goal.getVia());
@@ -265,13 +385,11 @@ public class RouteSearcherTest extends AbstractControllerTest {
     public void testSearch() throws RushHourException {
         Residence rsd = rCon.create(new SimplePoint(10, 10));
         Company cmp = cCon.create(new SimplePoint(10, 20));
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), cmp);
 
         RouteNode begin = pPack.residenceNodes.get(rsd.getId());
         RouteNode goal = pPack.companyNodes.get(cmp.getId());
-
-        inst.search(pPack.allNodes, goal);
+        pPack.allNodes.forEach(node -> node.fix());
 
         assertTrue(0 == goal.getCost());
         assertTrue(10 == begin.getCost());
@@ -308,15 +426,8 @@ public class RouteSearcherTest extends AbstractControllerTest {
         AssistanceController.Result result = aCon.startWithStation(p, new SimplePoint(), Locale.JAPANESE);
         AssistanceController.Result extend = aCon.extendWithStation(p, result.node, new SimplePoint(0, 990), Locale.JAPANESE);
 
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
-
-        for (RouteEdge edge : pPack.allEdges) {
-            System.out.println(edge);
-        }
-
-        RouteNode goal = pPack.companyNodes.get(c.getId());
-        inst.search(pPack.allNodes, goal);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), c);
+        pPack.allNodes.forEach(node -> node.fix());
 
         RouteNode start = pPack.residenceNodes.get(r.getId());
         assertEquals(start.getOriginal(), r);
@@ -326,7 +437,9 @@ public class RouteSearcherTest extends AbstractControllerTest {
         assertEquals(start.getVia().getVia().getVia().getVia().getOriginal(), extend.station.getTicketGate());
         assertEquals(start.getVia().getVia().getVia().getVia().getVia().getOriginal(), c);
 
-        inst.routes.put(c.getId(), pPack.allNodes);
+        Map<Long, List<RouteNode>> routes = new HashMap<>();
+        routes.put(c.getId(), pPack.allNodes);
+        inst.table = new RouteTable(1, 0, routes, Collections.emptyList());
 
         assertTrue(inst.isReachable(r, c));
         assertTrue(inst.isReachable(result.station.getPlatform(), c));
@@ -345,6 +458,7 @@ public class RouteSearcherTest extends AbstractControllerTest {
         doReturn(new ArrayList<>()).when(inst.hCon).findAll();
 
         assertTrue(inst.call());
+        assertTrue(inst.swap());
 
         RouteNode start1_1 = inst.getStart(r1, c1);
         RouteNode start1_2 = inst.getStart(r1, c2);
@@ -361,6 +475,88 @@ public class RouteSearcherTest extends AbstractControllerTest {
         assertNotNull(edge.getOriginal());
     }
 
+    @Test
+    public void testCallParallel() throws RushHourException {
+        Residence r1 = rCon.create(new SimplePoint(10, 10));
+        Residence r2 = rCon.create(new SimplePoint(100, 100));
+        Company c1 = cCon.create(new SimplePoint(10, 20));
+        Company c2 = cCon.create(new SimplePoint(200, 200));
+        Company c3 = cCon.create(new SimplePoint(-50, 30));
+
+        doReturn(new ArrayList<>()).when(inst.hCon).findAll();
+        doReturn(4).when(inst).getParallelism();
+
+        assertTrue(inst.call());
+        assertTrue(inst.swap());
+
+        for (Residence r : new Residence[]{r1, r2}) {
+            for (Company c : new Company[]{c1, c2, c3}) {
+                assertEquals(c, inst.getStart(r, c).getVia().getOriginal());
+                assertTrue(r.distTo(c) == inst.getCost(r, c));
+            }
+        }
+    }
+
+    @Test
+    public void testGetPool() {
+        ForkJoinPool pool = inst.getPool(4);
+        assertSame(pool, inst.getPool(4));
+
+        // 並列度が変わったときだけ作り直す
+        ForkJoinPool changed = inst.getPool(2);
+        assertNotSame(pool, changed);
+        assertTrue(pool.isShutdown());
+
+        inst.preDestroy();
+        assertTrue(changed.isShutdown());
+        assertNull(inst.pool);
+    }
+
+    /**
+     * 駅を追加したときは前回の探索結果をもとに差分計算する
+     *
+     * @throws RushHourException
+     */
+    @Test
+    public void testCallIncremental() throws RushHourException {
+        Residence r = rCon.create(new SimplePoint(-10, -10));
+        Company c = cCon.create(new SimplePoint(10, 1000));
+        doReturn(new ArrayList<>()).when(inst.hCon).findAll();
+
+        assertTrue(inst.call());
+        assertTrue(inst.swap());
+        assertEquals(c, inst.getStart(r, c).getVia().getOriginal());
+
+        Player p = createPlayer();
+        AssistanceController.Result result = aCon.startWithStation(p, new SimplePoint(), Locale.JAPANESE);
+        AssistanceController.Result extend = aCon.extendWithStation(p, result.node, new SimplePoint(0, 990), Locale.JAPANESE);
+        inst.notifyAddition();
+
+        assertFalse(inst.requiresFullSearch);
+        assertTrue(inst.call());
+        assertTrue(inst.swap());
+
+        RouteNode start = inst.getStart(r, c);
+        assertEquals(result.station.getTicketGate(), start.getVia().getOriginal());
+        assertEquals(extend.station.getTicketGate(), start.getVia().getVia().getVia().getVia().getOriginal());
+        assertTrue(r.distTo(c) > start.getCost());
+        assertTrue(inst.isReachable(extend.station.getPlatform(), c));
+    }
+
+    @Test
+    public void testNotifyUpdateRequiresFullSearch() throws RushHourException {
+        doReturn(new ArrayList<>()).when(inst.hCon).findAll();
+        assertTrue(inst.call());
+        assertTrue(inst.swap());
+        assertFalse(inst.requiresFullSearch);
+
+        inst.notifyUpdate();
+
+        assertTrue(inst.requiresFullSearch);
+        assertTrue(inst.isAvailable());
+        assertTrue(inst.isOutdated());
+    }
+
     @Test
     public void testCallWithHuman() throws RushHourException {
         Residence r = rCon.create(new SimplePoint(10, 10));
@@ -371,10 +567,12 @@ public class RouteSearcherTest extends AbstractControllerTest {
         doReturn(list).when(inst.hCon).findAll();
 
         assertTrue(inst.call());
+        assertTrue(inst.swap());
 
         h.setCurrent(inst.getStart(h.getSrc(), h.getDest()));
 
         assertTrue(inst.call());
+        assertTrue(inst.swap());
 
         assertTrue(h.getCurrent() instanceof TemporaryHumanRouteEdge);
         assertTrue(inst.isAvailable());
@@ -398,52 +596,68 @@ public class RouteSearcherTest extends AbstractControllerTest {
 
         assertTrue(bPack.humanMap.containsKey(world.cmp.getId()));
         assertEquals(1, bPack.humanMap.get(world.cmp.getId()).size());
+
+        assertEquals(6, bPack.graph.size());
+        assertEquals(13, bPack.graph.edgeSize());
     }
 
     @Test
-    public void testPermanentObjSmallWorld() throws RushHourException {
+    public void testGraphSmallWorld() throws RushHourException {
         WorldPack world = createSmallWorld();
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteGraph graph = inst.new BaseObjPack().graph;
 
-        RouteNode rN = pPack.residenceNodes.get(world.rsd.getId());
-        assertNotNull(rN);
-        assertEquals(0, rN.getInEdges().size());
-        assertEquals(3, rN.getOutEdges().size());
+        int rN = graph.indexOf(world.rsd);
+        assertEquals(0, inDegree(graph, rN));
+        assertEquals(3, outDegree(graph, rN));
 
-        RouteNode cN = pPack.companyNodes.get(world.cmp.getId());
-        assertNotNull(cN);
-        assertEquals(3, cN.getInEdges().size());
-        assertEquals(0, cN.getOutEdges().size());
+        int cN = graph.indexOf(world.cmp);
+        assertEquals(3, inDegree(graph, cN));
+        assertEquals(0, outDegree(graph, cN));
 
-        RouteNode tg1N = pPack.ticketGateNodes.get(world.st1.getTicketGate().getId());
-        assertNotNull(tg1N);
-        assertEquals(3, tg1N.getInEdges().size());
-        assertEquals(3, tg1N.getOutEdges().size());
+        int tg1N = graph.indexOf(world.st1.getTicketGate());
+        assertEquals(3, inDegree(graph, tg1N));
+        assertEquals(3, outDegree(graph, tg1N));
 
-        RouteNode tg2N = pPack.ticketGateNodes.get(world.st2.getTicketGate().getId());
-        assertNotNull(tg2N);
-        assertEquals(3, tg2N.getInEdges().size());
-        assertEquals(3, tg2N.getOutEdges().size());
+        int tg2N = graph.indexOf(world.st2.getTicketGate());
+        assertEquals(3, inDegree(graph, tg2N));
+        assertEquals(3, outDegree(graph, tg2N));
 
-        RouteNode p1N = pPack.platformNodes.get(world.st1.getPlatform().getId());
-        assertNotNull(p1N);
-        assertEquals(2, p1N.getInEdges().size());
-        assertEquals(2, p1N.getOutEdges().size());
+        int p1N = graph.indexOf(world.st1.getPlatform());
+        assertEquals(2, inDegree(graph, p1N));
+        assertEquals(2, outDegree(graph, p1N));
+
+        int p2N = graph.indexOf(world.st2.getPlatform());
+        assertEquals(2, inDegree(graph, p2N));
+        assertEquals(2, outDegree(graph, p2N));
+
+        assertEquals(6, graph.size());
+        assertEquals(13, graph.edgeSize());
+    }
 
-        RouteNode p2N = pPack.platformNodes.get(world.st2.getPlatform().getId());
-        assertNotNull(p2N);
-        assertEquals(2, p2N.getInEdges().size());
-        assertEquals(2, p2N.getOutEdges().size());
+    @Test
+    public void testPermanentObjSmallWorld() throws RushHourException {
+        WorldPack world = createSmallWorld();
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), world.cmp);
 
+        // 経由する辺のみ作る
         assertEquals(6, pPack.allNodes.size());
-        assertEquals(13, pPack.allEdges.size());
+        assertEquals(5, pPack.allEdges.size());
+        pPack.allNodes.forEach(node -> {
+            if (node.getOriginal() == world.cmp) {
+                assertNull(node.getVia());
+                assertEquals(0, node.getOutEdges().size());
+            } else {
+                assertNotNull(node.getVia());
+                assertEquals(1, node.getOutEdges().size());
+                assertEquals(node.getVia(), node.getOutEdges().get(0).getTo());
+            }
+        });
     }
 
     @Test
     public void testTemporaryObjPackEmptyWorld() {
         RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack, new double[0], new int[0]);
 
         RouteSearcher.TemporaryObjPack tPack = inst.new TemporaryObjPack(pPack, null);
 
@@ -456,11 +670,18 @@ public class RouteSearcherTest extends AbstractControllerTest {
     @Test
     public void testTemporaryObjPackSmallWorld() throws RushHourException {
         WorldPack world = createSmallWorld();
-        Set<Human> hs = new HashSet<>();
-        hs.add(world.h);
+        List<TemporaryHumanPoint> hs = new ArrayList<>();
+        hs.add(new TemporaryHumanPoint(world.h));
 
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), world.cmp);
+        RouteNode cN = pPack.companyNodes.get(world.cmp.getId());
+        RouteNode tg1N = pPack.ticketGateNodes.get(world.st1.getTicketGate().getId());
+        RouteNode tg2N = pPack.ticketGateNodes.get(world.st2.getTicketGate().getId());
+        int cIn = cN.getInEdges().size();
+        int tg1In = tg1N.getInEdges().size();
+        int tg1Out = tg1N.getOutEdges().size();
+        int tg2In = tg2N.getInEdges().size();
+        int tg2Out = tg2N.getOutEdges().size();
 
         RouteSearcher.TemporaryObjPack tPack = inst.new TemporaryObjPack(pPack, hs);
 
@@ -469,31 +690,26 @@ public class RouteSearcherTest extends AbstractControllerTest {
         assertEquals(0, tPack.humanNodes.get(0).getInEdges().size());
         assertEquals(3, tPack.humanNodes.get(0).getOutEdges().size());
 
-        RouteNode cN = pPack.companyNodes.get(world.cmp.getId());
-        assertNotNull(cN);
-        assertEquals(4, cN.getInEdges().size());
+        // 人(改札外) -> 会社, 改札
+        assertEquals(cIn + 1, cN.getInEdges().size());
         assertEquals(0, cN.getOutEdges().size());
-
-        RouteNode tg1N = pPack.ticketGateNodes.get(world.st1.getTicketGate().getId());
-        assertNotNull(tg1N);
-        assertEquals(4, tg1N.getInEdges().size());
-        assertEquals(3, tg1N.getOutEdges().size());
-
-        RouteNode tg2N = pPack.ticketGateNodes.get(world.st2.getTicketGate().getId());
-        assertNotNull(tg2N);
-        assertEquals(4, tg2N.getInEdges().size());
-        assertEquals(3, tg2N.getOutEdges().size());
+        assertEquals(tg1In + 1, tg1N.getInEdges().size());
+        assertEquals(tg1Out, tg1N.getOutEdges().size());
+        assertEquals(tg2In + 1, tg2N.getInEdges().size());
+        assertEquals(tg2Out, tg2N.getOutEdges().size());
     }
 
     @Test
     public void testTemporaryObjPackSmallWorldOnPlatform() throws RushHourException {
         WorldPack world = createSmallWorld();
-        Set<Human> hs = new HashSet<>();
+        List<TemporaryHumanPoint> hs = new ArrayList<>();
         world.h.enterIntoPlatform(world.st1.getTicketGate(), world.st1.getPlatform());
-        hs.add(world.h);
+        hs.add(new TemporaryHumanPoint(world.h));
 
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), world.cmp);
+        RouteNode p1N = pPack.platformNodes.get(world.st1.getPlatform().getId());
+        int p1In = p1N.getInEdges().size();
+        int p1Out = p1N.getOutEdges().size();
 
         RouteSearcher.TemporaryObjPack tPack = inst.new TemporaryObjPack(pPack, hs);
 
@@ -502,21 +718,19 @@ public class RouteSearcherTest extends AbstractControllerTest {
         assertEquals(0, tPack.humanNodes.get(0).getInEdges().size());
         assertEquals(1, tPack.humanNodes.get(0).getOutEdges().size());
 
-        RouteNode p1N = pPack.platformNodes.get(world.st1.getPlatform().getId());
-        assertNotNull(p1N);
-        assertEquals(3, p1N.getInEdges().size());
-        assertEquals(2, p1N.getOutEdges().size());
+        // 人(プラットフォーム上) -> そのプラットフォーム
+        assertEquals(p1In + 1, p1N.getInEdges().size());
+        assertEquals(p1Out, p1N.getOutEdges().size());
     }
 
     @Test
     public void testTemporaryObjPackSmallWorldOnTrain() throws RushHourException {
         WorldPack world = createSmallWorld();
-        Set<Human> hs = new HashSet<>();
+        List<TemporaryHumanPoint> hs = new ArrayList<>();
         world.h.setOnTrain(world.t.getDeployed());
-        hs.add(world.h);
+        hs.add(new TemporaryHumanPoint(world.h));
 
-        RouteSearcher.BaseObjPack bPack = inst.new BaseObjPack();
-        RouteSearcher.PermanentObjPack pPack = inst.new PermanentObjPack(bPack);
+        RouteSearcher.PermanentObjPack pPack = search(inst.new BaseObjPack(), world.cmp);
 
         RouteSearcher.TemporaryObjPack tPack = inst.new TemporaryObjPack(pPack, hs);
 
@@ -526,6 +740,29 @@ public class RouteSearcherTest extends AbstractControllerTest {
         assertEquals(0, tPack.humanNodes.get(0).getOutEdges().size());
     }
 
+    /**
+     * {@link RouteGraph#search(int, double[], int[], IndexedMinHeap)} で探索し、結果から節点を作る. 節点は fix しない
+     *
+     * @param bPack 探索対象
+     * @param goal 目的地
+     * @return 経由する辺のみを持つ節点
+     */
+    protected RouteSearcher.PermanentObjPack search(RouteSearcher.BaseObjPack bPack, Company goal) {
+        RouteGraph graph = bPack.graph;
+        double[] cost = new double[graph.size()];
+        int[] via = new int[graph.size()];
+        graph.search(graph.indexOf(goal), cost, via, new IndexedMinHeap(graph.size()));
+        return inst.new PermanentObjPack(bPack, cost, via);
+    }
+
+    protected static int inDegree(RouteGraph graph, int node) {
+        return graph.getInEnd(node) - graph.getInBegin(node);
+    }
+
+    protected static int outDegree(RouteGraph graph, int node) {
+        return graph.getOutEnd(node) - graph.getOutBegin(node);
+    }
+
     /**
      * R St--St C
      *
@@ -238,7 +238,7 @@ public class TrainControllerTest extends AbstractControllerTest {
                 .findFirst().get();
         
         TrainDeployed deploy = inst.deploy(inst.create(player), player, dep);
-        deploy.step(new ArrayList<>(), 10);
+        deploy.step(10);
         
         stCon.remove(res1.station, player);
         
@@ -255,7 +255,7 @@ public class TrainControllerTest extends AbstractControllerTest {
                 .findFirst().get();
         
         TrainDeployed deploy = inst.deploy(inst.create(player), player, stop);
-        deploy.step(new ArrayList<>(), 10);
+        deploy.step(10);
         
         stCon.remove(res2.station, player);
         
@@ -267,7 +267,7 @@ public class TrainControllerTest extends AbstractControllerTest {
     public void testInheritEntity() throws RushHourException {
         Train train = inst.create(player);
         inst.deploy(train, player, lineStep);
-        train.getDeployed().step(new ArrayList<>(), 1000);
+        train.getDeployed().step(1000);
         double x = train.getDeployed().getX();
         double y = train.getDeployed().getY();
         
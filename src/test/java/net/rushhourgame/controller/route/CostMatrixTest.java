@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rushhourgame.entity.AbstractEntity;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Platform;
+import net.rushhourgame.entity.RelayPointForHuman;
+import net.rushhourgame.entity.Residence;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class CostMatrixTest {
+
+    @Test
+    public void testOf() {
+        Residence r1 = withId(new Residence(), 1);
+        Residence r2 = withId(new Residence(), 2);
+        Company c1 = withId(new Company(), 1);
+        Company c2 = withId(new Company(), 2);
+        Platform p = withId(new Platform(), 1);
+
+        Map<Long, List<RouteNode>> routes = new HashMap<>();
+        routes.put(c1.getId(), Arrays.asList(node(r1, 10), node(r2, 20), node(p, 5)));
+        routes.put(c2.getId(), Arrays.asList(node(r1, 30)));
+
+        CostMatrix inst = CostMatrix.of(routes);
+
+        assertEquals(2, inst.getResidenceSize());
+        assertEquals(2, inst.getCompanySize());
+        assertEquals(10, inst.get(r1, c1), 0.0);
+        assertEquals(20, inst.get(r2, c1), 0.0);
+        assertEquals(30, inst.get(r1, c2), 0.0);
+        // 経路網にない組み合わせ
+        assertEquals(Double.POSITIVE_INFINITY, inst.get(r2, c2), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, inst.get(withId(new Residence(), 3), c1), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, inst.get(r1, withId(new Company(), 3)), 0.0);
+    }
+
+    @Test
+    public void testSet() {
+        Residence r = withId(new Residence(), 1);
+        Company c = withId(new Company(), 1);
+        CostMatrix inst = new CostMatrix(Arrays.asList(r.getId()), Arrays.asList(c.getId()));
+
+        assertEquals(Double.POSITIVE_INFINITY, inst.get(r, c), 0.0);
+        inst.set(r, c, 5);
+        assertEquals(5, inst.get(r, c), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetUnknown() {
+        CostMatrix inst = new CostMatrix(Arrays.asList(1L), Arrays.asList(1L));
+
+        inst.set(withId(new Residence(), 2), withId(new Company(), 1), 5);
+    }
+
+    protected static RouteNode node(RelayPointForHuman original, double cost) {
+        RouteNode node = new PermanentRouteNode(original);
+        node.setCost(cost);
+        return node;
+    }
+
+    protected static <T extends AbstractEntity> T withId(T entity, long id) {
+        entity.setId(id);
+        return entity;
+    }
+}
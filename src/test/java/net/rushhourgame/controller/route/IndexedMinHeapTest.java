@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+public class IndexedMinHeapTest {
+
+    @Test
+    public void testPollOrder() {
+        IndexedMinHeap inst = new IndexedMinHeap(5);
+        inst.offer(0, 3.0);
+        inst.offer(1, 1.0);
+        inst.offer(2, 2.0);
+
+        assertEquals(3, inst.size());
+        assertTrue(1.0 == inst.peekKey());
+        assertEquals(1, inst.poll());
+        assertEquals(2, inst.poll());
+        assertEquals(0, inst.poll());
+        assertTrue(inst.isEmpty());
+    }
+
+    @Test
+    public void testDecreaseKey() {
+        IndexedMinHeap inst = new IndexedMinHeap(3);
+        inst.offer(0, 3.0);
+        inst.offer(1, 2.0);
+        inst.offer(0, 1.0);
+        // 大きくなる場合は無視
+        inst.offer(1, 5.0);
+
+        assertEquals(2, inst.size());
+        assertEquals(0, inst.poll());
+        assertTrue(2.0 == inst.peekKey());
+        assertEquals(1, inst.poll());
+    }
+
+    @Test
+    public void testContainsAndClear() {
+        IndexedMinHeap inst = new IndexedMinHeap(3);
+        inst.offer(2, 1.0);
+
+        assertTrue(inst.contains(2));
+        assertFalse(inst.contains(0));
+
+        inst.clear();
+
+        assertTrue(inst.isEmpty());
+        assertFalse(inst.contains(2));
+
+        inst.offer(2, 4.0);
+        assertEquals(2, inst.poll());
+        assertFalse(inst.contains(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPollEmpty() {
+        new IndexedMinHeap(1).poll();
+    }
+
+    @Test
+    public void testRandom() {
+        Random rand = new Random(1);
+        int n = 1000;
+        IndexedMinHeap inst = new IndexedMinHeap(n);
+        double[] best = new double[n];
+        Arrays.fill(best, Double.MAX_VALUE);
+
+        for (int i = 0; i < 5000; i++) {
+            int node = rand.nextInt(n);
+            double key = rand.nextDouble();
+            inst.offer(node, key);
+            best[node] = Math.min(best[node], key);
+        }
+
+        double last = -1;
+        while (!inst.isEmpty()) {
+            double key = inst.peekKey();
+            int node = inst.poll();
+            assertTrue(key >= last);
+            assertTrue(best[node] == key);
+            last = key;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import net.rushhourgame.entity.AbstractEntity;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Platform;
+import net.rushhourgame.entity.Pointable;
+import net.rushhourgame.entity.RelayPointForHuman;
+import net.rushhourgame.entity.Residence;
+import net.rushhourgame.entity.StepForHuman;
+import net.rushhourgame.entity.TicketGate;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class RouteGraphTest {
+
+    protected Residence r1;
+    protected Residence r2;
+    protected Company c;
+    protected TicketGate g;
+    protected Platform p;
+
+    @Before
+    public void setUp() {
+        r1 = withId(new Residence(), 5);
+        r2 = withId(new Residence(), 2);
+        c = withId(new Company(), 5);
+        g = withId(new TicketGate(), 7);
+        p = withId(new Platform(), 7);
+    }
+
+    @Test
+    public void testEmpty() {
+        RouteGraph inst = new RouteGraph(Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+        assertEquals(0, inst.size());
+        assertEquals(0, inst.edgeSize());
+        assertEquals(-1, inst.indexOf(r1));
+    }
+
+    @Test
+    public void testIndexOf() {
+        RouteGraph inst = create(Collections.emptyList());
+
+        assertEquals(5, inst.size());
+        // 住宅は id 順
+        assertEquals(0, inst.indexOf(r2));
+        assertEquals(1, inst.indexOf(r1));
+        // 同じ id でも種類が違えば別の節点
+        assertEquals(2, inst.indexOf(c));
+        assertEquals(3, inst.indexOf(g));
+        assertEquals(4, inst.indexOf(p));
+
+        for (int i = 0; i < inst.size(); i++) {
+            assertEquals(i, inst.indexOf(inst.getOriginal(i)));
+        }
+
+        assertTrue(inst.isResidence(1));
+        assertTrue(inst.isCompany(2));
+        assertTrue(inst.isTicketGate(3));
+        assertTrue(inst.isPlatform(4));
+        assertFalse(inst.isCompany(3));
+
+        assertEquals(-1, inst.indexOf(withId(new Residence(), 3)));
+        assertEquals(-1, inst.indexOf(mock(RelayPointForHuman.class)));
+    }
+
+    @Test
+    public void testAdjacency() {
+        List<StepForHuman> steps = new ArrayList<>();
+        steps.add(step(r1, c, 10));
+        steps.add(step(r1, g, 1));
+        steps.add(step(g, p, 2));
+        steps.add(step(r2, c, 3));
+        steps.add(step(g, c, 4));
+
+        RouteGraph inst = create(steps);
+
+        assertEquals(5, inst.edgeSize());
+        assertEquals(inst.indexOf(r1), inst.getFrom(0));
+        assertEquals(inst.indexOf(c), inst.getTo(0));
+        assertTrue(10 == inst.getCost(0));
+        assertSame(steps.get(2), inst.getStep(2));
+
+        int cIdx = inst.indexOf(c);
+        assertEquals(3, inst.getInEnd(cIdx) - inst.getInBegin(cIdx));
+        assertEquals(0, inst.getOutEnd(cIdx) - inst.getOutBegin(cIdx));
+
+        List<Integer> in = new ArrayList<>();
+        for (int pos = inst.getInBegin(cIdx); pos < inst.getInEnd(cIdx); pos++) {
+            in.add(inst.getInEdge(pos));
+        }
+        assertEquals(Arrays.asList(0, 3, 4), in);
+
+        int gIdx = inst.indexOf(g);
+        List<Integer> out = new ArrayList<>();
+        for (int pos = inst.getOutBegin(gIdx); pos < inst.getOutEnd(gIdx); pos++) {
+            out.add(inst.getOutEdge(pos));
+        }
+        assertEquals(Arrays.asList(2, 4), out);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnknownEndpoint() {
+        StepForHuman step = mock(StepForHuman.class);
+        doReturn(withId(new Residence(), 99)).when(step).getFrom();
+        create(Collections.singletonList(step));
+    }
+
+    @Test
+    public void testSearch() {
+        List<StepForHuman> steps = new ArrayList<>();
+        steps.add(step(r1, c, 10));
+        steps.add(step(r1, g, 1));
+        steps.add(step(g, p, 2));
+        steps.add(step(r2, c, 3));
+        steps.add(step(g, c, 4));
+
+        RouteGraph inst = create(steps);
+        double[] cost = new double[inst.size()];
+        int[] via = new int[inst.size()];
+
+        inst.search(inst.indexOf(c), cost, via, new IndexedMinHeap(inst.size()));
+
+        assertTrue(0 == cost[inst.indexOf(c)]);
+        assertEquals(-1, via[inst.indexOf(c)]);
+        assertTrue(5 == cost[inst.indexOf(r1)]);
+        assertEquals(1, via[inst.indexOf(r1)]);
+        assertTrue(3 == cost[inst.indexOf(r2)]);
+        assertEquals(3, via[inst.indexOf(r2)]);
+        assertTrue(4 == cost[inst.indexOf(g)]);
+        assertEquals(4, via[inst.indexOf(g)]);
+        // プラットフォームから会社へは行けない
+        assertTrue(Double.MAX_VALUE == cost[inst.indexOf(p)]);
+        assertEquals(-1, via[inst.indexOf(p)]);
+    }
+
+    /**
+     * ランダムな経路網で Bellman-Ford 法と同じコストになることを確かめる
+     */
+    @Test
+    public void testSearchRandom() {
+        Random rand = new Random(2018);
+        List<Residence> nodes = createNodes(200);
+        List<StepForHuman> steps = createSteps(rand, nodes, 1000);
+        RouteGraph inst = create(nodes, steps);
+
+        for (int goal = 0; goal < 10; goal++) {
+            double[] cost = new double[inst.size()];
+            int[] via = new int[inst.size()];
+            inst.search(goal, cost, via, new IndexedMinHeap(inst.size()));
+
+            assertArrayEquals(bellmanFord(inst, goal), cost, 1e-9);
+            assertConsistent(inst, goal, cost, via);
+        }
+    }
+
+    /**
+     * 辺を追加した後の差分計算が全探索と同じコストになることを確かめる
+     */
+    @Test
+    public void testRepair() {
+        Random rand = new Random(2525);
+        List<Residence> nodes = createNodes(200);
+        List<StepForHuman> before = createSteps(rand, nodes, 600);
+        List<StepForHuman> after = new ArrayList<>(before);
+        after.addAll(createSteps(rand, nodes, 100));
+
+        RouteGraph oldGraph = create(nodes, before);
+        RouteGraph newGraph = create(nodes, after);
+        IndexedMinHeap heap = new IndexedMinHeap(newGraph.size());
+
+        for (int goal = 0; goal < 10; goal++) {
+            double[] cost = new double[newGraph.size()];
+            int[] via = new int[newGraph.size()];
+            // 追加前の辺は同じ番号なので、そのまま引き継げる
+            oldGraph.search(goal, cost, via, heap);
+            newGraph.repair(goal, cost, via, heap);
+
+            double[] expected = new double[newGraph.size()];
+            newGraph.search(goal, expected, new int[newGraph.size()], heap);
+
+            assertArrayEquals(expected, cost, 1e-9);
+            assertConsistent(newGraph, goal, cost, via);
+        }
+    }
+
+    @Test
+    public void testIndexOfStep() {
+        Platform p2 = withId(new Platform(), 8);
+        StepForHuman lineA = step("trainA", p, p2, 5);
+        StepForHuman lineB = step("trainB", p, p2, 3);
+        StepForHuman dup1 = step("dup", g, p, 1);
+        StepForHuman dup2 = step("dup", g, p, 2);
+
+        RouteGraph inst = new RouteGraph(Collections.emptyList(), Collections.emptyList(),
+                Arrays.asList(g), Arrays.asList(p, p2), Arrays.asList(lineA, lineB, dup1, dup2));
+
+        // 同じ節点の組を結ぶ辺も区別して引ける
+        assertEquals(0, inst.indexOfStep(lineA));
+        assertEquals(1, inst.indexOfStep(lineB));
+        // uid が重複していると決められない
+        assertEquals(-1, inst.indexOfStep(dup1));
+        StepForHuman unknown = mock(StepForHuman.class);
+        doReturn("unknown").when(unknown).getUid();
+        assertEquals(-1, inst.indexOfStep(unknown));
+    }
+
+    /**
+     * 同じプラットフォームの組を2つの路線が結ぶとき、通っていた路線の辺を引き継げば全探索と同じ結果になる
+     */
+    @Test
+    public void testRepairParallelEdges() {
+        Platform p2 = withId(new Platform(), 8);
+        StepForHuman lineA = step("trainA", p, p2, 5);
+        StepForHuman lineB = step("trainB", p, p2, 3);
+        StepForHuman arrive = step("to", p2, c, 1);
+        StepForHuman added = step("into", g, p, 2);
+
+        RouteGraph oldGraph = new RouteGraph(Collections.emptyList(), Arrays.asList(c),
+                Arrays.asList(g), Arrays.asList(p, p2), Arrays.asList(lineA, lineB, arrive));
+        RouteGraph newGraph = new RouteGraph(Collections.emptyList(), Arrays.asList(c),
+                Arrays.asList(g), Arrays.asList(p, p2), Arrays.asList(added, lineA, lineB, arrive));
+        IndexedMinHeap heap = new IndexedMinHeap(newGraph.size());
+
+        double[] oldCost = new double[oldGraph.size()];
+        int[] oldVia = new int[oldGraph.size()];
+        oldGraph.search(oldGraph.indexOf(c), oldCost, oldVia, heap);
+        assertSame(lineB, oldGraph.getStep(oldVia[oldGraph.indexOf(p)]));
+
+        // 辺の番号がずれるため、前回通った移動ステップから辺を引き直す
+        double[] cost = new double[newGraph.size()];
+        int[] via = new int[newGraph.size()];
+        Arrays.fill(cost, Double.MAX_VALUE);
+        Arrays.fill(via, -1);
+        for (int i = 0; i < oldGraph.size(); i++) {
+            if (oldVia[i] >= 0) {
+                int node = newGraph.indexOf(oldGraph.getOriginal(i));
+                cost[node] = oldCost[i];
+                via[node] = newGraph.indexOfStep(oldGraph.getStep(oldVia[i]));
+            }
+        }
+        newGraph.repair(newGraph.indexOf(c), cost, via, heap);
+
+        double[] expected = new double[newGraph.size()];
+        int[] expectedVia = new int[newGraph.size()];
+        newGraph.search(newGraph.indexOf(c), expected, expectedVia, heap);
+
+        assertArrayEquals(expected, cost, 0.0);
+        assertArrayEquals(expectedVia, via);
+        assertSame(lineB, newGraph.getStep(via[newGraph.indexOf(p)]));
+        assertConsistent(newGraph, newGraph.indexOf(c), cost, via);
+    }
+
+    protected static double[] bellmanFord(RouteGraph graph, int goal) {
+        double[] cost = new double[graph.size()];
+        Arrays.fill(cost, Double.MAX_VALUE);
+        cost[goal] = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            for (int e = 0; e < graph.edgeSize(); e++) {
+                int x = graph.getTo(e);
+                int y = graph.getFrom(e);
+                if (cost[x] != Double.MAX_VALUE && cost[x] + graph.getCost(e) < cost[y]) {
+                    cost[y] = cost[x] + graph.getCost(e);
+                }
+            }
+        }
+        return cost;
+    }
+
+    protected static void assertConsistent(RouteGraph graph, int goal, double[] cost, int[] via) {
+        for (int i = 0; i < graph.size(); i++) {
+            if (i == goal || cost[i] == Double.MAX_VALUE) {
+                assertEquals(-1, via[i]);
+            } else {
+                assertEquals(i, graph.getFrom(via[i]));
+                assertEquals(cost[i], cost[graph.getTo(via[i])] + graph.getCost(via[i]), 1e-9);
+            }
+        }
+    }
+
+    protected static List<Residence> createNodes(int num) {
+        List<Residence> nodes = new ArrayList<>();
+        for (int i = 1; i <= num; i++) {
+            nodes.add(withId(new Residence(), i));
+        }
+        return nodes;
+    }
+
+    protected static List<StepForHuman> createSteps(Random rand, List<Residence> nodes, int num) {
+        List<StepForHuman> steps = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            steps.add(new FixedStep(nodes.get(rand.nextInt(nodes.size())),
+                    nodes.get(rand.nextInt(nodes.size())), rand.nextInt(100)));
+        }
+        return steps;
+    }
+
+    protected static RouteGraph create(List<Residence> nodes, List<StepForHuman> steps) {
+        return new RouteGraph(nodes, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), steps);
+    }
+
+    protected RouteGraph create(List<StepForHuman> steps) {
+        return new RouteGraph(Arrays.asList(r1, r2), Arrays.asList(c),
+                Arrays.asList(g), Arrays.asList(p), steps);
+    }
+
+    protected static <T extends AbstractEntity> T withId(T entity, long id) {
+        entity.setId(id);
+        return entity;
+    }
+
+    protected static StepForHuman step(String uid, RelayPointForHuman from, RelayPointForHuman to, double cost) {
+        StepForHuman step = step(from, to, cost);
+        doReturn(uid).when(step).getUid();
+        return step;
+    }
+
+    protected static StepForHuman step(RelayPointForHuman from, RelayPointForHuman to, double cost) {
+        StepForHuman step = mock(StepForHuman.class);
+        doReturn(from).when(step).getFrom();
+        doReturn(to).when(step).getTo();
+        doReturn(cost).when(step).getCost();
+        return step;
+    }
+
+    /**
+     * コストが固定の移動ステップ
+     */
+    protected static class FixedStep implements StepForHuman {
+
+        protected final RelayPointForHuman from;
+        protected final RelayPointForHuman to;
+        protected final double cost;
+
+        public FixedStep(RelayPointForHuman from, RelayPointForHuman to, double cost) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+
+        @Override
+        public String getUid() {
+            return "fixed" + from.getId() + "_" + to.getId();
+        }
+
+        @Override
+        public RelayPointForHuman getFrom() {
+            return from;
+        }
+
+        @Override
+        public RelayPointForHuman getTo() {
+            return to;
+        }
+
+        @Override
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public boolean isAreaIn(Pointable center, double scale) {
+            return false;
+        }
+
+        @Override
+        public long step(Human h, long interval, double speed) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFinished(Human h) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
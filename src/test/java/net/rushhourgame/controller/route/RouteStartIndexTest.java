@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.Arrays;
+import java.util.Collections;
+import net.rushhourgame.entity.AbstractEntity;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Platform;
+import net.rushhourgame.entity.Player;
+import net.rushhourgame.entity.RelayPointForHuman;
+import net.rushhourgame.entity.Residence;
+import net.rushhourgame.entity.TicketGate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class RouteStartIndexTest {
+
+    @Test
+    public void testFind() {
+        Residence r = withId(new Residence(), 3);
+        TicketGate g = withId(new TicketGate(), 3);
+        Platform p = withId(new Platform(), 4);
+        RouteNode rn = node(r, 10);
+        RouteNode gn = node(g, 5);
+        RouteNode pn = node(p, 2);
+
+        RouteStartIndex inst = new RouteStartIndex(Arrays.asList(rn, gn, pn));
+
+        // 同じ id でも種類が違えば別のノード
+        assertSame(rn, inst.find(r));
+        assertSame(gn, inst.find(g));
+        assertSame(pn, inst.find(p));
+        assertNull(inst.find(withId(new Platform(), 3)));
+        assertNull(inst.find(withId(new Company(), 3)));
+    }
+
+    @Test
+    public void testFindNotRelayPoint() {
+        RouteStartIndex inst = new RouteStartIndex(Collections.emptyList());
+
+        assertNull(inst.find(withId(new Residence(), 1)));
+        assertNull(inst.find(new Player()));
+    }
+
+    protected static RouteNode node(RelayPointForHuman original, double cost) {
+        RouteNode node = new PermanentRouteNode(original);
+        node.setCost(cost);
+        return node;
+    }
+
+    protected static <T extends AbstractEntity> T withId(T entity, long id) {
+        entity.setId(id);
+        return entity;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 <https://twitter.com/yasshi2525>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.controller.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rushhourgame.entity.Company;
+import net.rushhourgame.entity.Residence;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class RouteTableTest {
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, RouteTable.EMPTY.getVersion());
+        assertTrue(RouteTable.EMPTY.getRoutes().isEmpty());
+        assertTrue(RouteTable.EMPTY.getHumanNodes().isEmpty());
+        assertNull(RouteTable.EMPTY.findStartIndex(1L));
+        assertNotNull(RouteTable.EMPTY.getCostMatrix());
+    }
+
+    @Test
+    public void testBuild() {
+        Residence r = RouteStartIndexTest.withId(new Residence(), 1);
+        Company c = RouteStartIndexTest.withId(new Company(), 2);
+        RouteNode rn = RouteStartIndexTest.node(r, 10);
+        RouteNode cn = RouteStartIndexTest.node(c, 0);
+        List<RouteNode> nodes = new ArrayList<>();
+        nodes.add(rn);
+        nodes.add(cn);
+        Map<Long, List<RouteNode>> routes = new HashMap<>();
+        routes.put(c.getId(), nodes);
+
+        RouteTable inst = new RouteTable(3, 2, routes, Collections.emptyList());
+
+        assertEquals(3, inst.getVersion());
+        assertEquals(2, inst.getBasedOn());
+        assertSame(rn, inst.findStartIndex(c.getId()).find(r));
+        assertNull(inst.findStartIndex(99L));
+
+        // 作った後に元の一覧を変更しても影響を受けない
+        routes.clear();
+        assertEquals(1, inst.getRoutes().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        new RouteTable(1, 0, new HashMap<>(), Collections.emptyList()).getRoutes().put(1L, new ArrayList<>());
+    }
+}
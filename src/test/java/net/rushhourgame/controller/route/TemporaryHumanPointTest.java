@@ -24,6 +24,7 @@
 package net.rushhourgame.controller.route;
 
 import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Platform;
 import net.rushhourgame.entity.SimplePoint;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -66,5 +67,28 @@ public class TemporaryHumanPointTest {
         assertTrue(human.getY() == inst.getY());
         assertTrue(inst.isAreaIn(new SimplePoint(10, 20), 0));
     }
+
+    @Test
+    public void testIsUpToDate() {
+        Platform p = new Platform();
+        p.setId(1L);
+        human.setStandingOn(Human.StandingOn.GROUND);
+        TemporaryHumanPoint inst = new TemporaryHumanPoint(human);
+        assertTrue(inst.isUpToDate());
+
+        human.setStandingOn(Human.StandingOn.PLATFORM);
+        human.setOnPlatform(p);
+        assertFalse(inst.isUpToDate());
+
+        inst = new TemporaryHumanPoint(human);
+        assertTrue(inst.isUpToDate());
+        assertEquals(Human.StandingOn.PLATFORM, inst.getStandingOn());
+        assertEquals(p, inst.getOnPlatform());
+
+        Platform other = new Platform();
+        other.setId(2L);
+        human.setOnPlatform(other);
+        assertFalse(inst.isUpToDate());
+    }
     
 }
@@ -109,6 +109,36 @@ public class HumanTest extends AbstractEntityTest {
         assertTrue(inst.isFinished());
     }
 
+    @Test
+    public void testHeadingWalking() {
+        SimplePoint goal = new SimplePoint(10, 0);
+        doReturn(onetimeTask).when(currentEdge).getOriginal();
+        doReturn(goal).when(onetimeTask).getWalkingGoal();
+
+        assertSame(goal, inst.getHeading());
+        assertEquals(VALID_SPEED, inst.getHeadingSpeed(VALID_SPEED), 0.0);
+    }
+
+    @Test
+    public void testHeadingFinished() {
+        inst.isFinished = true;
+
+        assertNull(inst.getHeading());
+    }
+
+    @Test
+    public void testHeadingOnTrain() {
+        RailNode next = mock(RailNode.class);
+        Train t = mock(Train.class);
+        doReturn(next).when(train).getHeading();
+        doReturn(t).when(train).getTrain();
+        doReturn(0.5).when(t).getSpeed();
+        inst.onTrain = train;
+
+        assertSame(next, inst.getHeading());
+        assertEquals(0.5, inst.getHeadingSpeed(VALID_SPEED), 0.0);
+    }
+
     @Test
     public void testStepNoActionWhenFinished() {
         inst.isFinished = true;
@@ -171,6 +201,31 @@ public class HumanTest extends AbstractEntityTest {
         assertEquals(nextEdge, inst.current);
     }
 
+    @Test
+    public void testStepUntilExclusive() {
+        doReturn(onetimeTask).when(currentEdge).getOriginal();
+        doReturn(neverEndTask).when(nextEdge).getOriginal();
+        doReturn(true).when(neverEndTask).isExclusive();
+
+        assertEquals(VALID_INTERVAL, inst.stepUntilExclusive(VALID_INTERVAL, VALID_SPEED));
+
+        verify(onetimeTask, times(1)).step(any(Human.class), anyLong(), anyDouble());
+        verify(neverEndTask, never()).step(any(Human.class), anyLong(), anyDouble());
+        assertEquals(nextEdge, inst.current);
+
+        // 残りは逐次に進める
+        inst.step(VALID_INTERVAL, VALID_SPEED);
+
+        verify(neverEndTask, times(1)).step(any(Human.class), anyLong(), anyDouble());
+    }
+
+    @Test
+    public void testStepUntilExclusiveFinished() {
+        inst.isFinished = true;
+
+        assertEquals(0L, inst.stepUntilExclusive(VALID_INTERVAL, VALID_SPEED));
+    }
+
     @Test
     public void testEnterIntoPlatform() {
         TicketGate tg = mock(TicketGate.class);
@@ -227,21 +282,98 @@ public class HumanTest extends AbstractEntityTest {
         inst.getInTrain(train);
 
         verify(platform, times(1)).exit();
+        verify(platform, times(1)).removeWaiting(eq(inst));
+        verify(train, times(1)).addPassenger(eq(inst));
         assertNull(inst.onPlatform);
         assertEquals(train, inst.onTrain);
         assertEquals(train, inst.getOnTrain());
         assertEquals(Human.StandingOn.TRAIN, inst.stand);
     }
 
+    @Test
+    public void testGetXYOnTrain() {
+        inst.setX(1.0);
+        inst.setY(2.0);
+        inst.onTrain = train;
+        doReturn(10.0).when(train).getX();
+        doReturn(20.0).when(train).getY();
+
+        assertTrue(10.0 == inst.getX());
+        assertTrue(20.0 == inst.getY());
+        // 乗車中は自身の座標を書き換えない
+        assertTrue(1.0 == inst.x);
+        assertTrue(2.0 == inst.y);
+
+        inst.onTrain = null;
+        assertTrue(1.0 == inst.getX());
+        assertTrue(2.0 == inst.getY());
+    }
+
+    @Test
+    public void testMaterializePoint() {
+        inst.setX(1.0);
+        inst.setY(2.0);
+        inst.materializePoint();
+        assertTrue(1.0 == inst.x);
+        assertTrue(2.0 == inst.y);
+
+        inst.onTrain = train;
+        doReturn(10.0).when(train).getX();
+        doReturn(20.0).when(train).getY();
+        inst.materializePoint();
+        assertTrue(10.0 == inst.x);
+        assertTrue(20.0 == inst.y);
+    }
+
+    @Test
+    public void testSetOnTrain() {
+        TrainDeployed other = mock(TrainDeployed.class);
+        inst.setOnTrain(train);
+        inst.setOnTrain(other);
+
+        verify(train, times(1)).addPassenger(eq(inst));
+        verify(train, times(1)).removePassenger(eq(inst));
+        verify(other, times(1)).addPassenger(eq(inst));
+        assertEquals(other, inst.getOnTrain());
+    }
+
+    @Test
+    public void testSetOnPlatform() {
+        inst.setOnPlatform(platform);
+        inst.setOnPlatform(null);
+
+        verify(platform, times(1)).addWaiting(eq(inst));
+        verify(platform, times(1)).removeWaiting(eq(inst));
+        assertNull(inst.getOnPlatform());
+    }
+
+    @Test
+    public void testLeave() {
+        inst.onTrain = train;
+        inst.onPlatform = platform;
+
+        inst.leave();
+
+        verify(train, times(1)).removePassenger(eq(inst));
+        verify(platform, times(1)).removeWaiting(eq(inst));
+    }
+
     @Test
     public void testGetOffTrain() {
         inst.onTrain = train;
+        doReturn(10.0).when(train).getX();
+        doReturn(20.0).when(train).getY();
 
         inst.getOffTrain(platform);
 
         assertNull(inst.onTrain);
         assertEquals(platform, inst.onPlatform);
+        // 降りた地点の座標を持つ
+        assertTrue(10.0 == inst.getX());
+        assertTrue(20.0 == inst.getY());
+        verify(train, times(1)).removePassenger(eq(inst));
         verify(platform, times(1)).enter(eq(true));
+        verify(platform, times(1)).addWaiting(eq(inst));
         verify(inst, times(1)).shiftEdge();
         assertEquals(Human.StandingOn.PLATFORM, inst.stand);
     }
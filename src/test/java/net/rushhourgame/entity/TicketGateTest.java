@@ -64,6 +64,18 @@ public class TicketGateTest extends AbstractEntityTest {
         inst.step(1000);
         
         assertTrue(1.5 == inst.occupied);
+        assertTrue(inst.isDirty());
+    }
+    
+    @Test
+    public void testStepIdle() {
+        inst.mobility = 0.0005;
+        inst.occupied = 0;
+        
+        inst.step(1000);
+        
+        assertTrue(0.0 == inst.occupied);
+        assertFalse(inst.isDirty());
     }
     
     @Test
@@ -24,6 +24,7 @@
 package net.rushhourgame.entity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.persistence.EntityManager;
 import net.rushhourgame.entity.troute.LineStepDeparture;
@@ -87,7 +88,7 @@ public class TrainDeployedTest extends AbstractEntityTest {
     @Test
     public void testSetCurrent() {
         LineStep step = mock(LineStep.class);
-        doNothing().when(inst).registerPoint(null);
+        doNothing().when(inst).registerPoint();
         
         inst.registerCurrent(step);
         
@@ -95,21 +96,40 @@ public class TrainDeployedTest extends AbstractEntityTest {
         assertTrue(0.0 == inst.progress);
     }
 
+    @Test
+    public void testHeadingRunning() {
+        LineStep step = mock(LineStep.class);
+        RailNode goal = mock(RailNode.class);
+        doReturn(goal).when(step).getGoalRailNode();
+        doReturn(true).when(inst).shouldRun();
+        inst.current = step;
+
+        assertSame(goal, inst.getHeading());
+    }
+
+    @Test
+    public void testHeadingStaying() {
+        inst.current = mock(LineStep.class);
+        doReturn(false).when(inst).shouldRun();
+
+        assertNull(inst.getHeading());
+    }
+
     @Test
     public void testConsumeTimeDoNothing() {
-        inst.consumeTime(new ArrayList<>(), 0);
+        inst.consumeTime(0);
     }
     
     @Test
     public void testConsumeTimeRunning() {
         doReturn(true).when(inst).shouldRun();
-        doReturn(500L).when(inst).consumeTimeByRunning(anyLong(), anyList());
+        doReturn(500L).when(inst).consumeTimeByRunning(anyLong());
         doReturn(false).when(inst).shouldShiftStep();
         doReturn(false).when(inst).shouldStay();
         
-        inst.consumeTime(new ArrayList<>(), 1000);
+        inst.consumeTime(1000);
         
-        verify(inst, times(2)).consumeTimeByRunning(anyLong(), anyList());
+        verify(inst, times(2)).consumeTimeByRunning(anyLong());
     }
     
     @Test
@@ -119,7 +139,7 @@ public class TrainDeployedTest extends AbstractEntityTest {
         doReturn(true).when(inst).shouldStay();
         doReturn(500L).when(inst).consumeTimeByStaying(anyLong());
         
-        inst.consumeTime(new ArrayList<>(), 1000);
+        inst.consumeTime(1000);
         
         verify(inst, times(2)).consumeTimeByStaying(anyLong());
     }
@@ -127,15 +147,15 @@ public class TrainDeployedTest extends AbstractEntityTest {
     @Test
     public void testConsumeTimeShiftStep() {
         doReturn(true).when(inst).shouldRun();
-        doReturn(500L).when(inst).consumeTimeByRunning(anyLong(), anyList());
+        doReturn(500L).when(inst).consumeTimeByRunning(anyLong());
         doReturn(true).when(inst).shouldShiftStep();
         doReturn(true).when(inst).shouldStay();
         doReturn(500L).when(inst).consumeTimeByStaying(anyLong());
-        doNothing().when(inst).shiftStep(anyList());
+        doNothing().when(inst).shiftStep();
         
-        inst.consumeTime(new ArrayList<>(), 1000);
+        inst.consumeTime(1000);
         
-        verify(inst, times(2)).shiftStep(anyList());
+        verify(inst, times(2)).shiftStep();
     }
 
 
@@ -174,10 +194,10 @@ public class TrainDeployedTest extends AbstractEntityTest {
         inst.current = moving;
         doReturn(10.0).when(inst).calcMovableDist(anyLong());
         doReturn(5.0).when(inst).calcRemainDist();
-        doReturn(1000L).when(inst).run(anyDouble(), anyList());
-        inst.consumeTimeByRunning(1000, new ArrayList<>());
+        doReturn(1000L).when(inst).run(anyDouble());
+        inst.consumeTimeByRunning(1000);
         
-        verify(inst, times(1)).run(eq(5.0), anyList());
+        verify(inst, times(1)).run(eq(5.0));
     }
 
     @Test
@@ -211,9 +231,9 @@ public class TrainDeployedTest extends AbstractEntityTest {
         inst.current = moving;
         doReturn(10.0).when(moving).getDist();
         doReturn(10.0).when(train).getSpeed();
-        doNothing().when(inst).registerPoint(anyList());
+        doNothing().when(inst).registerPoint();
         
-        assertTrue(0.0 == inst.run(0, new ArrayList<>()));
+        assertTrue(0.0 == inst.run(0));
         assertTrue(0.0 == inst.progress);
     }
 
@@ -266,51 +286,21 @@ public class TrainDeployedTest extends AbstractEntityTest {
         doReturn(40.0).when(goal).getY();
         
         inst.progress = 0.0;
-        inst.registerPoint(null);
+        inst.registerPoint();
         assertTrue(20.0 == inst.getX());
         assertTrue(20.0 == inst.getY());
         
         inst.progress = 0.5;
-        inst.registerPoint(null);
+        inst.registerPoint();
         assertTrue(30.0 == inst.getX());
         assertTrue(30.0 == inst.getY());
         
         inst.progress = 1.0;
-        inst.registerPoint(null);
+        inst.registerPoint();
         assertTrue(40.0 == inst.getX());
         assertTrue(40.0 == inst.getY());
     }
 
-    @Test
-    public void testRegisterPointWithHuman() {
-        inst.current = moving;
-        RailNode start = mock(RailNode.class);
-        RailNode goal = mock(RailNode.class);
-        doReturn(start).when(moving).getStartRailNode();
-        doReturn(goal).when(moving).getGoalRailNode();
-        doReturn(20.0).when(start).getX();
-        doReturn(40.0).when(goal).getX();
-        doReturn(20.0).when(start).getY();
-        doReturn(40.0).when(goal).getY();
-        
-        Human human = mock(Human.class);
-        TrainDeployed deployed = mock(TrainDeployed.class);
-        doReturn(true).when(inst).equalsId(eq(deployed));
-        doReturn(deployed).when(human).getOnTrain();
-        
-        List<Human> humans = new ArrayList<>();
-        humans.add(human);
-        inst.progress = 0.5;
-        
-        inst.registerPoint(humans);
-        
-        assertTrue(30.0 == inst.getX());
-        assertTrue(30.0 == inst.getY());
-        
-        verify(human, times(1)).setX(eq(30.0));
-        verify(human, times(1)).setY(eq(30.0));
-    }
-
     @Test
     public void testShouldShiftStep() {
         assertFalse(inst.shouldShiftStep());
@@ -324,7 +314,7 @@ public class TrainDeployedTest extends AbstractEntityTest {
         inst.current = moving;
         doReturn(stop).when(moving).getNext();
         
-        inst.shiftStep(new ArrayList<>());
+        inst.shiftStep();
         
         verify(inst, never()).freeHuman(anyList(), nullable(Platform.class));
         verify(inst, never()).collectHuman(anyList(), nullable(Platform.class));
@@ -339,7 +329,7 @@ public class TrainDeployedTest extends AbstractEntityTest {
         doNothing().when(inst).collectHuman(anyList(), any(Platform.class));
         doReturn(mock(Platform.class)).when(_dep).getStaying();
         
-        inst.shiftStep(new ArrayList<>());
+        inst.shiftStep();
         
         verify(inst, never()).freeHuman(anyList(), nullable(Platform.class));
         verify(inst, times(1)).collectHuman(anyList(), nullable(Platform.class));
@@ -354,7 +344,7 @@ public class TrainDeployedTest extends AbstractEntityTest {
         doNothing().when(inst).freeHuman(anyList(), any(Platform.class));
         doReturn(mock(Platform.class)).when(_stop).getGoal();
         
-        inst.shiftStep(new ArrayList<>());
+        inst.shiftStep();
         
         verify(inst, times(1)).freeHuman(anyList(), nullable(Platform.class));
         verify(inst, never()).collectHuman(anyList(), nullable(Platform.class));
@@ -363,6 +353,45 @@ public class TrainDeployedTest extends AbstractEntityTest {
         assertTrue(0.0 == inst.progress);
     }
     
+    @Test
+    public void testShiftStepCollectsOnlyWaiting() {
+        inst.current = dep;
+        Platform platform = spy(new Platform());
+        Human waiter = mock(Human.class);
+        platform.addWaiting(waiter);
+        doReturn(platform).when(_dep).getStaying();
+        doNothing().when(inst).collectHuman(anyList(), any(Platform.class));
+        
+        inst.shiftStep();
+        
+        verify(inst, times(1)).collectHuman(eq(Arrays.asList(waiter)), eq(platform));
+    }
+    
+    @Test
+    public void testShiftStepFreesOnlyPassengers() {
+        inst.current = stop;
+        Platform platform = mock(Platform.class);
+        Human passenger = mock(Human.class);
+        inst.addPassenger(passenger);
+        doReturn(platform).when(_stop).getGoal();
+        doNothing().when(inst).freeHuman(anyList(), any(Platform.class));
+        
+        inst.shiftStep();
+        
+        verify(inst, times(1)).freeHuman(eq(Arrays.asList(passenger)), eq(platform));
+    }
+    
+    @Test
+    public void testPassengers() {
+        Human human = mock(Human.class);
+        
+        inst.addPassenger(human);
+        assertEquals(1, inst.getPassengers().size());
+        
+        inst.removePassenger(human);
+        assertTrue(inst.getPassengers().isEmpty());
+    }
+    
     @Test
     public void testCanRide() {
         doReturn(3).when(train).getCapacity();
@@ -25,6 +25,8 @@ package net.rushhourgame.managedbean;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.WorldSnapshot;
 import net.rushhourgame.entity.Player;
 import net.rushhourgame.entity.Pointable;
 import net.rushhourgame.entity.SimplePoint;
@@ -69,6 +71,7 @@ public class ConsoleBeanTest extends AbstractBeanTest{
         inst.railCon = railCon;
         inst.stCon = stCon;
         inst.lCon = lCon;
+        inst.gm = gm;
         inst.player = player;
         inst.em = em;
         inst.p = new SimplePoint();
@@ -84,6 +87,22 @@ public class ConsoleBeanTest extends AbstractBeanTest{
         assertEquals(player, inst.player);
     }
 
+    @Test
+    public void testKilled() {
+        WorldSnapshot snapshot = new WorldSnapshot(3,
+                WorldSnapshot.EMPTY.getLayer(Kind.TRAIN), WorldSnapshot.EMPTY.getLayer(Kind.HUMAN), 1, 10L);
+        doReturn(snapshot).when(gm).getSnapshot();
+        
+        assertEquals(1, inst.getLastKilled());
+        assertEquals(10, inst.getTotalKilled());
+        assertSame(snapshot, inst.getSnapshot());
+    }
+
+    @Test
+    public void testTickStatistics() {
+        assertSame(gm.getStatistics(), inst.getTickStatistics());
+    }
+
     @Test
     public void testCreateCompany() throws RushHourException {
         inst.setX(TEST_X);
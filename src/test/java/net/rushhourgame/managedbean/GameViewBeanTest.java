@@ -24,14 +24,21 @@
 package net.rushhourgame.managedbean;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.rushhourgame.GameMaster;
+import net.rushhourgame.MovementLog.Kind;
 import static net.rushhourgame.RushHourResourceBundle.*;
+import net.rushhourgame.WorldSnapshot;
 import net.rushhourgame.controller.AssistanceController;
 import net.rushhourgame.controller.AssistanceController.Result;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Human.StandingOn;
 import net.rushhourgame.entity.Line;
 import net.rushhourgame.entity.Player;
 import net.rushhourgame.entity.Pointable;
@@ -88,7 +95,7 @@ public class GameViewBeanTest extends AbstractBeanTest {
         inst.sCon = sCon;
         inst.aCon = aCon;
         inst.tCon = tCon;
-        inst.hCon = hCon;
+        inst.gm = gm;
         inst.em = em;
         inst.center = new SimplePoint();
         inst.click = new SimplePoint();
@@ -168,11 +175,6 @@ public class GameViewBeanTest extends AbstractBeanTest {
         inst.getResidences();
     }
 
-    @Test
-    public void testGetTrains() {
-        inst.getTrains();
-    }
-
     @Test
     public void testGetMyRailNodes() {
         assertTrue(inst.getMyRailNodes().isEmpty());
@@ -207,9 +209,56 @@ public class GameViewBeanTest extends AbstractBeanTest {
         inst.getStepForHuman();
     }
 
-    @Test
-    public void testGetHumans() {
-        inst.getHumans();
+    /**
+     * 設定では人を表示する最大の縮尺が 10, まとめる数が 16, 格子の幅が 256
+     */
+    @Test
+    public void testGetHumanClusters() {
+        List<Human> humans = Arrays.asList(
+                createHuman(1, 10, 10), createHuman(2, 20, 30),
+                createHuman(3, 300, 10), createHuman(4, -100, -100));
+        WorldSnapshot snapshot = new WorldSnapshot(1, WorldSnapshot.EMPTY.getLayer(Kind.TRAIN),
+                WorldSnapshot.EMPTY.getLayer(Kind.HUMAN).next(humans, h -> h.getStandingOn().name(), 256), 0, 0);
+        inst.gm = mock(GameMaster.class);
+        doReturn(snapshot).when(inst.gm).getSnapshot();
+
+        // 1人ずつ表示する縮尺
+        inst.scale = 2;
+        assertTrue(inst.getHumanClusters().isEmpty());
+        inst.scale = 10;
+        assertTrue(inst.getHumanClusters().isEmpty());
+
+        // 2^11 / 16 = 128 は格子の幅より小さいため、格子のセルごとにまとめる
+        inst.scale = 11;
+        List<WorldSnapshot.Cluster> clusters = inst.getHumanClusters();
+        assertEquals(3, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals(-100, clusters.get(0).getX(), 0.0);
+        assertEquals(-100, clusters.get(0).getY(), 0.0);
+        assertEquals(2, clusters.get(1).getCount());
+        assertEquals(15, clusters.get(1).getX(), 0.0);
+        assertEquals(20, clusters.get(1).getY(), 0.0);
+        assertEquals(2, clusters.get(1).getCount(StandingOn.GROUND.name()));
+        assertEquals(1, clusters.get(2).getCount());
+        assertEquals(300, clusters.get(2).getX(), 0.0);
+
+        // 2^14 / 16 = 1024 は格子の幅の 4 倍のため、x, y が 0 から 1024 の3人を1つにまとめる
+        inst.scale = 14;
+        clusters = inst.getHumanClusters();
+        assertEquals(2, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals(3, clusters.get(1).getCount());
+        assertEquals(110, clusters.get(1).getX(), 1e-9);
+        assertEquals(50.0 / 3, clusters.get(1).getY(), 1e-9);
+    }
+
+    protected static Human createHuman(long id, double x, double y) {
+        Human h = new Human();
+        h.setId(id);
+        h.setX(x);
+        h.setY(y);
+        h.setStandingOn(StandingOn.GROUND);
+        return h;
     }
 
     @Test
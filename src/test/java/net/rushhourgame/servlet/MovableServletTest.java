@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import net.rushhourgame.GameMaster;
+import net.rushhourgame.MovementLog;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.RushHourProperties;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.WorldSnapshot;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Train;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import static org.mockito.Mockito.*;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class MovableServletTest {
+
+    @Mock
+    protected GameMaster gm;
+    @Mock
+    protected RushHourProperties prop;
+    @Spy
+    protected MovableServlet inst;
+    @Mock
+    protected HttpServletRequest req;
+    @Mock
+    protected HttpServletResponse res;
+
+    protected MovementLog log;
+    protected WorldSnapshot snapshot;
+    protected StringWriter body;
+    protected Human human;
+
+    @Before
+    public void setUp() throws IOException {
+        inst.gm = gm;
+        inst.prop = prop;
+
+        log = new MovementLog();
+        snapshot = WorldSnapshot.EMPTY;
+        body = new StringWriter();
+        human = new Human();
+        human.setId(1);
+        human.setX(1);
+        human.setY(2);
+
+        doReturn(log).when(gm).getMovements();
+        doAnswer(invocation -> snapshot).when(gm).getSnapshot();
+        doReturn(new PrintWriter(body)).when(res).getWriter();
+        doReturn("11").when(prop).get(VIEW_SCALE_TRAIN);
+        doReturn("10").when(prop).get(VIEW_SCALE_HUMAN);
+        doReturn("0").when(req).getParameter("cx");
+        doReturn("0").when(req).getParameter("cy");
+    }
+
+    @Test
+    public void testFull() throws ServletException, IOException {
+        tick();
+        doReturn(null).when(req).getParameter("since");
+        doReturn("4").when(req).getParameter("scale");
+
+        JsonObject obj = doGet();
+
+        assertEquals(1, obj.getJsonNumber("tick").longValue());
+        assertTrue(obj.getJsonObject("train").getBoolean("full"));
+        assertTrue(obj.getJsonObject("train").getJsonArray("id").isEmpty());
+        assertTrue(obj.getJsonObject("train").containsKey("owner"));
+
+        JsonObject humans = obj.getJsonObject("human");
+        assertTrue(humans.getBoolean("full"));
+        assertEquals(1, humans.getJsonArray("id").getJsonNumber(0).longValue());
+        assertEquals(1.0, humans.getJsonArray("x").getJsonNumber(0).doubleValue(), 0.0);
+        assertEquals(2.0, humans.getJsonArray("y").getJsonNumber(0).doubleValue(), 0.0);
+        assertEquals(1.0, humans.getJsonArray("tx").getJsonNumber(0).doubleValue(), 0.0);
+        assertEquals(2.0, humans.getJsonArray("ty").getJsonNumber(0).doubleValue(), 0.0);
+        assertEquals(0.0, humans.getJsonArray("speed").getJsonNumber(0).doubleValue(), 0.0);
+        assertFalse(humans.containsKey("owner"));
+    }
+
+    @Test
+    public void testDelta() throws ServletException, IOException {
+        tick();
+        human.setX(3);
+        tick();
+        doReturn("1").when(req).getParameter("since");
+        doReturn("4").when(req).getParameter("scale");
+
+        JsonObject obj = doGet();
+
+        assertEquals(2, obj.getJsonNumber("tick").longValue());
+        JsonObject humans = obj.getJsonObject("human");
+        assertFalse(humans.getBoolean("full"));
+        assertEquals(1, humans.getJsonArray("id").size());
+        assertEquals(3.0, humans.getJsonArray("x").getJsonNumber(0).doubleValue(), 0.0);
+        assertTrue(humans.getJsonArray("removed").isEmpty());
+    }
+
+    @Test
+    public void testHidden() throws ServletException, IOException {
+        tick();
+        doReturn("1").when(req).getParameter("since");
+        doReturn("12").when(req).getParameter("scale");
+        doReturn("16").when(prop).get(VIEW_CLUSTER_DIVISION);
+
+        JsonObject obj = doGet();
+
+        assertTrue(obj.getJsonObject("train").getBoolean("full"));
+        assertTrue(obj.getJsonObject("train").getJsonArray("id").isEmpty());
+        assertFalse(obj.getJsonObject("train").containsKey("clusters"));
+        assertTrue(obj.getJsonObject("human").getBoolean("full"));
+        assertTrue(obj.getJsonObject("human").getJsonArray("id").isEmpty());
+
+        JsonObject clusters = obj.getJsonObject("human").getJsonObject("clusters");
+        assertEquals(1, clusters.getJsonArray("count").getJsonNumber(0).intValue());
+        assertEquals(1.0, clusters.getJsonArray("x").getJsonNumber(0).doubleValue(), 0.0);
+        assertTrue(clusters.getJsonObject("state").isEmpty());
+    }
+
+    @Test
+    public void testHiddenWithState() throws ServletException, IOException {
+        human.setStandingOn(Human.StandingOn.PLATFORM);
+        log.record(Kind.HUMAN, Arrays.asList(human));
+        log.record(Kind.TRAIN, Collections.emptyList());
+        snapshot = new WorldSnapshot(log.commit(5), snapshot.getLayer(Kind.TRAIN),
+                snapshot.getLayer(Kind.HUMAN).next(Arrays.asList(human), h -> h.getStandingOn().name(), 10), 0, 0);
+        doReturn("1").when(req).getParameter("since");
+        doReturn("12").when(req).getParameter("scale");
+        doReturn("16").when(prop).get(VIEW_CLUSTER_DIVISION);
+
+        JsonObject clusters = doGet().getJsonObject("human").getJsonObject("clusters");
+
+        assertEquals(1, clusters.getJsonObject("state").getJsonArray("PLATFORM").getJsonNumber(0).intValue());
+    }
+
+    @Test
+    public void testInvalidParameter() throws ServletException, IOException {
+        tick();
+        doReturn("abc").when(req).getParameter("since");
+        doReturn("4").when(req).getParameter("scale");
+
+        JsonObject obj = doGet();
+
+        assertTrue(obj.getJsonObject("human").getBoolean("full"));
+    }
+
+    protected void tick() {
+        log.record(Kind.HUMAN, Arrays.asList(human));
+        log.record(Kind.TRAIN, Collections.emptyList());
+        long tick = log.commit(5);
+        snapshot = new WorldSnapshot(tick,
+                snapshot.getLayer(Kind.TRAIN).next(Collections.<Train>emptyList(), t -> null, 10),
+                snapshot.getLayer(Kind.HUMAN).next(Arrays.asList(human), h -> null, 10), 0, 0);
+    }
+
+    protected JsonObject doGet() throws ServletException, IOException {
+        inst.doGet(req, res);
+        verify(res, times(1)).setContentType("application/json;charset=UTF-8");
+        return Json.createReader(new StringReader(body.toString())).readObject();
+    }
+}
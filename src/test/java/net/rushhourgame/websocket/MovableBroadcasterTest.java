@@ -0,0 +1,258 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.websocket;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import net.rushhourgame.MovementLog;
+import net.rushhourgame.MovementLog.Kind;
+import net.rushhourgame.RushHourProperties;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.WorldSnapshot;
+import net.rushhourgame.entity.Human;
+import net.rushhourgame.entity.Train;
+import net.rushhourgame.entity.SimplePoint;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import static org.mockito.Mockito.*;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class MovableBroadcasterTest {
+
+    @Mock
+    protected RushHourProperties prop;
+    @Mock
+    protected ManagedExecutorService executorService;
+
+    protected MovableBroadcaster inst;
+    protected MovementLog log;
+    protected WorldSnapshot snapshot;
+    protected Human human;
+
+    protected static final SimplePoint ORIGIN = new SimplePoint();
+
+    @Before
+    public void setUp() {
+        inst = new MovableBroadcaster();
+        inst.prop = prop;
+        inst.executorService = executorService;
+
+        log = new MovementLog();
+        snapshot = WorldSnapshot.EMPTY;
+        human = new Human();
+        human.setId(1);
+        human.setX(1);
+        human.setY(2);
+    }
+
+    @Test
+    public void testPublishWithoutSubscriber() {
+        inst.publish(log, snapshot);
+
+        verify(executorService, never()).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void testPublishWhileBroadcasting() {
+        inst.subscribe(session("a", new ArrayList<>(), true), ORIGIN, 4);
+
+        inst.publish(log, snapshot);
+        inst.publish(log, snapshot);
+
+        verify(executorService, times(1)).submit(any(Runnable.class));
+        assertTrue(inst.broadcasting.get());
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        Session session = session("a", new ArrayList<>(), true);
+        inst.subscribe(session, ORIGIN, 4);
+        assertEquals(1, inst.getSubscriberCount());
+
+        inst.unsubscribe(session);
+
+        assertEquals(0, inst.getSubscriberCount());
+    }
+
+    @Test
+    public void testBroadcastFullThenDelta() {
+        stubScale();
+        List<String> sent = new ArrayList<>();
+        inst.subscribe(session("a", sent, true), ORIGIN, 4);
+
+        tick();
+        inst.broadcast(log, snapshot);
+        human.setX(3);
+        tick();
+        inst.broadcast(log, snapshot);
+
+        assertEquals(2, sent.size());
+        JsonObject full = parse(sent.get(0));
+        assertEquals(1, full.getJsonNumber("tick").longValue());
+        assertTrue(full.getJsonObject("human").getBoolean("full"));
+
+        JsonObject delta = parse(sent.get(1));
+        assertEquals(2, delta.getJsonNumber("tick").longValue());
+        assertFalse(delta.getJsonObject("human").getBoolean("full"));
+        assertEquals(3.0, delta.getJsonObject("human").getJsonArray("x").getJsonNumber(0).doubleValue(), 0.0);
+        assertFalse(inst.broadcasting.get());
+    }
+
+    @Test
+    public void testBroadcastSharesPayload() {
+        stubScale();
+        List<String> sent = new ArrayList<>();
+        inst.subscribe(session("a", sent, true), ORIGIN, 4);
+        inst.subscribe(session("b", sent, true), ORIGIN, 4);
+
+        tick();
+        inst.broadcast(log, snapshot);
+
+        assertEquals(2, sent.size());
+        assertSame(sent.get(0), sent.get(1));
+    }
+
+    @Test
+    public void testChangeViewport() {
+        stubScale();
+        List<String> sent = new ArrayList<>();
+        Session session = session("a", sent, true);
+        inst.subscribe(session, ORIGIN, 4);
+
+        tick();
+        inst.broadcast(log, snapshot);
+        inst.changeViewport(session, new SimplePoint(10, 10), 6);
+        tick();
+        inst.broadcast(log, snapshot);
+
+        JsonObject full = parse(sent.get(1));
+        assertTrue(full.getJsonObject("human").getBoolean("full"));
+        assertEquals(2, full.getJsonNumber("tick").longValue());
+    }
+
+    @Test
+    public void testBroadcastWhileSending() {
+        stubScale();
+        List<String> sent = new ArrayList<>();
+        // 送信完了を通知しない
+        inst.subscribe(session("a", sent, false), ORIGIN, 4);
+
+        tick();
+        inst.broadcast(log, snapshot);
+        tick();
+        inst.broadcast(log, snapshot);
+
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testSendFailed() {
+        stubScale();
+        List<String> sent = new ArrayList<>();
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        doReturn("a").when(session).getId();
+        doReturn(true).when(session).isOpen();
+        doReturn(remote).when(session).getAsyncRemote();
+        doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            ((SendHandler) invocation.getArgument(1)).onResult(new SendResult(new RuntimeException()));
+            return null;
+        }).when(remote).sendText(anyString(), any(SendHandler.class));
+        inst.subscribe(session, ORIGIN, 4);
+
+        tick();
+        inst.broadcast(log, snapshot);
+        tick();
+        inst.broadcast(log, snapshot);
+
+        assertTrue(parse(sent.get(1)).getJsonObject("human").getBoolean("full"));
+    }
+
+    @Test
+    public void testBroadcastClosedSession() {
+        List<String> sent = new ArrayList<>();
+        Session session = mock(Session.class);
+        doReturn("a").when(session).getId();
+        doReturn(false).when(session).isOpen();
+        inst.subscribe(session, ORIGIN, 4);
+
+        tick();
+        inst.broadcast(log, snapshot);
+
+        verify(session, never()).getAsyncRemote();
+    }
+
+    protected Session session(String id, List<String> sent, boolean complete) {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        doReturn(id).when(session).getId();
+        lenient().doReturn(true).when(session).isOpen();
+        lenient().doReturn(remote).when(session).getAsyncRemote();
+        lenient().doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            if (complete) {
+                ((SendHandler) invocation.getArgument(1)).onResult(new SendResult());
+            }
+            return null;
+        }).when(remote).sendText(anyString(), any(SendHandler.class));
+        return session;
+    }
+
+    protected void stubScale() {
+        doReturn("11").when(prop).get(VIEW_SCALE_TRAIN);
+        doReturn("10").when(prop).get(VIEW_SCALE_HUMAN);
+    }
+
+    protected void tick() {
+        log.record(Kind.HUMAN, Arrays.asList(human));
+        log.record(Kind.TRAIN, Collections.emptyList());
+        long tick = log.commit(5);
+        snapshot = new WorldSnapshot(tick,
+                snapshot.getLayer(Kind.TRAIN).next(Collections.<Train>emptyList(), t -> null, 10),
+                snapshot.getLayer(Kind.HUMAN).next(Arrays.asList(human), h -> null, 10), 0, 0);
+    }
+
+    protected JsonObject parse(String text) {
+        return Json.createReader(new StringReader(text)).readObject();
+    }
+}
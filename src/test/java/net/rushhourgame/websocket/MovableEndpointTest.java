@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 yasshi2525 (https://twitter.com/yasshi2525).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.rushhourgame.websocket;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.websocket.Session;
+import net.rushhourgame.RushHourProperties;
+import static net.rushhourgame.RushHourProperties.*;
+import net.rushhourgame.entity.SimplePoint;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import static org.mockito.Mockito.*;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ *
+ * @author yasshi2525 (https://twitter.com/yasshi2525)
+ */
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class MovableEndpointTest {
+
+    @Mock
+    protected MovableBroadcaster broadcaster;
+    @Mock
+    protected RushHourProperties prop;
+    @Mock
+    protected Session session;
+
+    protected MovableEndpoint inst;
+    protected Map<String, List<String>> params;
+
+    @Before
+    public void setUp() {
+        inst = new MovableEndpoint();
+        inst.broadcaster = broadcaster;
+        inst.prop = prop;
+        params = new HashMap<>();
+    }
+
+    @Test
+    public void testOnOpen() {
+        params.put("cx", Arrays.asList("1.5"));
+        params.put("cy", Arrays.asList("-2"));
+        params.put("scale", Arrays.asList("6"));
+
+        doReturn(params).when(session).getRequestParameterMap();
+        inst.onOpen(session);
+
+        ArgumentCaptor<SimplePoint> center = ArgumentCaptor.forClass(SimplePoint.class);
+        verify(broadcaster, times(1)).subscribe(eq(session), center.capture(), eq(6.0));
+        assertEquals(1.5, center.getValue().getX(), 0.0);
+        assertEquals(-2, center.getValue().getY(), 0.0);
+        verify(prop, never()).get(VIEW_SCALE_DEFAULT);
+    }
+
+    @Test
+    public void testOnOpenWithoutParameter() {
+        doReturn("8").when(prop).get(VIEW_SCALE_DEFAULT);
+
+        doReturn(params).when(session).getRequestParameterMap();
+        inst.onOpen(session);
+
+        ArgumentCaptor<SimplePoint> center = ArgumentCaptor.forClass(SimplePoint.class);
+        verify(broadcaster, times(1)).subscribe(eq(session), center.capture(), eq(8.0));
+        assertEquals(0, center.getValue().getX(), 0.0);
+        assertEquals(0, center.getValue().getY(), 0.0);
+    }
+
+    @Test
+    public void testOnOpenInvalidParameter() {
+        params.put("cx", Arrays.asList("a"));
+        params.put("cy", Collections.emptyList());
+        params.put("scale", Arrays.asList("b"));
+
+        doReturn(params).when(session).getRequestParameterMap();
+        inst.onOpen(session);
+
+        verify(broadcaster, times(1)).subscribe(eq(session), any(SimplePoint.class), eq(0.0));
+    }
+
+    @Test
+    public void testOnMessage() {
+        inst.onMessage(session, "{\"cx\":1.5,\"cy\":-2,\"scale\":6}");
+
+        ArgumentCaptor<SimplePoint> center = ArgumentCaptor.forClass(SimplePoint.class);
+        verify(broadcaster, times(1)).changeViewport(eq(session), center.capture(), eq(6.0));
+        assertEquals(1.5, center.getValue().getX(), 0.0);
+        assertEquals(-2, center.getValue().getY(), 0.0);
+    }
+
+    @Test
+    public void testOnMessageInvalid() {
+        inst.onMessage(session, "{\"cx\":1}");
+        inst.onMessage(session, "{\"cx\":\"a\",\"cy\":0,\"scale\":0}");
+        inst.onMessage(session, "abc");
+
+        verify(broadcaster, never()).changeViewport(any(Session.class), any(SimplePoint.class), anyDouble());
+    }
+
+    @Test
+    public void testOnClose() {
+        inst.onClose(session);
+        inst.onError(session, new RuntimeException());
+
+        verify(broadcaster, times(2)).unsubscribe(session);
+    }
+}
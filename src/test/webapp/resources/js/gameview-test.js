@@ -94,7 +94,8 @@ describe('test gameview', function () {
             },
             movablegraphics: {
                 'train': {},
-                'human': {}
+                'human': {},
+                'cluster': {}
             },
             player: {}
         };
@@ -249,13 +250,168 @@ describe('test gameview', function () {
     });
 
     describe('test fetchMovableGraphics', function () {
-        it('test invoke', function () {
-            $('body').append("<div class='train' id = 'no1'/>");
-            $('body').append("<div class='human' id = 'no2'/>");
-            fetchMovableGraphics();
+        it('move to game pos and request full', function () {
+            scope.movableTick = 10;
+            scope.movablegraphics.human['human1'] = {gamex: 128, gamey: 128};
+
             fetchMovableGraphics();
-            $('#no1.train').remove();
-            $('#no2.human').remove();
+
+            expect(scope.movableTick).toEqual(0);
+            expect(scope.movablegraphics.human['human1'].x).toEqual(500);
+            expect(scope.movablegraphics.human['human1'].y).toEqual(500);
+        });
+    });
+
+    describe('test sendViewport', function () {
+        afterEach(function () {
+            scope.movableSocket = null;
+        });
+
+        it('send when open', function () {
+            scope.movableSocket = jasmine.createSpyObj('socket', ['send']);
+            scope.movableSocket.readyState = WebSocket.OPEN;
+            scope.$centerX.val(1);
+            scope.$centerY.val(2);
+
+            sendViewport();
+
+            var sent = JSON.parse(scope.movableSocket.send.calls.argsFor(0)[0]);
+            expect(sent.cx).toEqual(1);
+            expect(sent.cy).toEqual(2);
+        });
+
+        it('do nothing when connecting', function () {
+            scope.movableSocket = jasmine.createSpyObj('socket', ['send']);
+            scope.movableSocket.readyState = WebSocket.CONNECTING;
+
+            sendViewport();
+
+            expect(scope.movableSocket.send.calls.any()).toEqual(false);
+        });
+    });
+
+    describe('test toSocketUrl', function () {
+        it('append ws path', function () {
+            expect(toSocketUrl('/RushHourGame/movable')).toMatch(/^wss?:\/\/.*\/RushHourGame\/movable\/ws$/);
+        });
+
+        it('pass viewport as parameters', function () {
+            expect(toSocketUrl('/RushHourGame/movable', {cx: 1, cy: -2, scale: 8}))
+                    .toMatch(/\/RushHourGame\/movable\/ws\?cx=1&cy=-2&scale=8$/);
+        });
+    });
+
+    describe('test applyMovables', function () {
+        var empty = function (full) {
+            return {full: full, id: [], owner: [], x: [], y: [], removed: []};
+        };
+
+        beforeEach(function () {
+            $('body').append("<div id='movablemodel' data-player='1'/>");
+            scope.$movablemodel = $('#movablemodel');
+            spyOn(window, 'stageResourceSprite').and.callFake(function () {
+                return {};
+            });
+            spyOn(window, 'stageTempCircle').and.callFake(function () {
+                return {};
+            });
+        });
+
+        afterEach(function () {
+            $('#movablemodel').remove();
+        });
+
+        it('add', function () {
+            applyMovables({
+                tick: 3,
+                train: {full: false, id: [1], owner: [1], x: [128], y: [0], removed: []},
+                human: {full: false, id: [2], x: [0], y: [128], removed: []}
+            });
+
+            expect(scope.movableTick).toEqual(3);
+            expect(scope.movablegraphics.train['train1'].gamex).toEqual(128);
+            expect(scope.movablegraphics.human['human2'].gamey).toEqual(128);
+        });
+
+        it('remove', function () {
+            scope.movablegraphics.human['human2'] = {};
+            var human = empty(false);
+            human.removed = [2];
+
+            applyMovables({tick: 4, train: empty(false), human: human});
+
+            expect(scope.movablegraphics.human['human2']).toBeUndefined();
+        });
+
+        it('full removes missing', function () {
+            scope.movablegraphics.human['human2'] = {};
+            scope.movablegraphics.train['train1'] = {};
+
+            applyMovables({tick: 5, train: empty(false), human: empty(true)});
+
+            expect(scope.movablegraphics.human['human2']).toBeUndefined();
+            expect(scope.movablegraphics.train['train1']).toBeDefined();
+        });
+
+        it('heading', function () {
+            applyMovables({
+                tick: 6,
+                train: {full: false, id: [1], owner: [1], x: [0], y: [0],
+                    tx: [10], ty: [0], speed: [0.5], removed: []},
+                human: empty(false)
+            });
+
+            expect(scope.movablegraphics.train['train1'].targetx).toEqual(10);
+            expect(scope.movablegraphics.train['train1'].speed).toEqual(0.5);
+        });
+    });
+
+    describe('test applyClusters', function () {
+        beforeEach(function () {
+            spyOn(window, 'stageTempCircle').and.callFake(function (pos, opts) {
+                return {opts: opts};
+            });
+        });
+
+        it('draw clusters', function () {
+            applyClusters({x: [0, 128], y: [0, 128], count: [4, 1],
+                state: {GROUND: [1, 1], TRAIN: [3, 0]}});
+
+            expect(scope.movablegraphics.cluster['cluster0'].gamex).toEqual(0);
+            expect(scope.movablegraphics.cluster['cluster0'].opts.color).toEqual(0x00bfff);
+            expect(scope.movablegraphics.cluster['cluster0'].opts.radius).toEqual(6);
+            expect(scope.movablegraphics.cluster['cluster1'].opts.color).toEqual(0xff69b4);
+        });
+
+        it('remove when not sent', function () {
+            scope.movablegraphics.cluster['cluster0'] = {};
+
+            applyClusters(undefined);
+
+            expect(scope.movablegraphics.cluster['cluster0']).toBeUndefined();
+        });
+    });
+
+    describe('test moveMovables', function () {
+        it('advance toward target', function () {
+            scope.movablegraphics.human['human2'] = {gamex: 0, gamey: 0, targetx: 10, targety: 0, speed: 0.5};
+
+            expect(moveMovables(10)).toBe(true);
+            expect(scope.movablegraphics.human['human2'].gamex).toEqual(5);
+        });
+
+        it('stop at target', function () {
+            scope.movablegraphics.human['human2'] = {gamex: 0, gamey: 0, targetx: 10, targety: 0, speed: 0.5};
+
+            moveMovables(100);
+            expect(scope.movablegraphics.human['human2'].gamex).toEqual(10);
+            expect(scope.movablegraphics.human['human2'].speed).toEqual(0);
+        });
+
+        it('do nothing when stopped', function () {
+            scope.movablegraphics.human['human2'] = {gamex: 0, gamey: 0, targetx: 0, targety: 0, speed: 0};
+
+            expect(moveMovables(100)).toBe(false);
         });
     });
 